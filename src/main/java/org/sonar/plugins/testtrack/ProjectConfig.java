@@ -0,0 +1,223 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack;
+
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.reviews.IssueTemplate;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * The JIRA settings of a project, read, parsed and validated once. Build it once per link or per analysis and pass it
+ * down to the code that needs it, it is never shared: it holds the password, and a project gets new values as soon as
+ * one of its properties changes.
+ */
+public final class ProjectConfig {
+
+  public static final String SONAR_URL_PROPERTY = "sonar.core.serverBaseURL";
+
+  private static final String[] KEYS = {
+    TestTrackConstants.SERVER_URL_PROPERTY, TestTrackConstants.SOAP_BASE_URL_PROPERTY, TestTrackConstants.TRANSPORT_PROPERTY,
+    TestTrackConstants.USERNAME_PROPERTY, TestTrackConstants.PASSWORD_PROPERTY, TestTrackConstants.JIRA_PROJECT_KEY_PROPERTY,
+    SONAR_URL_PROPERTY, TestTrackConstants.SUMMARY_TEMPLATE_PROPERTY, TestTrackConstants.DESCRIPTION_TEMPLATE_PROPERTY,
+    TestTrackConstants.COMMENT_TEMPLATE_PROPERTY, TestTrackConstants.ATTACHMENTS_PROPERTY, TestTrackConstants.ATTACHMENT_CONTEXT_LINES_PROPERTY,
+    TestTrackConstants.ATTACHMENT_MAX_KB_PROPERTY, TestTrackConstants.RECORD_FILE_PROPERTY, TestTrackConstants.REPLAY_FILE_PROPERTY,
+    TestTrackConstants.ATTACHMENT_SONAR_LOGIN_PROPERTY, TestTrackConstants.ATTACHMENT_SONAR_PASSWORD_PROPERTY
+  };
+
+  private final String serverUrl;
+  private final String transport;
+  private final String soapUrl;
+  private final URL soapEndpoint;
+  private final URL restEndpoint;
+  private final String browseUrlPrefix;
+  private final String username;
+  private final String password;
+  private final String jiraProjectKey;
+  private final String sonarUrl;
+  private final IssueTemplate summaryTemplate;
+  private final IssueTemplate descriptionTemplate;
+  private final IssueTemplate commentTemplate;
+  private final boolean attachments;
+  private final int attachmentContextLines;
+  private final int attachmentMaxKB;
+  private final File recordFile;
+  private final File replayFile;
+  private final String sonarLogin;
+  private final String sonarPassword;
+
+  private ProjectConfig(String[] values) {
+    serverUrl = values[0];
+    String baseUrl = StringUtils.isBlank(values[1]) ? TestTrackConstants.SOAP_BASE_URL_DEF_VALUE : values[1];
+    transport = StringUtils.isBlank(values[2]) ? TestTrackConstants.TRANSPORT_DEF_VALUE : values[2].trim().toLowerCase();
+    soapUrl = serverUrl + baseUrl;
+    soapEndpoint = toUrl(soapUrl);
+    restEndpoint = toUrl(serverUrl);
+    browseUrlPrefix = serverUrl + "/browse/";
+    username = values[3];
+    password = values[4];
+    jiraProjectKey = values[5];
+    sonarUrl = values[6];
+    summaryTemplate = IssueTemplate.of(StringUtils.defaultIfEmpty(values[7], TestTrackConstants.SUMMARY_TEMPLATE_DEF_VALUE));
+    descriptionTemplate = IssueTemplate.of(StringUtils.defaultIfEmpty(values[8], TestTrackConstants.DESCRIPTION_TEMPLATE_DEF_VALUE));
+    commentTemplate = IssueTemplate.of(StringUtils.defaultIfEmpty(values[9], TestTrackConstants.COMMENT_TEMPLATE_DEF_VALUE));
+    attachments = "true".equalsIgnoreCase(StringUtils.trim(values[10]));
+    attachmentContextLines = toInt(values[11], TestTrackConstants.ATTACHMENT_CONTEXT_LINES_DEF_VALUE);
+    attachmentMaxKB = toInt(values[12], TestTrackConstants.ATTACHMENT_MAX_KB_DEF_VALUE);
+    recordFile = toFile(values[13]);
+    replayFile = toFile(values[14]);
+    sonarLogin = StringUtils.trimToNull(values[15]);
+    sonarPassword = values[16];
+  }
+
+  public static ProjectConfig of(Settings settings) {
+    String[] values = new String[KEYS.length];
+    for (int i = 0; i < KEYS.length; i++) {
+      values[i] = settings.getString(KEYS[i]);
+    }
+    return new ProjectConfig(values);
+  }
+
+  public String getServerUrl() {
+    return serverUrl;
+  }
+
+  /**
+   * The transport kind, lower case, {@link TestTrackConstants#TRANSPORT_DEF_VALUE} if not set.
+   */
+  public String getTransport() {
+    return transport;
+  }
+
+  public String getSoapUrl() {
+    return soapUrl;
+  }
+
+  /**
+   * @return null if the server URL and the SOAP base URL don't make a valid URL
+   */
+  public URL getSoapEndpoint() {
+    return soapEndpoint;
+  }
+
+  /**
+   * @return null if the server URL is not a valid URL
+   */
+  public URL getRestEndpoint() {
+    return restEndpoint;
+  }
+
+  public String browseUrl(String issueKey) {
+    return browseUrlPrefix + issueKey;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public String getPassword() {
+    return password;
+  }
+
+  public String getJiraProjectKey() {
+    return jiraProjectKey;
+  }
+
+  public String getSonarUrl() {
+    return sonarUrl;
+  }
+
+  /**
+   * @return null if Sonar is read anonymously
+   */
+  public String getSonarLogin() {
+    return sonarLogin;
+  }
+
+  public String getSonarPassword() {
+    return sonarPassword;
+  }
+
+  public IssueTemplate getSummaryTemplate() {
+    return summaryTemplate;
+  }
+
+  public IssueTemplate getDescriptionTemplate() {
+    return descriptionTemplate;
+  }
+
+  public IssueTemplate getCommentTemplate() {
+    return commentTemplate;
+  }
+
+  public boolean isAttachments() {
+    return attachments;
+  }
+
+  public int getAttachmentContextLines() {
+    return attachmentContextLines;
+  }
+
+  public int getAttachmentMaxKB() {
+    return attachmentMaxKB;
+  }
+
+  /**
+   * @return null if what is read from JIRA is not recorded
+   */
+  public File getRecordFile() {
+    return recordFile;
+  }
+
+  /**
+   * @return null if JIRA is read, not a recording
+   */
+  public File getReplayFile() {
+    return replayFile;
+  }
+
+  public boolean isReplay() {
+    return replayFile != null;
+  }
+
+  private static URL toUrl(String url) {
+    try {
+      return new URL(url);
+    } catch (MalformedURLException e) {
+      return null;
+    }
+  }
+
+  private static File toFile(String path) {
+    return StringUtils.isBlank(path) ? null : new File(path.trim());
+  }
+
+  private static int toInt(String value, String defaultValue) {
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (RuntimeException e) {
+      // blank or not a number
+      return Integer.parseInt(defaultValue);
+    }
+  }
+}
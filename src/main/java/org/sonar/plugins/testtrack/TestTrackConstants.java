@@ -26,6 +26,10 @@ public final class TestTrackConstants {
 
   public static final String REVIEW_DATA_PROPERTY_KEY = "jira-issue-key";
 
+  // severity and hash of the message of the violation, as last pushed to the linked issue
+  public static final String REVIEW_SYNCED_SEVERITY_KEY = "jira-synced-severity";
+  public static final String REVIEW_SYNCED_MESSAGE_KEY = "jira-synced-message";
+
   // ===================== PLUGIN PROPERTIES =====================
 
   public static final String SERVER_URL_PROPERTY = "sonar.jira.url";
@@ -33,6 +37,9 @@ public final class TestTrackConstants {
   public static final String SOAP_BASE_URL_PROPERTY = "sonar.jira.soap.url";
   public static final String SOAP_BASE_URL_DEF_VALUE = "/rpc/soap/jirasoapservice-v2";
 
+  public static final String TRANSPORT_PROPERTY = "sonar.jira.transport";
+  public static final String TRANSPORT_DEF_VALUE = "soap";
+
   public static final String USERNAME_PROPERTY = "sonar.jira.login.secured";
 
   public static final String PASSWORD_PROPERTY = "sonar.jira.password.secured";
@@ -41,4 +48,82 @@ public final class TestTrackConstants {
 
   public static final String FILTER_PROPERTY = "sonar.jira.url.param";
 
+  public static final String PRIORITY_MAPPING_PROPERTY = "sonar.jira.priority.mapping";
+
+  public static final String ISSUE_TYPE_PROPERTY = "sonar.jira.issue.type";
+
+  public static final String SUMMARY_TEMPLATE_PROPERTY = "sonar.jira.template.summary";
+  public static final String SUMMARY_TEMPLATE_DEF_VALUE = "Sonar Review #${reviewId} - ${rule}";
+
+  public static final String DESCRIPTION_TEMPLATE_PROPERTY = "sonar.jira.template.description";
+  public static final String DESCRIPTION_TEMPLATE_DEF_VALUE = "Violation detail:\n{quote}\n${message}\n{quote}\n"
+    + "${?comment}\nMessage from reviewer:\n{quote}\n${comment}\n{quote}\n${/comment}"
+    + "\n\nCheck it on Sonar: ${sonarUrl}/project_reviews/view/${reviewId}";
+
+  public static final String COMMENT_TEMPLATE_PROPERTY = "sonar.jira.template.comment";
+  public static final String COMMENT_TEMPLATE_DEF_VALUE = "${?comment}${comment}\n\n${/comment}Review linked to JIRA issue: ${jiraUrl}/browse/${issueKey}";
+
+  public static final String MAX_CALLS_PER_SERVER_PROPERTY = "sonar.jira.remote.maxCallsPerServer";
+  public static final String MAX_CALLS_PER_SERVER_DEF_VALUE = "8";
+
+  public static final String ATTRIBUTION_PROPERTY = "sonar.jira.attribution";
+
+  public static final String RETRY_MAX_ATTEMPTS_PROPERTY = "sonar.jira.retry.maxAttempts";
+  public static final String RETRY_MAX_ATTEMPTS_DEF_VALUE = "3";
+
+  public static final String RETRY_BACKOFF_MS_PROPERTY = "sonar.jira.retry.backoffMs";
+  public static final String RETRY_BACKOFF_MS_DEF_VALUE = "1000";
+
+  public static final String ATTACHMENTS_PROPERTY = "sonar.jira.attachments";
+
+  public static final String ATTACHMENT_CONTEXT_LINES_PROPERTY = "sonar.jira.attachments.contextLines";
+  public static final String ATTACHMENT_CONTEXT_LINES_DEF_VALUE = "10";
+
+  public static final String ATTACHMENT_MAX_KB_PROPERTY = "sonar.jira.attachments.maxKB";
+  public static final String ATTACHMENT_MAX_KB_DEF_VALUE = "64";
+
+  public static final String ATTACHMENT_SONAR_LOGIN_PROPERTY = "sonar.jira.attachments.sonarLogin";
+
+  public static final String ATTACHMENT_SONAR_PASSWORD_PROPERTY = "sonar.jira.attachments.sonarPassword.secured";
+
+  public static final String TIME_BUDGET_SECONDS_PROPERTY = "sonar.jira.timeBudgetSeconds";
+  public static final String TIME_BUDGET_SECONDS_DEF_VALUE = "300";
+
+  public static final String SNAPSHOT_DIR_PROPERTY = "sonar.jira.snapshot.dir";
+
+  public static final String EXPORT_PROPERTY = "sonar.jira.export";
+
+  public static final String EXPORT_RULES_PROPERTY = "sonar.jira.export.rules";
+
+  public static final String EXPORT_SEVERITIES_PROPERTY = "sonar.jira.export.severities";
+
+  public static final String EXPORT_PATHS_PROPERTY = "sonar.jira.export.paths";
+
+  public static final String EXPORT_MAX_ISSUES_PROPERTY = "sonar.jira.export.maxIssues";
+  public static final String EXPORT_MAX_ISSUES_DEF_VALUE = "10000";
+
+  public static final String EXPORT_PARALLELISM_PROPERTY = "sonar.jira.export.parallelism";
+  public static final String EXPORT_PARALLELISM_DEF_VALUE = "4";
+
+  public static final String EXPORT_SUMMARY_TEMPLATE_PROPERTY = "sonar.jira.export.template.summary";
+  public static final String EXPORT_SUMMARY_TEMPLATE_DEF_VALUE = "${rule} - ${file}${?line}:${line}${/line}";
+
+  public static final String EXPORT_DESCRIPTION_TEMPLATE_PROPERTY = "sonar.jira.export.template.description";
+  public static final String EXPORT_DESCRIPTION_TEMPLATE_DEF_VALUE = "Violation detail:\n{quote}\n${message}\n{quote}\n"
+    + "\nRule ${ruleKey}, severity ${severity}";
+
+  public static final String ROLLUP_PROPERTY = "sonar.jira.rollup";
+
+  public static final String FEDERATION_SERVERS_PROPERTY = "sonar.jira.federation.servers";
+  public static final String FEDERATION_PROPERTY_PREFIX = "sonar.jira.federation.";
+
+  public static final String RECORD_FILE_PROPERTY = "sonar.jira.record.file";
+  public static final String REPLAY_FILE_PROPERTY = "sonar.jira.replay.file";
+
+  public static final String TRACE_SAMPLING_PROPERTY = "sonar.jira.trace.sampling";
+  public static final String TRACE_SAMPLING_DEF_VALUE = "100";
+
+  public static final String TRACE_BUFFER_SIZE_PROPERTY = "sonar.jira.trace.bufferSize";
+  public static final String TRACE_BUFFER_SIZE_DEF_VALUE = "1024";
+
 }
@@ -24,12 +24,30 @@ import com.google.common.collect.ImmutableList;
 import org.sonar.api.Properties;
 import org.sonar.api.Property;
 import org.sonar.api.SonarPlugin;
+import org.sonar.plugins.testtrack.export.ViolationCollector;
+import org.sonar.plugins.testtrack.export.ViolationExportPostJob;
+import org.sonar.plugins.testtrack.metrics.AnalysisState;
+import org.sonar.plugins.testtrack.metrics.FetchedIssues;
+import org.sonar.plugins.testtrack.metrics.FilterResolver;
+import org.sonar.plugins.testtrack.metrics.IssueFederation;
+import org.sonar.plugins.testtrack.metrics.IssueRollupDecorator;
 import org.sonar.plugins.testtrack.metrics.TestTrackMetrics;
 import org.sonar.plugins.testtrack.metrics.TestTrackSensor;
 import org.sonar.plugins.testtrack.metrics.TestTrackWidget;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.reviews.LinkedIssueUpdatePostJob;
+import org.sonar.plugins.testtrack.reviews.LinkedIssueUpdates;
+import org.sonar.plugins.testtrack.reviews.LinkedViolationChanges;
+import org.sonar.plugins.testtrack.reviews.PriorityMappingResolver;
+import org.sonar.plugins.testtrack.reviews.ReviewAttachments;
+import org.sonar.plugins.testtrack.reviews.ReviewLinks;
 import org.sonar.plugins.testtrack.reviews.TestTrackIssueCreator;
 import org.sonar.plugins.testtrack.reviews.LinkFunction;
+import org.sonar.plugins.testtrack.reviews.LinkRegistry;
 import org.sonar.plugins.testtrack.reviews.WorkflowBuilder;
+import org.sonar.plugins.testtrack.stats.OperationalStats;
+import org.sonar.plugins.testtrack.stats.OperationalStatsPage;
+import org.sonar.plugins.testtrack.trace.Tracer;
 
 import java.util.List;
 
@@ -63,10 +81,18 @@ public final class TestTrackPlugin extends SonarPlugin {
   public List getExtensions() {
     return ImmutableList.of(
       // metrics part
-      TestTrackMetrics.class, TestTrackSensor.class, TestTrackWidget.class,
+      TestTrackMetrics.class, TestTrackSensor.class, TestTrackWidget.class, FilterResolver.class, FetchedIssues.class,
+      AnalysisState.class, IssueFederation.class, IssueRollupDecorator.class,
 
       // reviews part
-      TestTrackIssueCreator.class, LinkFunction.class, WorkflowBuilder.class
+      TestTrackIssueCreator.class, ReviewAttachments.class, PriorityMappingResolver.class, LinkFunction.class, LinkRegistry.class,
+      WorkflowBuilder.class, ReviewLinks.class, LinkedViolationChanges.class, LinkedIssueUpdates.class, LinkedIssueUpdatePostJob.class,
+
+      // export part
+      ViolationCollector.class, ViolationExportPostJob.class,
+
+      // remote calls
+      RemoteCallExecutor.class, OperationalStats.class, OperationalStatsPage.class, Tracer.class
     );
   }
 }
@@ -0,0 +1,132 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.export;
+
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.Violation;
+import org.sonar.plugins.testtrack.reviews.IssueFields;
+import org.sonar.plugins.testtrack.reviews.IssueFields.Placeholder;
+
+/**
+ * What the export needs to know of a violation, detached from the analysis objects so that it can be handed over
+ * to other threads.
+ */
+public final class ExportCandidate {
+
+  private final Integer permanentId;
+  private final int projectId;
+  private final Integer resourceId;
+  private final Integer ruleId;
+  private final String ruleKey;
+  private final String ruleName;
+  private final String severity;
+  private final String resourceKey;
+  private final Integer line;
+  private final String message;
+
+  /**
+   * @param projectId ID of the root project, which the review of the violation belongs to
+   */
+  public ExportCandidate(Integer permanentId, int projectId, Integer resourceId, Integer ruleId, String ruleKey, String ruleName,
+      String severity, String resourceKey, Integer line, String message) {
+    this.permanentId = permanentId;
+    this.projectId = projectId;
+    this.resourceId = resourceId;
+    this.ruleId = ruleId;
+    this.ruleKey = ruleKey;
+    this.ruleName = ruleName;
+    this.severity = severity;
+    this.resourceKey = resourceKey;
+    this.line = line;
+    this.message = message;
+  }
+
+  public static ExportCandidate of(Violation violation, int projectId) {
+    Rule rule = violation.getRule();
+    return new ExportCandidate(violation.getPermanentId(),
+        projectId,
+        violation.getResource() == null ? null : violation.getResource().getId(),
+        rule.getId(),
+        rule.getRepositoryKey() + ':' + rule.getKey(),
+        rule.getName(),
+        violation.getSeverity() == null ? null : violation.getSeverity().name(),
+        violation.getResource() == null ? null : violation.getResource().getKey(),
+        violation.getLineId(),
+        violation.getMessage());
+  }
+
+  /**
+   * Identifies the violation across analyses: two candidates with the same key are exported once.
+   */
+  public String getKey() {
+    return String.valueOf(permanentId);
+  }
+
+  public Integer getPermanentId() {
+    return permanentId;
+  }
+
+  public int getProjectId() {
+    return projectId;
+  }
+
+  public Integer getResourceId() {
+    return resourceId;
+  }
+
+  public Integer getRuleId() {
+    return ruleId;
+  }
+
+  public Integer getLine() {
+    return line;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public String getRuleKey() {
+    return ruleKey;
+  }
+
+  public String getSeverity() {
+    return severity;
+  }
+
+  public String getResourceKey() {
+    return resourceKey;
+  }
+
+  public IssueFields toIssueFields() {
+    return new IssueFields()
+        .set(Placeholder.RULE, ruleName)
+        .set(Placeholder.RULE_KEY, ruleKey)
+        .set(Placeholder.SEVERITY, severity)
+        .set(Placeholder.FILE, resourceKey)
+        .set(Placeholder.LINE, line == null ? null : line.toString())
+        .set(Placeholder.MESSAGE, message);
+  }
+
+  @Override
+  public String toString() {
+    return getKey();
+  }
+}
@@ -0,0 +1,329 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.export;
+
+import com.atlassian.jira.rpc.soap.client.RemoteAuthenticationException;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemotePermissionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.remote.CallLane;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.reviews.IssueTemplate;
+import org.sonar.plugins.testtrack.reviews.PriorityMapping;
+import org.sonar.plugins.testtrack.reviews.ReviewLinks;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+
+import javax.persistence.PersistenceException;
+import java.rmi.RemoteException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Creates a JIRA issue for each candidate, in stages linked by bounded queues:
+ * <ol>
+ * <li>select and dedupe: candidates met earlier in the run are skipped, up to the maximum number of issues of a
+ * run,</li>
+ * <li>render: the issue is built from the export templates and sent to the remote call executor,</li>
+ * <li>write back, on the calling thread: the key of each created issue is written to the review of its violation, in
+ * submission order.</li>
+ * </ol>
+ * A full queue blocks the stage feeding it, so that at most a few candidates per creation slot are held in memory
+ * whatever the size of the export. A rejected login or permission, or a review that can't be written, stops the run
+ * once the issues in flight are linked; any other failure only skips the issue. A stage failing on an unexpected
+ * error fails the run with an {@link ExportFailedException}.
+ */
+public class ExportPipeline {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ExportPipeline.class);
+
+  static final int PROGRESS_INTERVAL = 500;
+
+  private static final ExportCandidate END_OF_CANDIDATES = new ExportCandidate(null, 0, null, null, null, null, null, null, null, null);
+  private static final Pending END_OF_ISSUES = new Pending(END_OF_CANDIDATES, null);
+
+  private final Settings settings;
+  private final PriorityMapping priorityMapping;
+  private final RemoteCallExecutor executor;
+  private final ReviewLinks reviewLinks;
+  private final int maxIssues;
+  private final int parallelism;
+  private final IssueTemplate summaryTemplate;
+  private final IssueTemplate descriptionTemplate;
+
+  private volatile boolean stopped;
+  private volatile Throwable stageFailure;
+
+  public ExportPipeline(Settings settings, PriorityMapping priorityMapping, RemoteCallExecutor executor, ReviewLinks reviewLinks) {
+    this.settings = settings;
+    this.priorityMapping = priorityMapping;
+    this.executor = executor;
+    this.reviewLinks = reviewLinks;
+    this.maxIssues = positiveOr(settings.getInt(TestTrackConstants.EXPORT_MAX_ISSUES_PROPERTY), TestTrackConstants.EXPORT_MAX_ISSUES_DEF_VALUE);
+    this.parallelism = positiveOr(settings.getInt(TestTrackConstants.EXPORT_PARALLELISM_PROPERTY), TestTrackConstants.EXPORT_PARALLELISM_DEF_VALUE);
+    this.summaryTemplate = IssueTemplate.of(settings, TestTrackConstants.EXPORT_SUMMARY_TEMPLATE_PROPERTY, TestTrackConstants.EXPORT_SUMMARY_TEMPLATE_DEF_VALUE);
+    this.descriptionTemplate = IssueTemplate.of(settings, TestTrackConstants.EXPORT_DESCRIPTION_TEMPLATE_PROPERTY,
+        TestTrackConstants.EXPORT_DESCRIPTION_TEMPLATE_DEF_VALUE);
+  }
+
+  /**
+   * @throws ExportFailedException if a stage failed on an unexpected error
+   */
+  public ExportReport run(TrackerTransport transport, String authToken, Iterable<ExportCandidate> candidates) throws RemoteException {
+    long start = System.currentTimeMillis();
+    ExportReport report = new ExportReport();
+    BlockingQueue<ExportCandidate> selected = new ArrayBlockingQueue<ExportCandidate>(parallelism * 2);
+    BlockingQueue<Pending> inFlight = new ArrayBlockingQueue<Pending>(parallelism);
+
+    Thread selectStage = new Thread(new SelectStage(candidates, selected, report), "jira-export-select");
+    Thread renderStage = new Thread(new RenderStage(transport, authToken, selected, inFlight), "jira-export-render");
+    selectStage.setDaemon(true);
+    renderStage.setDaemon(true);
+    selectStage.start();
+    renderStage.start();
+
+    try {
+      Pending pending;
+      while ((pending = inFlight.take()) != END_OF_ISSUES) {
+        try {
+          RemoteIssue issue = RemoteCallExecutor.await(pending.future);
+          link(pending.candidate, issue.getKey());
+          report.created++;
+          if (report.created % PROGRESS_INTERVAL == 0) {
+            LOG.info("JIRA export: {} issues created, {} issues/s", report.created, rate(report.created, System.currentTimeMillis() - start));
+          }
+        } catch (RemoteAuthenticationException e) {
+          stop(report, e);
+          report.failed++;
+        } catch (RemotePermissionException e) {
+          stop(report, e);
+          report.failed++;
+        } catch (RemoteException e) {
+          LOG.warn("Unable to create the JIRA issue of violation " + pending.candidate, e);
+          report.failed++;
+        } catch (PersistenceException e) {
+          // the issue exists but would be created again by the next run
+          stop(report, e);
+        }
+      }
+      selectStage.join();
+      renderStage.join();
+    } catch (InterruptedException e) {
+      stopped = true;
+      selectStage.interrupt();
+      renderStage.interrupt();
+      Thread.currentThread().interrupt();
+      throw new RemoteException("Interrupted while exporting violations to JIRA", e);
+    }
+
+    report.elapsedMillis = System.currentTimeMillis() - start;
+    if (stageFailure != null) {
+      throw new ExportFailedException(stageFailure);
+    }
+    return report;
+  }
+
+  private void link(ExportCandidate candidate, String issueKey) {
+    reviewLinks.link(issueKey, candidate.getPermanentId(), candidate.getProjectId(), candidate.getResourceId(), candidate.getLine(),
+        candidate.getRuleId(), candidate.getSeverity(), candidate.getMessage());
+  }
+
+  RemoteIssue render(ExportCandidate candidate) {
+    RemoteIssue issue = new RemoteIssue();
+    issue.setProject(settings.getString(TestTrackConstants.JIRA_PROJECT_KEY_PROPERTY));
+    issue.setType(priorityMapping.getIssueTypeId());
+    issue.setPriority(priorityMapping.priorityFor(candidate.getSeverity()));
+    issue.setSummary(summaryTemplate.render(candidate.toIssueFields()));
+    issue.setDescription(descriptionTemplate.render(candidate.toIssueFields()));
+    return issue;
+  }
+
+  private void stop(ExportReport report, Exception cause) {
+    stopped = true;
+    if (report.stopCause == null) {
+      report.stopCause = cause;
+    }
+  }
+
+  private static int positiveOr(int value, String defaultValue) {
+    return value > 0 ? value : Integer.parseInt(defaultValue);
+  }
+
+  static long rate(int count, long elapsedMillis) {
+    return elapsedMillis > 0 ? count * 1000L / elapsedMillis : count;
+  }
+
+  private final class SelectStage implements Runnable {
+    private final Iterable<ExportCandidate> candidates;
+    private final BlockingQueue<ExportCandidate> out;
+    private final ExportReport report;
+
+    private SelectStage(Iterable<ExportCandidate> candidates, BlockingQueue<ExportCandidate> out, ExportReport report) {
+      this.candidates = candidates;
+      this.out = out;
+      this.report = report;
+    }
+
+    public void run() {
+      Set<String> seen = new HashSet<String>();
+      try {
+        for (ExportCandidate candidate : candidates) {
+          if (stopped) {
+            break;
+          }
+          if (!seen.add(candidate.getKey())) {
+            report.skipped++;
+          } else if (report.selected >= maxIssues) {
+            report.deferred++;
+          } else {
+            report.selected++;
+            out.put(candidate);
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (RuntimeException e) {
+        stageFailure = e;
+        stopped = true;
+      } finally {
+        putQuietly(out, END_OF_CANDIDATES);
+      }
+    }
+  }
+
+  private final class RenderStage implements Runnable {
+    private final TrackerTransport transport;
+    private final String authToken;
+    private final BlockingQueue<ExportCandidate> in;
+    private final BlockingQueue<Pending> out;
+
+    private RenderStage(TrackerTransport transport, String authToken, BlockingQueue<ExportCandidate> in, BlockingQueue<Pending> out) {
+      this.transport = transport;
+      this.authToken = authToken;
+      this.in = in;
+      this.out = out;
+    }
+
+    public void run() {
+      try {
+        ExportCandidate candidate;
+        while ((candidate = in.take()) != END_OF_CANDIDATES) {
+          // once stopped, the candidates are only drained so that the select stage does not stay blocked
+          if (!stopped) {
+            final RemoteIssue issue = render(candidate);
+            Future<RemoteIssue> future = executor.submit(transport.getEndpoint(), CallLane.EXPORT, new Callable<RemoteIssue>() {
+              public RemoteIssue call() throws RemoteException {
+                return transport.createIssue(authToken, issue);
+              }
+            });
+            out.put(new Pending(candidate, future));
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (RuntimeException e) {
+        stageFailure = e;
+        stopped = true;
+        in.clear();
+      } finally {
+        putQuietly(out, END_OF_ISSUES);
+      }
+    }
+  }
+
+  private static <T> void putQuietly(BlockingQueue<T> queue, T element) {
+    try {
+      queue.put(element);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static final class Pending {
+    private final ExportCandidate candidate;
+    private final Future<RemoteIssue> future;
+
+    private Pending(ExportCandidate candidate, Future<RemoteIssue> future) {
+      this.candidate = candidate;
+      this.future = future;
+    }
+  }
+
+  /**
+   * Outcome of a run. Violations met twice are skipped, the ones beyond the maximum of a run are deferred to the next
+   * run.
+   */
+  public static final class ExportReport {
+    private int selected;
+    private int skipped;
+    private int deferred;
+    private int created;
+    private int failed;
+    private long elapsedMillis;
+    private Exception stopCause;
+
+    public int getSelected() {
+      return selected;
+    }
+
+    public int getSkipped() {
+      return skipped;
+    }
+
+    public int getDeferred() {
+      return deferred;
+    }
+
+    public int getCreated() {
+      return created;
+    }
+
+    public int getFailed() {
+      return failed;
+    }
+
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+
+    /**
+     * Why the run stopped before the end, null if it went through all the candidates.
+     */
+    public Exception getStopCause() {
+      return stopCause;
+    }
+
+    public long getIssuesPerSecond() {
+      return rate(created, elapsedMillis);
+    }
+
+    @Override
+    public String toString() {
+      return created + " issues created, " + failed + " failed, " + skipped + " duplicates skipped, " + deferred + " deferred to the next run, in "
+        + elapsedMillis + " ms (" + getIssuesPerSecond() + " issues/s)";
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.export;
+
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rules.Violation;
+import org.sonar.api.utils.WildcardPattern;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The violations to export: an empty criterion accepts everything, otherwise a violation must match one of its
+ * values. Violations already linked to a JIRA issue are never exported again.
+ */
+public final class ExportSelection {
+
+  private final WildcardPattern[] rules;
+  private final Set<String> severities;
+  private final String[] paths;
+  private final Set<Integer> linkedPermanentIds;
+
+  ExportSelection(String[] rules, String[] severities, String[] paths, Set<Integer> linkedPermanentIds) {
+    this.rules = WildcardPattern.create(rules);
+    this.severities = new HashSet<String>();
+    for (String severity : severities) {
+      this.severities.add(severity.trim().toUpperCase());
+    }
+    this.paths = paths;
+    this.linkedPermanentIds = linkedPermanentIds;
+  }
+
+  /**
+   * @param linkedPermanentIds permanent IDs of the violations whose review is already linked to an issue
+   */
+  public static ExportSelection of(Settings settings, Set<Integer> linkedPermanentIds) {
+    return new ExportSelection(
+        trim(settings.getStringArray(TestTrackConstants.EXPORT_RULES_PROPERTY)),
+        trim(settings.getStringArray(TestTrackConstants.EXPORT_SEVERITIES_PROPERTY)),
+        trim(settings.getStringArray(TestTrackConstants.EXPORT_PATHS_PROPERTY)),
+        linkedPermanentIds);
+  }
+
+  public boolean accepts(Violation violation) {
+    if (violation.isSwitchedOff() || violation.getRule() == null) {
+      return false;
+    }
+    // the issue is linked back through the permanent ID, which also tells the violations already exported
+    if (violation.getPermanentId() == null || linkedPermanentIds.contains(violation.getPermanentId())) {
+      return false;
+    }
+    String ruleKey = violation.getRule().getRepositoryKey() + ':' + violation.getRule().getKey();
+    if (rules.length > 0 && !WildcardPattern.match(rules, ruleKey)) {
+      return false;
+    }
+    if (!severities.isEmpty() && (violation.getSeverity() == null || !severities.contains(violation.getSeverity().name()))) {
+      return false;
+    }
+    return paths.length == 0 || matchesPath(violation.getResource());
+  }
+
+  private boolean matchesPath(Resource<?> resource) {
+    if (resource == null) {
+      return false;
+    }
+    for (String path : paths) {
+      if (resource.matchFilePattern(path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String[] trim(String[] values) {
+    List<String> trimmed = new ArrayList<String>(values.length);
+    for (String value : values) {
+      if (value.trim().length() > 0) {
+        trimmed.add(value.trim());
+      }
+    }
+    return trimmed.toArray(new String[trimmed.size()]);
+  }
+}
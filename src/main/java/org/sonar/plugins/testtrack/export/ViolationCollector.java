@@ -0,0 +1,73 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.export;
+
+import org.sonar.api.batch.Decorator;
+import org.sonar.api.batch.DecoratorBarriers;
+import org.sonar.api.batch.DecoratorContext;
+import org.sonar.api.batch.DependsUpon;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rules.Violation;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.reviews.ReviewLinks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the violations of the module selected for the export to JIRA. It runs once the violations are persisted, so
+ * that they all have their permanent ID.
+ */
+@DependsUpon(DecoratorBarriers.END_OF_VIOLATION_PERSISTENCE)
+public class ViolationCollector implements Decorator {
+
+  private final Settings settings;
+  private final ReviewLinks reviewLinks;
+  private final List<ExportCandidate> candidates = new ArrayList<ExportCandidate>();
+  private ExportSelection selection;
+
+  public ViolationCollector(Settings settings, ReviewLinks reviewLinks) {
+    this.settings = settings;
+    this.reviewLinks = reviewLinks;
+  }
+
+  public boolean shouldExecuteOnProject(Project project) {
+    return settings.getBoolean(TestTrackConstants.EXPORT_PROPERTY);
+  }
+
+  @SuppressWarnings("rawtypes")
+  public void decorate(Resource resource, DecoratorContext context) {
+    int projectId = context.getProject().getRoot().getId();
+    if (selection == null) {
+      selection = ExportSelection.of(settings, reviewLinks.findByProject(projectId).keySet());
+    }
+    for (Violation violation : context.getViolations()) {
+      if (selection.accepts(violation)) {
+        candidates.add(ExportCandidate.of(violation, projectId));
+      }
+    }
+  }
+
+  public List<ExportCandidate> getCandidates() {
+    return candidates;
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.export;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.PropertyType;
+import org.sonar.api.batch.PostJob;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.export.ExportPipeline.ExportReport;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.reviews.PriorityMapping;
+import org.sonar.plugins.testtrack.reviews.PriorityMappingResolver;
+import org.sonar.plugins.testtrack.reviews.ReviewLinks;
+import org.sonar.plugins.testtrack.transport.InvalidServerUrlException;
+import org.sonar.plugins.testtrack.transport.TrackerSession;
+import org.sonar.plugins.testtrack.transport.TrackerTransports;
+
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Exports to JIRA, at the end of the analysis, the violations kept by the {@link ViolationCollector}. The key of each
+ * issue created is written to the review of its violation right away, which is what prevents a violation from being
+ * exported twice.
+ */
+@Properties({
+  @Property(
+    key = TestTrackConstants.EXPORT_PROPERTY,
+    defaultValue = "false",
+    name = "Export violations",
+    description = "Creates a JIRA issue for each violation of the selection below that was not exported yet.",
+    global = false,
+    project = true,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key = TestTrackConstants.EXPORT_RULES_PROPERTY,
+    defaultValue = "",
+    name = "Exported rules",
+    description = "Comma-separated keys of the rules to export, as repository:key. Wildcards are accepted, e.g. pmd:*. "
+      + "Leave empty to export all the rules.",
+    global = false,
+    project = true
+  ),
+  @Property(
+    key = TestTrackConstants.EXPORT_SEVERITIES_PROPERTY,
+    defaultValue = "",
+    name = "Exported severities",
+    description = "Comma-separated severities to export, e.g. BLOCKER,CRITICAL. Leave empty to export all the severities.",
+    global = false,
+    project = true
+  ),
+  @Property(
+    key = TestTrackConstants.EXPORT_PATHS_PROPERTY,
+    defaultValue = "",
+    name = "Exported paths",
+    description = "Comma-separated file patterns to export, e.g. com/mycompany/core/**. Leave empty to export all the files.",
+    global = false,
+    project = true
+  ),
+  @Property(
+    key = TestTrackConstants.EXPORT_MAX_ISSUES_PROPERTY,
+    defaultValue = TestTrackConstants.EXPORT_MAX_ISSUES_DEF_VALUE,
+    name = "Maximum exported issues",
+    description = "Maximum number of issues created by an analysis, the remaining violations are exported by the next ones.",
+    global = true,
+    project = true,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = TestTrackConstants.EXPORT_PARALLELISM_PROPERTY,
+    defaultValue = TestTrackConstants.EXPORT_PARALLELISM_DEF_VALUE,
+    name = "Export parallelism",
+    description = "Number of issues being created at the same time during an export.",
+    global = true,
+    project = true,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = TestTrackConstants.EXPORT_SUMMARY_TEMPLATE_PROPERTY,
+    defaultValue = TestTrackConstants.EXPORT_SUMMARY_TEMPLATE_DEF_VALUE,
+    name = "Exported issue summary template",
+    description = "Summary of the exported issues. Placeholders: ${rule}, ${ruleKey}, ${file}, ${line}, ${severity}, ${message}.",
+    global = true,
+    project = true
+  ),
+  @Property(
+    key = TestTrackConstants.EXPORT_DESCRIPTION_TEMPLATE_PROPERTY,
+    defaultValue = TestTrackConstants.EXPORT_DESCRIPTION_TEMPLATE_DEF_VALUE,
+    name = "Exported issue description template",
+    description = "Description of the exported issues, same placeholders as the summary. \\n is a line break.",
+    global = true,
+    project = true
+  )
+})
+public class ViolationExportPostJob implements PostJob {
+  private static final Logger LOG = LoggerFactory.getLogger(ViolationExportPostJob.class);
+
+  private final Settings settings;
+  private final ViolationCollector collector;
+  private final RemoteCallExecutor executor;
+  private final ReviewLinks reviewLinks;
+
+  public ViolationExportPostJob(Settings settings, ViolationCollector collector, RemoteCallExecutor executor, ReviewLinks reviewLinks) {
+    this.settings = settings;
+    this.collector = collector;
+    this.executor = executor;
+    this.reviewLinks = reviewLinks;
+  }
+
+  public void executeOn(Project project, SensorContext context) {
+    List<ExportCandidate> candidates = collector.getCandidates();
+    if (candidates.isEmpty()) {
+      return;
+    }
+    String serverUrl = settings.getString(TestTrackConstants.SERVER_URL_PROPERTY);
+    try {
+      ExportReport report = export(createSession(), candidates);
+      if (report.getStopCause() != null) {
+        LOG.error("Export of violations to JIRA stopped: " + report, report.getStopCause());
+      } else {
+        LOG.info("Export of violations to JIRA: {}", report);
+      }
+    } catch (RemoteException e) {
+      LOG.error("Error accessing Jira web service, violations have not been exported", e);
+    } catch (ExportFailedException e) {
+      LOG.error(e.getMessage(), e.getCause());
+    } catch (InvalidServerUrlException e) {
+      LOG.error("The specified JIRA URL is not valid: " + serverUrl, e);
+    } catch (IllegalStateException e) {
+      LOG.error("Violations have not been exported to JIRA: " + e.getMessage(), e);
+    }
+  }
+
+  protected TrackerSession createSession() {
+    return new TrackerSession(TrackerTransports.create(settings));
+  }
+
+  protected ExportReport export(TrackerSession session, List<ExportCandidate> candidates) throws RemoteException {
+    session.connect(settings.getString(TestTrackConstants.USERNAME_PROPERTY), settings.getString(TestTrackConstants.PASSWORD_PROPERTY));
+    try {
+      PriorityMapping priorityMapping = new PriorityMappingResolver().resolve(session.getTransport(), session.getAuthenticationToken(), settings);
+      ExportPipeline pipeline = new ExportPipeline(settings, priorityMapping, executor, reviewLinks);
+      return pipeline.run(session.getTransport(), session.getAuthenticationToken(), candidates);
+    } finally {
+      // the issues created before a failure stay linked to their violation
+      reviewLinks.commit();
+      session.disconnect();
+    }
+  }
+}
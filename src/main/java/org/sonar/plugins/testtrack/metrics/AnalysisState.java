@@ -0,0 +1,78 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.remote.Deadline;
+
+/**
+ * State of the JIRA sensor shared by all the modules of an analysis, as the sensor itself is created again for each
+ * module.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class AnalysisState implements BatchExtension {
+
+  private final String rootFilter;
+  private Deadline deadline;
+  private boolean leafIssueCounts;
+
+  /**
+   * @param settings settings of the batch, the ones of the root project
+   */
+  public AnalysisState(Settings settings) {
+    this.rootFilter = settings.getString(TestTrackConstants.FILTER_PROPERTY);
+  }
+
+  /**
+   * The filter of the root project, inherited by the modules that don't set one of their own.
+   */
+  public String getRootFilter() {
+    return rootFilter;
+  }
+
+  /**
+   * The deadline of the time budget of the whole analysis, started by the first module that asks for it.
+   *
+   * @param budgetMs time budget, no deadline if zero or negative
+   */
+  public synchronized Deadline deadline(long budgetMs) {
+    if (deadline == null) {
+      deadline = Deadline.after(budgetMs);
+    }
+    return deadline;
+  }
+
+  /**
+   * Records that a leaf module reads the issue count of its own filter, to be summed up on the root project.
+   */
+  public synchronized void leafIssueCountRead() {
+    leafIssueCounts = true;
+  }
+
+  /**
+   * Whether a leaf module read its own issue count. Modules are analysed before the root project.
+   */
+  public synchronized boolean hasLeafIssueCounts() {
+    return leafIssueCounts;
+  }
+}
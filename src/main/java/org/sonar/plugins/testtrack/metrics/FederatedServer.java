@@ -0,0 +1,142 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A JIRA server whose issues are added to the ones of the main server, declared by its ID in
+ * {@link TestTrackConstants#FEDERATION_SERVERS_PROPERTY} and configured by the properties
+ * <code>sonar.jira.federation.&lt;id&gt;.url</code>, <code>.login.secured</code>, <code>.password.secured</code>,
+ * <code>.filter</code> and <code>.timeoutSeconds</code>.
+ */
+public final class FederatedServer {
+  private static final Logger LOG = LoggerFactory.getLogger(FederatedServer.class);
+
+  private final String id;
+  private final String url;
+  private final String username;
+  private final String password;
+  private final String filter;
+  private final int timeoutSeconds;
+
+  public FederatedServer(String id, String url, String username, String password, String filter, int timeoutSeconds) {
+    this.id = id;
+    this.url = url;
+    this.username = username;
+    this.password = password;
+    this.filter = filter;
+    this.timeoutSeconds = timeoutSeconds;
+  }
+
+  /**
+   * The servers declared in the settings, skipping the ones without URL or filter.
+   */
+  public static List<FederatedServer> list(Settings settings) {
+    String[] ids = settings.getStringArray(TestTrackConstants.FEDERATION_SERVERS_PROPERTY);
+    if (ids.length == 0) {
+      return Collections.emptyList();
+    }
+    List<FederatedServer> servers = Lists.newArrayList();
+    for (String id : ids) {
+      if (StringUtils.isBlank(id)) {
+        continue;
+      }
+      String prefix = TestTrackConstants.FEDERATION_PROPERTY_PREFIX + id.trim() + ".";
+      String url = settings.getString(prefix + "url");
+      String filter = settings.getString(prefix + "filter");
+      if (StringUtils.isBlank(url) || StringUtils.isBlank(filter)) {
+        LOG.warn("JIRA server '{}' is ignored as its URL or filter is missing", id.trim());
+        continue;
+      }
+      servers.add(new FederatedServer(id.trim(), url.trim(), settings.getString(prefix + "login.secured"),
+          settings.getString(prefix + "password.secured"), filter, timeoutSeconds(settings, prefix + "timeoutSeconds")));
+    }
+    return servers;
+  }
+
+  private static int timeoutSeconds(Settings settings, String key) {
+    String value = settings.getString(key);
+    if (StringUtils.isBlank(value)) {
+      return 0;
+    }
+    try {
+      return Math.max(0, Integer.parseInt(value.trim()));
+    } catch (NumberFormatException e) {
+      LOG.warn("Timeout '{}' of {} is not a number of seconds, the server is only bounded by the time budget", value, key);
+      return 0;
+    }
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public String getPassword() {
+    return password;
+  }
+
+  public String getFilter() {
+    return filter;
+  }
+
+  /**
+   * @return 0 if the server is only bounded by the time budget of the sensor
+   */
+  public int getTimeoutSeconds() {
+    return timeoutSeconds;
+  }
+
+  /**
+   * The given settings, pointing to this server instead of the main one. The recording and the replay of the main
+   * server are left out: a recording holds the calls of one server only.
+   */
+  public Settings toSettings(Settings settings) {
+    Settings serverSettings = new Settings(settings);
+    serverSettings.setProperty(TestTrackConstants.SERVER_URL_PROPERTY, url);
+    serverSettings.setProperty(TestTrackConstants.USERNAME_PROPERTY, username);
+    serverSettings.setProperty(TestTrackConstants.PASSWORD_PROPERTY, password);
+    serverSettings.setProperty(TestTrackConstants.FILTER_PROPERTY, filter);
+    serverSettings.removeProperty(TestTrackConstants.RECORD_FILE_PROPERTY);
+    serverSettings.removeProperty(TestTrackConstants.REPLAY_FILE_PROPERTY);
+    return serverSettings;
+  }
+
+  @Override
+  public String toString() {
+    return id + " (" + url + ")";
+  }
+}
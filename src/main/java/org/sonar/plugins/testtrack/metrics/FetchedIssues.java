@@ -0,0 +1,45 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Issues read from JIRA during the analysis, kept so that the modules of a multi-module project sharing the same
+ * filter don't read them again.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class FetchedIssues implements BatchExtension {
+
+  private final Map<String, RemoteIssue[]> issuesByQuery = new HashMap<String, RemoteIssue[]>();
+
+  public synchronized RemoteIssue[] get(String query) {
+    return issuesByQuery.get(query);
+  }
+
+  public synchronized void put(String query, RemoteIssue[] issues) {
+    issuesByQuery.put(query, issues);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import com.atlassian.jira.rpc.soap.client.RemoteAuthenticationException;
+import com.atlassian.jira.rpc.soap.client.RemoteFilter;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Finds JIRA filters by name. The filters of each server and user are listed once and indexed, and the listing
+ * operation supported by the server is remembered.
+ */
+public class FilterResolver implements BatchExtension {
+  private static final Logger LOG = LoggerFactory.getLogger(FilterResolver.class);
+
+  private final ConcurrentMap<String, FilterIndex> indexes = new ConcurrentHashMap<String, FilterIndex>();
+
+  /**
+   * @param serverKey identifies the server and the user, whose favourite filters are listed
+   * @return the filter, or null if there is no such filter
+   */
+  public RemoteFilter findByName(TrackerTransport transport, String authToken, String serverKey, String filterName) throws RemoteException {
+    FilterIndex index = indexes.get(serverKey);
+    if (index == null) {
+      index = new FilterIndex();
+      FilterIndex existing = indexes.putIfAbsent(serverKey, index);
+      if (existing != null) {
+        index = existing;
+      }
+    }
+    return index.findByName(transport, authToken, filterName);
+  }
+
+  private static final class FilterIndex {
+    // null until the first listing
+    private Boolean favouriteFiltersSupported;
+    private Map<String, RemoteFilter> filtersByName = Maps.newHashMap();
+
+    synchronized RemoteFilter findByName(TrackerTransport transport, String authToken, String filterName) throws RemoteException {
+      RemoteFilter filter = filtersByName.get(filterName);
+      if (filter == null) {
+        // unknown so far, the filter may have been created since the last listing
+        index(list(transport, authToken));
+        filter = filtersByName.get(filterName);
+      }
+      return filter;
+    }
+
+    private RemoteFilter[] list(TrackerTransport transport, String authToken) throws RemoteException {
+      if (!Boolean.FALSE.equals(favouriteFiltersSupported)) {
+        try {
+          RemoteFilter[] filters = transport.getFavouriteFilters(authToken);
+          favouriteFiltersSupported = Boolean.TRUE;
+          return filters;
+        } catch (RemoteAuthenticationException e) {
+          throw e;
+        } catch (RemoteException e) {
+          if (Boolean.TRUE.equals(favouriteFiltersSupported)) {
+            throw e;
+          }
+          LOG.debug("Favourite filters are not supported, using saved filters (JIRA prior to 3.13)", e);
+          favouriteFiltersSupported = Boolean.FALSE;
+        }
+      }
+      return transport.getSavedFilters(authToken);
+    }
+
+    private void index(RemoteFilter[] filters) {
+      Map<String, RemoteFilter> newFiltersByName = Maps.newHashMapWithExpectedSize(filters.length);
+      for (RemoteFilter filter : filters) {
+        // the first filter of a given name wins
+        if (!newFiltersByName.containsKey(filter.getName())) {
+          newFiltersByName.put(filter.getName(), filter);
+        }
+      }
+      filtersByName = newFiltersByName;
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComponent;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Attributes JIRA issues to the files of a module, from the file paths mentioned in their summary and description,
+ * and to the module itself from their components. Texts are scanned once and each path-like word costs a lookup in
+ * the {@link PathIndex}, so the attribution is linear in the size of the issues.
+ */
+public class IssueAttributor<T> {
+
+  private final PathIndex<T> files;
+  private final Set<String> moduleNames = new HashSet<String>();
+
+  /**
+   * @param moduleNames names matched, case insensitively, with the components of the issues
+   */
+  public IssueAttributor(PathIndex<T> files, String... moduleNames) {
+    this.files = files;
+    for (String moduleName : moduleNames) {
+      if (moduleName != null) {
+        this.moduleNames.add(moduleName.toLowerCase());
+      }
+    }
+  }
+
+  public Attribution<T> attribute(RemoteIssue[] issues) {
+    Attribution<T> attribution = new Attribution<T>();
+    Set<T> issueFiles = new HashSet<T>();
+    for (RemoteIssue issue : issues) {
+      issueFiles.clear();
+      collectFiles(issue.getSummary(), issueFiles);
+      collectFiles(issue.getDescription(), issueFiles);
+      for (T file : issueFiles) {
+        Integer count = attribution.byFile.get(file);
+        attribution.byFile.put(file, count == null ? 1 : count + 1);
+      }
+      if (!issueFiles.isEmpty() || matchesModule(issue.getComponents())) {
+        attribution.onModule++;
+      }
+    }
+    return attribution;
+  }
+
+  private boolean matchesModule(RemoteComponent[] components) {
+    if (components != null) {
+      for (RemoteComponent component : components) {
+        if (component.getName() != null && moduleNames.contains(component.getName().toLowerCase())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Looks up the words made of path characters that contain a dot, like file names with an extension.
+   */
+  void collectFiles(String text, Set<T> found) {
+    if (text == null) {
+      return;
+    }
+    int start = -1;
+    boolean hasDot = false;
+    for (int i = 0; i <= text.length(); i++) {
+      char c = i < text.length() ? text.charAt(i) : ' ';
+      if (isPathChar(c)) {
+        if (start < 0) {
+          start = i;
+          hasDot = false;
+        }
+        hasDot |= c == '.';
+      } else if (start >= 0) {
+        if (hasDot) {
+          lookup(trimEnd(text, start, i), found);
+        }
+        start = -1;
+      }
+    }
+  }
+
+  private void lookup(String word, Set<T> found) {
+    if (word.length() > 0) {
+      T file = files.find(word);
+      if (file != null) {
+        found.add(file);
+      }
+    }
+  }
+
+  private static String trimEnd(String text, int start, int end) {
+    // sentence punctuation: "see Foo.java."
+    int last = end;
+    while (last > start && (text.charAt(last - 1) == '.' || text.charAt(last - 1) == '/')) {
+      last--;
+    }
+    return text.substring(start, last);
+  }
+
+  private static boolean isPathChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '.' || c == '/' || c == '\\' || c == '_' || c == '-' || c == '$';
+  }
+
+  public static final class Attribution<T> {
+    private final Map<T, Integer> byFile = new LinkedHashMap<T, Integer>();
+    private int onModule;
+
+    /**
+     * Number of issues mentioning each file.
+     */
+    public Map<T, Integer> getIssuesByFile() {
+      return byFile;
+    }
+
+    /**
+     * Number of distinct issues mentioning a file of the module or having the module as component.
+     */
+    public int getIssuesOnModule() {
+      return onModule;
+    }
+  }
+}
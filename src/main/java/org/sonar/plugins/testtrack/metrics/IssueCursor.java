@@ -0,0 +1,167 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import org.sonar.plugins.testtrack.remote.CallLane;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.remote.RetryPolicy;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the issues of a query one at a time, fetching the pages when they are needed. While a page is read, the
+ * next one is fetched in a slot of the server when a {@link RemoteCallExecutor} is given for prefetching, and waited
+ * for until the deadline of the retry policy. Issues are projected as soon as their page
+ * is fetched, and released once returned. Not an {@link java.util.Iterator} because reading may fail; not
+ * thread-safe. {@link #close()} cancels the page still being fetched.
+ */
+public final class IssueCursor<T> {
+
+  private final TrackerTransport transport;
+  private final String authToken;
+  private final IssueQuery query;
+  private final IssueProjection<T> projection;
+  private final RetryPolicy retryPolicy;
+  private final int pageSize;
+  private final RemoteCallExecutor prefetchExecutor;
+
+  private List<T> page;
+  private int index;
+  private int nextOffset;
+  private boolean lastPageFetched;
+  private Future<Page<T>> nextPage;
+  private boolean closed;
+
+  IssueCursor(TrackerTransport transport, String authToken, IssueQuery query, IssueProjection<T> projection, RetryPolicy retryPolicy,
+      int pageSize, RemoteCallExecutor prefetchExecutor) {
+    this.transport = transport;
+    this.authToken = authToken;
+    this.query = query;
+    this.projection = projection;
+    this.retryPolicy = retryPolicy;
+    this.pageSize = pageSize;
+    this.prefetchExecutor = prefetchExecutor;
+  }
+
+  public boolean hasNext() throws RemoteException {
+    while (page == null || index >= page.size()) {
+      if (closed || (lastPageFetched && nextPage == null)) {
+        page = null;
+        return false;
+      }
+      page = takePage();
+      index = 0;
+    }
+    return true;
+  }
+
+  public T next() throws RemoteException {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    T value = page.get(index);
+    // released as soon as returned
+    page.set(index, null);
+    index++;
+    return value;
+  }
+
+  /**
+   * Reads the remaining issues.
+   */
+  public List<T> toList() throws RemoteException {
+    List<T> values = new ArrayList<T>();
+    while (hasNext()) {
+      values.add(next());
+    }
+    return values;
+  }
+
+  public void close() {
+    closed = true;
+    page = null;
+    if (nextPage != null) {
+      nextPage.cancel(true);
+      nextPage = null;
+    }
+  }
+
+  private List<T> takePage() throws RemoteException {
+    Page<T> fetched;
+    if (nextPage != null) {
+      fetched = RemoteCallExecutor.await(nextPage, retryPolicy.getDeadline(), "getIssuesFromFilterWithLimit");
+      nextPage = null;
+    } else {
+      fetched = new PageCall(nextOffset).call();
+    }
+    nextOffset += fetched.fetched;
+    lastPageFetched = query.isJql() || fetched.fetched < pageSize;
+    if (prefetchExecutor != null && !lastPageFetched) {
+      nextPage = prefetchExecutor.submit(transport.getEndpoint(), CallLane.METRICS, new PageCall(nextOffset));
+    }
+    return fetched.values;
+  }
+
+  private final class PageCall implements Callable<Page<T>> {
+    private final int offset;
+
+    private PageCall(int offset) {
+      this.offset = offset;
+    }
+
+    public Page<T> call() throws RemoteException {
+      RemoteIssue[] issues;
+      if (query.isJql()) {
+        issues = retryPolicy.call("getIssuesFromJqlSearch", new Callable<RemoteIssue[]>() {
+          public RemoteIssue[] call() throws RemoteException {
+            return transport.getIssuesFromJqlSearch(authToken, query.getJql(), query.getMaxResults());
+          }
+        });
+      } else {
+        issues = retryPolicy.call("getIssuesFromFilterWithLimit", new Callable<RemoteIssue[]>() {
+          public RemoteIssue[] call() throws RemoteException {
+            return transport.getIssuesFromFilterWithLimit(authToken, query.getFilterId(), offset, pageSize);
+          }
+        });
+      }
+      Page<T> page = new Page<T>();
+      page.values = new ArrayList<T>(issues == null ? 0 : issues.length);
+      if (issues != null) {
+        for (RemoteIssue issue : issues) {
+          page.values.add(projection.project(issue));
+        }
+        page.fetched = issues.length;
+      }
+      return page;
+    }
+  }
+
+  private static final class Page<T> {
+    private List<T> values;
+    private int fetched;
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import com.atlassian.jira.rpc.soap.client.RemoteFilter;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.remote.CallLane;
+import org.sonar.plugins.testtrack.remote.Deadline;
+import org.sonar.plugins.testtrack.remote.DeadlineExceededException;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.remote.RetryPolicy;
+import org.sonar.plugins.testtrack.transport.TrackerSession;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+import org.sonar.plugins.testtrack.transport.TrackerTransports;
+
+import java.rmi.RemoteException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Counts the issues by priority on several JIRA servers at once. Each server is read by one call of the
+ * {@link RemoteCallExecutor}, which takes a slot of that server, and is waited for until the earliest of its own
+ * timeout and the deadline of the sensor, so that a slow server only misses from the result.
+ */
+public class IssueFederation implements BatchExtension {
+  private static final Logger LOG = LoggerFactory.getLogger(IssueFederation.class);
+
+  private final Settings settings;
+  private final FilterResolver filterResolver;
+  private final RemoteCallExecutor executor;
+
+  public IssueFederation(Settings settings, FilterResolver filterResolver, RemoteCallExecutor executor) {
+    this.settings = settings;
+    this.filterResolver = filterResolver;
+    this.executor = executor;
+  }
+
+  /**
+   * Starts reading the servers and returns without waiting for them.
+   */
+  public Pending start(List<FederatedServer> servers, Deadline deadline) {
+    Pending pending = new Pending();
+    for (FederatedServer server : servers) {
+      Deadline serverDeadline = deadline.within(server.getTimeoutSeconds() * 1000L);
+      pending.add(server, serverDeadline, executor.submit(server.getUrl(), CallLane.METRICS, new CountCall(server, serverDeadline)));
+    }
+    return pending;
+  }
+
+  /**
+   * Normalizes the name of a priority, so that "MAJOR" and "Major " of two servers are counted together.
+   */
+  public static String normalizePriority(String name) {
+    String trimmed = StringUtils.trimToEmpty(name).replaceAll("\\s+", " ");
+    return trimmed.length() == 0 ? trimmed : StringUtils.capitalize(trimmed.toLowerCase());
+  }
+
+  /**
+   * Adds the issue counts by priority name to the given merged ones, normalizing the names.
+   */
+  public static void merge(Map<String, Integer> merged, Map<String, Integer> countByName) {
+    for (Map.Entry<String, Integer> entry : countByName.entrySet()) {
+      String name = normalizePriority(entry.getKey());
+      Integer count = merged.get(name);
+      merged.put(name, count == null ? entry.getValue() : count + entry.getValue());
+    }
+  }
+
+  protected ServerCount countByPriorityName(FederatedServer server, Deadline deadline) throws RemoteException {
+    Settings serverSettings = server.toSettings(settings);
+    // the whole read already holds a slot of the server and is cancelled at its deadline, its calls run in place
+    // and its pages are not prefetched
+    TrackerSession session = new TrackerSession(TrackerTransports.create(serverSettings, socketTimeout(deadline)));
+    session.connect(server.getUsername(), server.getPassword());
+    try {
+      return countByPriorityName(server, new PagedIssueFetcher(new RetryPolicy(serverSettings, deadline)),
+          session.getTransport(), session.getAuthenticationToken());
+    } finally {
+      try {
+        session.disconnect();
+      } catch (RemoteException e) {
+        LOG.debug("Unable to log out from JIRA server " + server, e);
+      }
+    }
+  }
+
+  private ServerCount countByPriorityName(FederatedServer server, PagedIssueFetcher fetcher, final TrackerTransport transport,
+      final String authToken) throws RemoteException {
+    IssueFilter filter = IssueFilter.parse(server.getFilter());
+    IssueQuery query;
+    if (filter.isJql()) {
+      query = IssueQuery.jql(filter.getJql(), IssueQuery.MAX_JQL_RESULTS);
+    } else {
+      String filterId = filter.getId();
+      if (!filter.hasId()) {
+        RemoteFilter found = filterResolver.findByName(transport, authToken, server.getUrl() + '|' + server.getUsername(), filter.getName());
+        if (found == null) {
+          throw new IllegalStateException("Unable to find filter '" + filter.getName() + "' in JIRA server " + server);
+        }
+        filterId = found.getId();
+      }
+      query = IssueQuery.filter(filterId);
+    }
+    RemotePriority[] priorities = fetcher.getRetryPolicy().call("getPriorities", new Callable<RemotePriority[]>() {
+      public RemotePriority[] call() throws RemoteException {
+        return transport.getPriorities(authToken);
+      }
+    });
+    Map<String, String> names = Maps.newHashMap();
+    for (RemotePriority priority : priorities) {
+      names.put(priority.getId(), priority.getName());
+    }
+    // only the priorities are kept, the issues are counted while their pages are read
+    Map<String, Integer> counts = Maps.newHashMap();
+    int issueCount = 0;
+    IssueCursor<String> cursor = fetcher.open(transport, authToken, query, IssueProjections.PRIORITY);
+    try {
+      while (cursor.hasNext()) {
+        String priority = cursor.next();
+        String name = names.get(priority);
+        String key = normalizePriority(name != null ? name : priority);
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+        issueCount++;
+      }
+    } finally {
+      cursor.close();
+    }
+    LOG.debug("{} issues read from JIRA server {}", issueCount, server);
+    boolean truncated = query.isTruncated(issueCount);
+    if (truncated) {
+      LOG.warn("The JQL query of JIRA server {} matches more than {} issues, the ones past them are not counted", server,
+          query.getMaxResults());
+    }
+    return new ServerCount(counts, truncated);
+  }
+
+  private static int socketTimeout(Deadline deadline) {
+    return deadline.isBounded() ? (int) Math.min(Math.max(1, deadline.remainingMillis()), Integer.MAX_VALUE) : 0;
+  }
+
+  private final class CountCall implements Callable<ServerCount> {
+    private final FederatedServer server;
+    private final Deadline deadline;
+
+    private CountCall(FederatedServer server, Deadline deadline) {
+      this.server = server;
+      this.deadline = deadline;
+    }
+
+    public ServerCount call() throws RemoteException {
+      return countByPriorityName(server, deadline);
+    }
+  }
+
+  /**
+   * The issue counts of one server, and whether its JQL query hit the cap.
+   */
+  static final class ServerCount {
+    private final Map<String, Integer> countByName;
+    private final boolean truncated;
+
+    ServerCount(Map<String, Integer> countByName, boolean truncated) {
+      this.countByName = countByName;
+      this.truncated = truncated;
+    }
+  }
+
+  /**
+   * The servers being read.
+   */
+  public static final class Pending {
+    private final List<FederatedServer> servers = Lists.newArrayList();
+    private final List<Deadline> deadlines = Lists.newArrayList();
+    private final List<Future<ServerCount>> tasks = Lists.newArrayList();
+
+    private void add(FederatedServer server, Deadline deadline, Future<ServerCount> task) {
+      servers.add(server);
+      deadlines.add(deadline);
+      tasks.add(task);
+    }
+
+    /**
+     * Waits for each server until its deadline and merges the counts of the ones that answered.
+     */
+    public Result await() {
+      Map<String, Integer> merged = new TreeMap<String, Integer>();
+      List<String> missing = Lists.newArrayList();
+      List<String> truncated = Lists.newArrayList();
+      for (int i = 0; i < tasks.size(); i++) {
+        FederatedServer server = servers.get(i);
+        try {
+          ServerCount count = RemoteCallExecutor.await(tasks.get(i), deadlines.get(i), "federation of " + server.getId());
+          merge(merged, count.countByName);
+          if (count.truncated) {
+            truncated.add(server.getId());
+          }
+        } catch (DeadlineExceededException e) {
+          LOG.warn("JIRA server {} did not answer in time, its issues are not counted", server);
+          missing.add(server.getId());
+        } catch (RemoteException e) {
+          LOG.warn("Unable to read the issues of JIRA server " + server + ", they are not counted", e);
+          missing.add(server.getId());
+        } catch (RuntimeException e) {
+          LOG.warn("Unable to read the issues of JIRA server " + server + ", they are not counted", e);
+          missing.add(server.getId());
+        }
+      }
+      return new Result(merged, missing, truncated);
+    }
+
+    public void cancel() {
+      for (Future<ServerCount> task : tasks) {
+        task.cancel(true);
+      }
+    }
+  }
+
+  public static final class Result {
+    private final Map<String, Integer> countByPriority;
+    private final List<String> missingServers;
+    private final List<String> truncatedServers;
+
+    Result(Map<String, Integer> countByPriority, List<String> missingServers, List<String> truncatedServers) {
+      this.countByPriority = Collections.unmodifiableMap(countByPriority);
+      this.missingServers = Collections.unmodifiableList(missingServers);
+      this.truncatedServers = Collections.unmodifiableList(truncatedServers);
+    }
+
+    /**
+     * Issue counts by normalized priority name, over the servers that answered.
+     */
+    public Map<String, Integer> getCountByPriority() {
+      return countByPriority;
+    }
+
+    public int getIssueCount() {
+      int total = 0;
+      for (Integer count : countByPriority.values()) {
+        total += count;
+      }
+      return total;
+    }
+
+    /**
+     * IDs of the servers that failed or did not answer in time.
+     */
+    public List<String> getMissingServers() {
+      return missingServers;
+    }
+
+    /**
+     * IDs of the servers whose JQL query matched more issues than read, so that only part of them are counted.
+     */
+    public List<String> getTruncatedServers() {
+      return truncatedServers;
+    }
+  }
+}
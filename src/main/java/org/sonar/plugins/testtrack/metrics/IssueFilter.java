@@ -0,0 +1,88 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Selection of the JIRA issues to count, as configured in {@link org.sonar.plugins.testtrack.TestTrackConstants#FILTER_PROPERTY}:
+ * <ul>
+ * <li>a JQL query when prefixed with <code>jql:</code></li>
+ * <li>the ID of a saved filter when prefixed with <code>id:</code></li>
+ * <li>the name of a favourite filter otherwise, even when only made of digits</li>
+ * </ul>
+ */
+public final class IssueFilter {
+
+  private static final String JQL_PREFIX = "jql:";
+  private static final String ID_PREFIX = "id:";
+
+  private final String name;
+  private final String id;
+  private final String jql;
+
+  private IssueFilter(String name, String id, String jql) {
+    this.name = name;
+    this.id = id;
+    this.jql = jql;
+  }
+
+  public static IssueFilter parse(String value) {
+    String trimmed = StringUtils.trimToEmpty(value);
+    if (trimmed.startsWith(JQL_PREFIX)) {
+      return new IssueFilter(null, null, trimmed.substring(JQL_PREFIX.length()).trim());
+    }
+    if (trimmed.startsWith(ID_PREFIX)) {
+      return new IssueFilter(null, trimmed.substring(ID_PREFIX.length()).trim(), null);
+    }
+    return new IssueFilter(value, null, null);
+  }
+
+  public boolean isJql() {
+    return jql != null;
+  }
+
+  /**
+   * True when the ID is known, so that no filter has to be looked up by name.
+   */
+  public boolean hasId() {
+    return id != null;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getJql() {
+    return jql;
+  }
+
+  @Override
+  public String toString() {
+    if (isJql()) {
+      return JQL_PREFIX + jql;
+    }
+    return hasId() ? ID_PREFIX + id : name;
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+
+/**
+ * The projections shared by the readers of issues.
+ */
+public final class IssueProjections {
+
+  /**
+   * The issue itself, for the readers that need its text.
+   */
+  public static final IssueProjection<RemoteIssue> WHOLE = new IssueProjection<RemoteIssue>() {
+    public RemoteIssue project(RemoteIssue issue) {
+      return issue;
+    }
+  };
+
+  public static final IssueProjection<String> KEY = new IssueProjection<String>() {
+    public String project(RemoteIssue issue) {
+      return issue.getKey();
+    }
+  };
+
+  /**
+   * The ID of the priority.
+   */
+  public static final IssueProjection<String> PRIORITY = new IssueProjection<String>() {
+    public String project(RemoteIssue issue) {
+      return issue.getPriority();
+    }
+  };
+
+  /**
+   * The key, priority, status and type of the issue, without its text: all that the issue count and its snapshot need.
+   */
+  public static final IssueProjection<RemoteIssue> HEADER = new IssueProjection<RemoteIssue>() {
+    public RemoteIssue project(RemoteIssue issue) {
+      RemoteIssue header = new RemoteIssue();
+      header.setKey(issue.getKey());
+      header.setPriority(issue.getPriority());
+      header.setStatus(issue.getStatus());
+      header.setType(issue.getType());
+      return header;
+    }
+  };
+
+  private IssueProjections() {
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+/**
+ * Issues to read from JIRA: the ones of a saved filter, read page by page, or the ones of a JQL query, read in a
+ * single call as JIRA does not page them.
+ */
+public final class IssueQuery {
+
+  /**
+   * Most issues read for a JQL query, the ones past it are not seen.
+   */
+  public static final int MAX_JQL_RESULTS = 10000;
+
+  private final String filterId;
+  private final String jql;
+  private final int maxResults;
+
+  private IssueQuery(String filterId, String jql, int maxResults) {
+    this.filterId = filterId;
+    this.jql = jql;
+    this.maxResults = maxResults;
+  }
+
+  public static IssueQuery filter(String filterId) {
+    return new IssueQuery(filterId, null, Integer.MAX_VALUE);
+  }
+
+  public static IssueQuery jql(String jql, int maxResults) {
+    return new IssueQuery(null, jql, maxResults);
+  }
+
+  public boolean isJql() {
+    return jql != null;
+  }
+
+  public String getFilterId() {
+    return filterId;
+  }
+
+  public String getJql() {
+    return jql;
+  }
+
+  public int getMaxResults() {
+    return maxResults;
+  }
+
+  /**
+   * Whether reading the given number of issues hit the cap of a JQL query, so that some issues were not read.
+   */
+  public boolean isTruncated(int readCount) {
+    return isJql() && readCount >= maxResults;
+  }
+
+  @Override
+  public String toString() {
+    return isJql() ? "jql:" + jql : "filter:" + filterId;
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.PropertyType;
+import org.sonar.api.batch.Decorator;
+import org.sonar.api.batch.DecoratorContext;
+import org.sonar.api.batch.DependedUpon;
+import org.sonar.api.config.Settings;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.PropertiesBuilder;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.resources.ResourceUtils;
+import org.sonar.api.utils.KeyValueFormat;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sums the JIRA issues of the child modules, and their distribution by priority, on the modules that did not read
+ * their own. Only the leaf modules with a filter of their own then call JIRA, or the root project if none has one.
+ */
+@Properties({
+  @Property(
+    key = TestTrackConstants.ROLLUP_PROPERTY,
+    defaultValue = "false",
+    name = "Issues by module",
+    description = "Reads the issues of the filter set on each leaf module, and sums them up on the parent modules, instead of "
+      + "reading the filter of the root project only. Modules that inherit the filter of the root project are not counted.",
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  )
+})
+public class IssueRollupDecorator implements Decorator {
+
+  private final Settings settings;
+
+  public IssueRollupDecorator(Settings settings) {
+    this.settings = settings;
+  }
+
+  public boolean shouldExecuteOnProject(Project project) {
+    return settings.getBoolean(TestTrackConstants.ROLLUP_PROPERTY);
+  }
+
+  @DependedUpon
+  public Metric generatesIssues() {
+    return TestTrackMetrics.ISSUES;
+  }
+
+  @SuppressWarnings("rawtypes")
+  public void decorate(Resource resource, DecoratorContext context) {
+    if (!ResourceUtils.isProject(resource) || context.getMeasure(TestTrackMetrics.ISSUES) != null) {
+      return;
+    }
+    Collection<Measure> childMeasures = context.getChildrenMeasures(TestTrackMetrics.ISSUES);
+    if (childMeasures == null || childMeasures.isEmpty()) {
+      return;
+    }
+    double total = 0;
+    Map<String, Integer> distribution = new TreeMap<String, Integer>();
+    for (Measure childMeasure : childMeasures) {
+      if (childMeasure.getValue() != null) {
+        total += childMeasure.getValue();
+      }
+      if (childMeasure.getData() != null) {
+        merge(distribution, KeyValueFormat.parseStringInt(childMeasure.getData()));
+      }
+    }
+    Measure measure = new Measure(TestTrackMetrics.ISSUES, total);
+    measure.setData(new PropertiesBuilder<String, Integer>(TestTrackMetrics.ISSUES, distribution).buildData());
+    context.saveMeasure(measure);
+  }
+
+  static void merge(Map<String, Integer> merged, Map<String, Integer> counts) {
+    for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+      Integer count = merged.get(entry.getKey());
+      merged.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "JIRA issues of the modules";
+  }
+}
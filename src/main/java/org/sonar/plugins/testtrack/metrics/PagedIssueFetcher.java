@@ -0,0 +1,94 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.remote.RetryPolicy;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Reads the issues of a filter page by page. Each page is retried on its own, so that a failure halfway through
+ * resumes at the failed page instead of reading all the issues again. Readers that don't need all the issues at
+ * once get an {@link IssueCursor} from {@link #open(TrackerTransport, String, IssueQuery, IssueProjection)}.
+ */
+public class PagedIssueFetcher {
+
+  static final int DEFAULT_PAGE_SIZE = 500;
+
+  private final RetryPolicy retryPolicy;
+  private final int pageSize;
+  private final RemoteCallExecutor prefetchExecutor;
+
+  public PagedIssueFetcher(RetryPolicy retryPolicy) {
+    this(retryPolicy, DEFAULT_PAGE_SIZE);
+  }
+
+  public PagedIssueFetcher(RetryPolicy retryPolicy, int pageSize) {
+    this(retryPolicy, pageSize, null);
+  }
+
+  /**
+   * @param prefetchExecutor fetches the next page in a slot of the server while one is read, no prefetching if null.
+   *                         Readers that already hold a slot of the server leave it null.
+   */
+  public PagedIssueFetcher(RetryPolicy retryPolicy, int pageSize, RemoteCallExecutor prefetchExecutor) {
+    this.retryPolicy = retryPolicy;
+    this.pageSize = pageSize;
+    this.prefetchExecutor = prefetchExecutor;
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public <T> IssueCursor<T> open(TrackerTransport transport, String authToken, IssueQuery query, IssueProjection<T> projection) {
+    return new IssueCursor<T>(transport, authToken, query, projection, retryPolicy, pageSize, prefetchExecutor);
+  }
+
+  public RemoteIssue[] fetch(TrackerTransport transport, String authToken, IssueQuery query) throws RemoteException {
+    return fetch(transport, authToken, query, IssueProjections.WHOLE);
+  }
+
+  /**
+   * Reads all the issues at once, each one kept as given by the projection.
+   */
+  public RemoteIssue[] fetch(TrackerTransport transport, String authToken, IssueQuery query, IssueProjection<RemoteIssue> projection)
+      throws RemoteException {
+    IssueCursor<RemoteIssue> cursor = open(transport, authToken, query, projection);
+    try {
+      List<RemoteIssue> issues = cursor.toList();
+      return issues.toArray(new RemoteIssue[issues.size()]);
+    } finally {
+      cursor.close();
+    }
+  }
+
+  public RemoteIssue[] fetchFilter(TrackerTransport transport, String authToken, String filterId) throws RemoteException {
+    return fetch(transport, authToken, IssueQuery.filter(filterId));
+  }
+
+  public RemoteIssue[] searchJql(TrackerTransport transport, String authToken, String jql, int maxResults) throws RemoteException {
+    return fetch(transport, authToken, IssueQuery.jql(jql, maxResults));
+  }
+}
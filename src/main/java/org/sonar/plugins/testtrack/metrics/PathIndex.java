@@ -0,0 +1,108 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds the file meant by a path mentioned in a text, like <code>Foo.java</code>,
+ * <code>org/sonar/Foo.java</code> or an absolute path. Paths are stored in a trie of their segments, last segment
+ * first, so that a lookup costs the number of segments of the mentioned path whatever the number of files. A mention
+ * matches when it identifies a single file: a file name shared by several files only matches with enough parent
+ * directories to tell them apart.
+ */
+public class PathIndex<T> {
+
+  private final Node<T> root = new Node<T>();
+  private int size;
+
+  public void add(String relativePath, T value) {
+    String[] segments = split(relativePath);
+    if (segments.length == 0) {
+      return;
+    }
+    Node<T> node = root;
+    for (int i = segments.length - 1; i >= 0; i--) {
+      node = node.child(segments[i], true);
+      node.count++;
+      if (node.count == 1) {
+        node.single = value;
+      }
+    }
+    size++;
+  }
+
+  /**
+   * @return the single file matching the mentioned path, or null if none or several do
+   */
+  public T find(String mentionedPath) {
+    String[] segments = split(mentionedPath);
+    Node<T> node = root;
+    for (int i = segments.length - 1; i >= 0; i--) {
+      Node<T> child = node.child(segments[i], false);
+      if (child == null) {
+        // a longer mention, like an absolute path, matches once the whole path of the file is matched
+        return node.children == null ? single(node) : null;
+      }
+      node = child;
+    }
+    return single(node);
+  }
+
+  private T single(Node<T> node) {
+    return node != root && node.count == 1 ? node.single : null;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private static String[] split(String path) {
+    String normalized = path.replace('\\', '/');
+    int start = 0;
+    while (start < normalized.length() && normalized.charAt(start) == '/') {
+      start++;
+    }
+    int end = normalized.length();
+    while (end > start && normalized.charAt(end - 1) == '/') {
+      end--;
+    }
+    return start == end ? new String[0] : normalized.substring(start, end).split("/+");
+  }
+
+  private static final class Node<T> {
+    private Map<String, Node<T>> children;
+    private int count;
+    private T single;
+
+    Node<T> child(String segment, boolean create) {
+      Node<T> child = children == null ? null : children.get(segment);
+      if (child == null && create) {
+        if (children == null) {
+          children = new HashMap<String, Node<T>>(4);
+        }
+        child = new Node<T>();
+        children.put(segment, child);
+      }
+      return child;
+    }
+  }
+}
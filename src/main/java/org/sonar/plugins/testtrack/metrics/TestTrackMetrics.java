@@ -22,6 +22,7 @@ package org.sonar.plugins.testtrack.metrics;
 
 import org.sonar.api.measures.Metric;
 import org.sonar.api.measures.Metrics;
+import org.sonar.api.measures.SumChildValuesFormula;
 
 import java.util.Arrays;
 import java.util.List;
@@ -37,8 +38,17 @@ public final class TestTrackMetrics implements Metrics {
       .setDomain(ISSUES_DOMAIN)
       .create();
 
+  public static final String ATTRIBUTED_ISSUES_KEY = "attributed_issues";
+  public static final Metric ATTRIBUTED_ISSUES = new Metric.Builder(ATTRIBUTED_ISSUES_KEY, "Attributed JIRA Issues", Metric.ValueType.INT)
+      .setDescription("Number of JIRA Issues mentioning a file of the resource")
+      .setDirection(Metric.DIRECTION_WORST)
+      .setQualitative(false)
+      .setDomain(ISSUES_DOMAIN)
+      .setFormula(new SumChildValuesFormula(false))
+      .create();
+
   public List<Metric> getMetrics() {
-    return Arrays.asList(ISSUES);
+    return Arrays.asList(ISSUES, ATTRIBUTED_ISSUES);
   }
 
 }
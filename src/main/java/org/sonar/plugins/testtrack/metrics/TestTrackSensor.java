@@ -20,108 +20,519 @@
 
 package org.sonar.plugins.testtrack.metrics;
 
-import com.atlassian.jira.rpc.soap.client.JiraSoapService;
 import com.atlassian.jira.rpc.soap.client.RemoteFilter;
 import com.atlassian.jira.rpc.soap.client.RemoteIssue;
 import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.Properties;
 import org.sonar.api.Property;
+import org.sonar.api.PropertyType;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.config.Settings;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.PropertiesBuilder;
+import org.sonar.api.resources.InputFile;
+import org.sonar.api.resources.Java;
+import org.sonar.api.resources.JavaFile;
 import org.sonar.api.resources.Project;
+import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.api.resources.Resource;
 import org.sonar.plugins.testtrack.TestTrackConstants;
-import org.sonar.plugins.testtrack.soap.TestTrackSoapSession;
+import org.sonar.plugins.testtrack.remote.Deadline;
+import org.sonar.plugins.testtrack.remote.DeadlineExceededException;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.remote.RetryPolicy;
+import org.sonar.plugins.testtrack.snapshot.IssueSnapshot;
+import org.sonar.plugins.testtrack.snapshot.IssueSnapshotWriter;
+import org.sonar.plugins.testtrack.trace.Trace;
+import org.sonar.plugins.testtrack.trace.Tracer;
+import org.sonar.plugins.testtrack.transport.DeadlineTransport;
+import org.sonar.plugins.testtrack.transport.InvalidServerUrlException;
+import org.sonar.plugins.testtrack.transport.TrackerSession;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+import org.sonar.plugins.testtrack.transport.TrackerTransports;
 
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.rmi.RemoteException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 @Properties({
   @Property(
     key = TestTrackConstants.FILTER_PROPERTY,
     defaultValue = "",
     name = "Filter name",
-    description = "Case sensitive, example : SONAR-current-iteration",
+    description = "Case sensitive, example : SONAR-current-iteration. "
+      + "Can also be the ID of a filter, example : id:10010, or a JQL query, example : jql:project = SONAR AND status = Open",
     global = false,
     project = true,
     module = true
+  ),
+  @Property(
+    key = TestTrackConstants.ATTRIBUTION_PROPERTY,
+    defaultValue = "false",
+    name = "Attribute issues to files",
+    description = "Counts, on each file and module, the issues of the filter whose summary or description mention the file, "
+      + "like Foo.java or org/sonar/Foo.java, or whose component is the module.",
+    global = true,
+    project = true,
+    module = true,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key = TestTrackConstants.RETRY_MAX_ATTEMPTS_PROPERTY,
+    defaultValue = TestTrackConstants.RETRY_MAX_ATTEMPTS_DEF_VALUE,
+    name = "Attempts per call",
+    description = "Number of times a call reading issues is attempted before giving up.",
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = TestTrackConstants.RETRY_BACKOFF_MS_PROPERTY,
+    defaultValue = TestTrackConstants.RETRY_BACKOFF_MS_DEF_VALUE,
+    name = "Delay before retrying",
+    description = "Milliseconds to wait before the first retry of a failed call, doubled on each new retry.",
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = TestTrackConstants.TIME_BUDGET_SECONDS_PROPERTY,
+    defaultValue = TestTrackConstants.TIME_BUDGET_SECONDS_DEF_VALUE,
+    name = "Time budget",
+    description = "Maximum number of seconds the sensor waits for JIRA during the analysis, all modules included. Calls still "
+      + "running then are cancelled and the issues of the last analysis are used. 0 means no limit.",
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = TestTrackConstants.FEDERATION_SERVERS_PROPERTY,
+    defaultValue = "",
+    name = "Other JIRA servers",
+    description = "Comma-separated IDs of other JIRA servers whose issues are added to the issue count, each one configured by "
+      + "the properties sonar.jira.federation.<id>.url, .login.secured, .password.secured, .filter and, optionally, "
+      + ".timeoutSeconds. Priorities are merged by name. A server that fails or does not answer in time is left out.",
+    global = true,
+    project = true,
+    module = false
+  ),
+  @Property(
+    key = TestTrackConstants.RECORD_FILE_PROPERTY,
+    name = "Recording file",
+    description = "File where the priorities, filters and issues read from JIRA are recorded, to be replayed by the analyses "
+      + "that can't reach JIRA. The queries of the modules and of the previous analyses add up in the file.",
+    global = true,
+    project = true,
+    module = false
+  ),
+  @Property(
+    key = TestTrackConstants.REPLAY_FILE_PROPERTY,
+    name = "Replayed file",
+    description = "Recording read instead of JIRA, see sonar.jira.record.file. No call is made to JIRA or to the other JIRA "
+      + "servers, and the login and password are not needed.",
+    global = true,
+    project = true,
+    module = false
+  ),
+  @Property(
+    key = TestTrackConstants.SNAPSHOT_DIR_PROPERTY,
+    name = "Snapshot directory",
+    description = "Where the issues read at the last analysis are kept, to be used when JIRA is not available. "
+      + "Default is ~/.sonar/jira.",
+    global = true,
+    project = false,
+    module = false
   )
 })
 public class TestTrackSensor implements Sensor {
   private static final Logger LOG = LoggerFactory.getLogger(TestTrackSensor.class);
 
+  private final Settings settings;
   private String serverUrl;
   private String username;
   private String password;
   private String filterName;
+  private boolean attribution;
+  private final boolean rollup;
+  private final FilterResolver filterResolver;
+  private final FetchedIssues fetchedIssues;
+  private final RemoteCallExecutor executor;
+  private final Tracer tracer;
+  private final int timeBudgetSeconds;
+  private PagedIssueFetcher fetcher;
+  private final File snapshotDir;
+  private final boolean replay;
+  private final List<FederatedServer> federatedServers;
+  private final IssueFederation federation;
+  private IssueFederation.Pending pendingFederation;
+  private final AnalysisState analysisState;
 
-  public TestTrackSensor(Settings settings) {
+  /**
+   * @param analysisState shared by the sensors of all the modules, which the batch creates once per module
+   */
+  public TestTrackSensor(Settings settings, FilterResolver filterResolver, FetchedIssues fetchedIssues, RemoteCallExecutor executor, Tracer tracer,
+      IssueFederation federation, AnalysisState analysisState) {
+    this.settings = settings;
+    this.analysisState = analysisState;
+    this.federation = federation;
+    this.federatedServers = FederatedServer.list(settings);
+    this.tracer = tracer;
+    this.filterResolver = filterResolver;
+    this.fetchedIssues = fetchedIssues;
+    this.executor = executor;
+    this.fetcher = new PagedIssueFetcher(new RetryPolicy(settings));
+    timeBudgetSeconds = settings.getInt(TestTrackConstants.TIME_BUDGET_SECONDS_PROPERTY);
     serverUrl = settings.getString(TestTrackConstants.SERVER_URL_PROPERTY);
     username = settings.getString(TestTrackConstants.USERNAME_PROPERTY);
     password = settings.getString(TestTrackConstants.PASSWORD_PROPERTY);
     filterName = settings.getString(TestTrackConstants.FILTER_PROPERTY);
+    attribution = settings.getBoolean(TestTrackConstants.ATTRIBUTION_PROPERTY);
+    rollup = settings.getBoolean(TestTrackConstants.ROLLUP_PROPERTY);
+    replay = StringUtils.isNotBlank(settings.getString(TestTrackConstants.REPLAY_FILE_PROPERTY));
+    String dir = settings.getString(TestTrackConstants.SNAPSHOT_DIR_PROPERTY);
+    snapshotDir = StringUtils.isBlank(dir) ? new File(System.getProperty("user.home"), ".sonar/jira") : new File(dir);
   }
 
   public boolean shouldExecuteOnProject(Project project) {
     if (missingMandatoryParameters()) {
       LOG.info("JIRA issues sensor will not run as some parameters are missing.");
     }
-    return project.isRoot() && !missingMandatoryParameters();
+    return !missingMandatoryParameters() && (savesIssueCount(project) || attribution);
+  }
+
+  /**
+   * The issue count is read on the root project. When summed up by {@link IssueRollupDecorator}, it is read instead on
+   * each leaf module with a filter of its own, and on the root project only if no leaf module has one: a filter
+   * inherited from the root project would otherwise be counted once per module.
+   */
+  private boolean savesIssueCount(Project project) {
+    if (!rollup) {
+      return project.isRoot();
+    }
+    boolean leaf = project.getModules() == null || project.getModules().isEmpty();
+    if (project.isRoot()) {
+      return leaf || !analysisState.hasLeafIssueCounts();
+    }
+    return leaf && hasOwnFilter(project);
+  }
+
+  private boolean hasOwnFilter(Project module) {
+    return !StringUtils.trimToEmpty(filterName).equals(StringUtils.trimToEmpty(analysisState.getRootFilter()));
   }
 
   public void analyse(Project project, SensorContext context) {
+    // an analysis is rare enough to be traced whenever the debug logs are on
+    Trace trace = tracer.start("analysis", LOG.isDebugEnabled());
+    // the budget is the one of the whole analysis, the modules share it
+    Deadline deadline = analysisState.deadline(timeBudgetSeconds * 1000L);
+    if (!project.isRoot() && savesIssueCount(project)) {
+      analysisState.leafIssueCountRead();
+    }
+    fetcher = new PagedIssueFetcher(new RetryPolicy(settings, deadline), PagedIssueFetcher.DEFAULT_PAGE_SIZE, executor);
+    if (project.isRoot() && savesIssueCount(project) && !federatedServers.isEmpty() && !replay) {
+      // the other servers are read while the main one is
+      pendingFederation = federation.start(federatedServers, deadline);
+    }
+    TrackerSession session = null;
     try {
-      TestTrackSoapSession session = new TestTrackSoapSession(new URL(serverUrl + "/rpc/soap/jirasoapservice-v2"));
+      trace.phase("session");
+      TrackerTransport transport = TrackerTransports.create(settings, socketTimeout(deadline));
+      if (deadline.isBounded()) {
+        transport = new DeadlineTransport(transport, deadline, executor);
+      }
+      session = new TrackerSession(transport);
+      trace.phase("login");
       session.connect(username, password);
 
-      JiraSoapService service = session.getJiraSoapService();
-      String authToken = session.getAuthenticationToken();
-
-      runAnalysis(context, service, authToken);
-
-      session.disconnect();
+      runAnalysis(project, context, session.getTransport(), session.getAuthenticationToken());
+    } catch (DeadlineExceededException e) {
+      LOG.warn("JIRA issues sensor ran out of its time budget of " + timeBudgetSeconds + " s: " + e.getMessage());
+      if (savesIssueCount(project)) {
+        saveStaleMeasures(context);
+      }
     } catch (RemoteException e) {
       LOG.error("Error accessing Jira web service, please verify the parameters", e);
-    } catch (MalformedURLException e) {
+      if (savesIssueCount(project)) {
+        saveStaleMeasures(context);
+      }
+    } catch (InvalidServerUrlException e) {
       LOG.error("The specified JIRA URL is not valid: " + serverUrl, e);
+    } catch (IllegalStateException e) {
+      LOG.error(replay ? "Unable to replay the JIRA recording" : "Unable to read the JIRA issues: " + e.getMessage(), e);
+    } finally {
+      if (pendingFederation != null) {
+        pendingFederation.cancel();
+        pendingFederation = null;
+      }
+      disconnect(session);
+      trace.finish();
+      if (trace.isSampled() && LOG.isDebugEnabled()) {
+        LOG.debug("JIRA traces: {}", tracer.toJson());
+      }
+    }
+  }
+
+  private static int socketTimeout(Deadline deadline) {
+    return deadline.isBounded() ? (int) Math.min(Math.max(1, deadline.remainingMillis()), Integer.MAX_VALUE) : 0;
+  }
+
+  private static void disconnect(TrackerSession session) {
+    if (session != null && session.getAuthenticationToken() != null) {
+      try {
+        session.disconnect();
+      } catch (RemoteException e) {
+        LOG.debug("Unable to log out from JIRA", e);
+      }
+    }
+  }
+
+  protected void runAnalysis(SensorContext context, TrackerTransport transport, String authToken) throws RemoteException {
+    runAnalysis(null, context, transport, authToken);
+  }
+
+  /**
+   * Saves the issue count on the root project, and the attributed issues on the files of the given module when
+   * enabled. A null project stands for the root project.
+   */
+  protected void runAnalysis(Project project, SensorContext context, TrackerTransport transport, String authToken) throws RemoteException {
+    Tracer.current().phase("remoteCall");
+    IssueFilter filter = IssueFilter.parse(filterName);
+    IssueQuery query;
+    String url;
+    if (filter.isJql()) {
+      query = IssueQuery.jql(filter.getJql(), IssueQuery.MAX_JQL_RESULTS);
+      url = serverUrl + "/secure/IssueNavigator.jspa?reset=true&jqlQuery=" + encode(filter.getJql());
+    } else {
+      String filterId = filter.hasId() ? filter.getId() : findJiraFilter(transport, authToken).getId();
+      query = IssueQuery.filter(filterId);
+      url = serverUrl + "/secure/IssueNavigator.jspa?mode=hide&requestId=" + filterId;
+    }
+    boolean attributes = project != null && attribution;
+    RemoteIssue[] issues = attributes ? fetchIssues(transport, authToken, query)
+      // the count only needs the header of the issues, their text is dropped page by page
+      : fetcher.fetch(transport, authToken, query, IssueProjections.HEADER);
+
+    if (project == null || savesIssueCount(project)) {
+      saveIssueCount(context, transport, authToken, query, url, issues);
+    }
+    if (attributes) {
+      Tracer.current().phase("attribution");
+      attributeIssues(project, context, issues);
+    }
+  }
+
+  /**
+   * The whole issues, with the text the attribution looks for file names in, read once for all the modules.
+   */
+  private RemoteIssue[] fetchIssues(TrackerTransport transport, String authToken, IssueQuery query) throws RemoteException {
+    RemoteIssue[] issues = fetchedIssues.get(query.toString());
+    if (issues == null) {
+      issues = fetcher.fetch(transport, authToken, query);
+      fetchedIssues.put(query.toString(), issues);
+    }
+    return issues;
+  }
+
+  private void saveIssueCount(SensorContext context, final TrackerTransport transport, final String authToken, IssueQuery query, String url,
+      RemoteIssue[] issues) throws RemoteException {
+    boolean truncated = query.isTruncated(issues.length);
+    if (truncated) {
+      LOG.warn("The JQL query matches more than {} issues, the ones past them are not counted", query.getMaxResults());
     }
+    RemotePriority[] priorities;
+    try {
+      priorities = fetcher.getRetryPolicy().call("getPriorities", new Callable<RemotePriority[]>() {
+        public RemotePriority[] call() throws RemoteException {
+          return transport.getPriorities(authToken);
+        }
+      });
+    } catch (DeadlineExceededException e) {
+      LOG.warn("Time budget exhausted before reading the JIRA priorities, the distribution shows their IDs");
+      Measure measure = issuesMeasure(url, issues.length, distribution(countByPriority(issues), Collections.<String, String>emptyMap()));
+      if (truncated) {
+        measure.setDescription(truncatedDescription(query));
+      }
+      context.saveMeasure(measure);
+      return;
+    }
+    Tracer.current().phase("writeBack");
+    if (pendingFederation != null) {
+      saveFederatedMeasures(context, url, issues, priorityNames(priorities), truncated ? query : null);
+    } else {
+      Measure measure = issuesMeasure(url, issues.length, distribution(countByPriority(issues), priorityNames(priorities)));
+      if (truncated) {
+        measure.setDescription(truncatedDescription(query));
+      }
+      context.saveMeasure(measure);
+    }
+    writeSnapshot(priorities, issues);
+  }
+
+  /**
+   * Saves the issues of the main server added to the ones of the other servers that answered in time. The query of
+   * the main server is given when it was truncated.
+   */
+  private void saveFederatedMeasures(SensorContext context, String url, RemoteIssue[] issues, Map<String, String> priorityNames,
+      IssueQuery truncatedQuery) {
+    Map<String, Integer> merged = new TreeMap<String, Integer>();
+    IssueFederation.merge(merged, countByName(countByPriority(issues), priorityNames));
+    Tracer.current().phase("federation");
+    IssueFederation.Result result = pendingFederation.await();
+    IssueFederation.merge(merged, result.getCountByPriority());
+
+    Measure measure = issuesMeasure(url, issues.length + result.getIssueCount(), distribution(merged, Collections.<String, String>emptyMap()));
+    List<String> notes = Lists.newArrayList();
+    if (truncatedQuery != null) {
+      notes.add(truncatedDescription(truncatedQuery));
+    }
+    addFederationNotes(notes, result);
+    if (!notes.isEmpty()) {
+      measure.setDescription(StringUtils.join(notes, "; "));
+    }
+    context.saveMeasure(measure);
+  }
+
+  private static Map<String, Integer> countByName(Map<String, Integer> countByPriority, Map<String, String> priorityNames) {
+    Map<String, Integer> countByName = Maps.newHashMap();
+    for (Map.Entry<String, Integer> entry : countByPriority.entrySet()) {
+      String name = priorityNames.get(entry.getKey());
+      countByName.put(name != null ? name : entry.getKey(), entry.getValue());
+    }
+    return countByName;
   }
 
-  protected void runAnalysis(SensorContext context, JiraSoapService service, String authToken) throws RemoteException {
-    Map<String, String> priorities = collectPriorities(service, authToken);
-    RemoteFilter filter = findJiraFilter(service, authToken);
-    Map<String, Integer> issuesByPriority = collectIssuesByPriority(service, authToken, filter);
+  private static void addFederationNotes(List<String> notes, IssueFederation.Result result) {
+    if (!result.getMissingServers().isEmpty()) {
+      notes.add("Partial: without the issues of " + StringUtils.join(result.getMissingServers(), ", "));
+    }
+    if (!result.getTruncatedServers().isEmpty()) {
+      notes.add("Truncated: only the first " + IssueQuery.MAX_JQL_RESULTS + " issues of the JQL query of "
+        + StringUtils.join(result.getTruncatedServers(), ", ") + " are counted");
+    }
+  }
 
-    double total = 0;
+  private static String truncatedDescription(IssueQuery query) {
+    return "Truncated: only the first " + query.getMaxResults() + " issues of the JQL query are counted";
+  }
+
+  private static String distribution(Map<String, Integer> issuesByPriority, Map<String, String> priorityNames) {
     PropertiesBuilder<String, Integer> distribution = new PropertiesBuilder<String, Integer>();
     for (Map.Entry<String, Integer> entry : issuesByPriority.entrySet()) {
-      total += entry.getValue();
-      distribution.add(priorities.get(entry.getKey()), entry.getValue());
+      String name = priorityNames.get(entry.getKey());
+      distribution.add(name != null ? name : entry.getKey(), entry.getValue());
     }
+    return distribution.buildData();
+  }
 
-    String url = serverUrl + "/secure/IssueNavigator.jspa?mode=hide&requestId=" + filter.getId();
-    saveMeasures(context, url, total, distribution.buildData());
+  private void writeSnapshot(RemotePriority[] priorities, RemoteIssue[] issues) {
+    try {
+      IssueSnapshotWriter.write(snapshotFile(), serverUrl + '|' + filterName, priorities, issues, System.currentTimeMillis());
+    } catch (IOException e) {
+      LOG.warn("Unable to keep the JIRA issues for the next analyses in " + snapshotDir, e);
+    } catch (IllegalArgumentException e) {
+      LOG.warn("Unable to keep the JIRA issues for the next analyses: " + e.getMessage());
+    }
   }
 
-  protected Map<String, String> collectPriorities(JiraSoapService service, String authToken) throws RemoteException {
+  /**
+   * Saves the issue count of the last successful analysis, marked as stale, when JIRA can't be read.
+   */
+  protected void saveStaleMeasures(SensorContext context) {
+    File file = snapshotFile();
+    if (!file.isFile()) {
+      LOG.warn("No JIRA issues from a previous analysis, the issue count is not saved");
+      return;
+    }
+    try {
+      IssueSnapshot snapshot = IssueSnapshot.open(file);
+      String readAt = new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(snapshot.getCreatedAt()));
+      List<String> notes = Lists.newArrayList("Stale: JIRA was not available, issues as read on " + readAt);
+      Measure measure;
+      if (pendingFederation == null) {
+        measure = issuesMeasure(null, snapshot.size(), distribution(snapshot.countByPriority(), snapshot.getPriorityNames()));
+      } else {
+        // the other servers may have answered even though the main one did not
+        Map<String, Integer> merged = new TreeMap<String, Integer>();
+        IssueFederation.merge(merged, countByName(snapshot.countByPriority(), snapshot.getPriorityNames()));
+        Tracer.current().phase("federation");
+        IssueFederation.Result result = pendingFederation.await();
+        IssueFederation.merge(merged, result.getCountByPriority());
+        measure = issuesMeasure(null, snapshot.size() + result.getIssueCount(), distribution(merged, Collections.<String, String>emptyMap()));
+        addFederationNotes(notes, result);
+      }
+      measure.setDescription(StringUtils.join(notes, "; "));
+      context.saveMeasure(measure);
+      LOG.warn("JIRA was not available, saved the issue count read on {}", readAt);
+    } catch (IOException e) {
+      LOG.warn("Unable to read the JIRA issues of a previous analysis from " + file, e);
+    }
+  }
+
+  File snapshotFile() {
+    return new File(snapshotDir, DigestUtils.md5Hex(serverUrl + '|' + filterName) + ".snapshot");
+  }
+
+  protected void attributeIssues(Project project, SensorContext context, RemoteIssue[] issues) {
+    IssueAttributor<Resource<?>> attributor = new IssueAttributor<Resource<?>>(indexFiles(project), project.getName(), project.getKey());
+    IssueAttributor.Attribution<Resource<?>> attribution = attributor.attribute(issues);
+    for (Map.Entry<Resource<?>, Integer> entry : attribution.getIssuesByFile().entrySet()) {
+      context.saveMeasure(entry.getKey(), new Measure(TestTrackMetrics.ATTRIBUTED_ISSUES, entry.getValue().doubleValue()));
+    }
+    context.saveMeasure(new Measure(TestTrackMetrics.ATTRIBUTED_ISSUES, (double) attribution.getIssuesOnModule()));
+  }
+
+  protected PathIndex<Resource<?>> indexFiles(Project project) {
+    PathIndex<Resource<?>> index = new PathIndex<Resource<?>>();
+    ProjectFileSystem fileSystem = project.getFileSystem();
+    boolean java = Java.KEY.equals(project.getLanguageKey());
+    List<File> sourceDirs = fileSystem.getSourceDirs();
+    for (InputFile inputFile : fileSystem.mainFiles(project.getLanguageKey())) {
+      Resource<?> resource = java ? JavaFile.fromIOFile(inputFile.getFile(), sourceDirs, false)
+        : org.sonar.api.resources.File.fromIOFile(inputFile.getFile(), project);
+      if (resource != null) {
+        index.add(inputFile.getRelativePath(), resource);
+      }
+    }
+    return index;
+  }
+
+  protected Map<String, String> collectPriorities(TrackerTransport transport, String authToken) throws RemoteException {
+    return priorityNames(transport.getPriorities(authToken));
+  }
+
+  private static Map<String, String> priorityNames(RemotePriority[] remotePriorities) {
     Map<String, String> priorities = Maps.newHashMap();
-    for (RemotePriority priority : service.getPriorities(authToken)) {
+    for (RemotePriority priority : remotePriorities) {
       priorities.put(priority.getId(), priority.getName());
     }
     return priorities;
   }
 
-  protected Map<String, Integer> collectIssuesByPriority(JiraSoapService service, String authToken, RemoteFilter filter) throws RemoteException {
+  protected Map<String, Integer> collectIssuesByPriority(TrackerTransport transport, String authToken, RemoteFilter filter) throws RemoteException {
+    return countByPriority(transport.getIssuesFromFilter(authToken, filter.getId()));
+  }
+
+  protected Map<String, Integer> countByPriority(RemoteIssue[] issues) {
     Map<String, Integer> issuesByPriority = Maps.newHashMap();
-    RemoteIssue[] issues = service.getIssuesFromFilter(authToken, filter.getId());
     for (RemoteIssue issue : issues) {
       String priority = issue.getPriority();
       if (!issuesByPriority.containsKey(priority)) {
@@ -133,40 +544,37 @@ public class TestTrackSensor implements Sensor {
     return issuesByPriority;
   }
 
-  protected RemoteFilter findJiraFilter(JiraSoapService service, String authToken) throws RemoteException {
-    RemoteFilter filter = null;
-    RemoteFilter[] filters;
-    try {
-      filters = service.getFavouriteFilters(authToken);
-    } catch (Exception e) {
-      // for Jira prior to 3.13
-      filters = service.getSavedFilters(authToken);
-    }
-    for (RemoteFilter f : filters) {
-      if (filterName.equals(f.getName())) {
-        filter = f;
-        continue;
-      }
-    }
-
+  protected RemoteFilter findJiraFilter(TrackerTransport transport, String authToken) throws RemoteException {
+    RemoteFilter filter = filterResolver.findByName(transport, authToken, serverUrl + '|' + username, filterName);
     if (filter == null) {
       throw new IllegalStateException("Unable to find filter '" + filterName + "' in JIRA");
     }
     return filter;
   }
 
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   protected boolean missingMandatoryParameters() {
     return StringUtils.isEmpty(serverUrl) ||
       StringUtils.isEmpty(filterName) ||
-      StringUtils.isEmpty(username) ||
-      StringUtils.isEmpty(password);
+      (!replay && (StringUtils.isEmpty(username) || StringUtils.isEmpty(password)));
   }
 
   protected void saveMeasures(SensorContext context, String issueUrl, double totalPrioritiesCount, String priorityDistribution) {
+    context.saveMeasure(issuesMeasure(issueUrl, totalPrioritiesCount, priorityDistribution));
+  }
+
+  private static Measure issuesMeasure(String issueUrl, double totalPrioritiesCount, String priorityDistribution) {
     Measure issuesMeasure = new Measure(TestTrackMetrics.ISSUES, totalPrioritiesCount);
     issuesMeasure.setUrl(issueUrl);
     issuesMeasure.setData(priorityDistribution);
-    context.saveMeasure(issuesMeasure);
+    return issuesMeasure;
   }
 
   @Override
@@ -0,0 +1,49 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.remote;
+
+/**
+ * Kind of work a remote call belongs to, which the time waited for a slot of the server is reported by, see
+ * {@link RemoteCallExecutor#getQueueWait(CallLane)}. The lanes don't change the order of the calls: the slots are those
+ * of the {@link RemoteCallExecutor} of one JVM, where the interactive lane runs in the Sonar server and the other ones in
+ * the batch, one sensor or post job at a time, so they never wait for the same slots.
+ */
+public enum CallLane {
+
+  /**
+   * Calls a user is waiting for, like the creation of an issue from a review.
+   */
+  INTERACTIVE,
+
+  /**
+   * Status and comment updates of the linked issues.
+   */
+  SYNC,
+
+  /**
+   * Reads of the issue counts by the sensor.
+   */
+  METRICS,
+
+  /**
+   * Creation of issues in bulk from the violations.
+   */
+  EXPORT
+}
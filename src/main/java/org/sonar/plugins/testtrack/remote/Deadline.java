@@ -0,0 +1,69 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.remote;
+
+/**
+ * Point in time after which no more remote call should be waited for.
+ */
+public final class Deadline {
+
+  public static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+  private final long expiresAtNanos;
+
+  private Deadline(long expiresAtNanos) {
+    this.expiresAtNanos = expiresAtNanos;
+  }
+
+  /**
+   * @param budgetMs time budget, no deadline if zero or negative
+   */
+  public static Deadline after(long budgetMs) {
+    return budgetMs > 0 ? new Deadline(System.nanoTime() + budgetMs * 1000000L) : NONE;
+  }
+
+  /**
+   * This deadline, or an earlier one if the given budget from now ends before it.
+   *
+   * @param budgetMs time budget, this deadline if zero or negative
+   */
+  public Deadline within(long budgetMs) {
+    if (budgetMs <= 0) {
+      return this;
+    }
+    Deadline other = after(budgetMs);
+    return !isBounded() || other.expiresAtNanos - expiresAtNanos < 0 ? other : this;
+  }
+
+  public boolean isBounded() {
+    return this != NONE;
+  }
+
+  public long remainingMillis() {
+    if (!isBounded()) {
+      return Long.MAX_VALUE;
+    }
+    return Math.max(0, (expiresAtNanos - System.nanoTime()) / 1000000L);
+  }
+
+  public boolean isExpired() {
+    return isBounded() && expiresAtNanos - System.nanoTime() <= 0;
+  }
+}
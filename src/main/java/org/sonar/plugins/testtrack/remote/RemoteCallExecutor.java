@@ -0,0 +1,410 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.remote;
+
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.ServerExtension;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.stats.LatencyHistogram;
+
+import java.lang.reflect.Method;
+import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executor for blocking calls to the remote server. Calls run on virtual threads when the JVM provides them
+ * and on a bounded pool of daemon threads otherwise. The number of calls in flight is limited per server, the free
+ * slots going to the calls in the order they asked for them, see {@link ServerBudget}. Submitted calls
+ * wait for a slot of their server in the queue of that server and only take a thread once they have one, so that a
+ * slow server never holds the threads the calls to the other servers need. A call made by a call that already holds a
+ * slot of the same server runs in place, in that slot, so that it never waits for a slot its caller keeps busy.
+ */
+@Properties({
+  @Property(
+    key = TestTrackConstants.MAX_CALLS_PER_SERVER_PROPERTY,
+    defaultValue = TestTrackConstants.MAX_CALLS_PER_SERVER_DEF_VALUE,
+    name = "Maximum concurrent calls",
+    description = "Maximum number of calls sent at the same time to a JIRA server, by the Sonar server and by each analysis.",
+    global = true,
+    project = false
+  )
+})
+public class RemoteCallExecutor implements BatchExtension, ServerExtension {
+  private static final Logger LOG = LoggerFactory.getLogger(RemoteCallExecutor.class);
+  private static final int PLATFORM_POOL_SIZE = 32;
+  private static final ThreadLocal<ServerBudget> HELD_SLOT = new ThreadLocal<ServerBudget>();
+
+  private final int maxCallsPerServer;
+  private final ExecutorService executor;
+  private final boolean virtualThreads;
+  private final ConcurrentMap<String, ServerBudget> budgetByServer = new ConcurrentHashMap<String, ServerBudget>();
+  private final Map<CallLane, LatencyHistogram> queueWaitByLane = new EnumMap<CallLane, LatencyHistogram>(CallLane.class);
+
+  public RemoteCallExecutor(Settings settings) {
+    this(settings.getInt(TestTrackConstants.MAX_CALLS_PER_SERVER_PROPERTY));
+  }
+
+  public RemoteCallExecutor(int maxCallsPerServer) {
+    this.maxCallsPerServer = maxCallsPerServer > 0 ? maxCallsPerServer : Integer.parseInt(TestTrackConstants.MAX_CALLS_PER_SERVER_DEF_VALUE);
+    ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+    this.virtualThreads = virtualThreadExecutor != null;
+    this.executor = virtualThreads ? virtualThreadExecutor : Executors.newFixedThreadPool(PLATFORM_POOL_SIZE, new DaemonThreadFactory());
+    for (CallLane lane : CallLane.values()) {
+      queueWaitByLane.put(lane, new LatencyHistogram());
+    }
+    LOG.debug("Remote calls run on {}, at most {} per server", virtualThreads ? "virtual threads" : "a platform thread pool", this.maxCallsPerServer);
+  }
+
+  /**
+   * Submits a blocking call of the {@link CallLane#METRICS} lane to the given server.
+   */
+  public <T> Future<T> submit(String server, Callable<T> call) {
+    return submit(server, CallLane.METRICS, call);
+  }
+
+  /**
+   * Submits a blocking call to the given server. The call is queued until a slot of that server is free, then runs on
+   * the executor. A call cancelled while queued still passes through its slot, without running.
+   */
+  public <T> Future<T> submit(String server, CallLane lane, Callable<T> call) {
+    if (HELD_SLOT.get() == budgetFor(server)) {
+      FutureTask<T> inPlace = new FutureTask<T>(call);
+      inPlace.run();
+      return inPlace;
+    }
+    final QueuedCall<T> task = new QueuedCall<T>(budgetFor(server), queueWaitByLane.get(lane), call);
+    task.budget.dispatch(new Runnable() {
+      public void run() {
+        task.start();
+      }
+    });
+    return task;
+  }
+
+  /**
+   * Runs a call on the calling thread once it gets a slot of the server, typically an interactive one that should
+   * not wait for a thread of the pool either.
+   */
+  public <T> T run(String server, CallLane lane, Callable<T> call) throws RemoteException {
+    try {
+      return new ThrottledCall<T>(budgetFor(server), queueWaitByLane.get(lane), call).call();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RemoteException("Interrupted while waiting for the JIRA server", e);
+    } catch (RemoteException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RemoteException("Call to the JIRA server failed", e);
+    }
+  }
+
+  /**
+   * Runs all the calls of the {@link CallLane#METRICS} lane concurrently, see
+   * {@link #invokeAll(String, CallLane, Collection)}.
+   */
+  public <T> List<T> invokeAll(String server, Collection<? extends Callable<T>> calls) throws RemoteException {
+    return invokeAll(server, CallLane.METRICS, calls);
+  }
+
+  /**
+   * Runs all the calls concurrently and returns their results in the same order. The first failure cancels the
+   * calls that are still pending.
+   */
+  public <T> List<T> invokeAll(String server, CallLane lane, Collection<? extends Callable<T>> calls) throws RemoteException {
+    List<Future<T>> futures = Lists.newArrayListWithCapacity(calls.size());
+    for (Callable<T> call : calls) {
+      futures.add(submit(server, lane, call));
+    }
+    List<T> results = Lists.newArrayListWithCapacity(futures.size());
+    try {
+      for (Future<T> future : futures) {
+        results.add(await(future));
+      }
+    } finally {
+      if (results.size() < futures.size()) {
+        for (Future<T> future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Waits for the result of a remote call, rethrowing the exception it failed with.
+   */
+  public static <T> T await(Future<T> future) throws RemoteException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new RemoteException("Interrupted while waiting for the JIRA server", e);
+    } catch (ExecutionException e) {
+      throw unwrap(e);
+    }
+  }
+
+  /**
+   * Waits for the result of a call shared with other callers. Unlike {@link #await(Future)}, an interrupted waiter
+   * leaves the call running for the others: it only gives up waiting.
+   */
+  public static <T> T awaitShared(Future<T> future) throws RemoteException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RemoteException("Interrupted while waiting for the JIRA server", e);
+    } catch (ExecutionException e) {
+      throw unwrap(e);
+    }
+  }
+
+  /**
+   * Waits for the result of a remote call until the deadline, cancelling and interrupting the call if it is still
+   * running then.
+   */
+  public static <T> T await(Future<T> future, Deadline deadline, String operation) throws RemoteException {
+    if (!deadline.isBounded()) {
+      return await(future);
+    }
+    try {
+      return future.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      throw new DeadlineExceededException(operation);
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new RemoteException("Interrupted while waiting for the JIRA server", e);
+    } catch (ExecutionException e) {
+      throw unwrap(e);
+    }
+  }
+
+  static RemoteException unwrap(ExecutionException e) {
+    Throwable cause = e.getCause();
+    if (cause instanceof RemoteException) {
+      return (RemoteException) cause;
+    }
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    return new RemoteException("Call to the JIRA server failed", cause);
+  }
+
+  public boolean usesVirtualThreads() {
+    return virtualThreads;
+  }
+
+  public int getMaxCallsPerServer() {
+    return maxCallsPerServer;
+  }
+
+  /**
+   * Servers called since the start, for monitoring.
+   */
+  public Set<String> getServers() {
+    return Collections.unmodifiableSet(budgetByServer.keySet());
+  }
+
+  public int getCallsInFlight(String server) {
+    ServerBudget budget = budgetByServer.get(server);
+    return budget == null ? 0 : budget.getInFlight();
+  }
+
+  /**
+   * Calls waiting for a free slot of the server.
+   */
+  public int getCallsWaiting(String server) {
+    ServerBudget budget = budgetByServer.get(server);
+    return budget == null ? 0 : budget.getWaiting();
+  }
+
+  /**
+   * Time the calls of the lane waited for a slot of their server, in milliseconds.
+   */
+  public LatencyHistogram getQueueWait(CallLane lane) {
+    return queueWaitByLane.get(lane);
+  }
+
+  /**
+   * Calls waiting for a thread of the pool, always 0 on virtual threads.
+   */
+  public int getCallsQueued() {
+    return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+  }
+
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  private ServerBudget budgetFor(String server) {
+    ServerBudget budget = budgetByServer.get(server);
+    if (budget == null) {
+      ServerBudget created = new ServerBudget(maxCallsPerServer);
+      budget = budgetByServer.putIfAbsent(server, created);
+      if (budget == null) {
+        budget = created;
+      }
+    }
+    return budget;
+  }
+
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (NoSuchMethodException e) {
+      return null;
+    } catch (Exception e) {
+      // virtual threads exist but are not enabled (preview feature on older JVMs)
+      LOG.debug("Virtual threads are not available", e);
+      return null;
+    }
+  }
+
+  private static final class ThrottledCall<T> implements Callable<T> {
+    private final ServerBudget budget;
+    private final LatencyHistogram queueWait;
+    private final Callable<T> call;
+
+    private ThrottledCall(ServerBudget budget, LatencyHistogram queueWait, Callable<T> call) {
+      this.budget = budget;
+      this.queueWait = queueWait;
+      this.call = call;
+    }
+
+    public T call() throws Exception {
+      if (HELD_SLOT.get() == budget) {
+        return call.call();
+      }
+      long start = System.nanoTime();
+      budget.acquire();
+      queueWait.record((System.nanoTime() - start) / 1000000L);
+      HELD_SLOT.set(budget);
+      try {
+        return call.call();
+      } finally {
+        HELD_SLOT.remove();
+        budget.release();
+      }
+    }
+  }
+
+  /**
+   * A submitted call, started on the executor once it has a slot of its server. The slot is freed as soon as the call
+   * is over, before its result is visible.
+   */
+  private final class QueuedCall<T> extends FutureTask<T> {
+    private final ServerBudget budget;
+    private final LatencyHistogram queueWait;
+    private final long queuedAt = System.nanoTime();
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private QueuedCall(ServerBudget budget, LatencyHistogram queueWait, Callable<T> call) {
+      super(call);
+      this.budget = budget;
+      this.queueWait = queueWait;
+    }
+
+    private void start() {
+      queueWait.record((System.nanoTime() - queuedAt) / 1000000L);
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        // stopped executor
+        cancel(false);
+        releaseSlot();
+      }
+    }
+
+    @Override
+    public void run() {
+      HELD_SLOT.set(budget);
+      try {
+        super.run();
+      } finally {
+        HELD_SLOT.remove();
+        // cancelled before running
+        releaseSlot();
+      }
+    }
+
+    @Override
+    protected void set(T result) {
+      releaseSlot();
+      super.set(result);
+    }
+
+    @Override
+    protected void setException(Throwable t) {
+      releaseSlot();
+      super.setException(t);
+    }
+
+    private void releaseSlot() {
+      if (released.compareAndSet(false, true)) {
+        budget.release();
+      }
+    }
+  }
+
+  private static final class DaemonThreadFactory implements ThreadFactory {
+    private final AtomicInteger counter = new AtomicInteger();
+
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "jira-remote-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
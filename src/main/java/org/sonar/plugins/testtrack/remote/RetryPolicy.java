@@ -0,0 +1,116 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.remote;
+
+import com.atlassian.jira.rpc.soap.client.RemoteAuthenticationException;
+import com.atlassian.jira.rpc.soap.client.RemotePermissionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+
+/**
+ * Retries a failed call to the remote server, waiting twice as long before each new attempt. Authentication and
+ * permission failures are not retried: they won't go away by themselves. No retry is made when the deadline would
+ * pass before it.
+ */
+public class RetryPolicy {
+  private static final Logger LOG = LoggerFactory.getLogger(RetryPolicy.class);
+  private static final long MAX_BACKOFF_MS = 30000;
+
+  private final int maxAttempts;
+  private final long initialBackoffMs;
+  private final Deadline deadline;
+
+  public RetryPolicy(Settings settings) {
+    this(settings, Deadline.NONE);
+  }
+
+  public RetryPolicy(Settings settings, Deadline deadline) {
+    this(settings.getInt(TestTrackConstants.RETRY_MAX_ATTEMPTS_PROPERTY), settings.getLong(TestTrackConstants.RETRY_BACKOFF_MS_PROPERTY), deadline);
+  }
+
+  public RetryPolicy(int maxAttempts, long initialBackoffMs) {
+    this(maxAttempts, initialBackoffMs, Deadline.NONE);
+  }
+
+  public RetryPolicy(int maxAttempts, long initialBackoffMs, Deadline deadline) {
+    this.maxAttempts = maxAttempts > 0 ? maxAttempts : Integer.parseInt(TestTrackConstants.RETRY_MAX_ATTEMPTS_DEF_VALUE);
+    this.initialBackoffMs = Math.max(0, initialBackoffMs);
+    this.deadline = deadline;
+  }
+
+  /**
+   * Runs the call, retrying it on remote failures until the maximum number of attempts is reached.
+   *
+   * @param operation name of the call, for logs
+   */
+  public <T> T call(String operation, Callable<T> call) throws RemoteException {
+    long backoff = initialBackoffMs;
+    for (int attempt = 1;; attempt++) {
+      try {
+        return call.call();
+      } catch (RemoteException e) {
+        if (attempt >= maxAttempts || !isRetryable(e) || deadline.remainingMillis() <= backoff) {
+          throw e;
+        }
+        LOG.warn("JIRA call " + operation + " failed (attempt " + attempt + "/" + maxAttempts + "), retrying in " + backoff + " ms: "
+          + e.getMessage());
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new RemoteException("JIRA call " + operation + " failed", e);
+      }
+      pause(backoff);
+      backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+    }
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public Deadline getDeadline() {
+    return deadline;
+  }
+
+  static boolean isRetryable(RemoteException e) {
+    return !(e instanceof RemoteAuthenticationException) && !(e instanceof RemotePermissionException)
+      && !(e instanceof DeadlineExceededException);
+  }
+
+  private void pause(long millis) throws RemoteException {
+    try {
+      sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RemoteException("Interrupted while waiting to retry the JIRA call", e);
+    }
+  }
+
+  protected void sleep(long millis) throws InterruptedException {
+    if (millis > 0) {
+      Thread.sleep(millis);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.remote;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The slots of calls in flight to a server, handed out in the order the calls asked for them.
+ * <p/>
+ * A call either waits for its slot on its own thread, see {@link #acquire()}, or is queued and started by the thread
+ * that frees the slot, see {@link #dispatch(Runnable)}.
+ */
+final class ServerBudget {
+
+  private final int slots;
+  private final LinkedList<Waiter> waiting = new LinkedList<Waiter>();
+  private int inFlight;
+
+  ServerBudget(int slots) {
+    this.slots = slots;
+  }
+
+  /**
+   * Waits for a slot.
+   */
+  void acquire() throws InterruptedException {
+    InterruptedException interrupted;
+    synchronized (this) {
+      if (isFree()) {
+        inFlight++;
+        return;
+      }
+      Waiter waiter = new Waiter(null);
+      waiting.addLast(waiter);
+      try {
+        while (!waiter.granted) {
+          wait();
+        }
+        return;
+      } catch (InterruptedException e) {
+        if (!waiter.granted) {
+          waiting.remove(waiter);
+          throw e;
+        }
+        interrupted = e;
+      }
+    }
+    // the slot was granted while the thread was interrupted, it goes to the next waiter
+    release();
+    throw interrupted;
+  }
+
+  /**
+   * Runs <code>start</code> once a slot is free, without blocking the caller: right away if a slot is free, otherwise
+   * on the thread releasing the slot. <code>start</code> is run outside the lock of the budget and must make sure that
+   * the slot is released once the call is over.
+   */
+  void dispatch(Runnable start) {
+    synchronized (this) {
+      if (!isFree()) {
+        waiting.addLast(new Waiter(start));
+        return;
+      }
+      inFlight++;
+    }
+    start.run();
+  }
+
+  void release() {
+    List<Runnable> starts = null;
+    synchronized (this) {
+      inFlight--;
+      while (inFlight < slots && !waiting.isEmpty()) {
+        Waiter next = waiting.removeFirst();
+        next.granted = true;
+        inFlight++;
+        if (next.start != null) {
+          if (starts == null) {
+            starts = new ArrayList<Runnable>();
+          }
+          starts.add(next.start);
+        }
+      }
+      notifyAll();
+    }
+    if (starts != null) {
+      for (Runnable start : starts) {
+        start.run();
+      }
+    }
+  }
+
+  private boolean isFree() {
+    return inFlight < slots && waiting.isEmpty();
+  }
+
+  synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  synchronized int getWaiting() {
+    return waiting.size();
+  }
+
+  private static final class Waiter {
+    private final Runnable start;
+    private boolean granted;
+
+    private Waiter(Runnable start) {
+      this.start = start;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.remote;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent callers of the same call share a single execution: the first caller of a key runs the call on its
+ * own thread, the callers arriving while it is in flight wait for and get the same result or exception. Nothing is
+ * kept once the call is over, so this is not a cache.
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+  private final AtomicLong executed = new AtomicLong();
+  private final AtomicLong shared = new AtomicLong();
+
+  public V execute(K key, Callable<V> call) throws RemoteException {
+    FutureTask<V> task = new FutureTask<V>(call);
+    FutureTask<V> running = inFlight.putIfAbsent(key, task);
+    if (running != null) {
+      shared.incrementAndGet();
+      // the call belongs to the caller running it, an interrupted follower must not cancel it
+      return RemoteCallExecutor.awaitShared(running);
+    }
+    executed.incrementAndGet();
+    try {
+      task.run();
+    } finally {
+      inFlight.remove(key, task);
+    }
+    return RemoteCallExecutor.await(task);
+  }
+
+  /**
+   * Number of calls actually executed.
+   */
+  public long getExecutedCount() {
+    return executed.get();
+  }
+
+  /**
+   * Number of callers that got the result of a call executed for another one.
+   */
+  public long getSharedCount() {
+    return shared.get();
+  }
+
+  int inFlightCount() {
+    return inFlight.size();
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import org.sonar.api.workflow.Review;
+
+/**
+ * Values available to the issue templates, see {@link IssueTemplate}.
+ */
+public final class IssueFields {
+
+  public enum Placeholder {
+    RULE("rule"), RULE_KEY("ruleKey"), FILE("file"), LINE("line"), SEVERITY("severity"), MESSAGE("message"),
+    COMMENT("comment"), REVIEW_ID("reviewId"), SONAR_URL("sonarUrl"), JIRA_URL("jiraUrl"), ISSUE_KEY("issueKey");
+
+    private final String token;
+
+    Placeholder(String token) {
+      this.token = token;
+    }
+
+    public String getToken() {
+      return token;
+    }
+
+    static Placeholder fromToken(String token) {
+      for (Placeholder placeholder : values()) {
+        if (placeholder.token.equals(token)) {
+          return placeholder;
+        }
+      }
+      return null;
+    }
+  }
+
+  private final String[] values = new String[Placeholder.values().length];
+
+  public static IssueFields forReview(Review review) {
+    IssueFields fields = new IssueFields();
+    fields.set(Placeholder.RULE, review.getRuleName());
+    fields.set(Placeholder.RULE_KEY, review.getRuleKey());
+    fields.set(Placeholder.SEVERITY, review.getSeverity());
+    fields.set(Placeholder.MESSAGE, review.getMessage());
+    fields.set(Placeholder.REVIEW_ID, review.getReviewId() == null ? null : review.getReviewId().toString());
+    fields.set(Placeholder.LINE, review.getLine() == null ? null : review.getLine().toString());
+    return fields;
+  }
+
+  public IssueFields set(Placeholder placeholder, String value) {
+    values[placeholder.ordinal()] = value;
+    return this;
+  }
+
+  public String get(Placeholder placeholder) {
+    return values[placeholder.ordinal()];
+  }
+
+  String get(int ordinal) {
+    return values[ordinal];
+  }
+}
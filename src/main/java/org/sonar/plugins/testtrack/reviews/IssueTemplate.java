@@ -0,0 +1,215 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.reviews.IssueFields.Placeholder;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Template used to render the text of JIRA issues and of review comments. The pattern is parsed once, rendering
+ * only walks the compiled instructions.
+ * <p/>
+ * Syntax:
+ * <ul>
+ * <li><code>${name}</code> is replaced by the value of the placeholder, see {@link Placeholder}</li>
+ * <li><code>${?name}...${/name}</code> is rendered only when the placeholder has a non-blank value</li>
+ * <li><code>\n</code> is a line break, so that multi-line templates fit in a single-line property</li>
+ * </ul>
+ */
+public final class IssueTemplate {
+
+  private static final byte LITERAL = 0;
+  private static final byte VALUE = 1;
+  private static final byte SECTION = 2;
+
+  private static final int ESTIMATED_VALUE_LENGTH = 32;
+  private static final int MAX_REUSED_CAPACITY = 64 * 1024;
+
+  private static final ConcurrentMap<String, IssueTemplate> COMPILED = new ConcurrentHashMap<String, IssueTemplate>();
+  private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder(256);
+    }
+  };
+
+  private final String pattern;
+  private final byte[] kinds;
+  // literal index for LITERAL, placeholder ordinal for VALUE and SECTION
+  private final int[] args;
+  // for SECTION, the last instruction of the section
+  private final int[] sectionEnds;
+  private final String[] literals;
+  private final int estimatedLength;
+
+  private IssueTemplate(String pattern, byte[] kinds, int[] args, int[] sectionEnds, String[] literals, int estimatedLength) {
+    this.pattern = pattern;
+    this.kinds = kinds;
+    this.args = args;
+    this.sectionEnds = sectionEnds;
+    this.literals = literals;
+    this.estimatedLength = estimatedLength;
+  }
+
+  /**
+   * Returns the compiled template, compiling it on first use.
+   */
+  public static IssueTemplate of(String pattern) {
+    IssueTemplate template = COMPILED.get(pattern);
+    if (template == null) {
+      template = compile(pattern);
+      COMPILED.putIfAbsent(pattern, template);
+    }
+    return template;
+  }
+
+  /**
+   * Returns the template configured under the given key, or the default one.
+   */
+  public static IssueTemplate of(Settings settings, String key, String defaultPattern) {
+    return of(StringUtils.defaultIfEmpty(settings.getString(key), defaultPattern));
+  }
+
+  public static IssueTemplate compile(String pattern) {
+    List<Byte> kinds = Lists.newArrayList();
+    List<Integer> args = Lists.newArrayList();
+    List<Integer> sectionEnds = Lists.newArrayList();
+    List<String> literals = Lists.newArrayList();
+    LinkedList<Integer> openSections = new LinkedList<Integer>();
+    int estimatedLength = 0;
+
+    StringBuilder literal = new StringBuilder();
+    int i = 0;
+    while (i < pattern.length()) {
+      char c = pattern.charAt(i);
+      if (c == '\\' && i + 1 < pattern.length() && pattern.charAt(i + 1) == 'n') {
+        literal.append('\n');
+        i += 2;
+      } else if (c == '$' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '{') {
+        int end = pattern.indexOf('}', i + 2);
+        if (end < 0) {
+          throw new IllegalArgumentException("Unclosed placeholder at position " + i + " of template: " + pattern);
+        }
+        if (literal.length() > 0) {
+          estimatedLength += literal.length();
+          kinds.add(LITERAL);
+          args.add(literals.size());
+          sectionEnds.add(-1);
+          literals.add(literal.toString());
+          literal.setLength(0);
+        }
+        String token = pattern.substring(i + 2, end);
+        if (token.startsWith("?")) {
+          openSections.addFirst(kinds.size());
+          kinds.add(SECTION);
+          args.add(placeholder(token.substring(1), pattern).ordinal());
+          sectionEnds.add(-1);
+        } else if (token.startsWith("/")) {
+          int ordinal = placeholder(token.substring(1), pattern).ordinal();
+          if (openSections.isEmpty() || args.get(openSections.getFirst()) != ordinal) {
+            throw new IllegalArgumentException("Unexpected end of section '" + token.substring(1) + "' in template: " + pattern);
+          }
+          sectionEnds.set(openSections.removeFirst(), kinds.size() - 1);
+        } else {
+          estimatedLength += ESTIMATED_VALUE_LENGTH;
+          kinds.add(VALUE);
+          args.add(placeholder(token, pattern).ordinal());
+          sectionEnds.add(-1);
+        }
+        i = end + 1;
+      } else {
+        literal.append(c);
+        i++;
+      }
+    }
+    if (!openSections.isEmpty()) {
+      throw new IllegalArgumentException("Unclosed section in template: " + pattern);
+    }
+    if (literal.length() > 0) {
+      estimatedLength += literal.length();
+      kinds.add(LITERAL);
+      args.add(literals.size());
+      sectionEnds.add(-1);
+      literals.add(literal.toString());
+    }
+
+    byte[] kindArray = new byte[kinds.size()];
+    int[] argArray = new int[kinds.size()];
+    int[] sectionEndArray = new int[kinds.size()];
+    for (int pc = 0; pc < kindArray.length; pc++) {
+      kindArray[pc] = kinds.get(pc);
+      argArray[pc] = args.get(pc);
+      sectionEndArray[pc] = sectionEnds.get(pc);
+    }
+    return new IssueTemplate(pattern, kindArray, argArray, sectionEndArray, literals.toArray(new String[literals.size()]), estimatedLength);
+  }
+
+  private static Placeholder placeholder(String token, String pattern) {
+    Placeholder placeholder = Placeholder.fromToken(token);
+    if (placeholder == null) {
+      throw new IllegalArgumentException("Unknown placeholder '" + token + "' in template: " + pattern);
+    }
+    return placeholder;
+  }
+
+  public String render(IssueFields fields) {
+    StringBuilder buffer = BUFFER.get();
+    buffer.setLength(0);
+    buffer.ensureCapacity(estimatedLength);
+    render(fields, buffer);
+    String text = buffer.toString();
+    if (buffer.capacity() > MAX_REUSED_CAPACITY) {
+      BUFFER.remove();
+    }
+    return text;
+  }
+
+  public void render(IssueFields fields, StringBuilder out) {
+    for (int pc = 0; pc < kinds.length; pc++) {
+      switch (kinds[pc]) {
+        case LITERAL:
+          out.append(literals[args[pc]]);
+          break;
+        case VALUE:
+          String value = fields.get(args[pc]);
+          if (value != null) {
+            out.append(value);
+          }
+          break;
+        default:
+          if (StringUtils.isBlank(fields.get(args[pc]))) {
+            pc = sectionEnds[pc];
+          }
+          break;
+      }
+    }
+  }
+
+  public String getPattern() {
+    return pattern;
+  }
+}
@@ -27,51 +27,88 @@ import org.sonar.api.workflow.Comment;
 import org.sonar.api.workflow.MutableReview;
 import org.sonar.api.workflow.Review;
 import org.sonar.api.workflow.WorkflowContext;
+import org.sonar.plugins.testtrack.ProjectConfig;
 import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.remote.CallLane;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.reviews.IssueFields.Placeholder;
+import org.sonar.plugins.testtrack.stats.OperationalStats;
+import org.sonar.plugins.testtrack.trace.Trace;
+import org.sonar.plugins.testtrack.trace.Tracer;
 
 import java.rmi.RemoteException;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class LinkFunction extends Function implements ServerExtension {
 
   private final TestTrackIssueCreator jiraIssueCreator;
+  private final LinkRegistry linkRegistry;
+  private final OperationalStats stats;
+  private final Tracer tracer;
+  private final RemoteCallExecutor executor;
 
-  public LinkFunction(TestTrackIssueCreator jiraIssueCreator) {
+  public LinkFunction(TestTrackIssueCreator jiraIssueCreator, LinkRegistry linkRegistry, OperationalStats stats,
+      Tracer tracer, RemoteCallExecutor executor) {
+    this.executor = executor;
     this.jiraIssueCreator = jiraIssueCreator;
+    this.linkRegistry = linkRegistry;
+    this.stats = stats;
+    this.tracer = tracer;
   }
 
   @Override
-  public void doExecute(MutableReview review, Review initialReview, WorkflowContext context, Map<String, String> parameters) {
-    RemoteIssue issue;
+  public void doExecute(MutableReview review, final Review initialReview, final WorkflowContext context, final Map<String, String> parameters) {
+    Trace trace = tracer.start("link");
     try {
-      issue = jiraIssueCreator.createIssue(initialReview, context.getProjectSettings(), parameters.get("text"));
+      link(review, initialReview, context, parameters, trace);
+    } finally {
+      trace.finish();
+    }
+  }
+
+  private void link(MutableReview review, final Review initialReview, final WorkflowContext context, final Map<String, String> parameters, Trace trace) {
+    // read once, the configuration is passed down to every step of the link
+    final ProjectConfig config = ProjectConfig.of(context.getProjectSettings());
+    final Callable<RemoteIssue> createIssue = new Callable<RemoteIssue>() {
+      public RemoteIssue call() throws RemoteException {
+        return jiraIssueCreator.createIssue(initialReview, context.getProjectSettings(), config, parameters.get("text"));
+      }
+    };
+    LinkRegistry.Link link;
+    try {
+      link = linkRegistry.link(initialReview.getReviewId(), new Callable<RemoteIssue>() {
+        public RemoteIssue call() throws RemoteException {
+          return executor.run(StringUtils.defaultString(config.getServerUrl()), CallLane.INTERACTIVE,
+              createIssue);
+        }
+      });
     } catch (RemoteException e) {
       throw new IllegalStateException("Impossible to create an issue on JIRA. A problem occured with the remote server: " + e.getMessage(), e);
     }
+    RemoteIssue issue = link.getIssue();
+    stats.recordLink(link.isCreated());
 
-    createComment(issue, review, context, parameters);
+    trace.phase("writeBack");
+    if (link.isCreated()) {
+      createComment(issue, review, context, config, parameters);
+    }
     // and add the property
     review.setProperty(TestTrackConstants.REVIEW_DATA_PROPERTY_KEY, issue.getKey());
   }
 
-  protected void createComment(RemoteIssue issue, MutableReview review, WorkflowContext context, Map<String, String> parameters) {
+  protected void createComment(RemoteIssue issue, MutableReview review, WorkflowContext context, ProjectConfig config, Map<String, String> parameters) {
     Comment newComment = review.createComment();
     newComment.setUserId(context.getUserId());
-    newComment.setMarkdownText(generateCommentText(issue, context, parameters));
+    newComment.setMarkdownText(generateCommentText(issue, config, parameters));
   }
 
-  protected String generateCommentText(RemoteIssue issue, WorkflowContext context, Map<String, String> parameters) {
-    StringBuilder message = new StringBuilder();
-    String text = parameters.get("text");
-    if (!StringUtils.isBlank(text)) {
-      message.append(text);
-      message.append("\n\n");
-    }
-    message.append("Review linked to JIRA issue: ");
-    message.append(context.getProjectSettings().getString(TestTrackConstants.SERVER_URL_PROPERTY));
-    message.append("/browse/");
-    message.append(issue.getKey());
-    return message.toString();
+  protected String generateCommentText(RemoteIssue issue, ProjectConfig config, Map<String, String> parameters) {
+    IssueFields fields = new IssueFields()
+        .set(Placeholder.COMMENT, parameters.get("text"))
+        .set(Placeholder.JIRA_URL, config.getServerUrl())
+        .set(Placeholder.ISSUE_KEY, issue.getKey());
+    return config.getCommentTemplate().render(fields);
   }
 
 }
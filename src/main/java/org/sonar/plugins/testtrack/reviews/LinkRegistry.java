@@ -0,0 +1,173 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import org.sonar.api.ServerExtension;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Makes linking a review to a JIRA issue idempotent when the same review is linked several times at once, by double
+ * clicks or by two reviewers: the requests wait for the issue created by the first one instead of creating their own.
+ * Issues created in the last minutes are also remembered, as the review property marking the link is only visible once
+ * the first request is committed.
+ * <p/>
+ * Reviews are spread over a fixed number of stripes, each with its own lock. Locks are only held to look up and update
+ * the maps of the stripe, never during the remote call, so other reviews are never blocked.
+ */
+public class LinkRegistry implements ServerExtension {
+
+  static final int STRIPES = 32;
+  static final int RECENT_LINKS_PER_STRIPE = 32;
+  static final long RECENT_LINK_TTL_MS = 5 * 60 * 1000L;
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+
+  public LinkRegistry() {
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * Runs the creation of the issue linked to the review, unless it is already running or was done recently.
+   */
+  public Link link(Long reviewId, Callable<RemoteIssue> creation) throws RemoteException {
+    if (reviewId == null) {
+      return new Link(call(creation), true);
+    }
+    Stripe stripe = stripeOf(reviewId);
+    FutureTask<RemoteIssue> task;
+    boolean owner = false;
+    synchronized (stripe) {
+      RecentLink recent = stripe.recent.get(reviewId);
+      if (recent != null && now() - recent.linkedAt < RECENT_LINK_TTL_MS) {
+        return new Link(recent.issue, false);
+      }
+      task = stripe.inFlight.get(reviewId);
+      if (task == null) {
+        task = new FutureTask<RemoteIssue>(creation);
+        stripe.inFlight.put(reviewId, task);
+        owner = true;
+      }
+    }
+    if (!owner) {
+      // the task belongs to the first request, waiting for it must never cancel it
+      return new Link(RemoteCallExecutor.awaitShared(task), false);
+    }
+    task.run();
+    complete(stripe, reviewId, task);
+    return new Link(RemoteCallExecutor.await(task), true);
+  }
+
+  private void complete(Stripe stripe, Long reviewId, FutureTask<RemoteIssue> task) {
+    synchronized (stripe) {
+      stripe.inFlight.remove(reviewId);
+      try {
+        stripe.recent.put(reviewId, new RecentLink(task.get(), now()));
+      } catch (Exception e) {
+        // failed creations are not remembered, the next request tries again
+      }
+    }
+  }
+
+  public int inFlightCount() {
+    int count = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        count += stripe.inFlight.size();
+      }
+    }
+    return count;
+  }
+
+  protected long now() {
+    return System.currentTimeMillis();
+  }
+
+  private Stripe stripeOf(Long reviewId) {
+    long id = reviewId;
+    int hash = (int) (id ^ (id >>> 32));
+    hash ^= (hash >>> 16);
+    return stripes[hash & (STRIPES - 1)];
+  }
+
+  private static RemoteIssue call(Callable<RemoteIssue> creation) throws RemoteException {
+    try {
+      return creation.call();
+    } catch (RemoteException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RemoteException("Call to the JIRA server failed", e);
+    }
+  }
+
+  /**
+   * The issue linked to a review, and whether it was created by this request.
+   */
+  public static final class Link {
+    private final RemoteIssue issue;
+    private final boolean created;
+
+    Link(RemoteIssue issue, boolean created) {
+      this.issue = issue;
+      this.created = created;
+    }
+
+    public RemoteIssue getIssue() {
+      return issue;
+    }
+
+    public boolean isCreated() {
+      return created;
+    }
+  }
+
+  private static final class Stripe {
+    private final Map<Long, FutureTask<RemoteIssue>> inFlight = new HashMap<Long, FutureTask<RemoteIssue>>();
+    private final Map<Long, RecentLink> recent = new LinkedHashMap<Long, RecentLink>() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, RecentLink> eldest) {
+        return size() > RECENT_LINKS_PER_STRIPE;
+      }
+    };
+  }
+
+  private static final class RecentLink {
+    private final RemoteIssue issue;
+    private final long linkedAt;
+
+    private RecentLink(RemoteIssue issue, long linkedAt) {
+      this.issue = issue;
+      this.linkedAt = linkedAt;
+    }
+  }
+}
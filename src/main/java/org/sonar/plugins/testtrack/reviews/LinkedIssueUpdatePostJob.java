@@ -0,0 +1,168 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.PostJob;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.remote.CallLane;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.reviews.LinkedIssueUpdates.PendingUpdate;
+import org.sonar.plugins.testtrack.transport.InvalidServerUrlException;
+import org.sonar.plugins.testtrack.transport.TrackerSession;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+import org.sonar.plugins.testtrack.transport.TrackerTransports;
+
+import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Pushes at the end of the analysis the updates collected for the linked JIRA issues, through a single session. The
+ * reviews of the issues updated are then marked as synchronized, so that the next analyses only push new changes.
+ */
+public class LinkedIssueUpdatePostJob implements PostJob {
+  private static final Logger LOG = LoggerFactory.getLogger(LinkedIssueUpdatePostJob.class);
+
+  private final Settings settings;
+  private final LinkedIssueUpdates updates;
+  private final RemoteCallExecutor executor;
+  private final ReviewLinks reviewLinks;
+
+  public LinkedIssueUpdatePostJob(Settings settings, LinkedIssueUpdates updates, RemoteCallExecutor executor, ReviewLinks reviewLinks) {
+    this.settings = settings;
+    this.updates = updates;
+    this.executor = executor;
+    this.reviewLinks = reviewLinks;
+  }
+
+  public void executeOn(Project project, SensorContext context) {
+    if (updates.isEmpty()) {
+      return;
+    }
+    Collection<PendingUpdate> pending = updates.drain();
+    String serverUrl = settings.getString(TestTrackConstants.SERVER_URL_PROPERTY);
+    try {
+      TrackerSession session = createSession();
+      session.connect(settings.getString(TestTrackConstants.USERNAME_PROPERTY), settings.getString(TestTrackConstants.PASSWORD_PROPERTY));
+
+      PriorityMapping priorityMapping = PriorityMapping.DEFAULT;
+      if (hasSeverity(pending)) {
+        priorityMapping = new PriorityMappingResolver().resolve(session.getTransport(), session.getAuthenticationToken(), settings);
+      }
+      List<PendingUpdate> pushed = push(session.getTransport(), session.getAuthenticationToken(), serverUrl, priorityMapping, pending);
+      markSynchronized(pushed);
+      LOG.info("{} linked JIRA issues updated", pushed.size());
+
+      session.disconnect();
+    } catch (RemoteException e) {
+      LOG.error("Error accessing Jira web service, linked issues have not been updated", e);
+    } catch (InvalidServerUrlException e) {
+      LOG.error("The specified JIRA URL is not valid: " + serverUrl, e);
+    } catch (IllegalStateException e) {
+      LOG.error("Linked JIRA issues have not been updated: " + e.getMessage(), e);
+    }
+  }
+
+  protected TrackerSession createSession() {
+    return new TrackerSession(TrackerTransports.create(settings));
+  }
+
+  /**
+   * @return the updates pushed, in the order given
+   */
+  protected List<PendingUpdate> push(TrackerTransport transport, String authToken, String serverUrl, PriorityMapping priorityMapping,
+      Collection<PendingUpdate> pending) throws RemoteException {
+    List<PendingUpdate> ordered = Lists.newArrayList(pending);
+    List<Callable<Boolean>> calls = Lists.newArrayListWithCapacity(ordered.size());
+    for (PendingUpdate update : ordered) {
+      calls.add(new PushCall(transport, authToken, priorityMapping, update));
+    }
+    List<PendingUpdate> pushed = Lists.newArrayList();
+    int i = 0;
+    for (Boolean success : executor.invokeAll(serverUrl, CallLane.SYNC, calls)) {
+      if (success) {
+        pushed.add(ordered.get(i));
+      }
+      i++;
+    }
+    return pushed;
+  }
+
+  /**
+   * Written on the thread of the post job, the database session is not shared with the threads of the pushes.
+   */
+  private void markSynchronized(List<PendingUpdate> pushed) {
+    for (PendingUpdate update : pushed) {
+      if (update.getReviewId() != null) {
+        reviewLinks.setProperties(update.getReviewId(), update.getReviewProperties());
+      }
+    }
+    reviewLinks.commit();
+  }
+
+  private static boolean hasSeverity(Collection<PendingUpdate> pending) {
+    for (PendingUpdate update : pending) {
+      if (update.hasSeverity()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static final class PushCall implements Callable<Boolean> {
+    private final TrackerTransport transport;
+    private final String authToken;
+    private final PriorityMapping priorityMapping;
+    private final PendingUpdate update;
+
+    private PushCall(TrackerTransport transport, String authToken, PriorityMapping priorityMapping, PendingUpdate update) {
+      this.transport = transport;
+      this.authToken = authToken;
+      this.priorityMapping = priorityMapping;
+      this.update = update;
+    }
+
+    public Boolean call() {
+      try {
+        if (update.hasFields()) {
+          transport.updateIssue(authToken, update.getIssueKey(), update.toRemoteFieldValues(priorityMapping));
+        }
+        if (update.hasComment()) {
+          transport.addComment(authToken, update.getIssueKey(), update.toRemoteComment());
+        }
+        return true;
+      } catch (RemoteException e) {
+        LOG.warn("Unable to update JIRA issue " + update.getIssueKey(), e);
+        return false;
+      } catch (RuntimeException e) {
+        // a broken update must neither fail the analysis nor cancel the other pushes
+        LOG.warn("Unable to update JIRA issue " + update.getIssueKey(), e);
+        return false;
+      }
+    }
+  }
+}
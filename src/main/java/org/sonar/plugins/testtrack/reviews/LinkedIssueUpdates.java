@@ -0,0 +1,165 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.sonar.api.BatchExtension;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects, during an analysis, the changes to push to the JIRA issues already linked to reviews. Updates of the
+ * same issue are merged so that each issue costs at most one comment and one update call. The review properties
+ * recorded with an update are written once it is pushed.
+ */
+public class LinkedIssueUpdates implements BatchExtension {
+
+  static final String PRIORITY_FIELD = "priority";
+
+  private final Map<String, PendingUpdate> updatesByIssue = Maps.newLinkedHashMap();
+
+  public synchronized LinkedIssueUpdates addComment(String issueKey, String text) {
+    updateOf(issueKey).comments.add(text);
+    return this;
+  }
+
+  public synchronized LinkedIssueUpdates setField(String issueKey, String fieldId, String value) {
+    updateOf(issueKey).fields.put(fieldId, value);
+    return this;
+  }
+
+  /**
+   * Sets the priority of the issue to the one of the given Sonar severity, mapped when the updates are pushed.
+   */
+  public synchronized LinkedIssueUpdates setSeverity(String issueKey, String severity) {
+    updateOf(issueKey).severity = severity;
+    return this;
+  }
+
+  /**
+   * Properties to write to the review linked to the issue once the update is pushed.
+   */
+  public synchronized LinkedIssueUpdates setReviewProperties(String issueKey, long reviewId, Map<String, String> properties) {
+    PendingUpdate update = updateOf(issueKey);
+    update.reviewId = reviewId;
+    update.reviewProperties.putAll(properties);
+    return this;
+  }
+
+  public synchronized boolean isEmpty() {
+    return updatesByIssue.isEmpty();
+  }
+
+  /**
+   * Returns the pending updates and forgets them.
+   */
+  public synchronized Collection<PendingUpdate> drain() {
+    List<PendingUpdate> pending = ImmutableList.copyOf(updatesByIssue.values());
+    updatesByIssue.clear();
+    return pending;
+  }
+
+  private PendingUpdate updateOf(String issueKey) {
+    PendingUpdate update = updatesByIssue.get(issueKey);
+    if (update == null) {
+      update = new PendingUpdate(issueKey);
+      updatesByIssue.put(issueKey, update);
+    }
+    return update;
+  }
+
+  public static final class PendingUpdate {
+    private final String issueKey;
+    private final List<String> comments = Lists.newArrayList();
+    private final Map<String, String> fields = Maps.newLinkedHashMap();
+    private String severity;
+    private Long reviewId;
+    private final Map<String, String> reviewProperties = Maps.newLinkedHashMap();
+
+    private PendingUpdate(String issueKey) {
+      this.issueKey = issueKey;
+    }
+
+    public String getIssueKey() {
+      return issueKey;
+    }
+
+    public boolean hasComment() {
+      return !comments.isEmpty();
+    }
+
+    public boolean hasFields() {
+      return !fields.isEmpty() || severity != null;
+    }
+
+    public boolean hasSeverity() {
+      return severity != null;
+    }
+
+    /**
+     * @return null if no review properties are written once pushed
+     */
+    public Long getReviewId() {
+      return reviewId;
+    }
+
+    public Map<String, String> getReviewProperties() {
+      return reviewProperties;
+    }
+
+    /**
+     * All the comments recorded for the issue, as a single comment.
+     */
+    public RemoteComment toRemoteComment() {
+      StringBuilder body = new StringBuilder();
+      for (String comment : comments) {
+        if (body.length() > 0) {
+          body.append("\n\n");
+        }
+        body.append(comment);
+      }
+      RemoteComment remoteComment = new RemoteComment();
+      remoteComment.setBody(body.toString());
+      return remoteComment;
+    }
+
+    /**
+     * The last value recorded for each field, the severity mapped to the priority field.
+     */
+    public RemoteFieldValue[] toRemoteFieldValues(PriorityMapping priorityMapping) {
+      Map<String, String> values = Maps.newLinkedHashMap(fields);
+      if (severity != null) {
+        values.put(PRIORITY_FIELD, priorityMapping.priorityFor(severity));
+      }
+      RemoteFieldValue[] remoteValues = new RemoteFieldValue[values.size()];
+      int i = 0;
+      for (Map.Entry<String, String> field : values.entrySet()) {
+        remoteValues[i++] = new RemoteFieldValue(field.getKey(), new String[] {field.getValue()});
+      }
+      return remoteValues;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.batch.Decorator;
+import org.sonar.api.batch.DecoratorBarriers;
+import org.sonar.api.batch.DecoratorContext;
+import org.sonar.api.batch.DependsUpon;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rules.Violation;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.reviews.ReviewLinks.LinkedReview;
+
+import java.util.Map;
+
+/**
+ * Finds the violations linked to a JIRA issue whose severity or message changed since they were last pushed, and
+ * records the comment and the priority to push to their issue in {@link LinkedIssueUpdates}. The first time a linked
+ * violation is met, its current state is only written to its review, as the state the issue was created from. It
+ * runs once the violations are persisted, so that they all have their permanent ID.
+ */
+@DependsUpon(DecoratorBarriers.END_OF_VIOLATION_PERSISTENCE)
+public class LinkedViolationChanges implements Decorator {
+
+  private final Settings settings;
+  private final ReviewLinks reviewLinks;
+  private final LinkedIssueUpdates updates;
+  private Map<Integer, LinkedReview> linkedReviews;
+
+  public LinkedViolationChanges(Settings settings, ReviewLinks reviewLinks, LinkedIssueUpdates updates) {
+    this.settings = settings;
+    this.reviewLinks = reviewLinks;
+    this.updates = updates;
+  }
+
+  public boolean shouldExecuteOnProject(Project project) {
+    return StringUtils.isNotBlank(settings.getString(TestTrackConstants.SERVER_URL_PROPERTY))
+      && StringUtils.isNotBlank(settings.getString(TestTrackConstants.USERNAME_PROPERTY))
+      && StringUtils.isNotBlank(settings.getString(TestTrackConstants.PASSWORD_PROPERTY));
+  }
+
+  @SuppressWarnings("rawtypes")
+  public void decorate(Resource resource, DecoratorContext context) {
+    if (linkedReviews == null) {
+      // reviews belong to the root project, whatever the module of their violation
+      linkedReviews = reviewLinks.findByProject(context.getProject().getRoot().getId());
+    }
+    if (linkedReviews.isEmpty()) {
+      return;
+    }
+    for (Violation violation : context.getViolations()) {
+      LinkedReview review = violation.getPermanentId() == null ? null : linkedReviews.get(violation.getPermanentId());
+      if (review != null) {
+        compare(review, violation);
+      }
+    }
+  }
+
+  private void compare(LinkedReview review, Violation violation) {
+    String severity = violation.getSeverity() == null ? null : violation.getSeverity().name();
+    String messageHash = DigestUtils.md5Hex(StringUtils.defaultString(violation.getMessage()));
+    Map<String, String> state = ImmutableMap.of(
+        TestTrackConstants.REVIEW_SYNCED_SEVERITY_KEY, StringUtils.defaultString(severity),
+        TestTrackConstants.REVIEW_SYNCED_MESSAGE_KEY, messageHash);
+    String syncedSeverity = review.getProperty(TestTrackConstants.REVIEW_SYNCED_SEVERITY_KEY);
+    String syncedMessage = review.getProperty(TestTrackConstants.REVIEW_SYNCED_MESSAGE_KEY);
+    if (syncedSeverity == null && syncedMessage == null) {
+      reviewLinks.setProperties(review.getReviewId(), state);
+      return;
+    }
+    String issueKey = review.getIssueKey();
+    boolean changed = false;
+    if (severity != null && !severity.equals(syncedSeverity)) {
+      updates.setSeverity(issueKey, severity);
+      updates.addComment(issueKey, "Sonar severity changed from " + StringUtils.defaultIfEmpty(syncedSeverity, "none") + " to " + severity + ".");
+      changed = true;
+    }
+    if (!messageHash.equals(syncedMessage)) {
+      updates.addComment(issueKey, "Sonar message changed to: " + StringUtils.defaultString(violation.getMessage()));
+      changed = true;
+    }
+    if (changed) {
+      updates.setReviewProperties(issueKey, review.getReviewId(), state);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import org.sonar.api.rules.RulePriority;
+
+/**
+ * JIRA priority and issue type IDs to use when creating issues, resolved once for a JIRA project.
+ */
+public final class PriorityMapping {
+
+  /**
+   * IDs of the priorities and of the "Task" issue type in a default JIRA installation.
+   */
+  public static final PriorityMapping DEFAULT = new PriorityMapping(new String[] {"5", "4", "3", "2", "1"}, "3");
+
+  // indexed by RulePriority ordinal
+  private final String[] priorityIds;
+  private final String issueTypeId;
+
+  PriorityMapping(String[] priorityIds, String issueTypeId) {
+    this.priorityIds = priorityIds;
+    this.issueTypeId = issueTypeId;
+  }
+
+  /**
+   * Returns the ID of the JIRA priority for the given Sonar severity, the one of MAJOR if the severity is unknown.
+   */
+  public String priorityFor(String severity) {
+    RulePriority priority;
+    try {
+      priority = severity == null ? RulePriority.MAJOR : RulePriority.valueOf(severity);
+    } catch (IllegalArgumentException e) {
+      priority = RulePriority.MAJOR;
+    }
+    return priorityIds[priority.ordinal()];
+  }
+
+  public String getIssueTypeId() {
+    return issueTypeId;
+  }
+}
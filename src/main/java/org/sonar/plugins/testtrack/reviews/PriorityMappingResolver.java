@@ -0,0 +1,169 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.atlassian.jira.rpc.soap.client.RemoteIssueType;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import com.atlassian.jira.rpc.soap.client.RemoteProject;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.ServerExtension;
+import org.sonar.api.config.Settings;
+import org.sonar.api.rules.RulePriority;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the configured priority and issue type names against the IDs of the JIRA server. Results are cached per
+ * JIRA project and configuration.
+ */
+@Properties({
+  @Property(
+    key = TestTrackConstants.PRIORITY_MAPPING_PROPERTY,
+    defaultValue = "",
+    name = "Priority mapping",
+    description = "Name of the JIRA priority to use for each Sonar severity, "
+      + "example : BLOCKER=Blocker,CRITICAL=Critical,MAJOR=Major,MINOR=Minor,INFO=Trivial. "
+      + "Default JIRA priority IDs are used when empty.",
+    global = true,
+    project = true
+  ),
+  @Property(
+    key = TestTrackConstants.ISSUE_TYPE_PROPERTY,
+    defaultValue = "",
+    name = "Issue type",
+    description = "Name of the JIRA issue type of the created issues, example : Task. "
+      + "The default ID of the Task issue type is used when empty.",
+    global = true,
+    project = true
+  )
+})
+public class PriorityMappingResolver implements ServerExtension {
+  private static final Logger LOG = LoggerFactory.getLogger(PriorityMappingResolver.class);
+  private static final long TIME_TO_LIVE_MS = TimeUnit.HOURS.toMillis(1);
+
+  private final ConcurrentMap<String, CachedMapping> cache = new ConcurrentHashMap<String, CachedMapping>();
+
+  /**
+   * Returns the mapping for the project, calling the JIRA server only when it is not already known.
+   */
+  public PriorityMapping resolve(TrackerTransport transport, String authToken, Settings settings) throws RemoteException {
+    String mappingSpec = StringUtils.defaultString(settings.getString(TestTrackConstants.PRIORITY_MAPPING_PROPERTY));
+    String issueTypeName = StringUtils.defaultString(settings.getString(TestTrackConstants.ISSUE_TYPE_PROPERTY));
+    if (StringUtils.isBlank(mappingSpec) && StringUtils.isBlank(issueTypeName)) {
+      return PriorityMapping.DEFAULT;
+    }
+
+    String cacheKey = cacheKey(settings);
+    CachedMapping cached = cache.get(cacheKey);
+    long now = System.currentTimeMillis();
+    if (cached != null && cached.expiresAt > now) {
+      return cached.mapping;
+    }
+    PriorityMapping mapping = new PriorityMapping(
+      resolvePriorities(transport, authToken, mappingSpec),
+      resolveIssueType(transport, authToken, settings.getString(TestTrackConstants.JIRA_PROJECT_KEY_PROPERTY), issueTypeName));
+    cache.put(cacheKey, new CachedMapping(mapping, now + TIME_TO_LIVE_MS));
+    return mapping;
+  }
+
+  /**
+   * Forgets the mapping of the project, for example when JIRA rejected one of its IDs.
+   */
+  public void invalidate(Settings settings) {
+    cache.remove(cacheKey(settings));
+  }
+
+  public void invalidateAll() {
+    cache.clear();
+  }
+
+  private static String cacheKey(Settings settings) {
+    return settings.getString(TestTrackConstants.SERVER_URL_PROPERTY) + '|'
+      + settings.getString(TestTrackConstants.JIRA_PROJECT_KEY_PROPERTY) + '|'
+      + settings.getString(TestTrackConstants.PRIORITY_MAPPING_PROPERTY) + '|'
+      + settings.getString(TestTrackConstants.ISSUE_TYPE_PROPERTY);
+  }
+
+  private String[] resolvePriorities(TrackerTransport transport, String authToken, String mappingSpec) throws RemoteException {
+    String[] priorityIds = new String[RulePriority.values().length];
+    for (RulePriority severity : RulePriority.values()) {
+      priorityIds[severity.ordinal()] = PriorityMapping.DEFAULT.priorityFor(severity.name());
+    }
+    if (StringUtils.isBlank(mappingSpec)) {
+      return priorityIds;
+    }
+
+    Map<String, String> idsByName = Maps.newHashMap();
+    for (RemotePriority priority : transport.getPriorities(authToken)) {
+      idsByName.put(priority.getName().toLowerCase(), priority.getId());
+    }
+    for (String entry : StringUtils.split(mappingSpec, ',')) {
+      String severityName = StringUtils.trim(StringUtils.substringBefore(entry, "=")).toUpperCase();
+      String priorityName = StringUtils.trim(StringUtils.substringAfter(entry, "="));
+      RulePriority severity;
+      try {
+        severity = RulePriority.valueOf(severityName);
+      } catch (IllegalArgumentException e) {
+        throw new IllegalStateException("Unknown Sonar severity '" + severityName + "' in the priority mapping: " + mappingSpec, e);
+      }
+      String priorityId = idsByName.get(priorityName.toLowerCase());
+      if (priorityId == null) {
+        throw new IllegalStateException("The JIRA priority '" + priorityName + "' does not exist. Available priorities: " + idsByName.keySet());
+      }
+      priorityIds[severity.ordinal()] = priorityId;
+    }
+    LOG.debug("JIRA priority mapping resolved: {}", mappingSpec);
+    return priorityIds;
+  }
+
+  private String resolveIssueType(TrackerTransport transport, String authToken, String projectKey, String issueTypeName) throws RemoteException {
+    if (StringUtils.isBlank(issueTypeName)) {
+      return PriorityMapping.DEFAULT.getIssueTypeId();
+    }
+    RemoteProject project = transport.getProjectByKey(authToken, projectKey);
+    for (RemoteIssueType issueType : transport.getIssueTypesForProject(authToken, project.getId())) {
+      if (issueTypeName.trim().equalsIgnoreCase(issueType.getName())) {
+        return issueType.getId();
+      }
+    }
+    throw new IllegalStateException("The JIRA issue type '" + issueTypeName + "' does not exist in project " + projectKey);
+  }
+
+  private static final class CachedMapping {
+    private final PriorityMapping mapping;
+    private final long expiresAt;
+
+    private CachedMapping(PriorityMapping mapping, long expiresAt) {
+      this.mapping = mapping;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.ServerExtension;
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.RuleFinder;
+import org.sonar.api.workflow.Review;
+import org.sonar.plugins.testtrack.ProjectConfig;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.transport.JsonReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.List;
+
+/**
+ * Files attached to the JIRA issue created for a review: the source lines around the violation and the description
+ * of the rule. The lines are read from the Sonar web services as they arrive and encoded in base 64 as they are read,
+ * up to a maximum size, so that neither the source file nor the response is held in memory. The web services are
+ * called as the configured Sonar user, anonymously if there is none.
+ */
+public class ReviewAttachments implements ServerExtension {
+  private static final Logger LOG = LoggerFactory.getLogger(ReviewAttachments.class);
+  private static final String UTF8 = "UTF-8";
+  private static final int TIMEOUT_MS = 10000;
+  private static final String TRUNCATED = "\n[truncated]\n";
+
+  private final RuleFinder ruleFinder;
+
+  public ReviewAttachments(RuleFinder ruleFinder) {
+    this.ruleFinder = ruleFinder;
+  }
+
+  public List<Attachment> collect(Review review, ProjectConfig config) {
+    int maxBytes = config.getAttachmentMaxKB() * 1024;
+    List<Attachment> attachments = Lists.newArrayList();
+    String sonarUrl = config.getSonarUrl();
+    if (review.getReviewId() != null && review.getLine() != null && StringUtils.isNotBlank(sonarUrl)) {
+      try {
+        Attachment snippet = sourceSnippet(sonarUrl, authorization(config), review, config.getAttachmentContextLines(), maxBytes);
+        if (snippet != null) {
+          attachments.add(snippet);
+        }
+      } catch (IOException e) {
+        LOG.warn("Unable to read the source of review " + review.getReviewId() + " from Sonar: " + e.getMessage());
+      }
+    }
+    Rule rule = ruleFinder.findByKey(review.getRuleRepositoryKey(), review.getRuleKey());
+    if (rule != null && StringUtils.isNotBlank(rule.getDescription())) {
+      attachments.add(ruleDescription(review.getRuleKey(), rule.getDescription(), maxBytes));
+    }
+    return attachments;
+  }
+
+  protected Attachment sourceSnippet(String sonarUrl, String authorization, Review review, int contextLines, int maxBytes) throws IOException {
+    String resource = findResource(sonarUrl, authorization, review.getReviewId());
+    if (resource == null) {
+      return null;
+    }
+    long line = review.getLine();
+    long from = Math.max(1, line - contextLines);
+    long to = line + contextLines;
+    JsonReader reader = new JsonReader(open(sonarUrl + "/api/sources?format=json&resource=" + encode(resource) + "&from=" + from + "&to=" + to,
+        authorization));
+    try {
+      return new Attachment(fileName(resource) + "-" + line + ".txt", encodeSourceLines(reader, line, maxBytes));
+    } finally {
+      reader.close();
+    }
+  }
+
+  private String findResource(String sonarUrl, String authorization, Long reviewId) throws IOException {
+    JsonReader reader = new JsonReader(open(sonarUrl + "/api/reviews?format=json&ids=" + reviewId, authorization));
+    try {
+      String resource = null;
+      reader.beginArray();
+      while (reader.hasNext()) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          if ("resource".equals(reader.nextName())) {
+            resource = reader.nextString();
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+      }
+      reader.endArray();
+      return resource;
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Encodes the lines of a response of the sources web service, <code>[{"12":"line 12","13":"line 13"}]</code>,
+   * prefixed by their number. The line of the violation is marked.
+   */
+  static String encodeSourceLines(JsonReader reader, long violationLine, int maxBytes) throws IOException {
+    CappedBase64 out = new CappedBase64(maxBytes);
+    reader.beginArray();
+    while (reader.hasNext()) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String number = reader.nextName();
+        String text = reader.nextString();
+        String marker = number.equals(String.valueOf(violationLine)) ? ">> " : "   ";
+        if (!out.write(marker + number + "  " + StringUtils.defaultString(text) + "\n")) {
+          return out.finish();
+        }
+      }
+      reader.endObject();
+    }
+    reader.endArray();
+    return out.finish();
+  }
+
+  static Attachment ruleDescription(String ruleKey, String description, int maxBytes) {
+    CappedBase64 out = new CappedBase64(maxBytes);
+    for (String line : description.split("(?<=\n)")) {
+      if (!out.write(line)) {
+        break;
+      }
+    }
+    return new Attachment("rule-" + fileName(ruleKey) + ".html", out.finish());
+  }
+
+  /**
+   * @return the value of the Authorization header of the configured Sonar user, null if there is none
+   */
+  static String authorization(ProjectConfig config) {
+    if (config.getSonarLogin() == null) {
+      return null;
+    }
+    try {
+      byte[] credentials = (config.getSonarLogin() + ':' + StringUtils.defaultString(config.getSonarPassword())).getBytes(UTF8);
+      return "Basic " + new String(Base64.encodeBase64(credentials), "US-ASCII");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  protected Reader open(String url, String authorization) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setConnectTimeout(TIMEOUT_MS);
+    connection.setReadTimeout(TIMEOUT_MS);
+    connection.setRequestProperty("Accept", "application/json");
+    if (authorization != null) {
+      connection.setRequestProperty("Authorization", authorization);
+    }
+    int status = connection.getResponseCode();
+    if (status == HttpURLConnection.HTTP_UNAUTHORIZED || status == HttpURLConnection.HTTP_FORBIDDEN) {
+      connection.disconnect();
+      throw new IOException("HTTP " + status + " on " + url + ", the source is not attached. Set "
+        + TestTrackConstants.ATTACHMENT_SONAR_LOGIN_PROPERTY + " and its password to a Sonar user allowed to browse the project");
+    }
+    if (status >= 400) {
+      connection.disconnect();
+      throw new IOException("HTTP " + status + " on " + url);
+    }
+    return new InputStreamReader(connection.getInputStream(), UTF8);
+  }
+
+  private static String fileName(String key) {
+    String name = key.substring(key.lastIndexOf(':') + 1);
+    return name.replaceAll("[^A-Za-z0-9._-]", "_");
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, UTF8);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * A file to attach, its content encoded in base 64.
+   */
+  public static final class Attachment {
+    private final String fileName;
+    private final String base64Content;
+
+    public Attachment(String fileName, String base64Content) {
+      this.fileName = fileName;
+      this.base64Content = base64Content;
+    }
+
+    public String getFileName() {
+      return fileName;
+    }
+
+    public String getBase64Content() {
+      return base64Content;
+    }
+  }
+
+  /**
+   * Base 64 encoding of UTF-8 text written piece by piece, stopping before the first piece that would exceed a maximum
+   * number of bytes.
+   */
+  static final class CappedBase64 {
+    private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    private final OutputStream out = new Base64OutputStream(encoded, true, 0, new byte[0]);
+    private final int maxBytes;
+    private int written;
+    private boolean truncated;
+
+    CappedBase64(int maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return false if the text did not fit, nothing more is written then
+     */
+    boolean write(String text) {
+      if (truncated) {
+        return false;
+      }
+      try {
+        byte[] bytes = text.getBytes(UTF8);
+        int room = maxBytes - written;
+        if (bytes.length > room) {
+          out.write(TRUNCATED.getBytes(UTF8));
+          written = maxBytes;
+          truncated = true;
+          return false;
+        }
+        out.write(bytes);
+        written += bytes.length;
+        return true;
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    String finish() {
+      try {
+        out.close();
+        return new String(encoded.toByteArray(), "US-ASCII");
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.database.DatabaseSession;
+import org.sonar.api.utils.KeyValueFormat;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+
+import javax.persistence.Query;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The reviews linked to a JIRA issue, read from and written to the data of the reviews, where {@link LinkFunction}
+ * keeps the key of the issue. Reviews are not part of the plugin API of the batch, so they are read with SQL, as
+ * the batch of Sonar itself does. Writes join the transaction of the database session of the batch, which the post
+ * jobs that write commit once with {@link #commit()} when they are done.
+ */
+public class ReviewLinks implements BatchExtension {
+
+  private static final int MAX_TITLE_LENGTH = 500;
+
+  private final DatabaseSession session;
+
+  public ReviewLinks(DatabaseSession session) {
+    this.session = session;
+  }
+
+  /**
+   * The reviews of the given root project linked to a JIRA issue, by permanent ID of their violation.
+   */
+  public Map<Integer, LinkedReview> findByProject(int projectId) {
+    Query query = session.createNativeQuery("SELECT id, rule_failure_permanent_id, data FROM reviews "
+      + "WHERE project_id = :projectId AND rule_failure_permanent_id IS NOT NULL AND data LIKE :linked");
+    query.setParameter("projectId", projectId);
+    query.setParameter("linked", "%" + TestTrackConstants.REVIEW_DATA_PROPERTY_KEY + "=%");
+    Map<Integer, LinkedReview> linked = Maps.newHashMap();
+    for (Object[] row : rows(query)) {
+      Map<String, String> data = parse((String) row[2]);
+      String issueKey = data.get(TestTrackConstants.REVIEW_DATA_PROPERTY_KEY);
+      if (StringUtils.isNotBlank(issueKey)) {
+        linked.put(((Number) row[1]).intValue(), new LinkedReview(((Number) row[0]).longValue(), issueKey, data));
+      }
+    }
+    return linked;
+  }
+
+  /**
+   * Adds the given properties to the data of the review, replacing the ones with the same keys.
+   */
+  public void setProperties(long reviewId, Map<String, String> properties) {
+    Query select = session.createNativeQuery("SELECT id, data FROM reviews WHERE id = :id");
+    select.setParameter("id", reviewId);
+    List<Object[]> found = rows(select);
+    if (!found.isEmpty()) {
+      update(reviewId, (String) found.get(0)[1], properties);
+    }
+  }
+
+  /**
+   * Links a violation to the JIRA issue created for it: the key of the issue is written to the review of the
+   * violation, or to a new open review if the violation has none.
+   *
+   * @param projectId ID of the root project
+   * @param title title of a new review, the message of the violation
+   */
+  public void link(String issueKey, int permanentId, int projectId, Integer resourceId, Integer line, Integer ruleId, String severity,
+      String title) {
+    Map<String, String> properties = Collections.singletonMap(TestTrackConstants.REVIEW_DATA_PROPERTY_KEY, issueKey);
+    Query select = session.createNativeQuery("SELECT id, data FROM reviews WHERE rule_failure_permanent_id = :permanentId");
+    select.setParameter("permanentId", permanentId);
+    List<Object[]> found = rows(select);
+    if (!found.isEmpty()) {
+      update(((Number) found.get(0)[0]).longValue(), (String) found.get(0)[1], properties);
+      return;
+    }
+    Date now = new Date();
+    Query insert = session.createNativeQuery("INSERT INTO reviews (created_at, updated_at, title, status, rule_failure_permanent_id, "
+      + "project_id, resource_id, resource_line, severity, rule_id, manual_violation, manual_severity, data) VALUES (:now, :now, :title, "
+      + "'OPEN', :permanentId, :projectId, :resourceId, :line, :severity, :ruleId, :manual, :manual, :data)");
+    insert.setParameter("now", now);
+    insert.setParameter("title", StringUtils.abbreviate(StringUtils.defaultString(title), MAX_TITLE_LENGTH));
+    insert.setParameter("permanentId", permanentId);
+    insert.setParameter("projectId", projectId);
+    insert.setParameter("resourceId", resourceId);
+    insert.setParameter("line", line);
+    insert.setParameter("severity", severity);
+    insert.setParameter("ruleId", ruleId);
+    insert.setParameter("manual", Boolean.FALSE);
+    insert.setParameter("data", KeyValueFormat.format(properties));
+    insert.executeUpdate();
+  }
+
+  private void update(long reviewId, String data, Map<String, String> properties) {
+    Map<String, String> merged = parse(data);
+    merged.putAll(properties);
+    Query update = session.createNativeQuery("UPDATE reviews SET data = :data, updated_at = :now WHERE id = :id");
+    update.setParameter("data", KeyValueFormat.format(merged));
+    update.setParameter("now", new Date());
+    update.setParameter("id", reviewId);
+    update.executeUpdate();
+  }
+
+  /**
+   * Commits the writes made so far on the database session of the batch.
+   */
+  public void commit() {
+    session.commit();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Object[]> rows(Query query) {
+    return query.getResultList();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, String> parse(String data) {
+    return StringUtils.isBlank(data) ? Maps.<String, String>newLinkedHashMap() : Maps.newLinkedHashMap(KeyValueFormat.parse(data));
+  }
+
+  /**
+   * A review linked to a JIRA issue, and its data when it was read.
+   */
+  public static final class LinkedReview {
+    private final long reviewId;
+    private final String issueKey;
+    private final Map<String, String> data;
+
+    public LinkedReview(long reviewId, String issueKey, Map<String, String> data) {
+      this.reviewId = reviewId;
+      this.issueKey = issueKey;
+      this.data = Collections.unmodifiableMap(data);
+    }
+
+    public long getReviewId() {
+      return reviewId;
+    }
+
+    public String getIssueKey() {
+      return issueKey;
+    }
+
+    public String getProperty(String key) {
+      return data.get(key);
+    }
+  }
+}
@@ -19,29 +19,32 @@
  */
 package org.sonar.plugins.testtrack.reviews;
 
-import com.atlassian.jira.rpc.soap.client.JiraSoapService;
 import com.atlassian.jira.rpc.soap.client.RemoteAuthenticationException;
 import com.atlassian.jira.rpc.soap.client.RemoteIssue;
 import com.atlassian.jira.rpc.soap.client.RemotePermissionException;
-import com.google.common.collect.ImmutableMap;
-import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.Properties;
 import org.sonar.api.Property;
+import org.sonar.api.PropertyType;
 import org.sonar.api.ServerExtension;
 import org.sonar.api.config.Settings;
 import org.sonar.api.workflow.Review;
+import org.sonar.plugins.testtrack.ProjectConfig;
 import org.sonar.plugins.testtrack.TestTrackConstants;
-import org.sonar.plugins.testtrack.soap.TestTrackSoapSession;
+import org.sonar.plugins.testtrack.reviews.IssueFields.Placeholder;
+import org.sonar.plugins.testtrack.stats.OperationalStats;
+import org.sonar.plugins.testtrack.trace.Trace;
+import org.sonar.plugins.testtrack.trace.Tracer;
+import org.sonar.plugins.testtrack.transport.TrackerSession;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+import org.sonar.plugins.testtrack.transport.TrackerTransports;
 
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.rmi.RemoteException;
-import java.util.Map;
+import java.util.List;
 
 /**
- * SOAP client class that is used for creating issues on a JIRA server
+ * Client class that is used for creating issues on a JIRA server, through the configured transport
  */
 @Properties({
   @Property(
@@ -52,6 +55,14 @@ import java.util.Map;
     global = true,
     project = true
   ),
+  @Property(
+    key = TestTrackConstants.TRANSPORT_PROPERTY,
+    defaultValue = TestTrackConstants.TRANSPORT_DEF_VALUE,
+    name = "Transport",
+    description = "Protocol used to talk to the JIRA server: 'soap' or 'rest' (JIRA 5 and later).",
+    global = true,
+    project = true
+  ),
   @Property(
     key = TestTrackConstants.JIRA_PROJECT_KEY_PROPERTY,
     defaultValue = "",
@@ -59,127 +70,220 @@ import java.util.Map;
     description = "Key of the JIRA project on which the issues should be created.",
     global = false,
     project = true
+  ),
+  @Property(
+    key = TestTrackConstants.SUMMARY_TEMPLATE_PROPERTY,
+    defaultValue = TestTrackConstants.SUMMARY_TEMPLATE_DEF_VALUE,
+    name = "Issue summary template",
+    description = "Summary of the JIRA issues. Placeholders: ${rule}, ${ruleKey}, ${file}, ${line}, ${severity}, ${message}, "
+      + "${comment}, ${reviewId}, ${sonarUrl}, ${jiraUrl}. ${?name}...${/name} is kept only if the placeholder is not blank.",
+    global = true,
+    project = true
+  ),
+  @Property(
+    key = TestTrackConstants.DESCRIPTION_TEMPLATE_PROPERTY,
+    defaultValue = TestTrackConstants.DESCRIPTION_TEMPLATE_DEF_VALUE,
+    name = "Issue description template",
+    description = "Description of the JIRA issues, same placeholders as the summary. \\n is a line break.",
+    global = true,
+    project = true
+  ),
+  @Property(
+    key = TestTrackConstants.COMMENT_TEMPLATE_PROPERTY,
+    defaultValue = TestTrackConstants.COMMENT_TEMPLATE_DEF_VALUE,
+    name = "Review comment template",
+    description = "Comment added to the review once linked, same placeholders as the summary plus ${issueKey}.",
+    global = true,
+    project = true
+  ),
+  @Property(
+    key = TestTrackConstants.ATTACHMENTS_PROPERTY,
+    defaultValue = "false",
+    name = "Attach source and rule",
+    description = "Attaches to the created issues the source lines around the violation and the description of the rule.",
+    global = true,
+    project = true,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key = TestTrackConstants.ATTACHMENT_CONTEXT_LINES_PROPERTY,
+    defaultValue = TestTrackConstants.ATTACHMENT_CONTEXT_LINES_DEF_VALUE,
+    name = "Attached source lines",
+    description = "Number of source lines attached before and after the line of the violation.",
+    global = true,
+    project = true,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = TestTrackConstants.ATTACHMENT_MAX_KB_PROPERTY,
+    defaultValue = TestTrackConstants.ATTACHMENT_MAX_KB_DEF_VALUE,
+    name = "Maximum attachment size",
+    description = "Maximum size in KB of each attached file, larger ones are truncated.",
+    global = true,
+    project = true,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = TestTrackConstants.ATTACHMENT_SONAR_LOGIN_PROPERTY,
+    defaultValue = "",
+    name = "Sonar login for attachments",
+    description = "Sonar user reading the source lines to attach, when the project can't be browsed anonymously.",
+    global = true,
+    project = true
+  ),
+  @Property(
+    key = TestTrackConstants.ATTACHMENT_SONAR_PASSWORD_PROPERTY,
+    defaultValue = "",
+    name = "Sonar password for attachments",
+    description = "Password of the Sonar user reading the source lines to attach.",
+    global = true,
+    project = true
   )
 })
 public class TestTrackIssueCreator implements ServerExtension {
 
-  private static final String QUOTE = "\n{quote}\n";
   private static final Logger LOG = LoggerFactory.getLogger(TestTrackIssueCreator.class);
-  private static final String TASK_ISSUE_TYPE = "3";
-  private static final Map<String, String> SONAR_SEVERITY_TO_JIRA_PRIORITY = new ImmutableMap.Builder<String, String>()
-    .put("BLOCKER", "1")
-    .put("CRITICAL", "2")
-    .put("MAJOR", "3")
-    .put("MINOR", "4")
-    .put("INFO", "5")
-    .build();
-
-  public TestTrackIssueCreator() {
+
+  private final PriorityMappingResolver priorityMappingResolver;
+  private final ReviewAttachments reviewAttachments;
+  private final OperationalStats stats;
+
+  public TestTrackIssueCreator(PriorityMappingResolver priorityMappingResolver, ReviewAttachments reviewAttachments, OperationalStats stats) {
+    this.priorityMappingResolver = priorityMappingResolver;
+    this.reviewAttachments = reviewAttachments;
+    this.stats = stats;
   }
 
   @SuppressWarnings("rawtypes")
-  public RemoteIssue createIssue(Review review, Settings settings, String commentText) throws RemoteException {
-    TestTrackSoapSession soapSession = createSoapSession(settings);
+  public RemoteIssue createIssue(Review review, Settings settings, ProjectConfig config, String commentText) throws RemoteException {
+    Tracer.current().phase("session");
+    TrackerSession session = createSession(config);
 
-    return doCreateIssue(review, soapSession, settings, commentText);
+    return doCreateIssue(review, session, settings, config, commentText);
   }
 
-  protected TestTrackSoapSession createSoapSession(Settings settings) {
-    String jiraUrl = settings.getString(TestTrackConstants.SERVER_URL_PROPERTY);
-    String baseUrl = settings.getString(TestTrackConstants.SOAP_BASE_URL_PROPERTY);
-    String completeUrl = jiraUrl + baseUrl;
-
-    // get handle to the JIRA SOAP Service from a client point of view
-    TestTrackSoapSession soapSession = null;
-    try {
-      soapSession = new TestTrackSoapSession(new URL(completeUrl));
-    } catch (MalformedURLException e) {
-      LOG.error("The JIRA server URL is not a valid one: " + completeUrl, e);
-      throw new IllegalStateException("The JIRA server URL is not a valid one: " + completeUrl, e);
-    }
-    return soapSession;
+  protected TrackerSession createSession(ProjectConfig config) {
+    return new TrackerSession(TrackerTransports.create(config));
   }
 
-  protected RemoteIssue doCreateIssue(Review review, TestTrackSoapSession soapSession, Settings settings, String commentText) {
+  protected RemoteIssue doCreateIssue(Review review, TrackerSession session, Settings settings, ProjectConfig config, String commentText) {
     // Connect to JIRA
-    String jiraUrl = settings.getString(TestTrackConstants.SERVER_URL_PROPERTY);
-    String userName = settings.getString(TestTrackConstants.USERNAME_PROPERTY);
-    String password = settings.getString(TestTrackConstants.PASSWORD_PROPERTY);
+    String jiraUrl = config.getServerUrl();
+    String userName = config.getUsername();
+    String password = config.getPassword();
+    Trace trace = Tracer.current();
+    trace.phase("login");
     try {
-      soapSession.connect(userName, password);
+      session.connect(userName, password);
     } catch (RemoteException e) {
+      stats.recordFailure(e);
       throw new IllegalStateException("Impossible to connect to the JIRA server (" + jiraUrl + ").", e);
     }
 
-    // The JIRA SOAP Service and authentication token are used to make authentication calls
-    JiraSoapService jiraSoapService = soapSession.getJiraSoapService();
-    String authToken = soapSession.getAuthenticationToken();
+    // The transport and authentication token are used to make authentication calls
+    TrackerTransport transport = session.getTransport();
+    String authToken = session.getAuthenticationToken();
 
     // And create the issue
-    RemoteIssue issue = initRemoteIssue(review, settings, commentText);
-    RemoteIssue returnedIssue = sendRequest(jiraSoapService, authToken, issue, jiraUrl, userName);
+    trace.phase("render");
+    RemoteIssue issue = initRemoteIssue(review, config, commentText, resolvePriorityMapping(transport, authToken, settings, config));
+    trace.phase("remoteCall");
+    RemoteIssue returnedIssue;
+    try {
+      returnedIssue = sendRequest(transport, authToken, issue, jiraUrl, userName);
+    } catch (IllegalStateException e) {
+      // the cached priority and issue type IDs may be outdated
+      priorityMappingResolver.invalidate(settings);
+      throw e;
+    }
 
     String issueKey = returnedIssue.getKey();
     LOG.debug("Successfully created issue {}", issueKey);
 
+    if (reviewAttachments != null && config.isAttachments()) {
+      trace.phase("attach");
+      attach(transport, authToken, review, config, issueKey);
+    }
+
     return returnedIssue;
   }
 
-  protected RemoteIssue sendRequest(JiraSoapService jiraSoapService, String authToken, RemoteIssue issue, String jiraUrl, String userName) {
+  protected RemoteIssue sendRequest(TrackerTransport transport, String authToken, RemoteIssue issue, String jiraUrl, String userName) {
+    long start = System.currentTimeMillis();
     try {
-      return jiraSoapService.createIssue(authToken, issue);
+      return transport.createIssue(authToken, issue);
     } catch (RemoteAuthenticationException e) {
+      stats.recordFailure(e);
       throw new IllegalStateException("Impossible to connect to the JIRA server (" + jiraUrl + ") because of invalid credentials for user " + userName, e);
     } catch (RemotePermissionException e) {
+      stats.recordFailure(e);
       throw new IllegalStateException("Impossible to create the issue on the JIRA server (" + jiraUrl + ") because user " + userName + " does not have enough rights.", e);
     } catch (RemoteException e) {
+      stats.recordFailure(e);
       throw new IllegalStateException("Impossible to create the issue on the JIRA server (" + jiraUrl + ")", e);
+    } finally {
+      stats.recordCreateIssue(System.currentTimeMillis() - start);
+    }
+  }
+
+  /**
+   * Attachments are a convenience: the issue is kept even if they can't be sent.
+   */
+  protected void attach(TrackerTransport transport, String authToken, Review review, ProjectConfig config, String issueKey) {
+    List<ReviewAttachments.Attachment> attachments = reviewAttachments.collect(review, config);
+    if (attachments.isEmpty()) {
+      return;
+    }
+    String[] fileNames = new String[attachments.size()];
+    String[] contents = new String[attachments.size()];
+    for (int i = 0; i < attachments.size(); i++) {
+      fileNames[i] = attachments.get(i).getFileName();
+      contents[i] = attachments.get(i).getBase64Content();
+    }
+    try {
+      transport.addAttachmentsToIssue(authToken, issueKey, fileNames, contents);
+    } catch (RemoteException e) {
+      LOG.warn("Unable to attach the source and rule description to the JIRA issue " + issueKey, e);
     }
   }
 
-  protected RemoteIssue initRemoteIssue(Review review, Settings settings, String commentText) {
+  protected PriorityMapping resolvePriorityMapping(TrackerTransport transport, String authToken, Settings settings, ProjectConfig config) {
+    try {
+      return priorityMappingResolver.resolve(transport, authToken, settings);
+    } catch (RemoteException e) {
+      throw new IllegalStateException("Impossible to read the priorities and issue types of the JIRA server ("
+        + config.getServerUrl() + ")", e);
+    }
+  }
+
+  protected RemoteIssue initRemoteIssue(Review review, ProjectConfig config, String commentText) {
+    return initRemoteIssue(review, config, commentText, PriorityMapping.DEFAULT);
+  }
+
+  protected RemoteIssue initRemoteIssue(Review review, ProjectConfig config, String commentText, PriorityMapping priorityMapping) {
     RemoteIssue issue = new RemoteIssue();
-    issue.setProject(settings.getString(TestTrackConstants.JIRA_PROJECT_KEY_PROPERTY));
-    issue.setType(TASK_ISSUE_TYPE);
-    issue.setPriority(sonarSeverityToJiraPriority(review.getSeverity()));
-    issue.setSummary(generateIssueSummary(review));
-    issue.setDescription(generateIssueDescription(review, settings, commentText));
+    issue.setProject(config.getJiraProjectKey());
+    issue.setType(priorityMapping.getIssueTypeId());
+    issue.setPriority(priorityMapping.priorityFor(review.getSeverity()));
+    IssueFields fields = IssueFields.forReview(review)
+        .set(Placeholder.COMMENT, commentText)
+        .set(Placeholder.SONAR_URL, config.getSonarUrl())
+        .set(Placeholder.JIRA_URL, config.getServerUrl());
+    issue.setSummary(generateIssueSummary(fields, config));
+    issue.setDescription(generateIssueDescription(fields, config));
     return issue;
   }
 
-  protected String generateIssueSummary(Review review) {
-    StringBuilder summary = new StringBuilder("Sonar Review #");
-    summary.append(review.getReviewId());
-    summary.append(" - ");
-    summary.append(review.getRuleName());
-    return summary.toString();
+  protected String generateIssueSummary(IssueFields fields, ProjectConfig config) {
+    return config.getSummaryTemplate().render(fields);
   }
 
-  protected String generateIssueDescription(Review review, Settings settings, String commentText) {
-    StringBuilder description = new StringBuilder("Violation detail:");
-    description.append(QUOTE);
-    description.append(review.getMessage());
-    description.append(QUOTE);
-    if (StringUtils.isNotBlank(commentText)) {
-      description.append("\nMessage from reviewer:");
-      description.append(QUOTE);
-      description.append(commentText);
-      description.append(QUOTE);
-    }
-    description.append("\n\nCheck it on Sonar: ");
-    description.append(settings.getString("sonar.core.serverBaseURL"));
-    description.append("/project_reviews/view/");
-    description.append(review.getReviewId());
-    return description.toString();
+  protected String generateIssueDescription(IssueFields fields, ProjectConfig config) {
+    return config.getDescriptionTemplate().render(fields);
   }
 
   protected String sonarSeverityToJiraPriority(String reviewSeverity) {
-    String priority = SONAR_SEVERITY_TO_JIRA_PRIORITY.get(reviewSeverity);
-    if (priority == null) {
-      // default to MAJOR
-      priority = "3";
-    }
-    return priority;
+    return PriorityMapping.DEFAULT.priorityFor(reviewSeverity);
   }
 
 }
@@ -0,0 +1,185 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only view of an issue snapshot file, see {@link SnapshotFormat}. The file is memory-mapped: only the header
+ * and the dictionaries are copied to the heap, issues are decoded when they are read.
+ */
+public final class IssueSnapshot {
+
+  private final ByteBuffer buffer;
+  private final long createdAt;
+  private final String source;
+  private final Map<String, String> priorityNames;
+  private final String[] priorityIds;
+  private final String[] statusIds;
+  private final String[] typeIds;
+  private final int size;
+  private final int recordsStart;
+  private final int offsetsStart;
+  private final int keysStart;
+  private final int keysLength;
+
+  private IssueSnapshot(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    try {
+      byte[] magic = new byte[SnapshotFormat.MAGIC.length];
+      buffer.get(magic);
+      if (!Arrays.equals(magic, SnapshotFormat.MAGIC)) {
+        throw new IOException("Not an issue snapshot");
+      }
+      byte version = buffer.get();
+      if (version != SnapshotFormat.VERSION) {
+        throw new IOException("Unsupported issue snapshot version " + version + ", expected " + SnapshotFormat.VERSION);
+      }
+      createdAt = buffer.getLong();
+      source = SnapshotFormat.getString(buffer);
+      int priorityCount = SnapshotFormat.getVarint(buffer);
+      priorityNames = new LinkedHashMap<String, String>();
+      for (int i = 0; i < priorityCount; i++) {
+        priorityNames.put(SnapshotFormat.getString(buffer), SnapshotFormat.getString(buffer));
+      }
+      priorityIds = readDictionary(buffer);
+      statusIds = readDictionary(buffer);
+      typeIds = readDictionary(buffer);
+      size = SnapshotFormat.getVarint(buffer);
+      recordsStart = buffer.position();
+      buffer.position(recordsStart + size * SnapshotFormat.RECORD_SIZE);
+      keysLength = buffer.getInt();
+      offsetsStart = buffer.position();
+      keysStart = offsetsStart + 4 * size;
+      if (keysStart + keysLength != buffer.limit()) {
+        throw new IOException("Truncated issue snapshot");
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated issue snapshot");
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Truncated issue snapshot");
+    }
+  }
+
+  public static IssueSnapshot open(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      // the mapping stays valid once the channel is closed
+      return new IssueSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      raf.close();
+    }
+  }
+
+  static IssueSnapshot read(ByteBuffer buffer) throws IOException {
+    return new IssueSnapshot(buffer);
+  }
+
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  public String getSource() {
+    return source;
+  }
+
+  /**
+   * Names of the JIRA priorities by ID, in the order of the server.
+   */
+  public Map<String, String> getPriorityNames() {
+    return priorityNames;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public String getKey(int index) {
+    checkIndex(index);
+    int start = buffer.getInt(offsetsStart + 4 * index);
+    int end = index + 1 < size ? buffer.getInt(offsetsStart + 4 * (index + 1)) : keysLength;
+    byte[] bytes = new byte[end - start];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(keysStart + start + i);
+    }
+    return new String(bytes, SnapshotFormat.UTF8);
+  }
+
+  public String getPriorityId(int index) {
+    return lookup(priorityIds, index, 0);
+  }
+
+  public String getStatusId(int index) {
+    return lookup(statusIds, index, 1);
+  }
+
+  public String getTypeId(int index) {
+    return lookup(typeIds, index, 2);
+  }
+
+  /**
+   * Number of issues by priority ID, without decoding the issues.
+   */
+  public Map<String, Integer> countByPriority() {
+    int[] counts = new int[priorityIds.length];
+    for (int i = 0; i < size; i++) {
+      int code = buffer.get(recordsStart + i * SnapshotFormat.RECORD_SIZE) & 0xFF;
+      if (code != SnapshotFormat.NONE) {
+        counts[code]++;
+      }
+    }
+    Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        result.put(priorityIds[i], counts[i]);
+      }
+    }
+    return result;
+  }
+
+  private String lookup(String[] dictionary, int index, int field) {
+    checkIndex(index);
+    int code = buffer.get(recordsStart + index * SnapshotFormat.RECORD_SIZE + field) & 0xFF;
+    return code == SnapshotFormat.NONE ? null : dictionary[code];
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Issue " + index + " of a snapshot of " + size);
+    }
+  }
+
+  private static String[] readDictionary(ByteBuffer buffer) throws IOException {
+    String[] values = new String[SnapshotFormat.getVarint(buffer)];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = SnapshotFormat.getString(buffer);
+    }
+    return values;
+  }
+}
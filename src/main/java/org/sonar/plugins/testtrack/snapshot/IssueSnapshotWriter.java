@@ -0,0 +1,176 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.snapshot;
+
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the issues read from JIRA in the snapshot format described in {@link SnapshotFormat}. The file is written
+ * next to the target and then renamed, so that readers never see a partial snapshot.
+ */
+public final class IssueSnapshotWriter {
+
+  private IssueSnapshotWriter() {
+  }
+
+  public static void write(File file, String source, RemotePriority[] priorities, RemoteIssue[] issues, long createdAt) throws IOException {
+    ByteBuffer buffer = encode(source, priorities, issues, createdAt);
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (!parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Unable to create the directory " + parent);
+    }
+    File temp = new File(parent, file.getName() + ".tmp");
+    FileOutputStream out = new FileOutputStream(temp);
+    try {
+      FileChannel channel = out.getChannel();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(false);
+    } finally {
+      out.close();
+    }
+    if (file.exists() && !file.delete()) {
+      throw new IOException("Unable to replace the issue snapshot " + file);
+    }
+    if (!temp.renameTo(file)) {
+      throw new IOException("Unable to rename " + temp + " to " + file);
+    }
+  }
+
+  static ByteBuffer encode(String source, RemotePriority[] priorities, RemoteIssue[] issues, long createdAt) {
+    Dictionary priorityIds = new Dictionary("priority");
+    Dictionary statusIds = new Dictionary("status");
+    Dictionary typeIds = new Dictionary("issue type");
+    byte[] records = new byte[issues.length * SnapshotFormat.RECORD_SIZE];
+    byte[][] keys = new byte[issues.length][];
+    int keyBytes = 0;
+    for (int i = 0; i < issues.length; i++) {
+      RemoteIssue issue = issues[i];
+      records[i * SnapshotFormat.RECORD_SIZE] = (byte) priorityIds.indexOf(issue.getPriority());
+      records[i * SnapshotFormat.RECORD_SIZE + 1] = (byte) statusIds.indexOf(issue.getStatus());
+      records[i * SnapshotFormat.RECORD_SIZE + 2] = (byte) typeIds.indexOf(issue.getType());
+      keys[i] = SnapshotFormat.utf8(issue.getKey());
+      keyBytes += keys[i].length;
+    }
+
+    byte[] sourceBytes = SnapshotFormat.utf8(source);
+    List<byte[]> priorityStrings = new ArrayList<byte[]>();
+    for (RemotePriority priority : priorities) {
+      priorityStrings.add(SnapshotFormat.utf8(priority.getId()));
+      priorityStrings.add(SnapshotFormat.utf8(priority.getName()));
+    }
+
+    int size = SnapshotFormat.MAGIC.length + 1 + 8
+      + sizeOf(sourceBytes)
+      + SnapshotFormat.varintSize(priorities.length) + sizeOf(priorityStrings)
+      + priorityIds.size() + statusIds.size() + typeIds.size()
+      + SnapshotFormat.varintSize(issues.length) + records.length
+      + 4 + 4 * issues.length + keyBytes;
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+
+    buffer.put(SnapshotFormat.MAGIC).put(SnapshotFormat.VERSION).putLong(createdAt);
+    SnapshotFormat.putString(buffer, sourceBytes);
+    SnapshotFormat.putVarint(buffer, priorities.length);
+    for (byte[] value : priorityStrings) {
+      SnapshotFormat.putString(buffer, value);
+    }
+    priorityIds.writeTo(buffer);
+    statusIds.writeTo(buffer);
+    typeIds.writeTo(buffer);
+    SnapshotFormat.putVarint(buffer, issues.length);
+    buffer.put(records);
+    buffer.putInt(keyBytes);
+    int offset = 0;
+    for (byte[] key : keys) {
+      buffer.putInt(offset);
+      offset += key.length;
+    }
+    for (byte[] key : keys) {
+      buffer.put(key);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static int sizeOf(byte[] value) {
+    return SnapshotFormat.varintSize(value.length) + value.length;
+  }
+
+  private static int sizeOf(List<byte[]> values) {
+    int size = 0;
+    for (byte[] value : values) {
+      size += sizeOf(value);
+    }
+    return size;
+  }
+
+  private static final class Dictionary {
+    private final String name;
+    private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+    private final List<byte[]> values = new ArrayList<byte[]>();
+    private int size;
+
+    private Dictionary(String name) {
+      this.name = name;
+    }
+
+    int indexOf(String value) {
+      if (value == null) {
+        return SnapshotFormat.NONE;
+      }
+      Integer index = indexes.get(value);
+      if (index == null) {
+        if (values.size() == SnapshotFormat.MAX_DICTIONARY_SIZE) {
+          throw new IllegalArgumentException("Too many distinct " + name + " IDs for an issue snapshot, the maximum is "
+            + SnapshotFormat.MAX_DICTIONARY_SIZE);
+        }
+        index = values.size();
+        indexes.put(value, index);
+        byte[] bytes = SnapshotFormat.utf8(value);
+        values.add(bytes);
+        size += sizeOf(bytes);
+      }
+      return index;
+    }
+
+    int size() {
+      return SnapshotFormat.varintSize(values.size()) + size;
+    }
+
+    void writeTo(ByteBuffer buffer) {
+      SnapshotFormat.putVarint(buffer, values.size());
+      for (byte[] value : values) {
+        SnapshotFormat.putString(buffer, value);
+      }
+    }
+  }
+}
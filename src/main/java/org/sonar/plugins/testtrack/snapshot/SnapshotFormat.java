@@ -0,0 +1,105 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.snapshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Layout of the issue snapshot files, version 1. All the counts and lengths are unsigned varints, strings are UTF-8
+ * bytes preceded by their length.
+ * <pre>
+ * magic "TTSN", version (1 byte), creation time (8 bytes)
+ * source of the issues (filter ID or JQL query)
+ * priorities: count, then ID and name of each one
+ * dictionaries of the priority, status and type IDs of the issues: count, then the IDs
+ * issues: count N, then N records of 3 bytes, the index of the priority, status and type in the dictionaries
+ * (255 for none)
+ * issue keys: length L of the key data (4 bytes), N offsets (4 bytes each) in the key data, key data
+ * </pre>
+ * Records and keys have a fixed size index, so that an issue is read without reading the ones before.
+ */
+final class SnapshotFormat {
+
+  static final byte[] MAGIC = {'T', 'T', 'S', 'N'};
+  static final byte VERSION = 1;
+  static final int RECORD_SIZE = 3;
+  static final int NONE = 0xFF;
+  static final int MAX_DICTIONARY_SIZE = NONE;
+  static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private SnapshotFormat() {
+  }
+
+  static void putVarint(ByteBuffer buffer, int value) {
+    while ((value & ~0x7F) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  static void writeVarint(OutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  static int getVarint(ByteBuffer buffer) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint in issue snapshot");
+  }
+
+  static int varintSize(int value) {
+    int size = 1;
+    while ((value & ~0x7F) != 0) {
+      size++;
+      value >>>= 7;
+    }
+    return size;
+  }
+
+  static void putString(ByteBuffer buffer, byte[] utf8) {
+    putVarint(buffer, utf8.length);
+    buffer.put(utf8);
+  }
+
+  static String getString(ByteBuffer buffer) throws IOException {
+    int length = getVarint(buffer);
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, UTF8);
+  }
+
+  static byte[] utf8(String value) {
+    return value == null ? new byte[0] : value.getBytes(UTF8);
+  }
+}
@@ -0,0 +1,347 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.snapshot;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComponent;
+import com.atlassian.jira.rpc.soap.client.RemoteFilter;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What an analysis read from JIRA, kept in a local file so that later analyses can be run without JIRA. Unlike
+ * {@link IssueSnapshot}, it holds everything the sensor reads: priorities, filters and the issues of each query
+ * with their text, for the attribution to files. Strings are UTF-8 bytes preceded by their length plus one, 0 for
+ * null, and counts are unsigned varints.
+ * <pre>
+ * magic "TTRC", version (1 byte), creation time (8 bytes)
+ * priorities: count, then ID and name of each one
+ * favourite filters, then saved filters: count, then ID, name, author and project of each one
+ * queries: count, then each query (see {@link #filterQuery(String)} and {@link #jqlQuery(String)}) and its issues:
+ * count, then ID, key, project, type, priority, status, resolution, assignee, reporter, summary, description,
+ * environment and components (count, then ID and name) of each one
+ * </pre>
+ * Not thread-safe.
+ */
+public final class TrackerRecording {
+
+  static final byte[] MAGIC = {'T', 'T', 'R', 'C'};
+  static final byte VERSION = 1;
+
+  private long createdAt;
+  private RemotePriority[] priorities;
+  private RemoteFilter[] favouriteFilters;
+  private RemoteFilter[] savedFilters;
+  private final Map<String, List<RemoteIssue>> issuesByQuery = new LinkedHashMap<String, List<RemoteIssue>>();
+
+  public static String filterQuery(String filterId) {
+    return "filter:" + filterId;
+  }
+
+  public static String jqlQuery(String jql) {
+    return "jql:" + jql;
+  }
+
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  /**
+   * @return null if not recorded
+   */
+  public RemotePriority[] getPriorities() {
+    return priorities;
+  }
+
+  public void setPriorities(RemotePriority[] priorities) {
+    this.priorities = priorities;
+  }
+
+  /**
+   * @return null if not recorded
+   */
+  public RemoteFilter[] getFavouriteFilters() {
+    return favouriteFilters;
+  }
+
+  public void setFavouriteFilters(RemoteFilter[] favouriteFilters) {
+    this.favouriteFilters = favouriteFilters;
+  }
+
+  /**
+   * @return null if not recorded
+   */
+  public RemoteFilter[] getSavedFilters() {
+    return savedFilters;
+  }
+
+  public void setSavedFilters(RemoteFilter[] savedFilters) {
+    this.savedFilters = savedFilters;
+  }
+
+  /**
+   * @return null if the query has not been recorded
+   */
+  public RemoteIssue[] getIssues(String query) {
+    List<RemoteIssue> issues = issuesByQuery.get(query);
+    return issues == null ? null : issues.toArray(new RemoteIssue[issues.size()]);
+  }
+
+  public void setIssues(String query, RemoteIssue[] issues) {
+    issuesByQuery.put(query, new ArrayList<RemoteIssue>(Arrays.asList(issues)));
+  }
+
+  /**
+   * Records a page of the issues of a query. A page at offset 0 replaces the issues recorded before, the next
+   * ones are appended.
+   */
+  public void addIssues(String query, int offset, RemoteIssue[] page) {
+    List<RemoteIssue> issues = issuesByQuery.get(query);
+    if (offset == 0 || issues == null) {
+      setIssues(query, page);
+    } else if (offset == issues.size()) {
+      issues.addAll(Arrays.asList(page));
+    } else {
+      // a page read again, or out of order: what was recorded is not the whole query any more
+      issuesByQuery.remove(query);
+    }
+  }
+
+  /**
+   * Adds the queries, priorities and filters of the other recording, replacing the ones of this one.
+   */
+  public void putAll(TrackerRecording other) {
+    if (other.priorities != null) {
+      priorities = other.priorities;
+    }
+    if (other.favouriteFilters != null) {
+      favouriteFilters = other.favouriteFilters;
+    }
+    if (other.savedFilters != null) {
+      savedFilters = other.savedFilters;
+    }
+    issuesByQuery.putAll(other.issuesByQuery);
+  }
+
+  public static TrackerRecording read(File file) throws IOException {
+    RandomAccessFile input = new RandomAccessFile(file, "r");
+    ByteBuffer buffer;
+    try {
+      byte[] bytes = new byte[(int) input.length()];
+      input.readFully(bytes);
+      buffer = ByteBuffer.wrap(bytes);
+    } finally {
+      input.close();
+    }
+    try {
+      return decode(buffer);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated JIRA recording " + file);
+    }
+  }
+
+  private static TrackerRecording decode(ByteBuffer buffer) throws IOException {
+    byte[] magic = new byte[MAGIC.length];
+    buffer.get(magic);
+    if (!Arrays.equals(magic, MAGIC)) {
+      throw new IOException("Not a JIRA recording");
+    }
+    byte version = buffer.get();
+    if (version != VERSION) {
+      throw new IOException("Unsupported JIRA recording version " + version + ", expected " + VERSION);
+    }
+    TrackerRecording recording = new TrackerRecording();
+    recording.createdAt = buffer.getLong();
+    recording.priorities = new RemotePriority[SnapshotFormat.getVarint(buffer)];
+    for (int i = 0; i < recording.priorities.length; i++) {
+      recording.priorities[i] = new RemotePriority();
+      recording.priorities[i].setId(getString(buffer));
+      recording.priorities[i].setName(getString(buffer));
+    }
+    recording.favouriteFilters = getFilters(buffer);
+    recording.savedFilters = getFilters(buffer);
+    int queries = SnapshotFormat.getVarint(buffer);
+    for (int i = 0; i < queries; i++) {
+      String query = getString(buffer);
+      RemoteIssue[] issues = new RemoteIssue[SnapshotFormat.getVarint(buffer)];
+      for (int j = 0; j < issues.length; j++) {
+        issues[j] = getIssue(buffer);
+      }
+      recording.setIssues(query, issues);
+    }
+    return recording;
+  }
+
+  private static RemoteFilter[] getFilters(ByteBuffer buffer) throws IOException {
+    RemoteFilter[] filters = new RemoteFilter[SnapshotFormat.getVarint(buffer)];
+    for (int i = 0; i < filters.length; i++) {
+      filters[i] = new RemoteFilter();
+      filters[i].setId(getString(buffer));
+      filters[i].setName(getString(buffer));
+      filters[i].setAuthor(getString(buffer));
+      filters[i].setProject(getString(buffer));
+    }
+    return filters;
+  }
+
+  private static RemoteIssue getIssue(ByteBuffer buffer) throws IOException {
+    RemoteIssue issue = new RemoteIssue();
+    issue.setId(getString(buffer));
+    issue.setKey(getString(buffer));
+    issue.setProject(getString(buffer));
+    issue.setType(getString(buffer));
+    issue.setPriority(getString(buffer));
+    issue.setStatus(getString(buffer));
+    issue.setResolution(getString(buffer));
+    issue.setAssignee(getString(buffer));
+    issue.setReporter(getString(buffer));
+    issue.setSummary(getString(buffer));
+    issue.setDescription(getString(buffer));
+    issue.setEnvironment(getString(buffer));
+    RemoteComponent[] components = new RemoteComponent[SnapshotFormat.getVarint(buffer)];
+    for (int i = 0; i < components.length; i++) {
+      components[i] = new RemoteComponent(getString(buffer), getString(buffer));
+    }
+    issue.setComponents(components);
+    return issue;
+  }
+
+  private static String getString(ByteBuffer buffer) throws IOException {
+    int length = SnapshotFormat.getVarint(buffer) - 1;
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, SnapshotFormat.UTF8);
+  }
+
+  /**
+   * Writes the recording next to the target and then renames it, like {@link IssueSnapshotWriter}.
+   */
+  public void write(File file, long createdAt) throws IOException {
+    this.createdAt = createdAt;
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (!parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Unable to create the directory " + parent);
+    }
+    File temp = new File(parent, file.getName() + ".tmp");
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+    try {
+      encode(out);
+    } finally {
+      out.close();
+    }
+    if (file.exists() && !file.delete()) {
+      throw new IOException("Unable to replace the JIRA recording " + file);
+    }
+    if (!temp.renameTo(file)) {
+      throw new IOException("Unable to rename " + temp + " to " + file);
+    }
+  }
+
+  byte[] encode() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    encode(out);
+    return out.toByteArray();
+  }
+
+  private void encode(OutputStream out) throws IOException {
+    out.write(MAGIC);
+    out.write(VERSION);
+    ByteBuffer time = ByteBuffer.allocate(8).putLong(createdAt);
+    out.write(time.array());
+    RemotePriority[] recordedPriorities = priorities == null ? new RemotePriority[0] : priorities;
+    SnapshotFormat.writeVarint(out, recordedPriorities.length);
+    for (RemotePriority priority : recordedPriorities) {
+      writeString(out, priority.getId());
+      writeString(out, priority.getName());
+    }
+    writeFilters(out, favouriteFilters);
+    writeFilters(out, savedFilters);
+    SnapshotFormat.writeVarint(out, issuesByQuery.size());
+    for (Map.Entry<String, List<RemoteIssue>> entry : issuesByQuery.entrySet()) {
+      writeString(out, entry.getKey());
+      SnapshotFormat.writeVarint(out, entry.getValue().size());
+      for (RemoteIssue issue : entry.getValue()) {
+        writeIssue(out, issue);
+      }
+    }
+  }
+
+  private static void writeFilters(OutputStream out, RemoteFilter[] filters) throws IOException {
+    if (filters == null) {
+      SnapshotFormat.writeVarint(out, 0);
+      return;
+    }
+    SnapshotFormat.writeVarint(out, filters.length);
+    for (RemoteFilter filter : filters) {
+      writeString(out, filter.getId());
+      writeString(out, filter.getName());
+      writeString(out, filter.getAuthor());
+      writeString(out, filter.getProject());
+    }
+  }
+
+  private static void writeIssue(OutputStream out, RemoteIssue issue) throws IOException {
+    writeString(out, issue.getId());
+    writeString(out, issue.getKey());
+    writeString(out, issue.getProject());
+    writeString(out, issue.getType());
+    writeString(out, issue.getPriority());
+    writeString(out, issue.getStatus());
+    writeString(out, issue.getResolution());
+    writeString(out, issue.getAssignee());
+    writeString(out, issue.getReporter());
+    writeString(out, issue.getSummary());
+    writeString(out, issue.getDescription());
+    writeString(out, issue.getEnvironment());
+    RemoteComponent[] components = issue.getComponents() == null ? new RemoteComponent[0] : issue.getComponents();
+    SnapshotFormat.writeVarint(out, components.length);
+    for (RemoteComponent component : components) {
+      writeString(out, component.getId());
+      writeString(out, component.getName());
+    }
+  }
+
+  private static void writeString(OutputStream out, String value) throws IOException {
+    if (value == null) {
+      SnapshotFormat.writeVarint(out, 0);
+      return;
+    }
+    byte[] bytes = value.getBytes(SnapshotFormat.UTF8);
+    SnapshotFormat.writeVarint(out, bytes.length + 1);
+    out.write(bytes);
+  }
+}
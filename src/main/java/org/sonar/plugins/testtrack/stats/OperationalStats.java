@@ -0,0 +1,145 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.stats;
+
+import org.sonar.api.ServerExtension;
+import org.sonar.plugins.testtrack.remote.CallLane;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.reviews.LinkRegistry;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters of the calls made to JIRA by the server, displayed by the {@link OperationalStatsPage}. Recording
+ * only touches atomic counters; the occupancy of the pools is read when the page asks for it.
+ */
+public class OperationalStats implements ServerExtension {
+
+  private final LinkRegistry linkRegistry;
+  private final RemoteCallExecutor executor;
+
+  private final AtomicLong linksCreated = new AtomicLong();
+  private final AtomicLong linksJoined = new AtomicLong();
+  private final ConcurrentMap<String, AtomicLong> failuresByType = new ConcurrentHashMap<String, AtomicLong>();
+  private final LatencyHistogram createIssueLatency = new LatencyHistogram();
+  private final long startedAt = System.currentTimeMillis();
+
+  public OperationalStats() {
+    this(null, null);
+  }
+
+  public OperationalStats(LinkRegistry linkRegistry, RemoteCallExecutor executor) {
+    this.linkRegistry = linkRegistry;
+    this.executor = executor;
+  }
+
+  /**
+   * @param created false if the review was linked to the issue created by a concurrent request
+   */
+  public void recordLink(boolean created) {
+    (created ? linksCreated : linksJoined).incrementAndGet();
+  }
+
+  public void recordCreateIssue(long millis) {
+    createIssueLatency.record(millis);
+  }
+
+  public void recordFailure(Exception failure) {
+    String type = failure.getClass().getSimpleName();
+    AtomicLong counter = failuresByType.get(type);
+    if (counter == null) {
+      AtomicLong created = new AtomicLong();
+      counter = failuresByType.putIfAbsent(type, created);
+      if (counter == null) {
+        counter = created;
+      }
+    }
+    counter.incrementAndGet();
+  }
+
+  public long getStartedAt() {
+    return startedAt;
+  }
+
+  public long getLinksCreated() {
+    return linksCreated.get();
+  }
+
+  public long getLinksJoined() {
+    return linksJoined.get();
+  }
+
+  /**
+   * Number of failures by simple name of the exception, sorted by name.
+   */
+  public Map<String, Long> getFailures() {
+    Map<String, Long> failures = new TreeMap<String, Long>();
+    for (Map.Entry<String, AtomicLong> entry : failuresByType.entrySet()) {
+      failures.put(entry.getKey(), entry.getValue().get());
+    }
+    return failures;
+  }
+
+  public LatencyHistogram getCreateIssueLatency() {
+    return createIssueLatency;
+  }
+
+  public int getLinksInFlight() {
+    return linkRegistry == null ? 0 : linkRegistry.inFlightCount();
+  }
+
+  public Set<String> getServers() {
+    return executor == null ? Collections.<String>emptySet() : new TreeSet<String>(executor.getServers());
+  }
+
+  public int getCallsInFlight(String server) {
+    return executor == null ? 0 : executor.getCallsInFlight(server);
+  }
+
+  public int getCallsWaiting(String server) {
+    return executor == null ? 0 : executor.getCallsWaiting(server);
+  }
+
+  public int getMaxCallsPerServer() {
+    return executor == null ? 0 : executor.getMaxCallsPerServer();
+  }
+
+  public int getCallsQueued() {
+    return executor == null ? 0 : executor.getCallsQueued();
+  }
+
+  public CallLane[] getLanes() {
+    return CallLane.values();
+  }
+
+  /**
+   * Time the calls of the lane waited for a slot of their server, null without executor.
+   */
+  public LatencyHistogram getQueueWait(CallLane lane) {
+    return executor == null ? null : executor.getQueueWait(lane);
+  }
+}
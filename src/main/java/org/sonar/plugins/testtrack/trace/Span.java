@@ -0,0 +1,65 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.trace;
+
+/**
+ * A phase of a traced flow, as read from the {@link Tracer}. The span named after the flow covers the whole flow.
+ */
+public final class Span {
+
+  private final long traceId;
+  private final String flow;
+  private final String name;
+  private final long startMillis;
+  private final long durationMicros;
+
+  Span(long traceId, String flow, String name, long startMillis, long durationMicros) {
+    this.traceId = traceId;
+    this.flow = flow;
+    this.name = name;
+    this.startMillis = startMillis;
+    this.durationMicros = durationMicros;
+  }
+
+  public long getTraceId() {
+    return traceId;
+  }
+
+  public String getFlow() {
+    return flow;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getStartMillis() {
+    return startMillis;
+  }
+
+  public long getDurationMicros() {
+    return durationMicros;
+  }
+
+  @Override
+  public String toString() {
+    return flow + "#" + traceId + " " + name + " " + durationMicros + "us";
+  }
+}
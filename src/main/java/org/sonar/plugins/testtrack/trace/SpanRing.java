@@ -0,0 +1,90 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring of the last spans recorded, shared by all the threads. The slots are allocated once: recording a
+ * span writes into the next slot, overwriting the oldest span, without locking nor allocating. Each slot carries a
+ * sequence number, odd while it is written, so that readers skip the slots being overwritten.
+ */
+final class SpanRing {
+
+  private final int capacity;
+  private final AtomicLong cursor = new AtomicLong();
+  private final AtomicLongArray sequences;
+  private final AtomicLongArray traceIds;
+  private final AtomicLongArray startMillis;
+  private final AtomicLongArray durationMicros;
+  private final AtomicReferenceArray<String> flows;
+  private final AtomicReferenceArray<String> names;
+
+  SpanRing(int capacity) {
+    this.capacity = capacity;
+    this.sequences = new AtomicLongArray(capacity);
+    this.traceIds = new AtomicLongArray(capacity);
+    this.startMillis = new AtomicLongArray(capacity);
+    this.durationMicros = new AtomicLongArray(capacity);
+    this.flows = new AtomicReferenceArray<String>(capacity);
+    this.names = new AtomicReferenceArray<String>(capacity);
+  }
+
+  void record(long traceId, String flow, String name, long start, long micros) {
+    long position = cursor.getAndIncrement();
+    int slot = (int) (position % capacity);
+    sequences.set(slot, 2 * position + 1);
+    traceIds.set(slot, traceId);
+    flows.set(slot, flow);
+    names.set(slot, name);
+    startMillis.set(slot, start);
+    durationMicros.set(slot, micros);
+    sequences.set(slot, 2 * position + 2);
+  }
+
+  /**
+   * The spans still in the ring, oldest first.
+   */
+  List<Span> snapshot() {
+    long end = cursor.get();
+    long begin = Math.max(0, end - capacity);
+    List<Span> spans = new ArrayList<Span>((int) (end - begin));
+    for (long position = begin; position < end; position++) {
+      int slot = (int) (position % capacity);
+      long sequence = 2 * position + 2;
+      if (sequences.get(slot) != sequence) {
+        continue;
+      }
+      Span span = new Span(traceIds.get(slot), flows.get(slot), names.get(slot), startMillis.get(slot), durationMicros.get(slot));
+      if (sequences.get(slot) == sequence) {
+        spans.add(span);
+      }
+    }
+    return spans;
+  }
+
+  int capacity() {
+    return capacity;
+  }
+}
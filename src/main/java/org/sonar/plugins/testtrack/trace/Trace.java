@@ -0,0 +1,86 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.trace;
+
+/**
+ * The phases of one flow, traced on the thread running it: each call to {@link #phase(String)} ends the current phase
+ * and starts the next one. The trace of a flow that is not sampled does nothing.
+ */
+public final class Trace {
+
+  static final Trace NOOP = new Trace(null, 0, null, null);
+
+  private final SpanRing ring;
+  private final long id;
+  private final String flow;
+  private final Trace previous;
+  private final long startMillis;
+  private final long startNanos;
+
+  private String phase;
+  private long phaseStartNanos;
+
+  Trace(SpanRing ring, long id, String flow, Trace previous) {
+    this.ring = ring;
+    this.id = id;
+    this.flow = flow;
+    this.previous = previous;
+    this.startMillis = ring == null ? 0 : System.currentTimeMillis();
+    this.startNanos = ring == null ? 0 : System.nanoTime();
+  }
+
+  public boolean isSampled() {
+    return ring != null;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public void phase(String name) {
+    if (ring == null) {
+      return;
+    }
+    long now = System.nanoTime();
+    endPhase(now);
+    phase = name;
+    phaseStartNanos = now;
+  }
+
+  /**
+   * Ends the flow. Must be called on the thread that started it, usually in a finally block.
+   */
+  public void finish() {
+    if (ring == null) {
+      return;
+    }
+    long now = System.nanoTime();
+    endPhase(now);
+    ring.record(id, flow, flow, startMillis, (now - startNanos) / 1000);
+    Tracer.restore(previous);
+  }
+
+  private void endPhase(long now) {
+    if (phase != null) {
+      ring.record(id, flow, phase, startMillis + (phaseStartNanos - startNanos) / 1000000, (now - phaseStartNanos) / 1000);
+      phase = null;
+    }
+  }
+}
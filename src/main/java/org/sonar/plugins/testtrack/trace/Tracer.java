@@ -0,0 +1,160 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.trace;
+
+import org.sonar.api.BatchExtension;
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.PropertyType;
+import org.sonar.api.ServerExtension;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.transport.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples the link and analysis flows and keeps the phases of the sampled ones in a ring buffer. A flow that is not
+ * sampled costs an increment; a sampled one allocates its {@link Trace} and nothing per phase.
+ * <p>
+ * The code called during a flow reaches its trace with {@link #current()}.
+ */
+@Properties({
+  @Property(
+    key = TestTrackConstants.TRACE_SAMPLING_PROPERTY,
+    defaultValue = TestTrackConstants.TRACE_SAMPLING_DEF_VALUE,
+    name = "Trace sampling",
+    description = "One link or analysis out of this number is traced, 0 disables the tracing.",
+    global = true,
+    project = false,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = TestTrackConstants.TRACE_BUFFER_SIZE_PROPERTY,
+    defaultValue = TestTrackConstants.TRACE_BUFFER_SIZE_DEF_VALUE,
+    name = "Trace buffer size",
+    description = "Number of phases of the last traced flows kept in memory.",
+    global = true,
+    project = false,
+    type = PropertyType.INTEGER
+  )
+})
+public class Tracer implements BatchExtension, ServerExtension {
+
+  private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<Trace>();
+
+  private final int sampling;
+  private final SpanRing ring;
+  private final AtomicLong flows = new AtomicLong();
+
+  /**
+   * A tracer that never samples.
+   */
+  public Tracer() {
+    this(0, 1);
+  }
+
+  public Tracer(Settings settings) {
+    this(settings.hasKey(TestTrackConstants.TRACE_SAMPLING_PROPERTY) ? settings.getInt(TestTrackConstants.TRACE_SAMPLING_PROPERTY)
+      : Integer.parseInt(TestTrackConstants.TRACE_SAMPLING_DEF_VALUE),
+      settings.getInt(TestTrackConstants.TRACE_BUFFER_SIZE_PROPERTY));
+  }
+
+  /**
+   * @param sampling one flow out of this number is traced, none if 0 or less
+   */
+  public Tracer(int sampling, int bufferSize) {
+    this.sampling = sampling;
+    this.ring = new SpanRing(bufferSize > 0 ? bufferSize : Integer.parseInt(TestTrackConstants.TRACE_BUFFER_SIZE_DEF_VALUE));
+  }
+
+  /**
+   * Starts a flow on the current thread, traced if it is sampled.
+   */
+  public Trace start(String flow) {
+    return start(flow, false);
+  }
+
+  /**
+   * @param always traces the flow even if it is not sampled, as long as the tracing is enabled
+   */
+  public Trace start(String flow, boolean always) {
+    long id = flows.incrementAndGet();
+    if (sampling <= 0 || (!always && id % sampling != 0)) {
+      return Trace.NOOP;
+    }
+    Trace trace = new Trace(ring, id, flow, CURRENT.get());
+    CURRENT.set(trace);
+    return trace;
+  }
+
+  /**
+   * The trace of the flow running on the current thread, one that does nothing if the flow is not traced.
+   */
+  public static Trace current() {
+    Trace trace = CURRENT.get();
+    return trace == null ? Trace.NOOP : trace;
+  }
+
+  static void restore(Trace previous) {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+  public List<Span> getSpans() {
+    return ring.snapshot();
+  }
+
+  /**
+   * Writes the spans in the buffer as a JSON array, oldest first.
+   */
+  public void writeJson(Writer out) throws IOException {
+    JsonWriter writer = new JsonWriter(out);
+    writer.beginArray();
+    for (Span span : ring.snapshot()) {
+      writer.beginObject()
+          .name("trace").value(span.getTraceId())
+          .name("flow").value(span.getFlow())
+          .name("name").value(span.getName())
+          .name("start").value(span.getStartMillis())
+          .name("durationMicros").value(span.getDurationMicros())
+          .endObject();
+    }
+    writer.endArray();
+    writer.flush();
+  }
+
+  public String toJson() {
+    StringWriter out = new StringWriter();
+    try {
+      writeJson(out);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write the traces", e);
+    }
+    return out.toString();
+  }
+}
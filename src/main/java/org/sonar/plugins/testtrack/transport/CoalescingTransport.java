@@ -0,0 +1,182 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.atlassian.jira.rpc.soap.client.RemoteFilter;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemoteIssueType;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import com.atlassian.jira.rpc.soap.client.RemoteProject;
+import org.sonar.plugins.testtrack.remote.SingleFlight;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shares the identical read calls made at the same time by several sessions: same server, operation, arguments and
+ * user. The shared call is made with the token of the first caller. Each caller gets its own copy of the returned
+ * array, the beans in it are shared and must not be modified. Writes always go through.
+ */
+public class CoalescingTransport implements TrackerTransport {
+
+  private static final SingleFlight<String, Object> SHARED_READS = new SingleFlight<String, Object>();
+  private static final char SEPARATOR = '\u0000';
+
+  private final TrackerTransport delegate;
+  private final SingleFlight<String, Object> reads;
+  private final ConcurrentMap<String, String> usersByToken = new ConcurrentHashMap<String, String>();
+
+  public CoalescingTransport(TrackerTransport delegate) {
+    this(delegate, SHARED_READS);
+  }
+
+  CoalescingTransport(TrackerTransport delegate, SingleFlight<String, Object> reads) {
+    this.delegate = delegate;
+    this.reads = reads;
+  }
+
+  public static SingleFlight<String, Object> sharedReads() {
+    return SHARED_READS;
+  }
+
+  public String login(String username, String password) throws RemoteException {
+    String authToken = delegate.login(username, password);
+    if (authToken != null) {
+      usersByToken.put(authToken, username);
+    }
+    return authToken;
+  }
+
+  public void logout(String authToken) throws RemoteException {
+    if (authToken != null) {
+      usersByToken.remove(authToken);
+    }
+    delegate.logout(authToken);
+  }
+
+  public RemotePriority[] getPriorities(final String authToken) throws RemoteException {
+    RemotePriority[] priorities = (RemotePriority[]) read(authToken, "getPriorities", new Callable<Object>() {
+      public Object call() throws RemoteException {
+        return delegate.getPriorities(authToken);
+      }
+    });
+    return priorities == null ? null : priorities.clone();
+  }
+
+  public RemoteFilter[] getFavouriteFilters(final String authToken) throws RemoteException {
+    RemoteFilter[] filters = (RemoteFilter[]) read(authToken, "getFavouriteFilters", new Callable<Object>() {
+      public Object call() throws RemoteException {
+        return delegate.getFavouriteFilters(authToken);
+      }
+    });
+    return filters == null ? null : filters.clone();
+  }
+
+  public RemoteFilter[] getSavedFilters(final String authToken) throws RemoteException {
+    RemoteFilter[] filters = (RemoteFilter[]) read(authToken, "getSavedFilters", new Callable<Object>() {
+      public Object call() throws RemoteException {
+        return delegate.getSavedFilters(authToken);
+      }
+    });
+    return filters == null ? null : filters.clone();
+  }
+
+  public RemoteIssue[] getIssuesFromFilter(final String authToken, final String filterId) throws RemoteException {
+    RemoteIssue[] issues = (RemoteIssue[]) read(authToken, "getIssuesFromFilter" + SEPARATOR + filterId, new Callable<Object>() {
+      public Object call() throws RemoteException {
+        return delegate.getIssuesFromFilter(authToken, filterId);
+      }
+    });
+    return issues == null ? null : issues.clone();
+  }
+
+  public RemoteIssue[] getIssuesFromFilterWithLimit(final String authToken, final String filterId, final int offset, final int maxNumResults)
+      throws RemoteException {
+    String call = "getIssuesFromFilterWithLimit" + SEPARATOR + filterId + SEPARATOR + offset + SEPARATOR + maxNumResults;
+    RemoteIssue[] issues = (RemoteIssue[]) read(authToken, call, new Callable<Object>() {
+      public Object call() throws RemoteException {
+        return delegate.getIssuesFromFilterWithLimit(authToken, filterId, offset, maxNumResults);
+      }
+    });
+    return issues == null ? null : issues.clone();
+  }
+
+  public RemoteIssue[] getIssuesFromJqlSearch(final String authToken, final String jql, final int maxResults) throws RemoteException {
+    String call = "getIssuesFromJqlSearch" + SEPARATOR + jql + SEPARATOR + maxResults;
+    RemoteIssue[] issues = (RemoteIssue[]) read(authToken, call, new Callable<Object>() {
+      public Object call() throws RemoteException {
+        return delegate.getIssuesFromJqlSearch(authToken, jql, maxResults);
+      }
+    });
+    return issues == null ? null : issues.clone();
+  }
+
+  public RemoteProject getProjectByKey(final String authToken, final String projectKey) throws RemoteException {
+    return (RemoteProject) read(authToken, "getProjectByKey" + SEPARATOR + projectKey, new Callable<Object>() {
+      public Object call() throws RemoteException {
+        return delegate.getProjectByKey(authToken, projectKey);
+      }
+    });
+  }
+
+  public RemoteIssueType[] getIssueTypesForProject(final String authToken, final String projectId) throws RemoteException {
+    RemoteIssueType[] types = (RemoteIssueType[]) read(authToken, "getIssueTypesForProject" + SEPARATOR + projectId, new Callable<Object>() {
+      public Object call() throws RemoteException {
+        return delegate.getIssueTypesForProject(authToken, projectId);
+      }
+    });
+    return types == null ? null : types.clone();
+  }
+
+  public RemoteIssue createIssue(String authToken, RemoteIssue issue) throws RemoteException {
+    return delegate.createIssue(authToken, issue);
+  }
+
+  public RemoteIssue updateIssue(String authToken, String issueKey, RemoteFieldValue[] fieldValues) throws RemoteException {
+    return delegate.updateIssue(authToken, issueKey, fieldValues);
+  }
+
+  public void addComment(String authToken, String issueKey, RemoteComment comment) throws RemoteException {
+    delegate.addComment(authToken, issueKey, comment);
+  }
+
+  public boolean addAttachmentsToIssue(String authToken, String issueKey, String[] fileNames, String[] base64Contents) throws RemoteException {
+    return delegate.addAttachmentsToIssue(authToken, issueKey, fileNames, base64Contents);
+  }
+
+  public String getEndpoint() {
+    return delegate.getEndpoint();
+  }
+
+  public TrackerTransport getDelegate() {
+    return delegate;
+  }
+
+  private Object read(String authToken, String call, Callable<Object> remoteCall) throws RemoteException {
+    String user = usersByToken.get(authToken);
+    // without a known user, only the calls made with the same token are shared
+    String key = getEndpoint() + SEPARATOR + (user != null ? "user:" + user : "token:" + authToken) + SEPARATOR + call;
+    return reads.execute(key, remoteCall);
+  }
+}
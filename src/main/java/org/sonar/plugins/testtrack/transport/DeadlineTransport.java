@@ -0,0 +1,182 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.atlassian.jira.rpc.soap.client.RemoteFilter;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemoteIssueType;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import com.atlassian.jira.rpc.soap.client.RemoteProject;
+import org.sonar.plugins.testtrack.remote.Deadline;
+import org.sonar.plugins.testtrack.remote.DeadlineExceededException;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs all the calls of a transport under a shared deadline. Each call runs on the {@link RemoteCallExecutor} and
+ * is cancelled, interrupting its thread, when the deadline passes; the caller then gets a
+ * {@link DeadlineExceededException}. Calls made after the deadline fail without reaching the server, except the
+ * logout, which closes the session and lets wrapped transports like {@link RecordingTransport} save what they read.
+ */
+public class DeadlineTransport implements TrackerTransport {
+
+  private final TrackerTransport delegate;
+  private final Deadline deadline;
+  private final RemoteCallExecutor executor;
+
+  public DeadlineTransport(TrackerTransport delegate, Deadline deadline, RemoteCallExecutor executor) {
+    this.delegate = delegate;
+    this.deadline = deadline;
+    this.executor = executor;
+  }
+
+  public String login(final String username, final String password) throws RemoteException {
+    return run("login", new Callable<String>() {
+      public String call() throws RemoteException {
+        return delegate.login(username, password);
+      }
+    });
+  }
+
+  /**
+   * Runs on the calling thread whatever the deadline, only bounded by the socket timeout of the delegate.
+   */
+  public void logout(String authToken) throws RemoteException {
+    delegate.logout(authToken);
+  }
+
+  public RemotePriority[] getPriorities(final String authToken) throws RemoteException {
+    return run("getPriorities", new Callable<RemotePriority[]>() {
+      public RemotePriority[] call() throws RemoteException {
+        return delegate.getPriorities(authToken);
+      }
+    });
+  }
+
+  public RemoteFilter[] getFavouriteFilters(final String authToken) throws RemoteException {
+    return run("getFavouriteFilters", new Callable<RemoteFilter[]>() {
+      public RemoteFilter[] call() throws RemoteException {
+        return delegate.getFavouriteFilters(authToken);
+      }
+    });
+  }
+
+  public RemoteFilter[] getSavedFilters(final String authToken) throws RemoteException {
+    return run("getSavedFilters", new Callable<RemoteFilter[]>() {
+      public RemoteFilter[] call() throws RemoteException {
+        return delegate.getSavedFilters(authToken);
+      }
+    });
+  }
+
+  public RemoteIssue[] getIssuesFromFilter(final String authToken, final String filterId) throws RemoteException {
+    return run("getIssuesFromFilter", new Callable<RemoteIssue[]>() {
+      public RemoteIssue[] call() throws RemoteException {
+        return delegate.getIssuesFromFilter(authToken, filterId);
+      }
+    });
+  }
+
+  public RemoteIssue[] getIssuesFromFilterWithLimit(final String authToken, final String filterId, final int offset, final int maxNumResults)
+      throws RemoteException {
+    return run("getIssuesFromFilterWithLimit", new Callable<RemoteIssue[]>() {
+      public RemoteIssue[] call() throws RemoteException {
+        return delegate.getIssuesFromFilterWithLimit(authToken, filterId, offset, maxNumResults);
+      }
+    });
+  }
+
+  public RemoteIssue[] getIssuesFromJqlSearch(final String authToken, final String jql, final int maxResults) throws RemoteException {
+    return run("getIssuesFromJqlSearch", new Callable<RemoteIssue[]>() {
+      public RemoteIssue[] call() throws RemoteException {
+        return delegate.getIssuesFromJqlSearch(authToken, jql, maxResults);
+      }
+    });
+  }
+
+  public RemoteProject getProjectByKey(final String authToken, final String projectKey) throws RemoteException {
+    return run("getProjectByKey", new Callable<RemoteProject>() {
+      public RemoteProject call() throws RemoteException {
+        return delegate.getProjectByKey(authToken, projectKey);
+      }
+    });
+  }
+
+  public RemoteIssueType[] getIssueTypesForProject(final String authToken, final String projectId) throws RemoteException {
+    return run("getIssueTypesForProject", new Callable<RemoteIssueType[]>() {
+      public RemoteIssueType[] call() throws RemoteException {
+        return delegate.getIssueTypesForProject(authToken, projectId);
+      }
+    });
+  }
+
+  public RemoteIssue createIssue(final String authToken, final RemoteIssue issue) throws RemoteException {
+    return run("createIssue", new Callable<RemoteIssue>() {
+      public RemoteIssue call() throws RemoteException {
+        return delegate.createIssue(authToken, issue);
+      }
+    });
+  }
+
+  public RemoteIssue updateIssue(final String authToken, final String issueKey, final RemoteFieldValue[] fieldValues) throws RemoteException {
+    return run("updateIssue", new Callable<RemoteIssue>() {
+      public RemoteIssue call() throws RemoteException {
+        return delegate.updateIssue(authToken, issueKey, fieldValues);
+      }
+    });
+  }
+
+  public void addComment(final String authToken, final String issueKey, final RemoteComment comment) throws RemoteException {
+    run("addComment", new Callable<Void>() {
+      public Void call() throws RemoteException {
+        delegate.addComment(authToken, issueKey, comment);
+        return null;
+      }
+    });
+  }
+
+  public boolean addAttachmentsToIssue(final String authToken, final String issueKey, final String[] fileNames, final String[] base64Contents)
+      throws RemoteException {
+    return run("addAttachmentsToIssue", new Callable<Boolean>() {
+      public Boolean call() throws RemoteException {
+        return delegate.addAttachmentsToIssue(authToken, issueKey, fileNames, base64Contents);
+      }
+    });
+  }
+
+  public String getEndpoint() {
+    return delegate.getEndpoint();
+  }
+
+  public Deadline getDeadline() {
+    return deadline;
+  }
+
+  private <T> T run(String operation, Callable<T> call) throws RemoteException {
+    if (deadline.isExpired()) {
+      throw new DeadlineExceededException(operation);
+    }
+    return RemoteCallExecutor.await(executor.submit(getEndpoint(), call), deadline, operation);
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Growable byte buffer holding an encoded request, taken from a small pool and given back once sent, so that a
+ * steady flow of requests reuses the same few arrays. Strings are written as escaped XML text encoded in UTF-8
+ * without intermediate strings or char arrays. Not thread safe.
+ */
+final class EnvelopeBuffer extends OutputStream {
+
+  private static final int INITIAL_SIZE = 4096;
+  // larger buffers are dropped instead of pooled, not to keep a huge description in memory forever
+  private static final int MAX_POOLED_SIZE = 256 * 1024;
+  private static final int MAX_POOLED = 16;
+
+  private static final Queue<EnvelopeBuffer> POOL = new ConcurrentLinkedQueue<EnvelopeBuffer>();
+  private static final AtomicInteger POOLED = new AtomicInteger();
+
+  private static final byte[] AMP = ascii("&amp;");
+  private static final byte[] LT = ascii("&lt;");
+  private static final byte[] GT = ascii("&gt;");
+  private static final byte[] CR = ascii("&#xd;");
+
+  private byte[] bytes;
+  private int count;
+
+  EnvelopeBuffer() {
+    this(INITIAL_SIZE);
+  }
+
+  EnvelopeBuffer(int size) {
+    bytes = new byte[size];
+  }
+
+  static EnvelopeBuffer acquire() {
+    EnvelopeBuffer buffer = POOL.poll();
+    if (buffer == null) {
+      return new EnvelopeBuffer();
+    }
+    POOLED.decrementAndGet();
+    return buffer;
+  }
+
+  static void release(EnvelopeBuffer buffer) {
+    buffer.count = 0;
+    // the bound is approximate under contention, which is fine for a pool
+    if (buffer.bytes.length <= MAX_POOLED_SIZE && POOLED.get() < MAX_POOLED) {
+      POOLED.incrementAndGet();
+      POOL.offer(buffer);
+    }
+  }
+
+  static byte[] ascii(String value) {
+    byte[] ascii = new byte[value.length()];
+    for (int i = 0; i < ascii.length; i++) {
+      ascii[i] = (byte) value.charAt(i);
+    }
+    return ascii;
+  }
+
+  @Override
+  public void write(int b) {
+    ensureCapacity(1);
+    bytes[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    ensureCapacity(len);
+    System.arraycopy(b, off, bytes, count, len);
+    count += len;
+  }
+
+  @Override
+  public void write(byte[] b) {
+    write(b, 0, b.length);
+  }
+
+  /**
+   * Writes the value as XML text: markup characters escaped, carriage returns kept as character references, and
+   * the other control characters, not allowed in XML 1.0, dropped.
+   */
+  void writeText(String value) {
+    int length = value.length();
+    // at most 5 bytes per char for the escapes, 3 per char in UTF-8
+    ensureCapacity(length * 5);
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        if (c == '&') {
+          appendRaw(AMP);
+        } else if (c == '<') {
+          appendRaw(LT);
+        } else if (c == '>') {
+          appendRaw(GT);
+        } else if (c == '\r') {
+          appendRaw(CR);
+        } else if (c >= 0x20 || c == '\n' || c == '\t') {
+          bytes[count++] = (byte) c;
+        }
+      } else if (c < 0x800) {
+        bytes[count++] = (byte) (0xc0 | (c >> 6));
+        bytes[count++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        bytes[count++] = (byte) (0xf0 | (codePoint >> 18));
+        bytes[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        bytes[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        bytes[count++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+        // lone surrogate, not encodable
+        bytes[count++] = '?';
+      } else {
+        bytes[count++] = (byte) (0xe0 | (c >> 12));
+        bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        bytes[count++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+  }
+
+  /**
+   * Writes the decimal digits of a non-negative number.
+   */
+  void writeDecimal(int value) {
+    ensureCapacity(10);
+    int start = count;
+    int remaining = value;
+    do {
+      bytes[count++] = (byte) ('0' + remaining % 10);
+      remaining /= 10;
+    } while (remaining > 0);
+    for (int i = start, j = count - 1; i < j; i++, j--) {
+      byte digit = bytes[i];
+      bytes[i] = bytes[j];
+      bytes[j] = digit;
+    }
+  }
+
+  int size() {
+    return count;
+  }
+
+  void writeTo(OutputStream out) throws IOException {
+    out.write(bytes, 0, count);
+  }
+
+  /**
+   * Copy of the content, for tests and logs.
+   */
+  byte[] toByteArray() {
+    byte[] copy = new byte[count];
+    System.arraycopy(bytes, 0, copy, 0, count);
+    return copy;
+  }
+
+  private void appendRaw(byte[] raw) {
+    System.arraycopy(raw, 0, bytes, count, raw.length);
+    count += raw.length;
+  }
+
+  private void ensureCapacity(int extra) {
+    if (count + extra > bytes.length) {
+      byte[] grown = new byte[Math.max(bytes.length * 2, count + extra)];
+      System.arraycopy(bytes, 0, grown, 0, count);
+      bytes = grown;
+    }
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal pull parser for the JSON documents returned by the JIRA REST API and the Sonar web services. Values are read one at a time from the
+ * stream, nothing else than the current token is kept in memory.
+ */
+public final class JsonReader {
+
+  public enum Token {
+    BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+  }
+
+  private static final int DOCUMENT = 0;
+  private static final int OBJECT_NAME = 1;
+  private static final int OBJECT_VALUE = 2;
+  private static final int ARRAY = 3;
+
+  private final Reader in;
+  private final char[] buffer = new char[8192];
+  private int pos;
+  private int limit;
+
+  private int[] scopes = new int[32];
+  private int depth = 1;
+
+  private Token peeked;
+  private String peekedText;
+  private final StringBuilder text = new StringBuilder();
+
+  public JsonReader(Reader in) {
+    this.in = in;
+    scopes[0] = DOCUMENT;
+  }
+
+  public Token peek() throws IOException {
+    if (peeked != null) {
+      return peeked;
+    }
+    int c = nextNonWhitespace();
+    int scope = scopes[depth - 1];
+    if (scope == OBJECT_NAME) {
+      if (c == ',') {
+        c = nextNonWhitespace();
+      }
+      if (c == '}') {
+        depth--;
+        return peeked = Token.END_OBJECT;
+      }
+      if (c != '"') {
+        throw syntaxError("Expected a name");
+      }
+      peekedText = readString();
+      if (nextNonWhitespace() != ':') {
+        throw syntaxError("Expected ':'");
+      }
+      scopes[depth - 1] = OBJECT_VALUE;
+      return peeked = Token.NAME;
+    }
+    if (scope == ARRAY) {
+      if (c == ',') {
+        c = nextNonWhitespace();
+      }
+      if (c == ']') {
+        depth--;
+        return peeked = Token.END_ARRAY;
+      }
+    } else if (scope == OBJECT_VALUE) {
+      scopes[depth - 1] = OBJECT_NAME;
+    } else if (c == -1) {
+      return peeked = Token.END_DOCUMENT;
+    }
+    return peeked = readValue(c);
+  }
+
+  private Token readValue(int c) throws IOException {
+    switch (c) {
+      case '{':
+        push(OBJECT_NAME);
+        return Token.BEGIN_OBJECT;
+      case '[':
+        push(ARRAY);
+        return Token.BEGIN_ARRAY;
+      case '"':
+        peekedText = readString();
+        return Token.STRING;
+      case -1:
+        throw syntaxError("Unexpected end of document");
+      default:
+        peekedText = readLiteral((char) c);
+        if ("null".equals(peekedText)) {
+          return Token.NULL;
+        }
+        if ("true".equals(peekedText) || "false".equals(peekedText)) {
+          return Token.BOOLEAN;
+        }
+        return Token.NUMBER;
+    }
+  }
+
+  public boolean hasNext() throws IOException {
+    Token token = peek();
+    return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+  }
+
+  public void beginObject() throws IOException {
+    expect(Token.BEGIN_OBJECT);
+  }
+
+  public void endObject() throws IOException {
+    expect(Token.END_OBJECT);
+  }
+
+  public void beginArray() throws IOException {
+    expect(Token.BEGIN_ARRAY);
+  }
+
+  public void endArray() throws IOException {
+    expect(Token.END_ARRAY);
+  }
+
+  public String nextName() throws IOException {
+    expect(Token.NAME);
+    return peekedText;
+  }
+
+  /**
+   * Returns the text of a string, number or boolean value, or null for a null value.
+   */
+  public String nextString() throws IOException {
+    Token token = peek();
+    if (token == Token.NULL) {
+      peeked = null;
+      return null;
+    }
+    if (token != Token.STRING && token != Token.NUMBER && token != Token.BOOLEAN) {
+      throw syntaxError("Expected a value but was " + token);
+    }
+    peeked = null;
+    return peekedText;
+  }
+
+  public int nextInt() throws IOException {
+    String value = nextString();
+    return value == null ? 0 : Integer.parseInt(value);
+  }
+
+  public void skipValue() throws IOException {
+    int level = 0;
+    do {
+      Token token = peek();
+      peeked = null;
+      if (token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY) {
+        level++;
+      } else if (token == Token.END_OBJECT || token == Token.END_ARRAY) {
+        level--;
+      } else if (token == Token.END_DOCUMENT) {
+        throw syntaxError("Unexpected end of document");
+      } else if (token == Token.NAME) {
+        // the value of the member follows
+        continue;
+      }
+    } while (level > 0);
+  }
+
+  public void close() {
+    RestTransport.close(in);
+  }
+
+  private void expect(Token expected) throws IOException {
+    Token token = peek();
+    if (token != expected) {
+      throw syntaxError("Expected " + expected + " but was " + token);
+    }
+    peeked = null;
+  }
+
+  private void push(int scope) {
+    if (depth == scopes.length) {
+      int[] newScopes = new int[depth * 2];
+      System.arraycopy(scopes, 0, newScopes, 0, depth);
+      scopes = newScopes;
+    }
+    scopes[depth++] = scope;
+  }
+
+  private String readString() throws IOException {
+    text.setLength(0);
+    while (true) {
+      int c = read();
+      if (c == '"') {
+        return text.toString();
+      }
+      if (c == -1) {
+        throw syntaxError("Unterminated string");
+      }
+      if (c == '\\') {
+        c = read();
+        switch (c) {
+          case 'n':
+            text.append('\n');
+            break;
+          case 't':
+            text.append('\t');
+            break;
+          case 'r':
+            text.append('\r');
+            break;
+          case 'b':
+            text.append('\b');
+            break;
+          case 'f':
+            text.append('\f');
+            break;
+          case 'u':
+            int code = 0;
+            for (int i = 0; i < 4; i++) {
+              code = (code << 4) + Character.digit((char) read(), 16);
+            }
+            text.append((char) code);
+            break;
+          default:
+            text.append((char) c);
+            break;
+        }
+      } else {
+        text.append((char) c);
+      }
+    }
+  }
+
+  private String readLiteral(char first) throws IOException {
+    text.setLength(0);
+    text.append(first);
+    while (true) {
+      if (pos == limit && !fill()) {
+        return text.toString();
+      }
+      char c = buffer[pos];
+      if (c == ',' || c == '}' || c == ']' || c == ':' || Character.isWhitespace(c)) {
+        return text.toString();
+      }
+      text.append(c);
+      pos++;
+    }
+  }
+
+  private int nextNonWhitespace() throws IOException {
+    int c;
+    do {
+      c = read();
+    } while (c != -1 && Character.isWhitespace((char) c));
+    return c;
+  }
+
+  private int read() throws IOException {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    return buffer[pos++];
+  }
+
+  private boolean fill() throws IOException {
+    limit = in.read(buffer, 0, buffer.length);
+    pos = 0;
+    if (limit < 0) {
+      limit = 0;
+      return false;
+    }
+    return true;
+  }
+
+  private IOException syntaxError(String message) {
+    return new IOException("Malformed JSON: " + message);
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Minimal streaming writer for the JSON documents sent to the JIRA REST API.
+ */
+public final class JsonWriter {
+
+  private final Writer out;
+  private boolean needsComma;
+
+  public JsonWriter(Writer out) {
+    this.out = out;
+  }
+
+  public JsonWriter beginObject() throws IOException {
+    separate();
+    out.write('{');
+    needsComma = false;
+    return this;
+  }
+
+  public JsonWriter endObject() throws IOException {
+    out.write('}');
+    needsComma = true;
+    return this;
+  }
+
+  public JsonWriter beginArray() throws IOException {
+    separate();
+    out.write('[');
+    needsComma = false;
+    return this;
+  }
+
+  public JsonWriter endArray() throws IOException {
+    out.write(']');
+    needsComma = true;
+    return this;
+  }
+
+  public JsonWriter name(String name) throws IOException {
+    separate();
+    writeString(name);
+    out.write(':');
+    needsComma = false;
+    return this;
+  }
+
+  public JsonWriter value(String value) throws IOException {
+    separate();
+    if (value == null) {
+      out.write("null");
+    } else {
+      writeString(value);
+    }
+    needsComma = true;
+    return this;
+  }
+
+  public JsonWriter value(long value) throws IOException {
+    separate();
+    out.write(Long.toString(value));
+    needsComma = true;
+    return this;
+  }
+
+  /**
+   * Writes <code>"name":{"member":"value"}</code>, the way JIRA references priorities, projects or users.
+   */
+  public JsonWriter reference(String name, String member, String value) throws IOException {
+    return name(name).beginObject().name(member).value(value).endObject();
+  }
+
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  private void separate() throws IOException {
+    if (needsComma) {
+      out.write(',');
+      needsComma = false;
+    }
+  }
+
+  private void writeString(String value) throws IOException {
+    out.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          out.write("\\\"");
+          break;
+        case '\\':
+          out.write("\\\\");
+          break;
+        case '\n':
+          out.write("\\n");
+          break;
+        case '\r':
+          out.write("\\r");
+          break;
+        case '\t':
+          out.write("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            out.write(String.format("\\u%04x", (int) c));
+          } else {
+            out.write(c);
+          }
+          break;
+      }
+    }
+    out.write('"');
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.atlassian.jira.rpc.soap.client.RemoteFilter;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemoteIssueType;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import com.atlassian.jira.rpc.soap.client.RemoteProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.plugins.testtrack.snapshot.TrackerRecording;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.RemoteException;
+
+/**
+ * Keeps what is read through the delegate in a {@link TrackerRecording}, written to the given file on logout, to be
+ * replayed by {@link ReplayTransport}. The queries of an existing recording are kept, so that the modules of a
+ * project add up to one recording.
+ */
+public class RecordingTransport implements TrackerTransport {
+  private static final Logger LOG = LoggerFactory.getLogger(RecordingTransport.class);
+
+  private final TrackerTransport delegate;
+  private final File file;
+  private final TrackerRecording recording = new TrackerRecording();
+
+  public RecordingTransport(TrackerTransport delegate, File file) {
+    this.delegate = delegate;
+    this.file = file;
+  }
+
+  public String login(String username, String password) throws RemoteException {
+    return delegate.login(username, password);
+  }
+
+  public void logout(String authToken) throws RemoteException {
+    try {
+      delegate.logout(authToken);
+    } finally {
+      save();
+    }
+  }
+
+  /**
+   * Adds what has been read since the last save to the recording file.
+   */
+  public synchronized void save() {
+    try {
+      TrackerRecording merged = file.isFile() ? TrackerRecording.read(file) : new TrackerRecording();
+      merged.putAll(recording);
+      merged.write(file, System.currentTimeMillis());
+    } catch (IOException e) {
+      LOG.warn("Unable to record the JIRA issues in " + file, e);
+    }
+  }
+
+  public RemotePriority[] getPriorities(String authToken) throws RemoteException {
+    RemotePriority[] priorities = delegate.getPriorities(authToken);
+    synchronized (this) {
+      recording.setPriorities(priorities);
+    }
+    return priorities;
+  }
+
+  public RemoteFilter[] getFavouriteFilters(String authToken) throws RemoteException {
+    RemoteFilter[] filters = delegate.getFavouriteFilters(authToken);
+    synchronized (this) {
+      recording.setFavouriteFilters(filters);
+    }
+    return filters;
+  }
+
+  public RemoteFilter[] getSavedFilters(String authToken) throws RemoteException {
+    RemoteFilter[] filters = delegate.getSavedFilters(authToken);
+    synchronized (this) {
+      recording.setSavedFilters(filters);
+    }
+    return filters;
+  }
+
+  public RemoteIssue[] getIssuesFromFilter(String authToken, String filterId) throws RemoteException {
+    RemoteIssue[] issues = delegate.getIssuesFromFilter(authToken, filterId);
+    synchronized (this) {
+      recording.setIssues(TrackerRecording.filterQuery(filterId), issues);
+    }
+    return issues;
+  }
+
+  public RemoteIssue[] getIssuesFromFilterWithLimit(String authToken, String filterId, int offset, int maxNumResults) throws RemoteException {
+    RemoteIssue[] page = delegate.getIssuesFromFilterWithLimit(authToken, filterId, offset, maxNumResults);
+    synchronized (this) {
+      recording.addIssues(TrackerRecording.filterQuery(filterId), offset, page);
+    }
+    return page;
+  }
+
+  public RemoteIssue[] getIssuesFromJqlSearch(String authToken, String jql, int maxResults) throws RemoteException {
+    RemoteIssue[] issues = delegate.getIssuesFromJqlSearch(authToken, jql, maxResults);
+    synchronized (this) {
+      recording.setIssues(TrackerRecording.jqlQuery(jql), issues);
+    }
+    return issues;
+  }
+
+  public RemoteProject getProjectByKey(String authToken, String projectKey) throws RemoteException {
+    return delegate.getProjectByKey(authToken, projectKey);
+  }
+
+  public RemoteIssueType[] getIssueTypesForProject(String authToken, String projectId) throws RemoteException {
+    return delegate.getIssueTypesForProject(authToken, projectId);
+  }
+
+  public RemoteIssue createIssue(String authToken, RemoteIssue issue) throws RemoteException {
+    return delegate.createIssue(authToken, issue);
+  }
+
+  public RemoteIssue updateIssue(String authToken, String issueKey, RemoteFieldValue[] fieldValues) throws RemoteException {
+    return delegate.updateIssue(authToken, issueKey, fieldValues);
+  }
+
+  public void addComment(String authToken, String issueKey, RemoteComment comment) throws RemoteException {
+    delegate.addComment(authToken, issueKey, comment);
+  }
+
+  public boolean addAttachmentsToIssue(String authToken, String issueKey, String[] fileNames, String[] base64Contents) throws RemoteException {
+    return delegate.addAttachmentsToIssue(authToken, issueKey, fileNames, base64Contents);
+  }
+
+  public String getEndpoint() {
+    return delegate.getEndpoint();
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.atlassian.jira.rpc.soap.client.RemoteFilter;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemoteIssueType;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import com.atlassian.jira.rpc.soap.client.RemoteProject;
+import org.sonar.plugins.testtrack.snapshot.TrackerRecording;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.RemoteException;
+
+/**
+ * Answers the reads of the sensor from a {@link TrackerRecording}, without any call to JIRA. Any login is accepted,
+ * reads that were not recorded and writes fail.
+ */
+public class ReplayTransport implements TrackerTransport {
+
+  private static final String AUTH_TOKEN = "replay";
+
+  private final TrackerRecording recording;
+  private final String endpoint;
+
+  public ReplayTransport(TrackerRecording recording, String endpoint) {
+    this.recording = recording;
+    this.endpoint = endpoint;
+  }
+
+  public static ReplayTransport open(File file) {
+    try {
+      return new ReplayTransport(TrackerRecording.read(file), file.toURI().toString());
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read the JIRA recording " + file, e);
+    }
+  }
+
+  public String login(String username, String password) {
+    return AUTH_TOKEN;
+  }
+
+  public void logout(String authToken) {
+    // nothing to close
+  }
+
+  public RemotePriority[] getPriorities(String authToken) throws RemoteException {
+    return recorded(recording.getPriorities(), "priorities");
+  }
+
+  public RemoteFilter[] getFavouriteFilters(String authToken) throws RemoteException {
+    return recorded(recording.getFavouriteFilters(), "favourite filters");
+  }
+
+  public RemoteFilter[] getSavedFilters(String authToken) throws RemoteException {
+    return recorded(recording.getSavedFilters(), "saved filters");
+  }
+
+  public RemoteIssue[] getIssuesFromFilter(String authToken, String filterId) throws RemoteException {
+    return recorded(recording.getIssues(TrackerRecording.filterQuery(filterId)), "issues of the filter " + filterId);
+  }
+
+  public RemoteIssue[] getIssuesFromFilterWithLimit(String authToken, String filterId, int offset, int maxNumResults) throws RemoteException {
+    RemoteIssue[] issues = getIssuesFromFilter(authToken, filterId);
+    int from = Math.min(Math.max(0, offset), issues.length);
+    int to = Math.min(issues.length, from + Math.max(0, maxNumResults));
+    RemoteIssue[] page = new RemoteIssue[to - from];
+    System.arraycopy(issues, from, page, 0, page.length);
+    return page;
+  }
+
+  public RemoteIssue[] getIssuesFromJqlSearch(String authToken, String jql, int maxResults) throws RemoteException {
+    RemoteIssue[] issues = recorded(recording.getIssues(TrackerRecording.jqlQuery(jql)), "issues of the query " + jql);
+    if (issues.length <= maxResults) {
+      return issues;
+    }
+    RemoteIssue[] first = new RemoteIssue[maxResults];
+    System.arraycopy(issues, 0, first, 0, maxResults);
+    return first;
+  }
+
+  public RemoteProject getProjectByKey(String authToken, String projectKey) throws RemoteException {
+    throw notRecorded("project " + projectKey);
+  }
+
+  public RemoteIssueType[] getIssueTypesForProject(String authToken, String projectId) throws RemoteException {
+    throw notRecorded("issue types");
+  }
+
+  public RemoteIssue createIssue(String authToken, RemoteIssue issue) throws RemoteException {
+    throw readOnly();
+  }
+
+  public RemoteIssue updateIssue(String authToken, String issueKey, RemoteFieldValue[] fieldValues) throws RemoteException {
+    throw readOnly();
+  }
+
+  public void addComment(String authToken, String issueKey, RemoteComment comment) throws RemoteException {
+    throw readOnly();
+  }
+
+  public boolean addAttachmentsToIssue(String authToken, String issueKey, String[] fileNames, String[] base64Contents) throws RemoteException {
+    throw readOnly();
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  private <T> T[] recorded(T[] values, String what) throws RemoteException {
+    if (values == null) {
+      throw notRecorded(what);
+    }
+    return values.clone();
+  }
+
+  private RemoteException notRecorded(String what) {
+    return new RemoteException("No " + what + " in the JIRA recording " + endpoint);
+  }
+
+  private RemoteException readOnly() {
+    return new RemoteException("The JIRA recording " + endpoint + " is read-only");
+  }
+}
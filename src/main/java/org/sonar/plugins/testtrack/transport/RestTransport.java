@@ -0,0 +1,606 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.RemoteAuthenticationException;
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteComponent;
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.atlassian.jira.rpc.soap.client.RemoteFilter;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemoteIssueType;
+import com.atlassian.jira.rpc.soap.client.RemotePermissionException;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import com.atlassian.jira.rpc.soap.client.RemoteProject;
+import org.apache.commons.codec.binary.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transport through the JIRA REST API (version 2). Responses are parsed as they are read from the connection and
+ * mapped directly to the SOAP beans, so that the rest of the plugin does not depend on the protocol.
+ * <p/>
+ * REST is stateless: the "authentication token" returned by {@link #login(String, String)} is the value of the
+ * HTTP basic authorization header, checked once against the server.
+ */
+public class RestTransport implements TrackerTransport {
+
+  public static final String REST_BASE_URL = "/rest/api/2";
+
+  static final int SEARCH_PAGE_SIZE = 500;
+
+  private static final String ISSUE_FIELDS = "summary,priority,status,issuetype,assignee,project,description,components";
+  private static final String UTF8 = "UTF-8";
+
+  private final String serverUrl;
+  private int timeoutMs = 60000;
+
+  public RestTransport(String serverUrl) {
+    this.serverUrl = serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+  }
+
+  public void setTimeout(int timeoutMs) {
+    this.timeoutMs = timeoutMs;
+  }
+
+  public String login(String username, String password) throws RemoteException {
+    String authToken = "Basic " + encode(username + ":" + password);
+    Reader response = call("GET", "/myself", authToken, null);
+    close(response);
+    return authToken;
+  }
+
+  public void logout(String authToken) {
+    // nothing is kept on the server
+  }
+
+  public RemotePriority[] getPriorities(String authToken) throws RemoteException {
+    JsonReader reader = read("/priority", authToken);
+    try {
+      List<RemotePriority> priorities = new ArrayList<RemotePriority>();
+      reader.beginArray();
+      while (reader.hasNext()) {
+        RemotePriority priority = new RemotePriority();
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String name = reader.nextName();
+          if ("id".equals(name)) {
+            priority.setId(reader.nextString());
+          } else if ("name".equals(name)) {
+            priority.setName(reader.nextString());
+          } else if ("description".equals(name)) {
+            priority.setDescription(reader.nextString());
+          } else if ("statusColor".equals(name)) {
+            priority.setColor(reader.nextString());
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+        priorities.add(priority);
+      }
+      reader.endArray();
+      return priorities.toArray(new RemotePriority[priorities.size()]);
+    } catch (IOException e) {
+      throw remoteException("/priority", e);
+    } finally {
+      reader.close();
+    }
+  }
+
+  public RemoteFilter[] getFavouriteFilters(String authToken) throws RemoteException {
+    return readFilters("/filter/favourite", authToken);
+  }
+
+  /**
+   * The REST API has no listing of all the saved filters, the favourite ones are returned instead.
+   */
+  public RemoteFilter[] getSavedFilters(String authToken) throws RemoteException {
+    return getFavouriteFilters(authToken);
+  }
+
+  public RemoteIssue[] getIssuesFromFilter(String authToken, String filterId) throws RemoteException {
+    return getIssuesFromJqlSearch(authToken, "filter=" + filterId, Integer.MAX_VALUE);
+  }
+
+  public RemoteIssue[] getIssuesFromFilterWithLimit(String authToken, String filterId, int offset, int maxNumResults) throws RemoteException {
+    List<RemoteIssue> issues = new ArrayList<RemoteIssue>();
+    String path = "/search?jql=" + urlEncode("filter=" + filterId) + "&startAt=" + offset + "&maxResults=" + maxNumResults
+      + "&fields=" + ISSUE_FIELDS;
+    readSearchPage(path, authToken, issues);
+    return issues.toArray(new RemoteIssue[issues.size()]);
+  }
+
+  public RemoteIssue[] getIssuesFromJqlSearch(String authToken, String jql, int maxResults) throws RemoteException {
+    List<RemoteIssue> issues = new ArrayList<RemoteIssue>();
+    int total = Integer.MAX_VALUE;
+    while (issues.size() < Math.min(total, maxResults)) {
+      int pageSize = Math.min(SEARCH_PAGE_SIZE, maxResults - issues.size());
+      String path = "/search?jql=" + urlEncode(jql) + "&startAt=" + issues.size() + "&maxResults=" + pageSize
+        + "&fields=" + ISSUE_FIELDS;
+      int before = issues.size();
+      total = readSearchPage(path, authToken, issues);
+      if (issues.size() == before) {
+        // the server returned less than announced, do not loop forever
+        break;
+      }
+    }
+    return issues.toArray(new RemoteIssue[issues.size()]);
+  }
+
+  public RemoteProject getProjectByKey(String authToken, String projectKey) throws RemoteException {
+    String path = "/project/" + urlEncode(projectKey);
+    JsonReader reader = read(path, authToken);
+    try {
+      RemoteProject project = new RemoteProject();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("id".equals(name)) {
+          project.setId(reader.nextString());
+        } else if ("key".equals(name)) {
+          project.setKey(reader.nextString());
+        } else if ("name".equals(name)) {
+          project.setName(reader.nextString());
+        } else if ("description".equals(name)) {
+          project.setDescription(reader.nextString());
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return project;
+    } catch (IOException e) {
+      throw remoteException(path, e);
+    } finally {
+      reader.close();
+    }
+  }
+
+  public RemoteIssueType[] getIssueTypesForProject(String authToken, String projectId) throws RemoteException {
+    String path = "/project/" + urlEncode(projectId);
+    JsonReader reader = read(path, authToken);
+    try {
+      List<RemoteIssueType> types = new ArrayList<RemoteIssueType>();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if ("issueTypes".equals(reader.nextName())) {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            RemoteIssueType type = new RemoteIssueType();
+            reader.beginObject();
+            while (reader.hasNext()) {
+              String name = reader.nextName();
+              if ("id".equals(name)) {
+                type.setId(reader.nextString());
+              } else if ("name".equals(name)) {
+                type.setName(reader.nextString());
+              } else if ("subtask".equals(name)) {
+                type.setSubTask(Boolean.parseBoolean(reader.nextString()));
+              } else {
+                reader.skipValue();
+              }
+            }
+            reader.endObject();
+            types.add(type);
+          }
+          reader.endArray();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return types.toArray(new RemoteIssueType[types.size()]);
+    } catch (IOException e) {
+      throw remoteException(path, e);
+    } finally {
+      reader.close();
+    }
+  }
+
+  public RemoteIssue createIssue(String authToken, RemoteIssue issue) throws RemoteException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+    try {
+      JsonWriter writer = newWriter(body);
+      writer.beginObject().name("fields").beginObject();
+      writer.reference("project", "key", issue.getProject());
+      writer.reference("issuetype", "id", issue.getType());
+      if (issue.getPriority() != null) {
+        writer.reference("priority", "id", issue.getPriority());
+      }
+      writer.name("summary").value(issue.getSummary());
+      writer.name("description").value(issue.getDescription());
+      if (issue.getAssignee() != null) {
+        writer.reference("assignee", "name", issue.getAssignee());
+      }
+      writer.endObject().endObject().flush();
+    } catch (IOException e) {
+      throw remoteException("/issue", e);
+    }
+
+    JsonReader reader = new JsonReader(call("POST", "/issue", authToken, body.toByteArray()));
+    RemoteIssue created = new RemoteIssue();
+    created.setProject(issue.getProject());
+    created.setType(issue.getType());
+    created.setPriority(issue.getPriority());
+    created.setSummary(issue.getSummary());
+    created.setDescription(issue.getDescription());
+    created.setAssignee(issue.getAssignee());
+    try {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("id".equals(name)) {
+          created.setId(reader.nextString());
+        } else if ("key".equals(name)) {
+          created.setKey(reader.nextString());
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return created;
+    } catch (IOException e) {
+      throw remoteException("/issue", e);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Only the fields are sent back; JIRA answers an update with an empty body, so the returned issue only holds
+   * the key.
+   */
+  public RemoteIssue updateIssue(String authToken, String issueKey, RemoteFieldValue[] fieldValues) throws RemoteException {
+    String path = "/issue/" + urlEncode(issueKey);
+    ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+    try {
+      JsonWriter writer = newWriter(body);
+      writer.beginObject().name("fields").beginObject();
+      for (RemoteFieldValue fieldValue : fieldValues) {
+        String[] values = fieldValue.getValues();
+        writer.name(fieldValue.getId()).value(values == null || values.length == 0 ? null : values[0]);
+      }
+      writer.endObject().endObject().flush();
+    } catch (IOException e) {
+      throw remoteException(path, e);
+    }
+    close(call("PUT", path, authToken, body.toByteArray()));
+    RemoteIssue updated = new RemoteIssue();
+    updated.setKey(issueKey);
+    return updated;
+  }
+
+  public void addComment(String authToken, String issueKey, RemoteComment comment) throws RemoteException {
+    String path = "/issue/" + urlEncode(issueKey) + "/comment";
+    ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+    try {
+      JsonWriter writer = newWriter(body);
+      writer.beginObject().name("body").value(comment.getBody()).endObject().flush();
+    } catch (IOException e) {
+      throw remoteException(path, e);
+    }
+    close(call("POST", path, authToken, body.toByteArray()));
+  }
+
+  /**
+   * Sent as a multipart form, the contents are decoded one at a time.
+   */
+  public boolean addAttachmentsToIssue(String authToken, String issueKey, String[] fileNames, String[] base64Contents) throws RemoteException {
+    String path = "/issue/" + urlEncode(issueKey) + "/attachments";
+    String boundary = "----testtrack" + Long.toHexString(System.nanoTime());
+    ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+    try {
+      for (int i = 0; i < fileNames.length; i++) {
+        body.write(("--" + boundary + "\r\n"
+          + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileNames[i].replace("\"", "") + "\"\r\n"
+          + "Content-Type: application/octet-stream\r\n\r\n").getBytes(UTF8));
+        body.write(Base64.decodeBase64(base64Contents[i].getBytes(UTF8)));
+        body.write("\r\n".getBytes(UTF8));
+      }
+      body.write(("--" + boundary + "--\r\n").getBytes(UTF8));
+    } catch (IOException e) {
+      throw remoteException(path, e);
+    }
+    close(call("POST", path, authToken, body.toByteArray(), "multipart/form-data; boundary=" + boundary));
+    return true;
+  }
+
+  public String getEndpoint() {
+    return serverUrl + REST_BASE_URL;
+  }
+
+  private RemoteFilter[] readFilters(String path, String authToken) throws RemoteException {
+    JsonReader reader = read(path, authToken);
+    try {
+      List<RemoteFilter> filters = new ArrayList<RemoteFilter>();
+      reader.beginArray();
+      while (reader.hasNext()) {
+        RemoteFilter filter = new RemoteFilter();
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String name = reader.nextName();
+          if ("id".equals(name)) {
+            filter.setId(reader.nextString());
+          } else if ("name".equals(name)) {
+            filter.setName(reader.nextString());
+          } else if ("description".equals(name)) {
+            filter.setDescription(reader.nextString());
+          } else if ("owner".equals(name)) {
+            filter.setAuthor(readMember(reader, "name"));
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+        filters.add(filter);
+      }
+      reader.endArray();
+      return filters.toArray(new RemoteFilter[filters.size()]);
+    } catch (IOException e) {
+      throw remoteException(path, e);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * @return the total number of issues matching the search
+   */
+  private int readSearchPage(String path, String authToken, List<RemoteIssue> issues) throws RemoteException {
+    JsonReader reader = read(path, authToken);
+    try {
+      int total = 0;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("total".equals(name)) {
+          total = reader.nextInt();
+        } else if ("issues".equals(name)) {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            issues.add(readIssue(reader));
+          }
+          reader.endArray();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return total;
+    } catch (IOException e) {
+      throw remoteException(path, e);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static RemoteIssue readIssue(JsonReader reader) throws IOException {
+    RemoteIssue issue = new RemoteIssue();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("id".equals(name)) {
+        issue.setId(reader.nextString());
+      } else if ("key".equals(name)) {
+        issue.setKey(reader.nextString());
+      } else if ("fields".equals(name)) {
+        readIssueFields(reader, issue);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return issue;
+  }
+
+  private static void readIssueFields(JsonReader reader, RemoteIssue issue) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("summary".equals(name)) {
+        issue.setSummary(reader.nextString());
+      } else if ("description".equals(name)) {
+        issue.setDescription(reader.nextString());
+      } else if ("priority".equals(name)) {
+        issue.setPriority(readMember(reader, "id"));
+      } else if ("status".equals(name)) {
+        issue.setStatus(readMember(reader, "id"));
+      } else if ("issuetype".equals(name)) {
+        issue.setType(readMember(reader, "id"));
+      } else if ("assignee".equals(name)) {
+        issue.setAssignee(readMember(reader, "name"));
+      } else if ("project".equals(name)) {
+        issue.setProject(readMember(reader, "key"));
+      } else if ("components".equals(name)) {
+        issue.setComponents(readComponents(reader));
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private static RemoteComponent[] readComponents(JsonReader reader) throws IOException {
+    List<RemoteComponent> components = new ArrayList<RemoteComponent>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      RemoteComponent component = new RemoteComponent();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("id".equals(name)) {
+          component.setId(reader.nextString());
+        } else if ("name".equals(name)) {
+          component.setName(reader.nextString());
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      components.add(component);
+    }
+    reader.endArray();
+    return components.toArray(new RemoteComponent[components.size()]);
+  }
+
+  /**
+   * Reads a nested object like <code>{"id":"3","name":"Major"}</code> and keeps only one of its members.
+   */
+  private static String readMember(JsonReader reader, String member) throws IOException {
+    if (reader.peek() == JsonReader.Token.NULL) {
+      return reader.nextString();
+    }
+    String value = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (member.equals(reader.nextName())) {
+        value = reader.nextString();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return value;
+  }
+
+  private JsonReader read(String path, String authToken) throws RemoteException {
+    return new JsonReader(call("GET", path, authToken, null));
+  }
+
+  /**
+   * Opens the connection and returns the response stream, not read yet.
+   */
+  protected Reader call(String method, String path, String authToken, byte[] body) throws RemoteException {
+    return call(method, path, authToken, body, "application/json; charset=UTF-8");
+  }
+
+  private Reader call(String method, String path, String authToken, byte[] body, String contentType) throws RemoteException {
+    String url = serverUrl + REST_BASE_URL + path;
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+      connection.setRequestMethod(method);
+      connection.setConnectTimeout(timeoutMs);
+      connection.setReadTimeout(timeoutMs);
+      connection.setRequestProperty("Authorization", authToken);
+      connection.setRequestProperty("Accept", "application/json");
+      if (body != null) {
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty("Content-Type", contentType);
+        // required by JIRA for the uploads, against cross-site request forgery
+        connection.setRequestProperty("X-Atlassian-Token", "no-check");
+        OutputStream out = connection.getOutputStream();
+        try {
+          out.write(body);
+        } finally {
+          out.close();
+        }
+      }
+      int status = connection.getResponseCode();
+      if (status >= 400) {
+        throw httpError(status, method, path, connection.getErrorStream());
+      }
+      return new InputStreamReader(connection.getInputStream(), UTF8);
+    } catch (RemoteException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new RemoteException("Unable to call " + url, e);
+    }
+  }
+
+  private static RemoteException httpError(int status, String method, String path, InputStream errorStream) {
+    if (status == HttpURLConnection.HTTP_UNAUTHORIZED) {
+      RemoteAuthenticationException exception = new RemoteAuthenticationException();
+      exception.setFaultString("Authentication failed on " + method + " " + path);
+      return exception;
+    }
+    if (status == HttpURLConnection.HTTP_FORBIDDEN) {
+      RemotePermissionException exception = new RemotePermissionException();
+      exception.setFaultString("Permission denied on " + method + " " + path);
+      return exception;
+    }
+    return new RemoteException("HTTP " + status + " on " + method + " " + path + errorMessage(errorStream));
+  }
+
+  private static String errorMessage(InputStream errorStream) {
+    if (errorStream == null) {
+      return "";
+    }
+    try {
+      byte[] buffer = new byte[200];
+      int length = errorStream.read(buffer);
+      return length <= 0 ? "" : ": " + new String(buffer, 0, length, UTF8);
+    } catch (IOException e) {
+      return "";
+    } finally {
+      try {
+        errorStream.close();
+      } catch (IOException e) {
+        // ignored
+      }
+    }
+  }
+
+  private static JsonWriter newWriter(OutputStream out) throws UnsupportedEncodingException {
+    return new JsonWriter(new OutputStreamWriter(out, UTF8));
+  }
+
+  private static RemoteException remoteException(String path, IOException e) {
+    return new RemoteException("Unable to read the response of " + path, e);
+  }
+
+  static void close(Reader reader) {
+    try {
+      reader.close();
+    } catch (IOException e) {
+      // ignored
+    }
+  }
+
+  private static String encode(String credentials) {
+    try {
+      return new String(Base64.encodeBase64(credentials.getBytes(UTF8)), "US-ASCII");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String urlEncode(String value) {
+    try {
+      return URLEncoder.encode(value, UTF8);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
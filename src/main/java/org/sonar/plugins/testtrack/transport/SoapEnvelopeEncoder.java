@@ -0,0 +1,187 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+
+/**
+ * Encodes the createIssue, updateIssue and addComment requests of the JIRA SOAP service the way Axis does (RPC
+ * style, SOAP encoding, beans inline), without going through its reflective bean serializers: the fixed parts of
+ * the envelopes are byte constants and only the values are encoded, straight into an {@link EnvelopeBuffer}.
+ * Null values are left out, which the service reads as null.
+ */
+final class SoapEnvelopeEncoder {
+
+  private static final byte[] ENVELOPE_START = EnvelopeBuffer.ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+    + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" "
+    + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"><soapenv:Body>");
+  private static final byte[] ENVELOPE_END = EnvelopeBuffer.ascii("</soapenv:Body></soapenv:Envelope>");
+
+  private static final byte[] CREATE_ISSUE_START = operationStart("createIssue");
+  private static final byte[] CREATE_ISSUE_END = EnvelopeBuffer.ascii("</ns1:createIssue>");
+  private static final byte[] UPDATE_ISSUE_START = operationStart("updateIssue");
+  private static final byte[] UPDATE_ISSUE_END = EnvelopeBuffer.ascii("</ns1:updateIssue>");
+  private static final byte[] ADD_COMMENT_START = operationStart("addComment");
+  private static final byte[] ADD_COMMENT_END = EnvelopeBuffer.ascii("</ns1:addComment>");
+
+  private static final Tag IN0 = new Tag("in0");
+  private static final Tag IN1 = new Tag("in1");
+  private static final byte[] ISSUE_START = EnvelopeBuffer.ascii("<in1 xsi:type=\"ns2:RemoteIssue\" xmlns:ns2=\"http://beans.soap.rpc.jira.atlassian.com\">");
+  private static final byte[] ISSUE_END = EnvelopeBuffer.ascii("</in1>");
+  private static final byte[] COMMENT_START = EnvelopeBuffer.ascii("<in2 xsi:type=\"ns2:RemoteComment\" xmlns:ns2=\"http://beans.soap.rpc.jira.atlassian.com\">");
+  private static final byte[] FIELD_VALUES_START = EnvelopeBuffer.ascii("<in2 soapenc:arrayType=\"ns2:RemoteFieldValue[");
+  private static final byte[] FIELD_VALUES_TYPE = EnvelopeBuffer.ascii("]\" xsi:type=\"soapenc:Array\" xmlns:ns2=\"http://beans.soap.rpc.jira.atlassian.com\" "
+    + "xmlns:soapenc=\"http://schemas.xmlsoap.org/soap/encoding/\">");
+  private static final byte[] IN2_END = EnvelopeBuffer.ascii("</in2>");
+  private static final byte[] FIELD_VALUE_START = EnvelopeBuffer.ascii("<item xsi:type=\"ns2:RemoteFieldValue\">");
+  private static final byte[] VALUES_START = EnvelopeBuffer.ascii("<values soapenc:arrayType=\"xsd:string[");
+  private static final byte[] VALUES_TYPE = EnvelopeBuffer.ascii("]\" xsi:type=\"soapenc:Array\">");
+  private static final byte[] VALUES_END = EnvelopeBuffer.ascii("</values>");
+  private static final byte[] ITEM_END = EnvelopeBuffer.ascii("</item>");
+  private static final Tag ITEM = new Tag("item");
+
+  private static final Tag ID = new Tag("id");
+  private static final Tag KEY = new Tag("key");
+  private static final Tag PROJECT = new Tag("project");
+  private static final Tag TYPE = new Tag("type");
+  private static final Tag PRIORITY = new Tag("priority");
+  private static final Tag SUMMARY = new Tag("summary");
+  private static final Tag DESCRIPTION = new Tag("description");
+  private static final Tag ENVIRONMENT = new Tag("environment");
+  private static final Tag ASSIGNEE = new Tag("assignee");
+  private static final Tag REPORTER = new Tag("reporter");
+  private static final Tag STATUS = new Tag("status");
+  private static final Tag RESOLUTION = new Tag("resolution");
+  private static final Tag BODY = new Tag("body");
+  private static final Tag AUTHOR = new Tag("author");
+  private static final Tag UPDATE_AUTHOR = new Tag("updateAuthor");
+  private static final Tag GROUP_LEVEL = new Tag("groupLevel");
+  private static final Tag ROLE_LEVEL = new Tag("roleLevel");
+
+  private SoapEnvelopeEncoder() {
+  }
+
+  /**
+   * Only the text fields of an issue are encoded here; issues with versions, components, custom fields or dates
+   * are left to Axis.
+   */
+  static boolean canEncode(RemoteIssue issue) {
+    return issue.getAffectsVersions() == null && issue.getFixVersions() == null && issue.getComponents() == null
+      && issue.getCustomFieldValues() == null && issue.getAttachmentNames() == null && issue.getCreated() == null
+      && issue.getUpdated() == null && issue.getDuedate() == null && issue.getVotes() == null;
+  }
+
+  static boolean canEncode(RemoteComment comment) {
+    return comment.getCreated() == null && comment.getUpdated() == null;
+  }
+
+  static void createIssue(EnvelopeBuffer out, String authToken, RemoteIssue issue) {
+    out.write(ENVELOPE_START);
+    out.write(CREATE_ISSUE_START);
+    string(out, IN0, authToken);
+    out.write(ISSUE_START);
+    string(out, ID, issue.getId());
+    string(out, KEY, issue.getKey());
+    string(out, PROJECT, issue.getProject());
+    string(out, TYPE, issue.getType());
+    string(out, PRIORITY, issue.getPriority());
+    string(out, SUMMARY, issue.getSummary());
+    string(out, DESCRIPTION, issue.getDescription());
+    string(out, ENVIRONMENT, issue.getEnvironment());
+    string(out, ASSIGNEE, issue.getAssignee());
+    string(out, REPORTER, issue.getReporter());
+    string(out, STATUS, issue.getStatus());
+    string(out, RESOLUTION, issue.getResolution());
+    out.write(ISSUE_END);
+    out.write(CREATE_ISSUE_END);
+    out.write(ENVELOPE_END);
+  }
+
+  static void updateIssue(EnvelopeBuffer out, String authToken, String issueKey, RemoteFieldValue[] fieldValues) {
+    out.write(ENVELOPE_START);
+    out.write(UPDATE_ISSUE_START);
+    string(out, IN0, authToken);
+    string(out, IN1, issueKey);
+    out.write(FIELD_VALUES_START);
+    out.writeDecimal(fieldValues.length);
+    out.write(FIELD_VALUES_TYPE);
+    for (RemoteFieldValue fieldValue : fieldValues) {
+      out.write(FIELD_VALUE_START);
+      string(out, ID, fieldValue.getId());
+      String[] values = fieldValue.getValues();
+      if (values != null) {
+        out.write(VALUES_START);
+        out.writeDecimal(values.length);
+        out.write(VALUES_TYPE);
+        for (String value : values) {
+          string(out, ITEM, value);
+        }
+        out.write(VALUES_END);
+      }
+      out.write(ITEM_END);
+    }
+    out.write(IN2_END);
+    out.write(UPDATE_ISSUE_END);
+    out.write(ENVELOPE_END);
+  }
+
+  static void addComment(EnvelopeBuffer out, String authToken, String issueKey, RemoteComment comment) {
+    out.write(ENVELOPE_START);
+    out.write(ADD_COMMENT_START);
+    string(out, IN0, authToken);
+    string(out, IN1, issueKey);
+    out.write(COMMENT_START);
+    string(out, ID, comment.getId());
+    string(out, BODY, comment.getBody());
+    string(out, AUTHOR, comment.getAuthor());
+    string(out, UPDATE_AUTHOR, comment.getUpdateAuthor());
+    string(out, GROUP_LEVEL, comment.getGroupLevel());
+    string(out, ROLE_LEVEL, comment.getRoleLevel());
+    out.write(IN2_END);
+    out.write(ADD_COMMENT_END);
+    out.write(ENVELOPE_END);
+  }
+
+  private static void string(EnvelopeBuffer out, Tag tag, String value) {
+    if (value == null) {
+      return;
+    }
+    out.write(tag.open);
+    out.writeText(value);
+    out.write(tag.close);
+  }
+
+  private static byte[] operationStart(String operation) {
+    return EnvelopeBuffer.ascii("<ns1:" + operation + " soapenv:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\" "
+      + "xmlns:ns1=\"http://soap.rpc.jira.atlassian.com\">");
+  }
+
+  private static final class Tag {
+    private final byte[] open;
+    private final byte[] close;
+
+    private Tag(String name) {
+      open = EnvelopeBuffer.ascii("<" + name + " xsi:type=\"xsd:string\">");
+      close = EnvelopeBuffer.ascii("</" + name + ">");
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.RemoteAuthenticationException;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemotePermissionException;
+import com.atlassian.jira.rpc.soap.client.RemoteValidationException;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.rmi.RemoteException;
+
+/**
+ * Reads the responses of the requests encoded by {@link SoapEnvelopeEncoder}: the text fields of the returned
+ * issue, inline or referenced, or the fault, mapped to the exceptions thrown by the Axis stub.
+ */
+final class SoapResponseReader extends DefaultHandler {
+
+  private static final String XSI = "http://www.w3.org/2001/XMLSchema-instance";
+  private static final SAXParserFactory FACTORY = SAXParserFactory.newInstance();
+
+  static {
+    FACTORY.setNamespaceAware(true);
+  }
+
+  private int depth;
+  private int issueDepth = -1;
+  private RemoteIssue issue;
+  private String field;
+  private boolean nil;
+  private final StringBuilder text = new StringBuilder();
+  private boolean fault;
+  private String faultString;
+  private final StringBuilder faultDetail = new StringBuilder();
+  private int detailDepth = -1;
+
+  private SoapResponseReader() {
+  }
+
+  /**
+   * @param status HTTP status of the response, faults come with 500
+   */
+  static SoapResponseReader read(InputStream in, int status) throws RemoteException {
+    SoapResponseReader reader = new SoapResponseReader();
+    if (in != null) {
+      try {
+        newParser().parse(new InputSource(in), reader);
+      } catch (SAXException e) {
+        throw new RemoteException("Unable to read the response of the JIRA server (HTTP " + status + ")", e);
+      } catch (IOException e) {
+        throw new RemoteException("Unable to read the response of the JIRA server", e);
+      } finally {
+        close(in);
+      }
+    }
+    if (reader.fault) {
+      throw reader.toException();
+    }
+    if (status >= 300) {
+      throw new RemoteException("HTTP " + status + " from the JIRA server");
+    }
+    return reader;
+  }
+
+  /**
+   * @return null if the response holds no issue
+   */
+  RemoteIssue getIssue() {
+    return issue;
+  }
+
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes attributes) {
+    depth++;
+    text.setLength(0);
+    if ("Fault".equals(localName)) {
+      fault = true;
+    } else if (fault && "detail".equals(localName)) {
+      detailDepth = depth;
+    } else if (detailDepth > 0 && depth == detailDepth + 1) {
+      faultDetail.append(localName).append(' ');
+    } else if (issueDepth < 0 && isIssue(attributes.getValue(XSI, "type"))) {
+      issueDepth = depth;
+      issue = new RemoteIssue();
+    } else if (issueDepth > 0 && depth == issueDepth + 1) {
+      field = localName;
+      nil = "true".equals(attributes.getValue(XSI, "nil"));
+    }
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int length) {
+    text.append(ch, start, length);
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) {
+    if (fault && "faultstring".equals(localName)) {
+      faultString = text.toString();
+    } else if (issueDepth > 0 && depth == issueDepth + 1 && field != null) {
+      setField(field, nil ? null : text.toString());
+      field = null;
+    } else if (depth == issueDepth) {
+      issueDepth = 0;
+    } else if (depth == detailDepth) {
+      detailDepth = -1;
+    }
+    text.setLength(0);
+    depth--;
+  }
+
+  private void setField(String name, String value) {
+    if ("id".equals(name)) {
+      issue.setId(value);
+    } else if ("key".equals(name)) {
+      issue.setKey(value);
+    } else if ("project".equals(name)) {
+      issue.setProject(value);
+    } else if ("type".equals(name)) {
+      issue.setType(value);
+    } else if ("priority".equals(name)) {
+      issue.setPriority(value);
+    } else if ("status".equals(name)) {
+      issue.setStatus(value);
+    } else if ("resolution".equals(name)) {
+      issue.setResolution(value);
+    } else if ("summary".equals(name)) {
+      issue.setSummary(value);
+    } else if ("description".equals(name)) {
+      issue.setDescription(value);
+    } else if ("environment".equals(name)) {
+      issue.setEnvironment(value);
+    } else if ("assignee".equals(name)) {
+      issue.setAssignee(value);
+    } else if ("reporter".equals(name)) {
+      issue.setReporter(value);
+    }
+  }
+
+  private RemoteException toException() {
+    String detail = faultDetail.toString();
+    com.atlassian.jira.rpc.soap.client.RemoteException exception;
+    if (detail.contains("RemoteAuthenticationException")) {
+      exception = new RemoteAuthenticationException();
+    } else if (detail.contains("RemotePermissionException")) {
+      exception = new RemotePermissionException();
+    } else if (detail.contains("RemoteValidationException")) {
+      exception = new RemoteValidationException();
+    } else if (detail.contains("RemoteException")) {
+      exception = new com.atlassian.jira.rpc.soap.client.RemoteException();
+    } else {
+      return new RemoteException(faultString);
+    }
+    exception.setFaultString(faultString);
+    return exception;
+  }
+
+  private static boolean isIssue(String xsiType) {
+    return xsiType != null && (xsiType.endsWith(":RemoteIssue") || "RemoteIssue".equals(xsiType));
+  }
+
+  private static SAXParser newParser() {
+    try {
+      synchronized (FACTORY) {
+        return FACTORY.newSAXParser();
+      }
+    } catch (ParserConfigurationException e) {
+      throw new IllegalStateException("No XML parser", e);
+    } catch (SAXException e) {
+      throw new IllegalStateException("No XML parser", e);
+    }
+  }
+
+  /**
+   * Reads the response to its end before closing it, so that the connection goes back to the keep-alive cache.
+   */
+  private static void close(InputStream in) {
+    try {
+      while (in.read() >= 0) {
+        // the parser stops at the end of the envelope
+      }
+      in.close();
+    } catch (IOException e) {
+      // nothing to do, the response has been read
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.JiraSoapService;
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.atlassian.jira.rpc.soap.client.RemoteFilter;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemoteIssueType;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import com.atlassian.jira.rpc.soap.client.RemoteProject;
+import org.apache.axis.client.Stub;
+import org.sonar.plugins.testtrack.soap.TestTrackSoapSession;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.rmi.RemoteException;
+
+/**
+ * Transport through the SOAP service generated by Axis from the JIRA WSDL. When created from the URL of the
+ * service, the requests that write issues and comments, sent in bulk by the links and the export, are encoded by
+ * {@link SoapEnvelopeEncoder} instead of Axis.
+ */
+public class SoapTransport implements TrackerTransport {
+
+  private final JiraSoapService service;
+  private final String endpoint;
+  private final boolean directEncoding;
+  private int timeoutMs;
+
+  public SoapTransport(JiraSoapService service, String endpoint) {
+    this(service, endpoint, false);
+  }
+
+  SoapTransport(JiraSoapService service, String endpoint, boolean directEncoding) {
+    this.service = service;
+    this.endpoint = endpoint;
+    this.directEncoding = directEncoding;
+  }
+
+  public static SoapTransport create(URL soapUrl) {
+    return new SoapTransport(new TestTrackSoapSession(soapUrl).getJiraSoapService(), soapUrl.toExternalForm(), true);
+  }
+
+  /**
+   * Socket timeout of the calls, so that a call abandoned by its caller doesn't keep its thread forever.
+   */
+  public void setTimeout(int timeoutMs) {
+    this.timeoutMs = timeoutMs;
+    if (service instanceof Stub) {
+      ((Stub) service).setTimeout(timeoutMs);
+    }
+  }
+
+  public String login(String username, String password) throws RemoteException {
+    return service.login(username, password);
+  }
+
+  public void logout(String authToken) throws RemoteException {
+    service.logout(authToken);
+  }
+
+  public RemotePriority[] getPriorities(String authToken) throws RemoteException {
+    return service.getPriorities(authToken);
+  }
+
+  public RemoteFilter[] getFavouriteFilters(String authToken) throws RemoteException {
+    return service.getFavouriteFilters(authToken);
+  }
+
+  public RemoteFilter[] getSavedFilters(String authToken) throws RemoteException {
+    return service.getSavedFilters(authToken);
+  }
+
+  public RemoteIssue[] getIssuesFromFilter(String authToken, String filterId) throws RemoteException {
+    return service.getIssuesFromFilter(authToken, filterId);
+  }
+
+  public RemoteIssue[] getIssuesFromFilterWithLimit(String authToken, String filterId, int offset, int maxNumResults) throws RemoteException {
+    return service.getIssuesFromFilterWithLimit(authToken, filterId, offset, maxNumResults);
+  }
+
+  public RemoteIssue[] getIssuesFromJqlSearch(String authToken, String jql, int maxResults) throws RemoteException {
+    return service.getIssuesFromJqlSearch(authToken, jql, maxResults);
+  }
+
+  public RemoteProject getProjectByKey(String authToken, String projectKey) throws RemoteException {
+    return service.getProjectByKey(authToken, projectKey);
+  }
+
+  public RemoteIssueType[] getIssueTypesForProject(String authToken, String projectId) throws RemoteException {
+    return service.getIssueTypesForProject(authToken, projectId);
+  }
+
+  public RemoteIssue createIssue(String authToken, RemoteIssue issue) throws RemoteException {
+    if (!directEncoding || !SoapEnvelopeEncoder.canEncode(issue)) {
+      return service.createIssue(authToken, issue);
+    }
+    EnvelopeBuffer envelope = EnvelopeBuffer.acquire();
+    try {
+      SoapEnvelopeEncoder.createIssue(envelope, authToken, issue);
+      return returnedIssue(post(envelope), "createIssue");
+    } finally {
+      EnvelopeBuffer.release(envelope);
+    }
+  }
+
+  public RemoteIssue updateIssue(String authToken, String issueKey, RemoteFieldValue[] fieldValues) throws RemoteException {
+    if (!directEncoding) {
+      return service.updateIssue(authToken, issueKey, fieldValues);
+    }
+    EnvelopeBuffer envelope = EnvelopeBuffer.acquire();
+    try {
+      SoapEnvelopeEncoder.updateIssue(envelope, authToken, issueKey, fieldValues);
+      return returnedIssue(post(envelope), "updateIssue");
+    } finally {
+      EnvelopeBuffer.release(envelope);
+    }
+  }
+
+  public void addComment(String authToken, String issueKey, RemoteComment comment) throws RemoteException {
+    if (!directEncoding || !SoapEnvelopeEncoder.canEncode(comment)) {
+      service.addComment(authToken, issueKey, comment);
+      return;
+    }
+    EnvelopeBuffer envelope = EnvelopeBuffer.acquire();
+    try {
+      SoapEnvelopeEncoder.addComment(envelope, authToken, issueKey, comment);
+      post(envelope);
+    } finally {
+      EnvelopeBuffer.release(envelope);
+    }
+  }
+
+  private static RemoteIssue returnedIssue(SoapResponseReader response, String operation) throws RemoteException {
+    RemoteIssue issue = response.getIssue();
+    if (issue == null) {
+      throw new RemoteException("No issue in the " + operation + " response of the JIRA server");
+    }
+    return issue;
+  }
+
+  private SoapResponseReader post(EnvelopeBuffer envelope) throws RemoteException {
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL(endpoint).openConnection();
+      connection.setRequestMethod("POST");
+      if (timeoutMs > 0) {
+        connection.setConnectTimeout(timeoutMs);
+        connection.setReadTimeout(timeoutMs);
+      }
+      // not streamed: the connection then sends the headers and the envelope in one packet, instead of waiting on
+      // the delayed acknowledgement of the headers
+      connection.setDoOutput(true);
+      connection.setRequestProperty("Content-Type", "text/xml; charset=utf-8");
+      connection.setRequestProperty("SOAPAction", "\"\"");
+      OutputStream out = connection.getOutputStream();
+      try {
+        envelope.writeTo(out);
+      } finally {
+        out.close();
+      }
+      int status = connection.getResponseCode();
+      return SoapResponseReader.read(status >= 400 ? connection.getErrorStream() : connection.getInputStream(), status);
+    } catch (RemoteException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new RemoteException("Unable to call " + endpoint, e);
+    }
+  }
+
+  public JiraSoapService getService() {
+    return service;
+  }
+
+  public boolean addAttachmentsToIssue(String authToken, String issueKey, String[] fileNames, String[] base64Contents) throws RemoteException {
+    return service.addBase64EncodedAttachmentsToIssue(authToken, issueKey, fileNames, base64Contents);
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.rmi.RemoteException;
+
+/**
+ * A session with a JIRA server including the state of being logged in or not, whatever the transport.
+ */
+public class TrackerSession {
+  private static final Logger LOG = LoggerFactory.getLogger(TrackerSession.class);
+
+  private final TrackerTransport transport;
+  private String token;
+
+  public TrackerSession(TrackerTransport transport) {
+    this.transport = transport;
+  }
+
+  public void connect(String userName, String password) throws RemoteException {
+    LOG.debug("Connnecting to {} as : {}", transport.getEndpoint(), userName);
+    token = transport.login(userName, password);
+    LOG.debug("Connected");
+  }
+
+  public void disconnect() throws RemoteException {
+    transport.logout(token);
+  }
+
+  public String getAuthenticationToken() {
+    return token;
+  }
+
+  public TrackerTransport getTransport() {
+    return transport;
+  }
+}
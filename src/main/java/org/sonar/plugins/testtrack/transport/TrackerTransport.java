@@ -0,0 +1,79 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.atlassian.jira.rpc.soap.client.RemoteFilter;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemoteIssueType;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import com.atlassian.jira.rpc.soap.client.RemoteProject;
+
+import java.rmi.RemoteException;
+
+/**
+ * The JIRA operations used by the plugin, independently of the protocol. Signatures follow the ones of the
+ * JIRA SOAP service, and the returned beans are the SOAP ones.
+ */
+public interface TrackerTransport {
+
+  /**
+   * @return the authentication token to give to the other operations
+   */
+  String login(String username, String password) throws RemoteException;
+
+  void logout(String authToken) throws RemoteException;
+
+  RemotePriority[] getPriorities(String authToken) throws RemoteException;
+
+  RemoteFilter[] getFavouriteFilters(String authToken) throws RemoteException;
+
+  RemoteFilter[] getSavedFilters(String authToken) throws RemoteException;
+
+  RemoteIssue[] getIssuesFromFilter(String authToken, String filterId) throws RemoteException;
+
+  /**
+   * Page of the issues of a filter, starting at the given offset.
+   */
+  RemoteIssue[] getIssuesFromFilterWithLimit(String authToken, String filterId, int offset, int maxNumResults) throws RemoteException;
+
+  RemoteIssue[] getIssuesFromJqlSearch(String authToken, String jql, int maxResults) throws RemoteException;
+
+  RemoteProject getProjectByKey(String authToken, String projectKey) throws RemoteException;
+
+  RemoteIssueType[] getIssueTypesForProject(String authToken, String projectId) throws RemoteException;
+
+  RemoteIssue createIssue(String authToken, RemoteIssue issue) throws RemoteException;
+
+  RemoteIssue updateIssue(String authToken, String issueKey, RemoteFieldValue[] fieldValues) throws RemoteException;
+
+  void addComment(String authToken, String issueKey, RemoteComment comment) throws RemoteException;
+
+  /**
+   * @param base64Contents contents of the files, encoded in base 64
+   */
+  boolean addAttachmentsToIssue(String authToken, String issueKey, String[] fileNames, String[] base64Contents) throws RemoteException;
+
+  /**
+   * URL of the remote service, used in logs and as the key of the server.
+   */
+  String getEndpoint();
+}
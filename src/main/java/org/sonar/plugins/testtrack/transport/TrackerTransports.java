@@ -0,0 +1,101 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.ProjectConfig;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+
+import java.net.URL;
+
+/**
+ * Creates the transport selected by the {@link TestTrackConstants#TRANSPORT_PROPERTY} property. Concurrent identical
+ * reads of all the transports created here are shared, see {@link CoalescingTransport}. The reads are recorded when
+ * {@link TestTrackConstants#RECORD_FILE_PROPERTY} is set, and a recording replaces JIRA when
+ * {@link TestTrackConstants#REPLAY_FILE_PROPERTY} is set.
+ */
+public final class TrackerTransports {
+  private static final Logger LOG = LoggerFactory.getLogger(TrackerTransports.class);
+
+  public static final String SOAP = "soap";
+  public static final String REST = "rest";
+
+  private TrackerTransports() {
+  }
+
+  public static TrackerTransport create(Settings settings) {
+    return create(settings, 0);
+  }
+
+  /**
+   * @param timeoutMs socket timeout of the calls, the default one of the transport if zero
+   */
+  public static TrackerTransport create(Settings settings, int timeoutMs) {
+    return create(ProjectConfig.of(settings), timeoutMs);
+  }
+
+  public static TrackerTransport create(ProjectConfig config) {
+    return create(config, 0);
+  }
+
+  /**
+   * @param timeoutMs socket timeout of the calls, the default one of the transport if zero
+   */
+  public static TrackerTransport create(ProjectConfig config, int timeoutMs) {
+    if (config.isReplay()) {
+      return ReplayTransport.open(config.getReplayFile());
+    }
+    TrackerTransport transport = createRemote(config, timeoutMs);
+    return config.getRecordFile() != null ? new RecordingTransport(transport, config.getRecordFile()) : transport;
+  }
+
+  private static TrackerTransport createRemote(ProjectConfig config, int timeoutMs) {
+    String kind = config.getTransport();
+    if (SOAP.equals(kind)) {
+      SoapTransport transport = SoapTransport.create(checkUrl(config.getSoapEndpoint(), config.getSoapUrl()));
+      if (timeoutMs > 0) {
+        transport.setTimeout(timeoutMs);
+      }
+      return new CoalescingTransport(transport);
+    }
+    if (REST.equals(kind)) {
+      checkUrl(config.getRestEndpoint(), config.getServerUrl());
+      RestTransport transport = new RestTransport(config.getServerUrl());
+      if (timeoutMs > 0) {
+        transport.setTimeout(timeoutMs);
+      }
+      return new CoalescingTransport(transport);
+    }
+    throw new IllegalStateException("Unknown JIRA transport '" + kind + "'. Supported values are '" + SOAP + "' and '" + REST + "'.");
+  }
+
+  /**
+   * @param url the URL as parsed by {@link ProjectConfig}, null if it is not valid
+   */
+  private static URL checkUrl(URL url, String value) {
+    if (url == null) {
+      LOG.error("The JIRA server URL is not a valid one: " + value);
+      throw new InvalidServerUrlException(value);
+    }
+    return url;
+  }
+}
@@ -28,6 +28,6 @@ import static org.junit.Assert.assertThat;
 public class JiraPluginTest {
   @Test
   public void testGetExtensions() throws Exception {
-    assertThat(new TestTrackPlugin().getExtensions().size(), is(6));
+    assertThat(new TestTrackPlugin().getExtensions().size(), is(24));
   }
 }
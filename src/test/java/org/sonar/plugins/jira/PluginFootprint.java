@@ -0,0 +1,82 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack;
+
+import java.io.File;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+/**
+ * Measures what loading the plugin costs to the server: classes loaded, time and class metadata space used to
+ * instantiate the plugin, its extensions and the SOAP client. Everything is loaded in a fresh class loader from the
+ * current class path, so run it in a fresh JVM. Not a unit test, run it by hand:
+ * <pre>java -cp target/classes:target/test-classes:&lt;test classpath&gt; org.sonar.plugins.testtrack.PluginFootprint</pre>
+ */
+public final class PluginFootprint {
+
+  private PluginFootprint() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+    URL[] urls = new URL[entries.length];
+    for (int i = 0; i < entries.length; i++) {
+      urls[i] = new File(entries[i]).toURI().toURL();
+    }
+
+    ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+    long classesBefore = classLoading.getTotalLoadedClassCount();
+    long metadataBefore = classMetadataUsed();
+    long start = System.nanoTime();
+
+    ClassLoader loader = new URLClassLoader(urls, null);
+    // Axis looks up its logger and configuration through the context class loader
+    Thread.currentThread().setContextClassLoader(loader);
+    Object plugin = loader.loadClass(TestTrackPlugin.class.getName()).newInstance();
+    List<?> extensions = (List<?>) plugin.getClass().getMethod("getExtensions").invoke(plugin);
+    Class<?> soapTransport = loader.loadClass("org.sonar.plugins.testtrack.transport.SoapTransport");
+    Method create = soapTransport.getMethod("create", URL.class);
+    create.invoke(null, new URL("http://localhost/rpc/soap/jirasoapservice-v2"));
+
+    long elapsed = System.nanoTime() - start;
+    System.out.println(extensions.size() + " extensions and the SOAP client loaded");
+    System.out.println("classes loaded: " + (classLoading.getTotalLoadedClassCount() - classesBefore));
+    System.out.println("time (ms): " + elapsed / 1000000);
+    System.out.println("class metadata (KB): " + (classMetadataUsed() - metadataBefore) / 1024);
+  }
+
+  /**
+   * Metaspace on Java 8 and later, permanent generation before.
+   */
+  private static long classMetadataUsed() {
+    long used = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getName().contains("Metaspace") || pool.getName().contains("Perm Gen")) {
+        used += pool.getUsage().getUsed();
+      }
+    }
+    return used;
+  }
+}
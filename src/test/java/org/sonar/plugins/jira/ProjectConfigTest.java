@@ -0,0 +1,107 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.reviews.IssueFields;
+import org.sonar.plugins.testtrack.reviews.IssueFields.Placeholder;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ProjectConfigTest {
+
+  private Settings settings;
+
+  @Before
+  public void init() throws Exception {
+    settings = new Settings();
+    settings.setProperty(TestTrackConstants.SERVER_URL_PROPERTY, "http://my.jira.server");
+    settings.setProperty(TestTrackConstants.JIRA_PROJECT_KEY_PROPERTY, "SONAR");
+  }
+
+  @Test
+  public void shouldNotShareConfigOfSameProperties() throws Exception {
+    ProjectConfig config = ProjectConfig.of(settings);
+
+    Settings other = new Settings();
+    other.setProperty(TestTrackConstants.SERVER_URL_PROPERTY, "http://my.jira.server");
+    other.setProperty(TestTrackConstants.JIRA_PROJECT_KEY_PROPERTY, "SONAR");
+
+    assertThat(ProjectConfig.of(other), not(sameInstance(config)));
+    assertThat(ProjectConfig.of(other).getServerUrl(), is(config.getServerUrl()));
+  }
+
+  @Test
+  public void shouldBuildNewConfigWhenPropertyChanges() throws Exception {
+    ProjectConfig config = ProjectConfig.of(settings);
+
+    settings.setProperty(TestTrackConstants.JIRA_PROJECT_KEY_PROPERTY, "OTHER");
+
+    ProjectConfig changed = ProjectConfig.of(settings);
+    assertThat(changed, not(sameInstance(config)));
+    assertThat(changed.getJiraProjectKey(), is("OTHER"));
+  }
+
+  @Test
+  public void shouldPrecomputeUrls() throws Exception {
+    ProjectConfig config = ProjectConfig.of(settings);
+
+    assertThat(config.getSoapUrl(), is("http://my.jira.server" + TestTrackConstants.SOAP_BASE_URL_DEF_VALUE));
+    assertThat(config.getSoapEndpoint().toString(), is(config.getSoapUrl()));
+    assertThat(config.getRestEndpoint().toString(), is("http://my.jira.server"));
+    assertThat(config.browseUrl("SONAR-12"), is("http://my.jira.server/browse/SONAR-12"));
+  }
+
+  @Test
+  public void shouldGiveNoEndpointForInvalidUrl() throws Exception {
+    settings.setProperty(TestTrackConstants.SERVER_URL_PROPERTY, "my.server");
+
+    ProjectConfig config = ProjectConfig.of(settings);
+
+    assertThat(config.getSoapEndpoint(), nullValue());
+    assertThat(config.getRestEndpoint(), nullValue());
+  }
+
+  @Test
+  public void shouldApplyDefaults() throws Exception {
+    ProjectConfig config = ProjectConfig.of(settings);
+
+    assertThat(config.getTransport(), is(TestTrackConstants.TRANSPORT_DEF_VALUE));
+    assertThat(config.isAttachments(), is(false));
+    assertThat(config.getAttachmentContextLines(), is(Integer.parseInt(TestTrackConstants.ATTACHMENT_CONTEXT_LINES_DEF_VALUE)));
+    assertThat(config.getAttachmentMaxKB(), is(Integer.parseInt(TestTrackConstants.ATTACHMENT_MAX_KB_DEF_VALUE)));
+  }
+
+  @Test
+  public void shouldCompileTemplatesOnce() throws Exception {
+    settings.setProperty(TestTrackConstants.COMMENT_TEMPLATE_PROPERTY, "see ${issueKey}");
+
+    ProjectConfig config = ProjectConfig.of(settings);
+
+    assertThat(config.getCommentTemplate(), sameInstance(config.getCommentTemplate()));
+    assertThat(config.getCommentTemplate().render(new IssueFields().set(Placeholder.ISSUE_KEY, "SONAR-1")), is("see SONAR-1"));
+  }
+}
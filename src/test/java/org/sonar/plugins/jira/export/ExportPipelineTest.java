@@ -0,0 +1,251 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.export;
+
+import com.atlassian.jira.rpc.soap.client.RemoteAuthenticationException;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemoteValidationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.export.ExportPipeline.ExportReport;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.reviews.PriorityMapping;
+import org.sonar.plugins.testtrack.reviews.ReviewLinks;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+
+import javax.persistence.PersistenceException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ExportPipelineTest {
+
+  private Settings settings;
+  private RemoteCallExecutor executor;
+  private TrackerTransport transport;
+  private ReviewLinks reviewLinks;
+
+  @Before
+  public void init() throws Exception {
+    settings = new Settings();
+    settings.setProperty(TestTrackConstants.JIRA_PROJECT_KEY_PROPERTY, "TEST");
+    executor = new RemoteCallExecutor(4);
+    transport = mock(TrackerTransport.class);
+    when(transport.getEndpoint()).thenReturn("http://my.jira.com");
+    reviewLinks = mock(ReviewLinks.class);
+  }
+
+  @After
+  public void stop() throws Exception {
+    executor.stop();
+  }
+
+  @Test
+  public void shouldCreateAnIssuePerCandidateAndLinkIt() throws Exception {
+    when(transport.createIssue(anyString(), any(RemoteIssue.class))).thenAnswer(new CreatedIssues());
+
+    ExportReport report = pipeline().run(transport, "token", candidates(1, 1000));
+
+    assertThat(report.getSelected(), is(1000));
+    assertThat(report.getCreated(), is(1000));
+    assertThat(report.getFailed(), is(0));
+    assertThat(report.getStopCause(), nullValue());
+    verify(reviewLinks, times(1000)).link(anyString(), anyInt(), eq(12), eq(34), anyInt(), eq(56), eq("MAJOR"), anyString());
+  }
+
+  @Test
+  public void shouldWriteTheIssueKeyToTheReviewOfTheViolation() throws Exception {
+    when(transport.createIssue(anyString(), any(RemoteIssue.class))).thenAnswer(new CreatedIssues());
+
+    pipeline().run(transport, "token", candidates(7, 7));
+
+    verify(reviewLinks).link("TEST-1", 7, 12, 34, 7, 56, "MAJOR", "Message 7");
+  }
+
+  @Test
+  public void shouldSkipViolationsSeenEarlierInTheRun() throws Exception {
+    when(transport.createIssue(anyString(), any(RemoteIssue.class))).thenAnswer(new CreatedIssues());
+    List<ExportCandidate> candidates = candidates(1, 3);
+    candidates.add(candidate(3));
+
+    ExportReport report = pipeline().run(transport, "token", candidates);
+
+    assertThat(report.getCreated(), is(3));
+    assertThat(report.getSkipped(), is(1));
+    verify(transport, times(3)).createIssue(anyString(), any(RemoteIssue.class));
+  }
+
+  @Test
+  public void shouldDeferTheCandidatesBeyondTheMaximum() throws Exception {
+    settings.setProperty(TestTrackConstants.EXPORT_MAX_ISSUES_PROPERTY, "10");
+    when(transport.createIssue(anyString(), any(RemoteIssue.class))).thenAnswer(new CreatedIssues());
+
+    ExportReport report = pipeline().run(transport, "token", candidates(1, 25));
+
+    assertThat(report.getCreated(), is(10));
+    assertThat(report.getDeferred(), is(15));
+  }
+
+  @Test
+  public void shouldBoundTheIssuesBeingCreated() throws Exception {
+    settings.setProperty(TestTrackConstants.EXPORT_PARALLELISM_PROPERTY, "2");
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    when(transport.createIssue(anyString(), any(RemoteIssue.class))).thenAnswer(new Answer<RemoteIssue>() {
+      private final CreatedIssues created = new CreatedIssues();
+
+      public RemoteIssue answer(InvocationOnMock invocation) throws Throwable {
+        int now = running.incrementAndGet();
+        synchronized (maxRunning) {
+          maxRunning.set(Math.max(maxRunning.get(), now));
+        }
+        Thread.sleep(2);
+        running.decrementAndGet();
+        return created.answer(invocation);
+      }
+    });
+
+    ExportReport report = pipeline().run(transport, "token", candidates(1, 50));
+
+    assertThat(report.getCreated(), is(50));
+    // the in-flight queue, the issue being recorded and the one waiting to be queued
+    assertThat(maxRunning.get(), lessThanOrEqualTo(4));
+  }
+
+  @Test
+  public void shouldCountFailedIssuesAndGoOn() throws Exception {
+    when(transport.createIssue(anyString(), any(RemoteIssue.class)))
+        .thenThrow(new RemoteValidationException())
+        .thenAnswer(new CreatedIssues());
+
+    ExportReport report = pipeline().run(transport, "token", candidates(1, 5));
+
+    assertThat(report.getFailed(), is(1));
+    assertThat(report.getCreated(), is(4));
+    assertThat(report.getStopCause(), nullValue());
+  }
+
+  @Test
+  public void shouldStopWhenTheLoginIsRejected() throws Exception {
+    when(transport.createIssue(anyString(), any(RemoteIssue.class))).thenThrow(new RemoteAuthenticationException());
+
+    ExportReport report = pipeline().run(transport, "token", candidates(1, 1000));
+
+    assertThat(report.getStopCause(), instanceOf(RemoteAuthenticationException.class));
+    assertThat(report.getCreated(), is(0));
+    assertThat(report.getSelected() < 1000, is(true));
+    verify(reviewLinks, never()).link(anyString(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyString(), anyString());
+  }
+
+  @Test
+  public void shouldStopWhenTheReviewCannotBeWritten() throws Exception {
+    when(transport.createIssue(anyString(), any(RemoteIssue.class))).thenAnswer(new CreatedIssues());
+    PersistenceException failure = new PersistenceException("Connection lost");
+    doThrow(failure).when(reviewLinks).link(anyString(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyString(), anyString());
+
+    ExportReport report = pipeline().run(transport, "token", candidates(1, 1000));
+
+    assertThat(report.getStopCause(), sameInstance((Exception) failure));
+    assertThat(report.getCreated(), is(0));
+    assertThat(report.getSelected() < 1000, is(true));
+  }
+
+  @Test
+  public void shouldFailWithTheErrorOfAStage() throws Exception {
+    final IllegalArgumentException failure = new IllegalArgumentException("Broken candidate");
+    Iterable<ExportCandidate> candidates = new Iterable<ExportCandidate>() {
+      public Iterator<ExportCandidate> iterator() {
+        throw failure;
+      }
+    };
+
+    try {
+      pipeline().run(transport, "token", candidates);
+      fail();
+    } catch (ExportFailedException e) {
+      assertThat(e.getCause(), sameInstance((Throwable) failure));
+      assertThat(e.getMessage(), is("The export of violations to JIRA failed: java.lang.IllegalArgumentException: Broken candidate"));
+    }
+  }
+
+  @Test
+  public void shouldRenderTheIssueFromTheExportTemplates() {
+    settings.setProperty(TestTrackConstants.EXPORT_SUMMARY_TEMPLATE_PROPERTY, "${ruleKey} in ${file}${?line} at ${line}${/line}");
+    ExportCandidate candidate = new ExportCandidate(12, 12, 34, 56, "pmd:UnusedLocal", "Unused local", "CRITICAL", "org.foo.Bar", 42, "Avoid it");
+
+    RemoteIssue issue = pipeline().render(candidate);
+
+    assertThat(issue.getProject(), is("TEST"));
+    assertThat(issue.getSummary(), is("pmd:UnusedLocal in org.foo.Bar at 42"));
+    assertThat(issue.getDescription(), is("Violation detail:\n{quote}\nAvoid it\n{quote}\n\nRule pmd:UnusedLocal, severity CRITICAL"));
+    assertThat(issue.getPriority(), is("2"));
+    assertThat(issue.getType(), is("3"));
+  }
+
+  private ExportPipeline pipeline() {
+    return new ExportPipeline(settings, PriorityMapping.DEFAULT, executor, reviewLinks);
+  }
+
+  private static List<ExportCandidate> candidates(int from, int to) {
+    List<ExportCandidate> candidates = new ArrayList<ExportCandidate>();
+    for (int i = from; i <= to; i++) {
+      candidates.add(candidate(i));
+    }
+    return candidates;
+  }
+
+  private static ExportCandidate candidate(int permanentId) {
+    return new ExportCandidate(permanentId, 12, 34, 56, "pmd:Rule", "Rule", "MAJOR", "org.foo.Bar", permanentId, "Message " + permanentId);
+  }
+
+  private static final class CreatedIssues implements Answer<RemoteIssue> {
+    private final AtomicInteger counter = new AtomicInteger();
+
+    public RemoteIssue answer(InvocationOnMock invocation) {
+      RemoteIssue issue = new RemoteIssue();
+      issue.setKey("TEST-" + counter.incrementAndGet());
+      return issue;
+    }
+  }
+}
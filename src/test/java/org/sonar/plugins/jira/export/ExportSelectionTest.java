@@ -0,0 +1,107 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.export;
+
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.JavaFile;
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.RulePriority;
+import org.sonar.api.rules.Violation;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ExportSelectionTest {
+
+  private final Violation pmdMajor = Violation.create(Rule.create("pmd", "UnusedLocal", "Unused local"), new JavaFile("org.foo.Bar"))
+      .setSeverity(RulePriority.MAJOR).setPermanentId(1);
+  private final Violation checkstyleBlocker = Violation.create(Rule.create("checkstyle", "Header", "Header"), new JavaFile("org.other.Baz"))
+      .setSeverity(RulePriority.BLOCKER).setPermanentId(2);
+
+  @Test
+  public void shouldAcceptEverythingByDefault() {
+    ExportSelection selection = selection(new Settings());
+
+    assertThat(selection.accepts(pmdMajor), is(true));
+    assertThat(selection.accepts(checkstyleBlocker), is(true));
+  }
+
+  @Test
+  public void shouldNeverAcceptSwitchedOffViolations() {
+    assertThat(selection(new Settings()).accepts(pmdMajor.setSwitchedOff(true)), is(false));
+  }
+
+  @Test
+  public void shouldNeverAcceptViolationsAlreadyLinked() {
+    ExportSelection selection = ExportSelection.of(new Settings(), Collections.singleton(1));
+
+    assertThat(selection.accepts(pmdMajor), is(false));
+    assertThat(selection.accepts(checkstyleBlocker), is(true));
+  }
+
+  @Test
+  public void shouldNeverAcceptViolationsWithoutPermanentId() {
+    assertThat(selection(new Settings()).accepts(pmdMajor.setPermanentId(null)), is(false));
+  }
+
+  @Test
+  public void shouldSelectByRule() {
+    Settings settings = new Settings().setProperty(TestTrackConstants.EXPORT_RULES_PROPERTY, "pmd:*, squid:Foo");
+    ExportSelection selection = selection(settings);
+
+    assertThat(selection.accepts(pmdMajor), is(true));
+    assertThat(selection.accepts(checkstyleBlocker), is(false));
+  }
+
+  @Test
+  public void shouldSelectBySeverity() {
+    Settings settings = new Settings().setProperty(TestTrackConstants.EXPORT_SEVERITIES_PROPERTY, "blocker,CRITICAL");
+    ExportSelection selection = selection(settings);
+
+    assertThat(selection.accepts(pmdMajor), is(false));
+    assertThat(selection.accepts(checkstyleBlocker), is(true));
+  }
+
+  @Test
+  public void shouldSelectByPath() {
+    Settings settings = new Settings().setProperty(TestTrackConstants.EXPORT_PATHS_PROPERTY, "org/foo/**");
+    ExportSelection selection = selection(settings);
+
+    assertThat(selection.accepts(pmdMajor), is(true));
+    assertThat(selection.accepts(checkstyleBlocker), is(false));
+  }
+
+  @Test
+  public void shouldRequireAllTheCriteria() {
+    Settings settings = new Settings()
+        .setProperty(TestTrackConstants.EXPORT_RULES_PROPERTY, "pmd:*")
+        .setProperty(TestTrackConstants.EXPORT_SEVERITIES_PROPERTY, "BLOCKER");
+
+    assertThat(selection(settings).accepts(pmdMajor), is(false));
+  }
+
+  private static ExportSelection selection(Settings settings) {
+    return ExportSelection.of(settings, Collections.<Integer>emptySet());
+  }
+}
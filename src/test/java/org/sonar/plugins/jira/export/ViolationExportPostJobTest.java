@@ -0,0 +1,145 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.export;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.batch.DecoratorContext;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.JavaFile;
+import org.sonar.api.resources.Project;
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.RulePriority;
+import org.sonar.api.rules.Violation;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.reviews.ReviewLinks;
+import org.sonar.plugins.testtrack.reviews.ReviewLinks.LinkedReview;
+import org.sonar.plugins.testtrack.transport.TrackerSession;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ViolationExportPostJobTest {
+
+  private Settings settings;
+  private ViolationCollector collector;
+  private RemoteCallExecutor executor;
+  private ReviewLinks reviewLinks;
+
+  @Before
+  public void init() {
+    settings = new Settings();
+    settings.setProperty(TestTrackConstants.EXPORT_PROPERTY, "true");
+    settings.setProperty(TestTrackConstants.EXPORT_SEVERITIES_PROPERTY, "BLOCKER");
+    settings.setProperty(TestTrackConstants.SERVER_URL_PROPERTY, "http://my.jira.com");
+    reviewLinks = mock(ReviewLinks.class);
+    collector = new ViolationCollector(settings, reviewLinks);
+    executor = new RemoteCallExecutor(2);
+  }
+
+  @After
+  public void stop() {
+    executor.stop();
+  }
+
+  @Test
+  public void shouldCollectTheSelectedViolationsNotLinkedYet() {
+    Rule rule = Rule.create("pmd", "UnusedLocal", "Unused local");
+    JavaFile file = new JavaFile("org.foo.Bar");
+    Project project = new Project("foo");
+    project.setId(12);
+    DecoratorContext context = mock(DecoratorContext.class);
+    when(context.getProject()).thenReturn(project);
+    when(context.getViolations()).thenReturn(Arrays.asList(
+        Violation.create(rule, file).setSeverity(RulePriority.BLOCKER).setPermanentId(3),
+        Violation.create(rule, file).setSeverity(RulePriority.MINOR).setPermanentId(4),
+        Violation.create(rule, file).setSeverity(RulePriority.BLOCKER).setPermanentId(5)));
+    when(reviewLinks.findByProject(12)).thenReturn(Collections.singletonMap(5,
+        new LinkedReview(7L, "FOO-1", Collections.<String, String>emptyMap())));
+
+    assertThat(collector.shouldExecuteOnProject(project), is(true));
+    collector.decorate(file, context);
+
+    assertThat(collector.getCandidates().size(), is(1));
+    assertThat(collector.getCandidates().get(0).getKey(), is("3"));
+    assertThat(collector.getCandidates().get(0).getProjectId(), is(12));
+  }
+
+  @Test
+  public void shouldNotCollectWhenTheExportIsDisabled() {
+    assertThat(new ViolationCollector(new Settings(), reviewLinks).shouldExecuteOnProject(new Project("foo")), is(false));
+  }
+
+  @Test
+  public void shouldNotConnectWithoutCandidates() {
+    ViolationExportPostJob postJob = spy(new ViolationExportPostJob(settings, collector, executor, reviewLinks));
+
+    postJob.executeOn(new Project("foo"), mock(SensorContext.class));
+
+    verify(postJob, never()).createSession();
+  }
+
+  @Test
+  public void shouldNotFailTheAnalysisWhenTheExportFails() throws Exception {
+    ViolationCollector collected = mock(ViolationCollector.class);
+    List<ExportCandidate> candidates = Arrays.asList(new ExportCandidate(3, 12, 34, 56, "pmd:Rule", "Rule", "BLOCKER", "org.foo.Bar", 1, "Message"));
+    when(collected.getCandidates()).thenReturn(candidates);
+    ViolationExportPostJob postJob = spy(new ViolationExportPostJob(settings, collected, executor, reviewLinks));
+    doReturn(mock(TrackerSession.class)).when(postJob).createSession();
+    doThrow(new ExportFailedException(new IllegalArgumentException("Broken candidate")))
+        .when(postJob).export(any(TrackerSession.class), anyListOf(ExportCandidate.class));
+
+    postJob.executeOn(new Project("foo"), mock(SensorContext.class));
+
+    verify(postJob).export(any(TrackerSession.class), anyListOf(ExportCandidate.class));
+  }
+
+  @Test
+  public void shouldCommitLinksWhenTheExportStops() throws Exception {
+    ViolationCollector collected = mock(ViolationCollector.class);
+    List<ExportCandidate> candidates = Arrays.asList(new ExportCandidate(3, 12, 34, 56, "pmd:Rule", "Rule", "BLOCKER", "org.foo.Bar", 1, "Message"));
+    when(collected.getCandidates()).thenReturn(candidates);
+    TrackerSession session = mock(TrackerSession.class);
+    when(session.getTransport()).thenThrow(new IllegalStateException("Not connected"));
+    ViolationExportPostJob postJob = spy(new ViolationExportPostJob(settings, collected, executor, reviewLinks));
+    doReturn(session).when(postJob).createSession();
+
+    postJob.executeOn(new Project("foo"), mock(SensorContext.class));
+
+    verify(reviewLinks).commit();
+    verify(session).disconnect();
+  }
+}
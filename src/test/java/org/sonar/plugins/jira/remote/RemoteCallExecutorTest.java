@@ -0,0 +1,267 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.remote;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+
+import java.rmi.RemoteException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class RemoteCallExecutorTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private RemoteCallExecutor executor;
+
+  @Before
+  public void init() {
+    executor = new RemoteCallExecutor(2);
+  }
+
+  @After
+  public void stop() {
+    executor.stop();
+  }
+
+  @Test
+  public void shouldUseDefaultLimitWhenNotConfigured() {
+    RemoteCallExecutor defaultExecutor = new RemoteCallExecutor(new Settings());
+    assertThat(defaultExecutor.getMaxCallsPerServer(), is(8));
+    defaultExecutor.stop();
+
+    Settings settings = new Settings();
+    settings.setProperty(TestTrackConstants.MAX_CALLS_PER_SERVER_PROPERTY, 3);
+    RemoteCallExecutor configuredExecutor = new RemoteCallExecutor(settings);
+    assertThat(configuredExecutor.getMaxCallsPerServer(), is(3));
+    configuredExecutor.stop();
+  }
+
+  @Test
+  public void shouldReturnResultsInSubmissionOrder() throws Exception {
+    List<Callable<Integer>> calls = Lists.newArrayList();
+    for (int i = 0; i < 20; i++) {
+      calls.add(new Constant(i));
+    }
+
+    List<Integer> results = executor.invokeAll("http://my.jira.com", calls);
+
+    assertThat(results.size(), is(20));
+    for (int i = 0; i < 20; i++) {
+      assertThat(results.get(i), is(i));
+    }
+  }
+
+  @Test
+  public void shouldLimitCallsInFlightPerServer() throws Exception {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    List<Callable<Integer>> calls = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      calls.add(new SlowCall(inFlight, maxInFlight));
+    }
+
+    executor.invokeAll("http://my.jira.com", calls);
+
+    assertThat(maxInFlight.get(), lessThanOrEqualTo(2));
+  }
+
+  @Test
+  public void shouldRethrowRemoteException() throws Exception {
+    List<Callable<Integer>> calls = Lists.newArrayList();
+    calls.add(new Constant(1));
+    calls.add(new Callable<Integer>() {
+      public Integer call() throws Exception {
+        throw new RemoteException("Server Error");
+      }
+    });
+
+    thrown.expect(RemoteException.class);
+    thrown.expectMessage("Server Error");
+
+    executor.invokeAll("http://my.jira.com", calls);
+  }
+
+  @Test
+  public void shouldRecordQueueWaitByLane() throws Exception {
+    RemoteCallExecutor oneSlot = new RemoteCallExecutor(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<String> order = Collections.synchronizedList(Lists.<String>newArrayList());
+    Future<String> blocking = oneSlot.submit("http://my.jira.com", CallLane.EXPORT, new Callable<String>() {
+      public String call() throws Exception {
+        release.await();
+        return "blocking";
+      }
+    });
+    Future<String> export = oneSlot.submit("http://my.jira.com", CallLane.EXPORT, new Recording(order, "export"));
+    waitForWaitingCalls(oneSlot, 1);
+    Future<String> interactive = oneSlot.submit("http://my.jira.com", CallLane.INTERACTIVE, new Recording(order, "interactive"));
+    waitForWaitingCalls(oneSlot, 2);
+
+    release.countDown();
+    blocking.get();
+    export.get();
+    interactive.get();
+
+    assertThat(order.toString(), is("[export, interactive]"));
+    assertThat(oneSlot.getQueueWait(CallLane.INTERACTIVE).getCount(), is(1L));
+    assertThat(oneSlot.getQueueWait(CallLane.EXPORT).getCount(), is(2L));
+    oneSlot.stop();
+  }
+
+  @Test
+  public void shouldNotLetBusyServerHoldThreadsOfOtherServers() throws Exception {
+    RemoteCallExecutor oneSlot = new RemoteCallExecutor(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    List<Future<String>> slowCalls = Lists.newArrayList();
+    for (int i = 0; i < 40; i++) {
+      slowCalls.add(oneSlot.submit("http://slow.jira.com", CallLane.METRICS, new Callable<String>() {
+        public String call() throws Exception {
+          release.await();
+          return "slow";
+        }
+      }));
+    }
+
+    Future<String> other = oneSlot.submit("http://other.jira.com", CallLane.METRICS, new Recording(Lists.<String>newArrayList(), "other"));
+
+    assertThat(other.get(5, TimeUnit.SECONDS), is("other"));
+    assertThat(oneSlot.getCallsWaiting("http://slow.jira.com"), is(39));
+    release.countDown();
+    for (Future<String> slowCall : slowCalls) {
+      slowCall.get();
+    }
+    assertThat(oneSlot.getCallsInFlight("http://slow.jira.com"), is(0));
+    oneSlot.stop();
+  }
+
+  @Test
+  public void shouldRunOnCallingThread() throws Exception {
+    final Thread caller = Thread.currentThread();
+
+    boolean sameThread = executor.run("http://my.jira.com", CallLane.INTERACTIVE, new Callable<Boolean>() {
+      public Boolean call() {
+        return Thread.currentThread() == caller;
+      }
+    });
+
+    assertThat(sameThread, is(true));
+    assertThat(executor.getCallsInFlight("http://my.jira.com"), is(0));
+  }
+
+  @Test
+  public void shouldRunCallOfSlotHolderInItsSlot() throws Exception {
+    final RemoteCallExecutor singleSlot = new RemoteCallExecutor(1);
+    Future<String> outer = singleSlot.submit("http://my.jira.com", CallLane.METRICS, new Callable<String>() {
+      public String call() throws Exception {
+        return RemoteCallExecutor.await(singleSlot.submit("http://my.jira.com", CallLane.METRICS, new Callable<String>() {
+          public String call() {
+            return "inner";
+          }
+        }));
+      }
+    });
+
+    assertThat(outer.get(5, TimeUnit.SECONDS), is("inner"));
+    singleSlot.stop();
+  }
+
+  @Test
+  public void shouldRethrowRemoteExceptionOfCallOnCallingThread() throws Exception {
+    thrown.expect(RemoteException.class);
+    thrown.expectMessage("Server Error");
+
+    executor.run("http://my.jira.com", CallLane.INTERACTIVE, new Callable<Integer>() {
+      public Integer call() throws Exception {
+        throw new RemoteException("Server Error");
+      }
+    });
+  }
+
+  private static void waitForWaitingCalls(RemoteCallExecutor executor, int count) throws InterruptedException {
+    while (executor.getCallsWaiting("http://my.jira.com") < count) {
+      Thread.sleep(1);
+    }
+  }
+
+  private static class Recording implements Callable<String> {
+    private final List<String> order;
+    private final String name;
+
+    Recording(List<String> order, String name) {
+      this.order = order;
+      this.name = name;
+    }
+
+    public String call() {
+      order.add(name);
+      return name;
+    }
+  }
+
+  private static class Constant implements Callable<Integer> {
+    private final int value;
+
+    Constant(int value) {
+      this.value = value;
+    }
+
+    public Integer call() {
+      return value;
+    }
+  }
+
+  private static class SlowCall implements Callable<Integer> {
+    private final AtomicInteger inFlight;
+    private final AtomicInteger maxInFlight;
+
+    SlowCall(AtomicInteger inFlight, AtomicInteger maxInFlight) {
+      this.inFlight = inFlight;
+      this.maxInFlight = maxInFlight;
+    }
+
+    public Integer call() throws Exception {
+      int current = inFlight.incrementAndGet();
+      synchronized (maxInFlight) {
+        maxInFlight.set(Math.max(maxInFlight.get(), current));
+      }
+      Thread.sleep(20);
+      inFlight.decrementAndGet();
+      return current;
+    }
+  }
+}
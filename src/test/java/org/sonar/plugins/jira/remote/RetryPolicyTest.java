@@ -0,0 +1,130 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.remote;
+
+import com.atlassian.jira.rpc.soap.client.RemoteAuthenticationException;
+import org.junit.Test;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+
+  private final List<Long> pauses = new ArrayList<Long>();
+
+  @Test
+  public void shouldRetryWithIncreasingBackoff() throws Exception {
+    FailingCall call = new FailingCall(2, new RemoteException("timeout"));
+
+    assertThat(policy(3, 100).call("op", call), is("ok"));
+
+    assertThat(call.attempts, is(3));
+    assertThat(pauses, is(Arrays.asList(100L, 200L)));
+  }
+
+  @Test
+  public void shouldGiveUpAfterMaxAttempts() throws Exception {
+    FailingCall call = new FailingCall(5, new RemoteException("timeout"));
+    try {
+      policy(3, 10).call("op", call);
+      fail();
+    } catch (RemoteException e) {
+      assertThat(e.getMessage(), is("timeout"));
+    }
+    assertThat(call.attempts, is(3));
+  }
+
+  @Test
+  public void shouldNotRetryAuthenticationFailures() throws Exception {
+    FailingCall call = new FailingCall(1, new RemoteAuthenticationException());
+    try {
+      policy(3, 10).call("op", call);
+      fail();
+    } catch (RemoteAuthenticationException e) {
+      // expected
+    }
+    assertThat(call.attempts, is(1));
+    assertThat(pauses.isEmpty(), is(true));
+  }
+
+  @Test
+  public void shouldNotRetryPastDeadline() throws Exception {
+    FailingCall call = new FailingCall(1, new RemoteException("timeout"));
+    try {
+      new RetryPolicy(3, 60000, Deadline.after(1000)).call("op", call);
+      fail();
+    } catch (RemoteException e) {
+      assertThat(e.getMessage(), is("timeout"));
+    }
+    assertThat(call.attempts, is(1));
+  }
+
+  @Test
+  public void shouldNotRetryExhaustedDeadline() throws Exception {
+    FailingCall call = new FailingCall(1, new DeadlineExceededException("op"));
+    try {
+      policy(3, 0).call("op", call);
+      fail();
+    } catch (DeadlineExceededException e) {
+      // expected
+    }
+    assertThat(call.attempts, is(1));
+  }
+
+  @Test
+  public void shouldDefaultToThreeAttempts() {
+    assertThat(new RetryPolicy(0, 0).getMaxAttempts(), is(3));
+  }
+
+  private RetryPolicy policy(int maxAttempts, long backoffMs) {
+    return new RetryPolicy(maxAttempts, backoffMs) {
+      @Override
+      protected void sleep(long millis) {
+        pauses.add(millis);
+      }
+    };
+  }
+
+  private static class FailingCall implements Callable<String> {
+    private final int failures;
+    private final RemoteException failure;
+    private int attempts;
+
+    FailingCall(int failures, RemoteException failure) {
+      this.failures = failures;
+      this.failure = failure;
+    }
+
+    public String call() throws RemoteException {
+      attempts++;
+      if (attempts <= failures) {
+        throw failure;
+      }
+      return "ok";
+    }
+  }
+}
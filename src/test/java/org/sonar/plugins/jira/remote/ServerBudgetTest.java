@@ -0,0 +1,125 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.remote;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ServerBudgetTest {
+
+  @Test
+  public void shouldGiveSlotsInOrderOfRequest() throws Exception {
+    ServerBudget budget = new ServerBudget(1);
+    budget.acquire();
+    List<String> order = Collections.synchronizedList(Lists.<String>newArrayList());
+    List<Thread> threads = Lists.newArrayList();
+    for (int i = 0; i < 4; i++) {
+      threads.add(waitFor(budget, "call" + i, order));
+    }
+
+    budget.release();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(order.toString(), is("[call0, call1, call2, call3]"));
+    assertThat(budget.getInFlight(), is(0));
+  }
+
+  @Test
+  public void shouldGiveFreeSlotsRightAway() throws Exception {
+    ServerBudget budget = new ServerBudget(2);
+    budget.acquire();
+    budget.acquire();
+
+    assertThat(budget.getInFlight(), is(2));
+    assertThat(budget.getWaiting(), is(0));
+  }
+
+  @Test
+  public void shouldStartQueuedCallOnReleasingThread() throws Exception {
+    ServerBudget budget = new ServerBudget(1);
+    final List<String> order = Collections.synchronizedList(Lists.<String>newArrayList());
+    budget.dispatch(new Runnable() {
+      public void run() {
+        order.add("first");
+      }
+    });
+    budget.dispatch(new Runnable() {
+      public void run() {
+        order.add("second");
+      }
+    });
+
+    assertThat(order.toString(), is("[first]"));
+    assertThat(budget.getWaiting(), is(1));
+
+    budget.release();
+
+    assertThat(order.toString(), is("[first, second]"));
+    assertThat(budget.getInFlight(), is(1));
+    assertThat(budget.getWaiting(), is(0));
+  }
+
+  @Test
+  public void shouldForgetInterruptedWaiters() throws Exception {
+    ServerBudget budget = new ServerBudget(1);
+    budget.acquire();
+    Thread waiter = waitFor(budget, "waiter", Lists.<String>newArrayList());
+
+    waiter.interrupt();
+    waiter.join();
+    budget.release();
+
+    assertThat(budget.getWaiting(), is(0));
+    assertThat(budget.getInFlight(), is(0));
+  }
+
+  /**
+   * Starts a thread that waits for a slot, records its name and frees the slot, and returns once the thread is
+   * waiting.
+   */
+  private static Thread waitFor(final ServerBudget budget, final String name, final List<String> order) throws InterruptedException {
+    int waiting = budget.getWaiting();
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          budget.acquire();
+        } catch (InterruptedException e) {
+          return;
+        }
+        order.add(name);
+        budget.release();
+      }
+    };
+    thread.start();
+    while (budget.getWaiting() == waiting) {
+      Thread.sleep(1);
+    }
+    return thread;
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.remote;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+  private SingleFlight<String, String> singleFlight;
+  private ExecutorService callers;
+
+  @Before
+  public void init() {
+    singleFlight = new SingleFlight<String, String>();
+    callers = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void stop() {
+    callers.shutdownNow();
+  }
+
+  @Test
+  public void shouldShareConcurrentCallsOfSameKey() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger executions = new AtomicInteger();
+    BlockingCall call = new BlockingCall(release, executions, "result");
+
+    Future<String> first = callers.submit(caller("key", call));
+    waitForInFlight(1);
+    Future<String> second = callers.submit(caller("key", call));
+    Future<String> third = callers.submit(caller("key", call));
+    while (singleFlight.getSharedCount() < 2) {
+      Thread.sleep(1);
+    }
+    release.countDown();
+
+    assertThat(first.get(), is("result"));
+    assertThat(second.get(), is("result"));
+    assertThat(third.get(), is("result"));
+    assertThat(executions.get(), is(1));
+    assertThat(singleFlight.getExecutedCount(), is(1L));
+    assertThat(singleFlight.inFlightCount(), is(0));
+  }
+
+  @Test
+  public void shouldNotShareDifferentKeys() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger executions = new AtomicInteger();
+    BlockingCall call = new BlockingCall(release, executions, "result");
+
+    Future<String> first = callers.submit(caller("a", call));
+    Future<String> second = callers.submit(caller("b", call));
+    waitForInFlight(2);
+    release.countDown();
+    first.get();
+    second.get();
+
+    assertThat(executions.get(), is(2));
+    assertThat(singleFlight.getSharedCount(), is(0L));
+  }
+
+  @Test
+  public void shouldNotKeepResultOnceCallIsOver() throws Exception {
+    AtomicInteger executions = new AtomicInteger();
+    BlockingCall call = new BlockingCall(new CountDownLatch(0), executions, "result");
+
+    singleFlight.execute("key", call);
+    singleFlight.execute("key", call);
+
+    assertThat(executions.get(), is(2));
+  }
+
+  @Test
+  public void shouldGiveFailureToAllWaitingCallers() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    Callable<String> failing = new Callable<String>() {
+      public String call() throws Exception {
+        release.await(10, TimeUnit.SECONDS);
+        throw new RemoteException("boom");
+      }
+    };
+
+    Future<String> first = callers.submit(caller("key", failing));
+    waitForInFlight(1);
+    Future<String> second = callers.submit(caller("key", failing));
+    while (singleFlight.getSharedCount() < 1) {
+      Thread.sleep(1);
+    }
+    release.countDown();
+
+    assertFailure(first);
+    assertFailure(second);
+    assertThat(singleFlight.inFlightCount(), is(0));
+  }
+
+  @Test
+  public void shouldNotCancelSharedCallWhenFollowerIsInterrupted() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger executions = new AtomicInteger();
+    BlockingCall call = new BlockingCall(release, executions, "result");
+
+    Future<String> leader = callers.submit(caller("key", call));
+    waitForInFlight(1);
+    Future<String> follower = callers.submit(caller("key", call));
+    while (singleFlight.getSharedCount() < 1) {
+      Thread.sleep(1);
+    }
+    follower.cancel(true);
+    release.countDown();
+
+    assertThat(leader.get(), is("result"));
+    assertThat(executions.get(), is(1));
+  }
+
+  private void assertFailure(Future<String> future) throws InterruptedException {
+    try {
+      future.get();
+      fail();
+    } catch (java.util.concurrent.ExecutionException e) {
+      assertThat(e.getCause().getMessage(), is("boom"));
+    }
+  }
+
+  private void waitForInFlight(int count) throws InterruptedException {
+    while (singleFlight.inFlightCount() < count) {
+      Thread.sleep(1);
+    }
+  }
+
+  private Callable<String> caller(final String key, final Callable<String> call) {
+    return new Callable<String>() {
+      public String call() throws Exception {
+        return singleFlight.execute(key, call);
+      }
+    };
+  }
+
+  private static final class BlockingCall implements Callable<String> {
+    private final CountDownLatch release;
+    private final AtomicInteger executions;
+    private final String result;
+
+    private BlockingCall(CountDownLatch release, AtomicInteger executions, String result) {
+      this.release = release;
+      this.executions = executions;
+      this.result = result;
+    }
+
+    public String call() throws Exception {
+      executions.incrementAndGet();
+      release.await(10, TimeUnit.SECONDS);
+      return result;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.reviews.IssueFields.Placeholder;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class IssueTemplateTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void shouldReplacePlaceholders() throws Exception {
+    IssueFields fields = new IssueFields().set(Placeholder.RULE, "Wrong identation").set(Placeholder.LINE, "12");
+
+    String text = IssueTemplate.compile("${rule} at line ${line}, in ${file}").render(fields);
+
+    assertThat(text, is("Wrong identation at line 12, in "));
+  }
+
+  @Test
+  public void shouldRenderSectionsOnlyWithValue() throws Exception {
+    IssueTemplate template = IssueTemplate.compile("A${?comment}[${comment}${?line}:${line}${/line}]${/comment}B");
+
+    assertThat(template.render(new IssueFields()), is("AB"));
+    assertThat(template.render(new IssueFields().set(Placeholder.COMMENT, "  ")), is("AB"));
+    assertThat(template.render(new IssueFields().set(Placeholder.COMMENT, "hi")), is("A[hi]B"));
+    assertThat(template.render(new IssueFields().set(Placeholder.COMMENT, "hi").set(Placeholder.LINE, "3")), is("A[hi:3]B"));
+  }
+
+  @Test
+  public void shouldReadEscapedLineBreaks() throws Exception {
+    assertThat(IssueTemplate.compile("a\\nb$c").render(new IssueFields()), is("a\nb$c"));
+  }
+
+  @Test
+  public void shouldAppendToGivenBuilder() throws Exception {
+    StringBuilder out = new StringBuilder("> ");
+    IssueTemplate.compile("${issueKey}").render(new IssueFields().set(Placeholder.ISSUE_KEY, "FOO-15"), out);
+    assertThat(out.toString(), is("> FOO-15"));
+  }
+
+  @Test
+  public void shouldCompileOnce() throws Exception {
+    Settings settings = new Settings();
+    settings.setProperty("template", "${rule}");
+
+    assertThat(IssueTemplate.of(settings, "template", "default"), sameInstance(IssueTemplate.of("${rule}")));
+    assertThat(IssueTemplate.of(new Settings(), "template", "default").getPattern(), is("default"));
+  }
+
+  @Test
+  public void shouldFailOnUnknownPlaceholder() throws Exception {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Unknown placeholder 'foo'");
+
+    IssueTemplate.compile("${foo}");
+  }
+
+  @Test
+  public void shouldFailOnUnclosedSection() throws Exception {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Unclosed section");
+
+    IssueTemplate.compile("${?comment}${comment}");
+  }
+
+  @Test
+  public void shouldFailOnMismatchedSection() throws Exception {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Unexpected end of section 'line'");
+
+    IssueTemplate.compile("${?comment}${/line}");
+  }
+}
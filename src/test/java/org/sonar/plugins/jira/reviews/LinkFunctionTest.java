@@ -20,6 +20,7 @@
 package org.sonar.plugins.testtrack.reviews;
 
 import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -29,14 +30,24 @@ import org.sonar.api.workflow.Comment;
 import org.sonar.api.workflow.MutableReview;
 import org.sonar.api.workflow.Review;
 import org.sonar.api.workflow.WorkflowContext;
+import org.sonar.plugins.testtrack.ProjectConfig;
 import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.remote.CallLane;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.stats.OperationalStats;
+import org.sonar.plugins.testtrack.trace.Span;
+import org.sonar.plugins.testtrack.trace.Tracer;
 
 import java.rmi.RemoteException;
 import java.util.HashMap;
+import java.util.List;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -53,6 +64,7 @@ public class LinkFunctionTest {
   private WorkflowContext workflowContext;
   private RemoteIssue remoteIssue;
   private Settings settings;
+  private RemoteCallExecutor executor;
 
   @Before
   public void init() throws Exception {
@@ -67,23 +79,66 @@ public class LinkFunctionTest {
     jiraIssueCreator = mock(TestTrackIssueCreator.class);
     remoteIssue = new RemoteIssue();
     remoteIssue.setKey("FOO-15");
-    when(jiraIssueCreator.createIssue(review, settings, null)).thenReturn(remoteIssue);
+    when(jiraIssueCreator.createIssue(eq(review), eq(settings), any(ProjectConfig.class), eq((String) null))).thenReturn(remoteIssue);
 
-    action = new LinkFunction(jiraIssueCreator);
+    executor = new RemoteCallExecutor(1);
+    action = new LinkFunction(jiraIssueCreator, new LinkRegistry(), new OperationalStats(), new Tracer(), executor);
+  }
+
+  @After
+  public void tearDown() {
+    executor.stop();
   }
 
   @Test
   public void shouldExecute() throws Exception {
     action.doExecute(mutableReview, review, workflowContext, new HashMap<String, String>());
 
-    verify(jiraIssueCreator).createIssue(review, settings, null);
+    verify(jiraIssueCreator).createIssue(eq(review), eq(settings), any(ProjectConfig.class), eq((String) null));
     verify(mutableReview).createComment();
     verify(mutableReview).setProperty(TestTrackConstants.REVIEW_DATA_PROPERTY_KEY, "FOO-15");
   }
 
+  @Test
+  public void shouldTraceTheLink() throws Exception {
+    Tracer tracer = new Tracer(1, 16);
+    action = new LinkFunction(jiraIssueCreator, new LinkRegistry(), new OperationalStats(), tracer, executor);
+
+    action.doExecute(mutableReview, review, workflowContext, new HashMap<String, String>());
+
+    List<Span> spans = tracer.getSpans();
+    assertThat(spans.size(), is(2));
+    assertThat(spans.get(0).getName(), is("writeBack"));
+    assertThat(spans.get(1).getName(), is("link"));
+    assertThat(Tracer.current().isSampled(), is(false));
+  }
+
+  @Test
+  public void shouldCreateIssueInInteractiveLane() throws Exception {
+    settings.setProperty(TestTrackConstants.SERVER_URL_PROPERTY, "http://my.jira.server");
+
+    action.doExecute(mutableReview, review, workflowContext, new HashMap<String, String>());
+
+    verify(mutableReview).setProperty(TestTrackConstants.REVIEW_DATA_PROPERTY_KEY, "FOO-15");
+    assertThat(executor.getQueueWait(CallLane.INTERACTIVE).getCount(), is(1L));
+    assertThat(executor.getServers().contains("http://my.jira.server"), is(true));
+  }
+
+  @Test
+  public void shouldLinkReviewToSingleIssueWhenExecutedTwice() throws Exception {
+    when(review.getReviewId()).thenReturn(7L);
+
+    action.doExecute(mutableReview, review, workflowContext, new HashMap<String, String>());
+    action.doExecute(mutableReview, review, workflowContext, new HashMap<String, String>());
+
+    verify(jiraIssueCreator, times(1)).createIssue(eq(review), eq(settings), any(ProjectConfig.class), eq((String) null));
+    verify(mutableReview, times(1)).createComment();
+    verify(mutableReview, times(2)).setProperty(TestTrackConstants.REVIEW_DATA_PROPERTY_KEY, "FOO-15");
+  }
+
   @Test
   public void shouldFailExecuteIfRemoteProblem() throws Exception {
-    when(jiraIssueCreator.createIssue(review, settings, null)).thenThrow(new RemoteException("Server Error"));
+    when(jiraIssueCreator.createIssue(eq(review), eq(settings), any(ProjectConfig.class), eq((String) null))).thenThrow(new RemoteException("Server Error"));
 
     thrown.expect(IllegalStateException.class);
     thrown.expectMessage("Impossible to create an issue on JIRA. A problem occured with the remote server: Server Error");
@@ -96,7 +151,7 @@ public class LinkFunctionTest {
     when(workflowContext.getUserId()).thenReturn(45L);
     settings.appendProperty(TestTrackConstants.SERVER_URL_PROPERTY, "http://my.jira.server");
 
-    action.createComment(remoteIssue, mutableReview, workflowContext, new HashMap<String, String>());
+    action.createComment(remoteIssue, mutableReview, workflowContext, ProjectConfig.of(settings), new HashMap<String, String>());
 
     verify(comment).setUserId(45L);
     verify(comment).setMarkdownText("Review linked to JIRA issue: http://my.jira.server/browse/FOO-15");
@@ -108,7 +163,7 @@ public class LinkFunctionTest {
     params.put("text", "Hello world");
     settings.appendProperty(TestTrackConstants.SERVER_URL_PROPERTY, "http://my.jira.server");
 
-    String commentText = action.generateCommentText(remoteIssue, workflowContext, params);
+    String commentText = action.generateCommentText(remoteIssue, ProjectConfig.of(settings), params);
     assertThat(commentText, is("Hello world\n\nReview linked to JIRA issue: http://my.jira.server/browse/FOO-15"));
   }
 
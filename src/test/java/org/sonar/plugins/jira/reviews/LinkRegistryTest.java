@@ -0,0 +1,180 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import org.junit.After;
+import org.junit.Test;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class LinkRegistryTest {
+
+  private final ExecutorService threads = Executors.newCachedThreadPool();
+  private long now = 1000;
+  private final LinkRegistry registry = new LinkRegistry() {
+    @Override
+    protected long now() {
+      return now;
+    }
+  };
+
+  @After
+  public void tearDown() {
+    threads.shutdownNow();
+  }
+
+  @Test
+  public void shouldShareConcurrentCreationForSameReview() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    Creation creation = new Creation("FOO-1", release);
+
+    Future<LinkRegistry.Link> first = linkInBackground(7L, creation);
+    creation.started.await(5, TimeUnit.SECONDS);
+    Future<LinkRegistry.Link> second = linkInBackground(7L, creation);
+    Thread.sleep(50);
+    release.countDown();
+
+    assertThat(first.get().getIssue(), sameInstance(second.get().getIssue()));
+    assertThat(first.get().isCreated() ^ second.get().isCreated(), is(true));
+    assertThat(creation.calls.get(), is(1));
+    assertThat(registry.inFlightCount(), is(0));
+  }
+
+  @Test
+  public void shouldNotBlockOtherReviews() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    Creation slow = new Creation("FOO-1", release);
+    Future<LinkRegistry.Link> blocked = linkInBackground(7L, slow);
+    slow.started.await(5, TimeUnit.SECONDS);
+
+    LinkRegistry.Link other = registry.link(8L, new Creation("FOO-2", null));
+
+    assertThat(other.getIssue().getKey(), is("FOO-2"));
+    assertThat(blocked.isDone(), is(false));
+    release.countDown();
+    assertThat(blocked.get().getIssue().getKey(), is("FOO-1"));
+  }
+
+  @Test
+  public void shouldNotCancelCreationWhenWaiterIsInterrupted() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    Creation creation = new Creation("FOO-1", release);
+
+    Future<LinkRegistry.Link> owner = linkInBackground(7L, creation);
+    creation.started.await(5, TimeUnit.SECONDS);
+    Future<LinkRegistry.Link> waiter = linkInBackground(7L, creation);
+    Thread.sleep(50);
+    waiter.cancel(true);
+    release.countDown();
+
+    assertThat(owner.get().getIssue().getKey(), is("FOO-1"));
+    assertThat(owner.get().isCreated(), is(true));
+    assertThat(creation.calls.get(), is(1));
+  }
+
+  @Test
+  public void shouldReuseRecentLinkUntilItExpires() throws Exception {
+    Creation creation = new Creation("FOO-1", null);
+
+    LinkRegistry.Link first = registry.link(7L, creation);
+    LinkRegistry.Link again = registry.link(7L, creation);
+    now += LinkRegistry.RECENT_LINK_TTL_MS;
+    LinkRegistry.Link later = registry.link(7L, creation);
+
+    assertThat(first.isCreated(), is(true));
+    assertThat(again.isCreated(), is(false));
+    assertThat(again.getIssue(), sameInstance(first.getIssue()));
+    assertThat(later.isCreated(), is(true));
+    assertThat(later.getIssue(), not(sameInstance(first.getIssue())));
+    assertThat(creation.calls.get(), is(2));
+  }
+
+  @Test
+  public void shouldRetryAfterFailedCreation() throws Exception {
+    try {
+      registry.link(7L, new Callable<RemoteIssue>() {
+        public RemoteIssue call() throws RemoteException {
+          throw new RemoteException("Server Error");
+        }
+      });
+      fail();
+    } catch (RemoteException e) {
+      assertThat(e.getMessage(), is("Server Error"));
+    }
+
+    assertThat(registry.link(7L, new Creation("FOO-1", null)).isCreated(), is(true));
+    assertThat(registry.inFlightCount(), is(0));
+  }
+
+  @Test
+  public void shouldAlwaysCreateWithoutReviewId() throws Exception {
+    Creation creation = new Creation("FOO-1", null);
+
+    registry.link(null, creation);
+    registry.link(null, creation);
+
+    assertThat(creation.calls.get(), is(2));
+  }
+
+  private Future<LinkRegistry.Link> linkInBackground(final Long reviewId, final Creation creation) {
+    return threads.submit(new Callable<LinkRegistry.Link>() {
+      public LinkRegistry.Link call() throws Exception {
+        return registry.link(reviewId, creation);
+      }
+    });
+  }
+
+  private static class Creation implements Callable<RemoteIssue> {
+    private final String key;
+    private final CountDownLatch release;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    Creation(String key, CountDownLatch release) {
+      this.key = key;
+      this.release = release;
+    }
+
+    public RemoteIssue call() throws Exception {
+      calls.incrementAndGet();
+      started.countDown();
+      if (release != null) {
+        release.await(5, TimeUnit.SECONDS);
+      }
+      RemoteIssue issue = new RemoteIssue();
+      issue.setKey(key);
+      return issue;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.reviews.LinkedIssueUpdates.PendingUpdate;
+import org.sonar.plugins.testtrack.transport.TrackerSession;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class LinkedIssueUpdatePostJobTest {
+
+  private LinkedIssueUpdates updates;
+  private RemoteCallExecutor executor;
+  private ReviewLinks reviewLinks;
+  private LinkedIssueUpdatePostJob postJob;
+
+  @Before
+  public void init() {
+    updates = new LinkedIssueUpdates();
+    executor = new RemoteCallExecutor(2);
+    reviewLinks = mock(ReviewLinks.class);
+    postJob = new LinkedIssueUpdatePostJob(new Settings(), updates, executor, reviewLinks);
+  }
+
+  @After
+  public void stop() {
+    executor.stop();
+  }
+
+  @Test
+  public void shouldDoNothingWithoutUpdates() throws Exception {
+    SensorContext context = mock(SensorContext.class);
+
+    postJob.executeOn(mock(Project.class), context);
+
+    verifyZeroInteractions(context);
+  }
+
+  @Test
+  public void shouldSendOneCallPerKindAndIssue() throws Exception {
+    TrackerTransport service = mock(TrackerTransport.class);
+    updates.addComment("FOO-1", "First").addComment("FOO-1", "Second").setField("FOO-1", "priority", "1");
+    updates.addComment("FOO-2", "Other");
+
+    List<PendingUpdate> pushed = postJob.push(service, "token", "http://my.jira.com", PriorityMapping.DEFAULT, updates.drain());
+
+    assertThat(pushed.size(), is(2));
+    verify(service, times(1)).addComment(eq("token"), eq("FOO-1"), any(RemoteComment.class));
+    verify(service, times(1)).updateIssue(eq("token"), eq("FOO-1"), any(RemoteFieldValue[].class));
+    verify(service, times(1)).addComment(eq("token"), eq("FOO-2"), any(RemoteComment.class));
+    verify(service, times(0)).updateIssue(eq("token"), eq("FOO-2"), any(RemoteFieldValue[].class));
+  }
+
+  @Test
+  public void shouldCarryOnWhenOneIssueFails() throws Exception {
+    TrackerTransport service = mock(TrackerTransport.class);
+    doThrow(new RemoteException("Server Error")).when(service).addComment(anyString(), eq("FOO-1"), any(RemoteComment.class));
+    updates.addComment("FOO-1", "First");
+    updates.addComment("FOO-2", "Other");
+
+    List<PendingUpdate> pushed = postJob.push(service, "token", "http://my.jira.com", PriorityMapping.DEFAULT, updates.drain());
+
+    assertThat(pushed.size(), is(1));
+    assertThat(pushed.get(0).getIssueKey(), is("FOO-2"));
+  }
+
+  @Test
+  public void shouldCarryOnWhenOneIssueBreaks() throws Exception {
+    TrackerTransport service = mock(TrackerTransport.class);
+    doThrow(new IllegalArgumentException("Unexpected answer")).when(service).addComment(anyString(), eq("FOO-1"), any(RemoteComment.class));
+    updates.addComment("FOO-1", "First");
+    updates.addComment("FOO-2", "Other");
+
+    List<PendingUpdate> pushed = postJob.push(service, "token", "http://my.jira.com", PriorityMapping.DEFAULT, updates.drain());
+
+    assertThat(pushed.size(), is(1));
+    assertThat(pushed.get(0).getIssueKey(), is("FOO-2"));
+  }
+
+  @Test
+  public void shouldMarkReviewSynchronizedOnlyOncePushed() throws Exception {
+    final TrackerTransport service = mock(TrackerTransport.class);
+    when(service.login("admin", "pwd")).thenReturn("token");
+    doThrow(new RemoteException("Server Error")).when(service).addComment(anyString(), eq("FOO-2"), any(RemoteComment.class));
+    Settings settings = new Settings();
+    settings.setProperty(TestTrackConstants.SERVER_URL_PROPERTY, "http://my.jira.com");
+    settings.setProperty(TestTrackConstants.USERNAME_PROPERTY, "admin");
+    settings.setProperty(TestTrackConstants.PASSWORD_PROPERTY, "pwd");
+    postJob = new LinkedIssueUpdatePostJob(settings, updates, executor, reviewLinks) {
+      @Override
+      protected TrackerSession createSession() {
+        return new TrackerSession(service);
+      }
+    };
+    Map<String, String> synced = ImmutableMap.of(TestTrackConstants.REVIEW_SYNCED_SEVERITY_KEY, "BLOCKER");
+    updates.setSeverity("FOO-1", "BLOCKER").setReviewProperties("FOO-1", 7L, synced);
+    updates.addComment("FOO-2", "Other").setReviewProperties("FOO-2", 8L, synced);
+
+    postJob.executeOn(mock(Project.class), mock(SensorContext.class));
+
+    ArgumentCaptor<RemoteFieldValue[]> fields = ArgumentCaptor.forClass(RemoteFieldValue[].class);
+    verify(service).updateIssue(eq("token"), eq("FOO-1"), fields.capture());
+    assertThat(fields.getValue()[0].getValues()[0], is("1"));
+    verify(reviewLinks).setProperties(7L, synced);
+    verify(reviewLinks, never()).setProperties(eq(8L), anyMapOf(String.class, String.class));
+    verify(reviewLinks).commit();
+  }
+}
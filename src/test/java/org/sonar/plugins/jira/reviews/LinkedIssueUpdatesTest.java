@@ -0,0 +1,81 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.google.common.collect.Iterables;
+import org.junit.Test;
+import org.sonar.plugins.testtrack.reviews.LinkedIssueUpdates.PendingUpdate;
+
+import java.util.Collection;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LinkedIssueUpdatesTest {
+
+  @Test
+  public void shouldMergeUpdatesOfSameIssue() throws Exception {
+    LinkedIssueUpdates updates = new LinkedIssueUpdates();
+    updates.addComment("FOO-1", "First");
+    updates.setField("FOO-1", "priority", "2");
+    updates.addComment("FOO-1", "Second");
+    updates.setField("FOO-1", "priority", "1");
+    updates.addComment("FOO-2", "Other");
+
+    Collection<PendingUpdate> pending = updates.drain();
+
+    assertThat(pending.size(), is(2));
+    PendingUpdate first = Iterables.get(pending, 0);
+    assertThat(first.getIssueKey(), is("FOO-1"));
+    assertThat(first.toRemoteComment().getBody(), is("First\n\nSecond"));
+    RemoteFieldValue[] fields = first.toRemoteFieldValues(PriorityMapping.DEFAULT);
+    assertThat(fields.length, is(1));
+    assertThat(fields[0].getId(), is("priority"));
+    assertThat(fields[0].getValues()[0], is("1"));
+
+    PendingUpdate second = Iterables.get(pending, 1);
+    assertThat(second.hasComment(), is(true));
+    assertThat(second.hasFields(), is(false));
+  }
+
+  @Test
+  public void shouldMapSeverityToPriority() throws Exception {
+    LinkedIssueUpdates updates = new LinkedIssueUpdates();
+    updates.setSeverity("FOO-1", "BLOCKER");
+
+    PendingUpdate update = Iterables.getOnlyElement(updates.drain());
+
+    assertThat(update.hasFields(), is(true));
+    RemoteFieldValue[] fields = update.toRemoteFieldValues(PriorityMapping.DEFAULT);
+    assertThat(fields[0].getId(), is("priority"));
+    assertThat(fields[0].getValues()[0], is("1"));
+  }
+
+  @Test
+  public void shouldForgetDrainedUpdates() throws Exception {
+    LinkedIssueUpdates updates = new LinkedIssueUpdates();
+    updates.addComment("FOO-1", "First");
+
+    updates.drain();
+
+    assertThat(updates.isEmpty(), is(true));
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.batch.DecoratorContext;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.JavaFile;
+import org.sonar.api.resources.Project;
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.RulePriority;
+import org.sonar.api.rules.Violation;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.reviews.LinkedIssueUpdates.PendingUpdate;
+import org.sonar.plugins.testtrack.reviews.ReviewLinks.LinkedReview;
+import org.sonar.plugins.testtrack.transport.TrackerSession;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LinkedViolationChangesTest {
+
+  private static final String MESSAGE_HASH = DigestUtils.md5Hex("Avoid this");
+
+  private Settings settings;
+  private ReviewLinks reviewLinks;
+  private LinkedIssueUpdates updates;
+  private LinkedViolationChanges decorator;
+  private RemoteCallExecutor executor;
+
+  @Before
+  public void init() {
+    settings = new Settings();
+    settings.setProperty(TestTrackConstants.SERVER_URL_PROPERTY, "http://my.jira.com");
+    settings.setProperty(TestTrackConstants.USERNAME_PROPERTY, "admin");
+    settings.setProperty(TestTrackConstants.PASSWORD_PROPERTY, "pwd");
+    reviewLinks = mock(ReviewLinks.class);
+    updates = new LinkedIssueUpdates();
+    decorator = new LinkedViolationChanges(settings, reviewLinks, updates);
+    executor = new RemoteCallExecutor(2);
+  }
+
+  @After
+  public void stop() {
+    executor.stop();
+  }
+
+  @Test
+  public void shouldNotExecuteWithoutJiraServer() {
+    assertThat(decorator.shouldExecuteOnProject(new Project("foo")), is(true));
+
+    settings.removeProperty(TestTrackConstants.PASSWORD_PROPERTY);
+
+    assertThat(decorator.shouldExecuteOnProject(new Project("foo")), is(false));
+  }
+
+  @Test
+  public void shouldOnlyWriteBaselineOfViolationMetFirstTime() {
+    linked(new LinkedReview(7L, "FOO-1", ImmutableMap.of(TestTrackConstants.REVIEW_DATA_PROPERTY_KEY, "FOO-1")));
+
+    decorator.decorate(new JavaFile("Foo"), context(violation(42, RulePriority.MAJOR, "Avoid this")));
+
+    verify(reviewLinks).setProperties(7L, ImmutableMap.of(
+        TestTrackConstants.REVIEW_SYNCED_SEVERITY_KEY, "MAJOR",
+        TestTrackConstants.REVIEW_SYNCED_MESSAGE_KEY, MESSAGE_HASH));
+    assertThat(updates.isEmpty(), is(true));
+  }
+
+  @Test
+  public void shouldNotUpdateUnchangedViolation() {
+    linked(synced(7L, "FOO-1", "MAJOR", MESSAGE_HASH));
+
+    decorator.decorate(new JavaFile("Foo"), context(violation(42, RulePriority.MAJOR, "Avoid this")));
+
+    assertThat(updates.isEmpty(), is(true));
+    verify(reviewLinks, never()).setProperties(anyLong(), anyMapOf(String.class, String.class));
+  }
+
+  @Test
+  public void shouldRecordChangedMessageAsComment() {
+    linked(synced(7L, "FOO-1", "MAJOR", MESSAGE_HASH));
+
+    decorator.decorate(new JavaFile("Foo"), context(violation(42, RulePriority.MAJOR, "Avoid that")));
+
+    PendingUpdate update = updates.drain().iterator().next();
+    assertThat(update.toRemoteComment().getBody(), is("Sonar message changed to: Avoid that"));
+    assertThat(update.hasFields(), is(false));
+    assertThat(update.getReviewProperties().get(TestTrackConstants.REVIEW_SYNCED_MESSAGE_KEY), is(DigestUtils.md5Hex("Avoid that")));
+  }
+
+  @Test
+  public void shouldIgnoreViolationsNotLinked() {
+    linked(synced(7L, "FOO-1", "MAJOR", MESSAGE_HASH));
+
+    decorator.decorate(new JavaFile("Foo"), context(violation(43, RulePriority.BLOCKER, "Other"), violation(null, RulePriority.BLOCKER, "New")));
+
+    assertThat(updates.isEmpty(), is(true));
+  }
+
+  @Test
+  public void shouldPushSeverityBumpToLinkedIssueAfterAnalysis() throws Exception {
+    linked(synced(7L, "FOO-1", "MAJOR", MESSAGE_HASH));
+    final TrackerTransport service = mock(TrackerTransport.class);
+    when(service.login("admin", "pwd")).thenReturn("token");
+    LinkedIssueUpdatePostJob postJob = new LinkedIssueUpdatePostJob(settings, updates, executor, reviewLinks) {
+      @Override
+      protected TrackerSession createSession() {
+        return new TrackerSession(service);
+      }
+    };
+
+    decorator.decorate(new JavaFile("Foo"), context(violation(42, RulePriority.BLOCKER, "Avoid this")));
+    postJob.executeOn(new Project("foo"), mock(SensorContext.class));
+
+    ArgumentCaptor<RemoteFieldValue[]> fields = ArgumentCaptor.forClass(RemoteFieldValue[].class);
+    verify(service).updateIssue(eq("token"), eq("FOO-1"), fields.capture());
+    assertThat(fields.getValue()[0].getId(), is("priority"));
+    assertThat(fields.getValue()[0].getValues()[0], is(PriorityMapping.DEFAULT.priorityFor("BLOCKER")));
+    ArgumentCaptor<RemoteComment> comment = ArgumentCaptor.forClass(RemoteComment.class);
+    verify(service).addComment(eq("token"), eq("FOO-1"), comment.capture());
+    assertThat(comment.getValue().getBody(), containsString("from MAJOR to BLOCKER"));
+    verify(reviewLinks).setProperties(7L, ImmutableMap.of(
+        TestTrackConstants.REVIEW_SYNCED_SEVERITY_KEY, "BLOCKER",
+        TestTrackConstants.REVIEW_SYNCED_MESSAGE_KEY, MESSAGE_HASH));
+    assertThat(updates.isEmpty(), is(true));
+  }
+
+  private void linked(LinkedReview review) {
+    when(reviewLinks.findByProject(12)).thenReturn(ImmutableMap.of(42, review));
+  }
+
+  private static LinkedReview synced(long reviewId, String issueKey, String severity, String messageHash) {
+    return new LinkedReview(reviewId, issueKey, ImmutableMap.of(
+        TestTrackConstants.REVIEW_DATA_PROPERTY_KEY, issueKey,
+        TestTrackConstants.REVIEW_SYNCED_SEVERITY_KEY, severity,
+        TestTrackConstants.REVIEW_SYNCED_MESSAGE_KEY, messageHash));
+  }
+
+  private static Violation violation(Integer permanentId, RulePriority severity, String message) {
+    Violation violation = Violation.create(Rule.create("pmd", "UnusedLocal", "Unused local"), new JavaFile("Foo"));
+    violation.setPermanentId(permanentId);
+    violation.setSeverity(severity);
+    violation.setMessage(message);
+    return violation;
+  }
+
+  private static DecoratorContext context(Violation... violations) {
+    Project project = new Project("foo");
+    project.setId(12);
+    DecoratorContext context = mock(DecoratorContext.class);
+    when(context.getProject()).thenReturn(project);
+    when(context.getViolations()).thenReturn(Arrays.asList(violations));
+    return context;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.atlassian.jira.rpc.soap.client.RemoteIssueType;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import com.atlassian.jira.rpc.soap.client.RemoteProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class PriorityMappingResolverTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private PriorityMappingResolver resolver;
+  private TrackerTransport service;
+  private Settings settings;
+
+  @Before
+  public void init() throws Exception {
+    resolver = new PriorityMappingResolver();
+    service = mock(TrackerTransport.class);
+    when(service.getPriorities("token")).thenReturn(new RemotePriority[] {priority("10", "Showstopper"), priority("11", "Low")});
+    RemoteProject project = new RemoteProject();
+    project.setId("100");
+    when(service.getProjectByKey("token", "TEST")).thenReturn(project);
+    RemoteIssueType task = new RemoteIssueType();
+    task.setId("20");
+    task.setName("Technical debt");
+    when(service.getIssueTypesForProject("token", "100")).thenReturn(new RemoteIssueType[] {task});
+
+    settings = new Settings();
+    settings.setProperty(TestTrackConstants.SERVER_URL_PROPERTY, "http://my.jira.com");
+    settings.setProperty(TestTrackConstants.JIRA_PROJECT_KEY_PROPERTY, "TEST");
+  }
+
+  @Test
+  public void shouldUseDefaultIdsWithoutCallingJira() throws Exception {
+    PriorityMapping mapping = resolver.resolve(service, "token", settings);
+
+    assertThat(mapping, sameInstance(PriorityMapping.DEFAULT));
+    assertThat(mapping.priorityFor("BLOCKER"), is("1"));
+    assertThat(mapping.priorityFor("INFO"), is("5"));
+    assertThat(mapping.priorityFor("UNKNOWN"), is("3"));
+    assertThat(mapping.getIssueTypeId(), is("3"));
+    verifyZeroInteractions(service);
+  }
+
+  @Test
+  public void shouldResolveNamesAgainstJiraIds() throws Exception {
+    settings.setProperty(TestTrackConstants.PRIORITY_MAPPING_PROPERTY, "blocker=showstopper, INFO=Low");
+    settings.setProperty(TestTrackConstants.ISSUE_TYPE_PROPERTY, "Technical Debt");
+
+    PriorityMapping mapping = resolver.resolve(service, "token", settings);
+
+    assertThat(mapping.priorityFor("BLOCKER"), is("10"));
+    assertThat(mapping.priorityFor("INFO"), is("11"));
+    // not mapped: default ID
+    assertThat(mapping.priorityFor("MAJOR"), is("3"));
+    assertThat(mapping.getIssueTypeId(), is("20"));
+  }
+
+  @Test
+  public void shouldCacheUntilInvalidated() throws Exception {
+    settings.setProperty(TestTrackConstants.PRIORITY_MAPPING_PROPERTY, "BLOCKER=Showstopper");
+
+    PriorityMapping mapping = resolver.resolve(service, "token", settings);
+    assertThat(resolver.resolve(service, "token", settings), sameInstance(mapping));
+    verify(service, times(1)).getPriorities("token");
+
+    resolver.invalidate(settings);
+    resolver.resolve(service, "token", settings);
+    verify(service, times(2)).getPriorities("token");
+  }
+
+  @Test
+  public void shouldFailOnUnknownPriority() throws Exception {
+    settings.setProperty(TestTrackConstants.PRIORITY_MAPPING_PROPERTY, "BLOCKER=Urgent");
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("The JIRA priority 'Urgent' does not exist");
+
+    resolver.resolve(service, "token", settings);
+  }
+
+  @Test
+  public void shouldFailOnUnknownIssueType() throws Exception {
+    settings.setProperty(TestTrackConstants.ISSUE_TYPE_PROPERTY, "Bug");
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("The JIRA issue type 'Bug' does not exist in project TEST");
+
+    resolver.resolve(service, "token", settings);
+  }
+
+  private static RemotePriority priority(String id, String name) {
+    RemotePriority priority = new RemotePriority();
+    priority.setId(id);
+    priority.setName(name);
+    return priority;
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.RuleFinder;
+import org.sonar.api.workflow.internal.DefaultReview;
+import org.sonar.plugins.testtrack.ProjectConfig;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.transport.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReviewAttachmentsTest {
+
+  private final List<String> urls = new ArrayList<String>();
+  private final List<String> authorizations = new ArrayList<String>();
+  private RuleFinder ruleFinder;
+  private DefaultReview review;
+  private Settings settings;
+
+  @Before
+  public void init() {
+    ruleFinder = mock(RuleFinder.class);
+    review = new DefaultReview();
+    review.setReviewId(456L);
+    review.setLine(12L);
+    review.setRuleRepositoryKey("checkstyle");
+    review.setRuleKey("IndentationCheck");
+    settings = new Settings();
+    settings.setProperty("sonar.core.serverBaseURL", "http://my.sonar.com");
+    settings.setProperty(TestTrackConstants.ATTACHMENT_CONTEXT_LINES_PROPERTY, "1");
+  }
+
+  @Test
+  public void shouldAttachSourceLinesAroundViolation() {
+    Rule rule = Rule.create("checkstyle", "IndentationCheck", "Indentation");
+    rule.setDescription("<p>Checks indentation.</p>");
+    when(ruleFinder.findByKey("checkstyle", "IndentationCheck")).thenReturn(rule);
+
+    List<ReviewAttachments.Attachment> attachments = attachments().collect(review, ProjectConfig.of(settings));
+
+    assertThat(urls.get(0), is("http://my.sonar.com/api/reviews?format=json&ids=456"));
+    assertThat(urls.get(1), is("http://my.sonar.com/api/sources?format=json&resource=org.example%3AFoo&from=11&to=13"));
+    assertThat(attachments.size(), is(2));
+    assertThat(attachments.get(0).getFileName(), is("Foo-12.txt"));
+    assertThat(decode(attachments.get(0)), is("   11  class Foo {\n>> 12  int x;\n   13  }\n"));
+    assertThat(attachments.get(1).getFileName(), is("rule-IndentationCheck.html"));
+    assertThat(decode(attachments.get(1)), is("<p>Checks indentation.</p>"));
+  }
+
+  @Test
+  public void shouldReadSourceAsConfiguredSonarUser() {
+    settings.setProperty(TestTrackConstants.ATTACHMENT_SONAR_LOGIN_PROPERTY, "bob");
+    settings.setProperty(TestTrackConstants.ATTACHMENT_SONAR_PASSWORD_PROPERTY, "secret");
+
+    attachments().collect(review, ProjectConfig.of(settings));
+
+    assertThat(authorizations.size(), is(2));
+    assertThat(authorizations.get(0), is("Basic Ym9iOnNlY3JldA=="));
+    assertThat(authorizations.get(1), is("Basic Ym9iOnNlY3JldA=="));
+  }
+
+  @Test
+  public void shouldReadSourceAnonymouslyWithoutSonarUser() {
+    attachments().collect(review, ProjectConfig.of(settings));
+
+    assertThat(authorizations.get(0), nullValue());
+  }
+
+  @Test
+  public void shouldKeepRuleDescriptionWhenSourceIsNotAvailable() {
+    Rule rule = Rule.create("checkstyle", "IndentationCheck", "Indentation");
+    rule.setDescription("Checks indentation.");
+    when(ruleFinder.findByKey("checkstyle", "IndentationCheck")).thenReturn(rule);
+
+    List<ReviewAttachments.Attachment> attachments = new ReviewAttachments(ruleFinder) {
+      @Override
+      protected Reader open(String url, String authorization) throws IOException {
+        throw new IOException("HTTP 403 on " + url);
+      }
+    }.collect(review, ProjectConfig.of(settings));
+
+    assertThat(attachments.size(), is(1));
+    assertThat(attachments.get(0).getFileName(), is("rule-IndentationCheck.html"));
+  }
+
+  @Test
+  public void shouldStopAtMaximumSize() throws Exception {
+    String lines = "[{\"1\":\"aaaaaaaa\",\"2\":\"bbbbbbbb\",\"3\":\"cccccccc\"}]";
+
+    String encoded = ReviewAttachments.encodeSourceLines(new JsonReader(new StringReader(lines)), 2, 30);
+
+    String decoded = new String(Base64.decodeBase64(encoded.getBytes("US-ASCII")), "UTF-8");
+    assertThat(decoded, is("   1  aaaaaaaa\n>> 2  bbbbbbbb\n\n[truncated]\n"));
+  }
+
+  @Test
+  public void shouldTruncateRuleDescriptionOnLineBoundaries() throws Exception {
+    ReviewAttachments.Attachment attachment = ReviewAttachments.ruleDescription("squid:S1", "first line\nsecond line\n", 15);
+
+    assertThat(attachment.getFileName(), is("rule-S1.html"));
+    assertThat(decode(attachment), endsWith("first line\n\n[truncated]\n"));
+  }
+
+  private ReviewAttachments attachments() {
+    return new ReviewAttachments(ruleFinder) {
+      @Override
+      protected Reader open(String url, String authorization) {
+        urls.add(url);
+        authorizations.add(authorization);
+        if (url.contains("/api/reviews")) {
+          return new StringReader("[{\"id\":456,\"resource\":\"org.example:Foo\",\"line\":12}]");
+        }
+        return new StringReader("[{\"11\":\"class Foo {\",\"12\":\"int x;\",\"13\":\"}\"}]");
+      }
+    };
+  }
+
+  private static String decode(ReviewAttachments.Attachment attachment) {
+    try {
+      return new String(Base64.decodeBase64(attachment.getBase64Content().getBytes("US-ASCII")), "UTF-8");
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
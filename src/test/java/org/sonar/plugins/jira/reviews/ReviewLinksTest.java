@@ -0,0 +1,132 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.reviews;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.database.DatabaseSession;
+import org.sonar.plugins.testtrack.reviews.ReviewLinks.LinkedReview;
+
+import javax.persistence.Query;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReviewLinksTest {
+
+  private DatabaseSession session;
+  private Query select;
+  private Query update;
+  private ReviewLinks reviewLinks;
+
+  @Before
+  public void init() {
+    session = mock(DatabaseSession.class);
+    select = mock(Query.class);
+    update = mock(Query.class);
+    when(session.createNativeQuery(startsWith("SELECT"))).thenReturn(select);
+    when(session.createNativeQuery(startsWith("UPDATE"))).thenReturn(update);
+    reviewLinks = new ReviewLinks(session);
+  }
+
+  @Test
+  public void shouldFindLinkedReviewsByPermanentId() {
+    when(select.getResultList()).thenReturn(Arrays.asList(
+        new Object[] {BigInteger.valueOf(7), 42, "jira-issue-key=FOO-1;jira-synced-severity=MAJOR"},
+        new Object[] {BigInteger.valueOf(8), 43, "jira-issue-key="}));
+
+    Map<Integer, LinkedReview> linked = reviewLinks.findByProject(12);
+
+    verify(select).setParameter("projectId", 12);
+    assertThat(linked.size(), is(1));
+    assertThat(linked.get(42).getReviewId(), is(7L));
+    assertThat(linked.get(42).getIssueKey(), is("FOO-1"));
+    assertThat(linked.get(42).getProperty("jira-synced-severity"), is("MAJOR"));
+  }
+
+  @Test
+  public void shouldKeepOtherPropertiesOfReview() {
+    when(select.getResultList()).thenReturn(Collections.singletonList(
+        new Object[] {BigInteger.valueOf(7), "jira-issue-key=FOO-1;jira-synced-severity=MAJOR"}));
+
+    reviewLinks.setProperties(7L, ImmutableMap.of("jira-synced-severity", "BLOCKER"));
+
+    verify(update).setParameter("data", "jira-issue-key=FOO-1;jira-synced-severity=BLOCKER");
+    verify(update).executeUpdate();
+    verify(session, never()).commit();
+  }
+
+  @Test
+  public void shouldLinkExistingReviewOfViolation() {
+    when(select.getResultList()).thenReturn(Collections.singletonList(new Object[] {BigInteger.valueOf(7), "foo=bar"}));
+
+    reviewLinks.link("FOO-1", 42, 12, 34, 3, 56, "MAJOR", "Avoid this");
+
+    verify(select).setParameter("permanentId", 42);
+    verify(update).setParameter("data", "foo=bar;jira-issue-key=FOO-1");
+    verify(update).setParameter("id", 7L);
+    verify(session, never()).createNativeQuery(startsWith("INSERT"));
+    verify(session, never()).commit();
+  }
+
+  @Test
+  public void shouldCreateOpenReviewOfViolationWithoutOne() {
+    Query insert = mock(Query.class);
+    when(session.createNativeQuery(startsWith("INSERT"))).thenReturn(insert);
+    when(select.getResultList()).thenReturn(Collections.emptyList());
+
+    reviewLinks.link("FOO-1", 42, 12, 34, 3, 56, "MAJOR", "Avoid this");
+
+    verify(insert).setParameter("permanentId", 42);
+    verify(insert).setParameter("projectId", 12);
+    verify(insert).setParameter("resourceId", 34);
+    verify(insert).setParameter("title", "Avoid this");
+    verify(insert).setParameter("data", "jira-issue-key=FOO-1");
+    verify(insert).executeUpdate();
+    verify(session, never()).commit();
+  }
+
+  @Test
+  public void shouldCommitOnlyWhenAsked() {
+    reviewLinks.commit();
+
+    verify(session).commit();
+  }
+
+  @Test
+  public void shouldIgnoreDeletedReview() {
+    when(select.getResultList()).thenReturn(Collections.emptyList());
+
+    reviewLinks.setProperties(7L, ImmutableMap.of("jira-synced-severity", "BLOCKER"));
+
+    verify(session, never()).createNativeQuery(startsWith("UPDATE"));
+    verify(session, never()).commit();
+  }
+}
@@ -19,7 +19,6 @@
  */
 package org.sonar.plugins.testtrack.reviews;
 
-import com.atlassian.jira.rpc.soap.client.JiraSoapService;
 import com.atlassian.jira.rpc.soap.client.RemoteAuthenticationException;
 import com.atlassian.jira.rpc.soap.client.RemoteIssue;
 import com.atlassian.jira.rpc.soap.client.RemotePermissionException;
@@ -29,10 +28,15 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.sonar.api.config.Settings;
 import org.sonar.api.workflow.internal.DefaultReview;
+import org.sonar.plugins.testtrack.ProjectConfig;
 import org.sonar.plugins.testtrack.TestTrackConstants;
-import org.sonar.plugins.testtrack.soap.TestTrackSoapSession;
+import org.sonar.plugins.testtrack.stats.OperationalStats;
+import org.sonar.plugins.testtrack.transport.InvalidServerUrlException;
+import org.sonar.plugins.testtrack.transport.TrackerSession;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
 
 import java.rmi.RemoteException;
+import java.util.Arrays;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
@@ -41,6 +45,7 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class TestTrackIssueCreatorTest {
@@ -67,13 +72,21 @@ public class TestTrackIssueCreatorTest {
     settings.appendProperty(TestTrackConstants.PASSWORD_PROPERTY, "bar");
     settings.appendProperty(TestTrackConstants.JIRA_PROJECT_KEY_PROPERTY, "TEST");
 
-    jiraIssueCreator = new TestTrackIssueCreator();
+    jiraIssueCreator = new TestTrackIssueCreator(new PriorityMappingResolver(), null, new OperationalStats());
   }
 
   @Test
   public void shouldCreateSoapSession() throws Exception {
-    TestTrackSoapSession soapSession = jiraIssueCreator.createSoapSession(settings);
-    assertThat(soapSession.getWebServiceUrl().toString(), is("http://my.jira.com/rpc/soap/jirasoapservice-v2"));
+    TrackerSession session = jiraIssueCreator.createSession(ProjectConfig.of(settings));
+    assertThat(session.getTransport().getEndpoint(), is("http://my.jira.com/rpc/soap/jirasoapservice-v2"));
+  }
+
+  @Test
+  public void shouldCreateRestSession() throws Exception {
+    settings.setProperty(TestTrackConstants.TRANSPORT_PROPERTY, "rest");
+
+    TrackerSession session = jiraIssueCreator.createSession(ProjectConfig.of(settings));
+    assertThat(session.getTransport().getEndpoint(), is("http://my.jira.com/rest/api/2"));
   }
 
   @Test
@@ -81,84 +94,138 @@ public class TestTrackIssueCreatorTest {
     settings.removeProperty(TestTrackConstants.SERVER_URL_PROPERTY);
     settings.appendProperty(TestTrackConstants.SERVER_URL_PROPERTY, "my.server");
 
-    thrown.expect(IllegalStateException.class);
+    thrown.expect(InvalidServerUrlException.class);
     thrown.expectMessage("The JIRA server URL is not a valid one: my.server/rpc/soap/jirasoapservice-v2");
 
-    jiraIssueCreator.createSoapSession(settings);
+    jiraIssueCreator.createSession(ProjectConfig.of(settings));
   }
 
   @Test
   public void shouldFailToCreateIssueIfCantConnect() throws Exception {
     // Given that
-    TestTrackSoapSession soapSession = mock(TestTrackSoapSession.class);
-    doThrow(RemoteException.class).when(soapSession).connect(anyString(), anyString());
+    TrackerSession session = mock(TrackerSession.class);
+    doThrow(RemoteException.class).when(session).connect(anyString(), anyString());
 
     // Verify
     thrown.expect(IllegalStateException.class);
     thrown.expectMessage("Impossible to connect to the JIRA server");
 
-    jiraIssueCreator.doCreateIssue(review, soapSession, settings, null);
+    jiraIssueCreator.doCreateIssue(review, session, settings, ProjectConfig.of(settings), null);
   }
 
   @Test
   public void shouldFailToCreateIssueIfCantAuthenticate() throws Exception {
     // Given that
-    JiraSoapService jiraSoapService = mock(JiraSoapService.class);
-    doThrow(RemoteAuthenticationException.class).when(jiraSoapService).createIssue(anyString(), any(RemoteIssue.class));
+    TrackerTransport transport = mock(TrackerTransport.class);
+    doThrow(RemoteAuthenticationException.class).when(transport).createIssue(anyString(), any(RemoteIssue.class));
 
     // Verify
     thrown.expect(IllegalStateException.class);
     thrown.expectMessage("Impossible to connect to the JIRA server (my.jira) because of invalid credentials for user foo");
 
-    jiraIssueCreator.sendRequest(jiraSoapService, "", null, "my.jira", "foo");
+    jiraIssueCreator.sendRequest(transport, "", null, "my.jira", "foo");
   }
 
   @Test
   public void shouldFailToCreateIssueIfNotEnoughRights() throws Exception {
     // Given that
-    JiraSoapService jiraSoapService = mock(JiraSoapService.class);
-    doThrow(RemotePermissionException.class).when(jiraSoapService).createIssue(anyString(), any(RemoteIssue.class));
+    TrackerTransport transport = mock(TrackerTransport.class);
+    doThrow(RemotePermissionException.class).when(transport).createIssue(anyString(), any(RemoteIssue.class));
 
     // Verify
     thrown.expect(IllegalStateException.class);
     thrown.expectMessage("Impossible to create the issue on the JIRA server (my.jira) because user foo does not have enough rights.");
 
-    jiraIssueCreator.sendRequest(jiraSoapService, "", null, "my.jira", "foo");
+    jiraIssueCreator.sendRequest(transport, "", null, "my.jira", "foo");
   }
 
   @Test
   public void shouldFailToCreateIssueIfRemoteError() throws Exception {
     // Given that
-    JiraSoapService jiraSoapService = mock(JiraSoapService.class);
-    doThrow(RemoteException.class).when(jiraSoapService).createIssue(anyString(), any(RemoteIssue.class));
+    TrackerTransport transport = mock(TrackerTransport.class);
+    doThrow(RemoteException.class).when(transport).createIssue(anyString(), any(RemoteIssue.class));
 
     // Verify
     thrown.expect(IllegalStateException.class);
     thrown.expectMessage("Impossible to create the issue on the JIRA server (my.jira)");
 
-    jiraIssueCreator.sendRequest(jiraSoapService, "", null, "my.jira", "foo");
+    jiraIssueCreator.sendRequest(transport, "", null, "my.jira", "foo");
+  }
+
+  @Test
+  public void shouldCountCallsAndFailures() throws Exception {
+    OperationalStats stats = new OperationalStats();
+    jiraIssueCreator = new TestTrackIssueCreator(new PriorityMappingResolver(), null, stats);
+    TrackerTransport transport = mock(TrackerTransport.class);
+    when(transport.createIssue(anyString(), any(RemoteIssue.class))).thenReturn(new RemoteIssue()).thenThrow(new RemotePermissionException());
+
+    jiraIssueCreator.sendRequest(transport, "", null, "my.jira", "foo");
+    try {
+      jiraIssueCreator.sendRequest(transport, "", null, "my.jira", "foo");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    assertThat(stats.getCreateIssueLatency().getCount(), is(2L));
+    assertThat(stats.getFailures().get("RemotePermissionException"), is(1L));
   }
 
   @Test
   public void shouldCreateIssue() throws Exception {
     // Given that
     RemoteIssue issue = new RemoteIssue();
-    JiraSoapService jiraSoapService = mock(JiraSoapService.class);
-    when(jiraSoapService.createIssue(anyString(), any(RemoteIssue.class))).thenReturn(issue);
+    TrackerTransport transport = mock(TrackerTransport.class);
+    when(transport.createIssue(anyString(), any(RemoteIssue.class))).thenReturn(issue);
 
-    TestTrackSoapSession soapSession = mock(TestTrackSoapSession.class);
-    when(soapSession.getJiraSoapService()).thenReturn(jiraSoapService);
+    TrackerSession session = mock(TrackerSession.class);
+    when(session.getTransport()).thenReturn(transport);
 
     // Verify
-    RemoteIssue returnedIssue = jiraIssueCreator.doCreateIssue(review, soapSession, settings, null);
+    RemoteIssue returnedIssue = jiraIssueCreator.doCreateIssue(review, session, settings, ProjectConfig.of(settings), null);
 
-    verify(soapSession).connect("foo", "bar");
-    verify(soapSession).getJiraSoapService();
-    verify(soapSession).getAuthenticationToken();
+    verify(session).connect("foo", "bar");
+    verify(session).getTransport();
+    verify(session).getAuthenticationToken();
 
     assertThat(returnedIssue, is(issue));
   }
 
+  @Test
+  public void shouldAttachSourceAndRuleWhenEnabled() throws Exception {
+    settings.setProperty(TestTrackConstants.ATTACHMENTS_PROPERTY, "true");
+    ReviewAttachments attachments = mock(ReviewAttachments.class);
+    ProjectConfig config = ProjectConfig.of(settings);
+    when(attachments.collect(review, config)).thenReturn(Arrays.asList(new ReviewAttachments.Attachment("Foo.java-12.txt", "Zm9v")));
+    jiraIssueCreator = new TestTrackIssueCreator(new PriorityMappingResolver(), attachments, new OperationalStats());
+    RemoteIssue issue = new RemoteIssue();
+    issue.setKey("TEST-1");
+    TrackerTransport transport = mock(TrackerTransport.class);
+    when(transport.createIssue(anyString(), any(RemoteIssue.class))).thenReturn(issue);
+    when(transport.addAttachmentsToIssue(anyString(), anyString(), any(String[].class), any(String[].class))).thenThrow(new RemoteException("Too large"));
+    TrackerSession session = mock(TrackerSession.class);
+    when(session.getTransport()).thenReturn(transport);
+    when(session.getAuthenticationToken()).thenReturn("token");
+
+    RemoteIssue returnedIssue = jiraIssueCreator.doCreateIssue(review, session, settings, config, null);
+
+    assertThat(returnedIssue, is(issue));
+    verify(transport).addAttachmentsToIssue("token", "TEST-1", new String[] {"Foo.java-12.txt"}, new String[] {"Zm9v"});
+  }
+
+  @Test
+  public void shouldNotAttachByDefault() throws Exception {
+    ReviewAttachments attachments = mock(ReviewAttachments.class);
+    jiraIssueCreator = new TestTrackIssueCreator(new PriorityMappingResolver(), attachments, new OperationalStats());
+    TrackerTransport transport = mock(TrackerTransport.class);
+    when(transport.createIssue(anyString(), any(RemoteIssue.class))).thenReturn(new RemoteIssue());
+    TrackerSession session = mock(TrackerSession.class);
+    when(session.getTransport()).thenReturn(transport);
+
+    jiraIssueCreator.doCreateIssue(review, session, settings, ProjectConfig.of(settings), null);
+
+    verifyZeroInteractions(attachments);
+  }
+
   @Test
   public void shouldInitRemoteIssue() throws Exception {
     // Given that
@@ -171,11 +238,24 @@ public class TestTrackIssueCreatorTest {
       "{quote}\n\nMessage from reviewer:\n{quote}\nHello world!\n{quote}\n\n\nCheck it on Sonar: http://my.sonar.com/project_reviews/view/456");
 
     // Verify
-    RemoteIssue returnedIssue = jiraIssueCreator.initRemoteIssue(review, settings, "Hello world!");
+    RemoteIssue returnedIssue = jiraIssueCreator.initRemoteIssue(review, ProjectConfig.of(settings), "Hello world!");
 
     assertThat(returnedIssue, is(issue));
   }
 
+  @Test
+  public void shouldInitRemoteIssueFromTemplates() throws Exception {
+    settings.setProperty(TestTrackConstants.SUMMARY_TEMPLATE_PROPERTY, "[${severity}] ${rule}${?line} (line ${line})${/line}");
+    settings.setProperty(TestTrackConstants.DESCRIPTION_TEMPLATE_PROPERTY, "${message}\\n${sonarUrl}/project_reviews/view/${reviewId}");
+    review.setLine(12L);
+
+    RemoteIssue returnedIssue = jiraIssueCreator.initRemoteIssue(review, ProjectConfig.of(settings), null);
+
+    assertThat(returnedIssue.getSummary(), is("[MINOR] Wrong identation (line 12)"));
+    assertThat(returnedIssue.getDescription(), is("The Cyclomatic Complexity of this method is 14 which is greater than 10 authorized.\n"
+      + "http://my.sonar.com/project_reviews/view/456"));
+  }
+
   @Test
   public void shouldGiveDefaultPriority() throws Exception {
     assertThat(jiraIssueCreator.sonarSeverityToJiraPriority("UNKNOWN"), is("3"));
@@ -0,0 +1,145 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.snapshot;
+
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class IssueSnapshotTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void shouldReadWhatWasWritten() throws Exception {
+    File file = new File(temp.getRoot(), "snapshots/issues.bin");
+    RemoteIssue[] issues = {issue("TEST-1", "1", "1", "3"), issue("TEST-2", "3", "6", "1"), issue("ÉTÉ-3", null, "1", "3")};
+
+    IssueSnapshotWriter.write(file, "10010", priorities(), issues, 1234L);
+    IssueSnapshot snapshot = IssueSnapshot.open(file);
+
+    assertThat(snapshot.getCreatedAt(), is(1234L));
+    assertThat(snapshot.getSource(), is("10010"));
+    assertThat(snapshot.getPriorityNames().get("3"), is("Major"));
+    assertThat(snapshot.size(), is(3));
+    assertThat(snapshot.getKey(0), is("TEST-1"));
+    assertThat(snapshot.getKey(2), is("ÉTÉ-3"));
+    assertThat(snapshot.getPriorityId(1), is("3"));
+    assertThat(snapshot.getPriorityId(2), nullValue());
+    assertThat(snapshot.getStatusId(1), is("6"));
+    assertThat(snapshot.getTypeId(1), is("1"));
+    Map<String, Integer> counts = snapshot.countByPriority();
+    assertThat(counts.get("1"), is(1));
+    assertThat(counts.get("3"), is(1));
+    assertThat(counts.size(), is(2));
+  }
+
+  @Test
+  public void shouldBeCompact() throws Exception {
+    File file = temp.newFile("issues.bin");
+    RemoteIssue[] issues = new RemoteIssue[100000];
+    for (int i = 0; i < issues.length; i++) {
+      issues[i] = issue("SONAR-" + i, String.valueOf(1 + i % 5), String.valueOf(1 + i % 6), "1");
+    }
+
+    IssueSnapshotWriter.write(file, "jql:project = SONAR", priorities(), issues, 0L);
+    IssueSnapshot snapshot = IssueSnapshot.open(file);
+
+    // 3 bytes of record, 4 bytes of offset and the key itself
+    assertThat(file.length(), lessThan(100000L * (3 + 4 + 12)));
+    assertThat(snapshot.size(), is(100000));
+    assertThat(snapshot.getKey(99999), is("SONAR-99999"));
+    assertThat(snapshot.countByPriority().get("1"), is(20000));
+  }
+
+  @Test
+  public void shouldRejectOtherFiles() throws Exception {
+    File file = temp.newFile("other.bin");
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.write("<xml/>".getBytes("UTF-8"));
+    raf.close();
+
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Not an issue snapshot");
+    IssueSnapshot.open(file);
+  }
+
+  @Test
+  public void shouldRejectTruncatedFiles() throws Exception {
+    File file = temp.newFile("issues.bin");
+    IssueSnapshotWriter.write(file, "10010", priorities(), new RemoteIssue[] {issue("TEST-1", "1", "1", "3")}, 0L);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.setLength(raf.length() - 2);
+    raf.close();
+
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Truncated issue snapshot");
+    IssueSnapshot.open(file);
+  }
+
+  @Test
+  public void shouldRejectTooManyDistinctIds() throws Exception {
+    RemoteIssue[] issues = new RemoteIssue[300];
+    for (int i = 0; i < issues.length; i++) {
+      issues[i] = issue("TEST-" + i, "1", String.valueOf(i), "1");
+    }
+
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Too many distinct status IDs");
+    IssueSnapshotWriter.encode("10010", priorities(), issues, 0L);
+  }
+
+  private static RemotePriority[] priorities() {
+    String[] names = {"Blocker", "Critical", "Major", "Minor", "Trivial"};
+    RemotePriority[] priorities = new RemotePriority[names.length];
+    for (int i = 0; i < names.length; i++) {
+      priorities[i] = new RemotePriority();
+      priorities[i].setId(String.valueOf(i + 1));
+      priorities[i].setName(names[i]);
+    }
+    return priorities;
+  }
+
+  private static RemoteIssue issue(String key, String priority, String status, String type) {
+    RemoteIssue issue = new RemoteIssue();
+    issue.setKey(key);
+    issue.setPriority(priority);
+    issue.setStatus(status);
+    issue.setType(type);
+    return issue;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.snapshot;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComponent;
+import com.atlassian.jira.rpc.soap.client.RemoteFilter;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TrackerRecordingTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void shouldReadWhatWasWritten() throws Exception {
+    File file = new File(temp.getRoot(), "recordings/jira.rec");
+    TrackerRecording recording = new TrackerRecording();
+    RemotePriority priority = new RemotePriority();
+    priority.setId("3");
+    priority.setName("Major");
+    recording.setPriorities(new RemotePriority[] {priority});
+    RemoteFilter filter = new RemoteFilter();
+    filter.setId("10010");
+    filter.setName("SONAR-current-iteration");
+    recording.setFavouriteFilters(new RemoteFilter[] {filter});
+    RemoteIssue issue = new RemoteIssue();
+    issue.setKey("ÉTÉ-1");
+    issue.setPriority("3");
+    issue.setSummary("Wrong result in pkg/util.py");
+    issue.setComponents(new RemoteComponent[] {new RemoteComponent("1", "core")});
+    recording.setIssues(TrackerRecording.filterQuery("10010"), new RemoteIssue[] {issue, new RemoteIssue()});
+
+    recording.write(file, 1234L);
+    TrackerRecording read = TrackerRecording.read(file);
+
+    assertThat(read.getCreatedAt(), is(1234L));
+    assertThat(read.getPriorities()[0].getName(), is("Major"));
+    assertThat(read.getFavouriteFilters()[0].getName(), is("SONAR-current-iteration"));
+    assertThat(read.getFavouriteFilters()[0].getAuthor(), nullValue());
+    assertThat(read.getSavedFilters().length, is(0));
+    RemoteIssue[] issues = read.getIssues(TrackerRecording.filterQuery("10010"));
+    assertThat(issues.length, is(2));
+    assertThat(issues[0].getKey(), is("ÉTÉ-1"));
+    assertThat(issues[0].getSummary(), is("Wrong result in pkg/util.py"));
+    assertThat(issues[0].getDescription(), nullValue());
+    assertThat(issues[0].getComponents()[0].getName(), is("core"));
+    assertThat(issues[1].getKey(), nullValue());
+    assertThat(read.getIssues(TrackerRecording.jqlQuery("project = TEST")), nullValue());
+  }
+
+  @Test
+  public void shouldRecordPagesInOrder() {
+    TrackerRecording recording = new TrackerRecording();
+    String query = TrackerRecording.filterQuery("10010");
+
+    recording.addIssues(query, 0, issues("TEST-1", "TEST-2"));
+    recording.addIssues(query, 2, issues("TEST-3"));
+    assertThat(recording.getIssues(query).length, is(3));
+
+    recording.addIssues(query, 0, issues("TEST-4"));
+    assertThat(recording.getIssues(query)[0].getKey(), is("TEST-4"));
+
+    recording.addIssues(query, 5, issues("TEST-5"));
+    assertThat(recording.getIssues(query), nullValue());
+  }
+
+  @Test
+  public void shouldReplaceQueriesWhenMerging() {
+    TrackerRecording recording = new TrackerRecording();
+    recording.setIssues(TrackerRecording.filterQuery("1"), issues("TEST-1"));
+    recording.setIssues(TrackerRecording.filterQuery("2"), issues("TEST-2"));
+    TrackerRecording newer = new TrackerRecording();
+    newer.setIssues(TrackerRecording.filterQuery("2"), issues("TEST-3", "TEST-4"));
+
+    recording.putAll(newer);
+
+    assertThat(recording.getIssues(TrackerRecording.filterQuery("1")).length, is(1));
+    assertThat(recording.getIssues(TrackerRecording.filterQuery("2")).length, is(2));
+  }
+
+  @Test
+  public void shouldRejectOtherFiles() throws Exception {
+    File file = temp.newFile("other.rec");
+    FileOutputStream out = new FileOutputStream(file);
+    out.write("TTSN-not-a-recording".getBytes("UTF-8"));
+    out.close();
+
+    thrown.expect(IOException.class);
+    TrackerRecording.read(file);
+  }
+
+  private static RemoteIssue[] issues(String... keys) {
+    RemoteIssue[] issues = new RemoteIssue[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      issues[i] = new RemoteIssue();
+      issues[i].setKey(keys[i]);
+    }
+    return issues;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.stats;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void shouldBeEmptyAtFirst() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertThat(histogram.getCount(), is(0L));
+    assertThat(histogram.getMean(), is(0L));
+    assertThat(histogram.getPercentile(99.0), is(0L));
+  }
+
+  @Test
+  public void shouldKeepSmallValuesExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10; i++) {
+      histogram.record(i);
+    }
+
+    assertThat(histogram.getPercentile(50.0), is(5L));
+    assertThat(histogram.getPercentile(90.0), is(9L));
+    assertThat(histogram.getPercentile(100.0), is(10L));
+    assertThat(histogram.getMax(), is(10L));
+  }
+
+  @Test
+  public void shouldBoundTheErrorOfLargeValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10000; i++) {
+      histogram.record(i);
+    }
+
+    assertWithin(histogram.getPercentile(50.0), 5000);
+    assertWithin(histogram.getPercentile(99.0), 9900);
+    assertThat(histogram.getPercentile(100.0), is(10000L));
+    assertThat(histogram.getMean(), is(5000L));
+  }
+
+  @Test
+  public void shouldMapEachValueToTheBucketThatHoldsIt() {
+    for (long value : new long[] {0, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+      int bucket = LatencyHistogram.bucketOf(value);
+      assertThat(value <= LatencyHistogram.highestValueOf(bucket), is(true));
+      assertThat(bucket == 0 || value > LatencyHistogram.highestValueOf(bucket - 1), is(true));
+    }
+  }
+
+  private static void assertWithin(long actual, long expected) {
+    assertThat(actual + " is not within 12.5% of " + expected, Math.abs(actual - expected) <= expected / 8, is(true));
+  }
+}
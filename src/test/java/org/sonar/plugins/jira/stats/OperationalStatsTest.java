@@ -0,0 +1,86 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.stats;
+
+import com.atlassian.jira.rpc.soap.client.RemoteAuthenticationException;
+import org.junit.After;
+import org.junit.Test;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class OperationalStatsTest {
+
+  private final RemoteCallExecutor executor = new RemoteCallExecutor(2);
+
+  @After
+  public void stop() {
+    executor.stop();
+  }
+
+  @Test
+  public void shouldCountLinksAndFailures() {
+    OperationalStats stats = new OperationalStats();
+    stats.recordLink(true);
+    stats.recordLink(true);
+    stats.recordLink(false);
+    stats.recordFailure(new RemoteAuthenticationException());
+    stats.recordFailure(new RemoteAuthenticationException());
+    stats.recordFailure(new RemoteException());
+
+    assertThat(stats.getLinksCreated(), is(2L));
+    assertThat(stats.getLinksJoined(), is(1L));
+    assertThat(stats.getFailures().get("RemoteAuthenticationException"), is(2L));
+    assertThat(stats.getFailures().get("RemoteException"), is(1L));
+  }
+
+  @Test
+  public void shouldReadTheOccupancyOfTheRemoteCalls() throws Exception {
+    OperationalStats stats = new OperationalStats(null, executor);
+    final CountDownLatch started = new CountDownLatch(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    Callable<Void> blocked = new Callable<Void>() {
+      public Void call() throws Exception {
+        started.countDown();
+        release.await();
+        return null;
+      }
+    };
+    Future<Void> first = executor.submit("http://my.jira.com", blocked);
+    Future<Void> second = executor.submit("http://my.jira.com", blocked);
+    started.await();
+
+    assertThat(stats.getServers().size(), is(1));
+    assertThat(stats.getCallsInFlight("http://my.jira.com"), is(2));
+    assertThat(stats.getCallsInFlight("http://other.jira.com"), is(0));
+    assertThat(stats.getMaxCallsPerServer(), is(2));
+
+    release.countDown();
+    first.get();
+    second.get();
+    assertThat(stats.getCallsInFlight("http://my.jira.com"), is(0));
+  }
+}
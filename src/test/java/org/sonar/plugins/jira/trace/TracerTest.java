@@ -0,0 +1,138 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.trace;
+
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class TracerTest {
+
+  @Test
+  public void shouldRecordAPhasePerStepAndOneForTheFlow() {
+    Tracer tracer = new Tracer(1, 16);
+
+    Trace trace = tracer.start("link");
+    trace.phase("login");
+    Tracer.current().phase("remoteCall");
+    trace.finish();
+
+    List<Span> spans = tracer.getSpans();
+    assertThat(spans.size(), is(3));
+    assertThat(spans.get(0).getName(), is("login"));
+    assertThat(spans.get(1).getName(), is("remoteCall"));
+    assertThat(spans.get(2).getName(), is("link"));
+    assertThat(spans.get(2).getFlow(), is("link"));
+    assertThat(spans.get(0).getTraceId(), is(trace.getId()));
+    assertThat(spans.get(2).getDurationMicros() >= spans.get(1).getDurationMicros(), is(true));
+  }
+
+  @Test
+  public void shouldTraceOneFlowOutOfTheSampling() {
+    Tracer tracer = new Tracer(3, 16);
+
+    for (int i = 0; i < 9; i++) {
+      tracer.start("link").finish();
+    }
+
+    assertThat(tracer.getSpans().size(), is(3));
+  }
+
+  @Test
+  public void shouldTraceFlowsStartedAlwaysUnlessDisabled() {
+    Tracer tracer = new Tracer(1000, 16);
+    tracer.start("analysis", true).finish();
+    assertThat(tracer.getSpans().size(), is(1));
+
+    Tracer disabled = new Tracer();
+    disabled.start("analysis", true).finish();
+    assertThat(disabled.getSpans().size(), is(0));
+  }
+
+  @Test
+  public void shouldNotTraceOutsideOfAFlow() {
+    Tracer tracer = new Tracer(1, 16);
+    Trace trace = tracer.start("link");
+    trace.finish();
+
+    Tracer.current().phase("orphan");
+    Tracer.current().finish();
+
+    assertThat(Tracer.current().isSampled(), is(false));
+    assertThat(tracer.getSpans().size(), is(1));
+  }
+
+  @Test
+  public void shouldRestoreTheEnclosingFlow() {
+    Tracer tracer = new Tracer(1, 16);
+    Trace outer = tracer.start("analysis");
+    Trace inner = tracer.start("link");
+    assertThat(Tracer.current(), is(inner));
+
+    inner.finish();
+
+    assertThat(Tracer.current(), is(outer));
+    outer.finish();
+  }
+
+  @Test
+  public void shouldKeepTheLastSpansOnly() {
+    Tracer tracer = new Tracer(1, 4);
+    for (int i = 0; i < 10; i++) {
+      Trace trace = tracer.start("flow" + i);
+      trace.finish();
+    }
+
+    List<Span> spans = tracer.getSpans();
+    assertThat(spans.size(), is(4));
+    assertThat(spans.get(0).getFlow(), is("flow6"));
+    assertThat(spans.get(3).getFlow(), is("flow9"));
+  }
+
+  @Test
+  public void shouldDumpTheSpansAsJson() {
+    Tracer tracer = new Tracer(1, 16);
+    Trace trace = tracer.start("link");
+    trace.phase("login");
+    trace.finish();
+
+    String json = tracer.toJson();
+
+    assertThat(json, startsWith("[{\"trace\":1,\"flow\":\"link\",\"name\":\"login\",\"start\":"));
+    assertThat(json.split("\"name\"").length, is(3));
+  }
+
+  @Test
+  public void shouldReadTheSamplingFromTheSettings() {
+    Settings settings = new Settings().setProperty(TestTrackConstants.TRACE_SAMPLING_PROPERTY, "0");
+
+    assertThat(new Tracer(settings).start("link", true).isSampled(), is(false));
+
+    Trace trace = new Tracer(new Settings()).start("link", true);
+    assertThat(trace.isSampled(), is(true));
+    trace.finish();
+  }
+}
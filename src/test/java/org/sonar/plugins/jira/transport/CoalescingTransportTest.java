@@ -0,0 +1,137 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.plugins.testtrack.remote.SingleFlight;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CoalescingTransportTest {
+
+  private TrackerTransport delegate;
+  private SingleFlight<String, Object> reads;
+  private ExecutorService callers;
+  private CountDownLatch release;
+
+  @Before
+  public void init() throws Exception {
+    delegate = mock(TrackerTransport.class);
+    when(delegate.getEndpoint()).thenReturn("http://my.jira.com/rpc/soap/jirasoapservice-v2");
+    when(delegate.login("foo", "bar")).thenReturn("token1", "token2");
+    when(delegate.login("other", "bar")).thenReturn("token3");
+    release = new CountDownLatch(1);
+    when(delegate.getPriorities(anyString())).thenAnswer(new Answer<RemotePriority[]>() {
+      public RemotePriority[] answer(InvocationOnMock invocation) throws Throwable {
+        release.await(10, TimeUnit.SECONDS);
+        return new RemotePriority[] {new RemotePriority()};
+      }
+    });
+    reads = new SingleFlight<String, Object>();
+    callers = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void stop() {
+    callers.shutdownNow();
+  }
+
+  @Test
+  public void shouldShareConcurrentReadsOfSameUser() throws Exception {
+    CoalescingTransport first = new CoalescingTransport(delegate, reads);
+    CoalescingTransport second = new CoalescingTransport(delegate, reads);
+    String token1 = first.login("foo", "bar");
+    String token2 = second.login("foo", "bar");
+
+    Future<RemotePriority[]> firstResult = callers.submit(getPriorities(first, token1));
+    while (reads.getExecutedCount() < 1) {
+      Thread.sleep(1);
+    }
+    Future<RemotePriority[]> secondResult = callers.submit(getPriorities(second, token2));
+    while (reads.getSharedCount() < 1) {
+      Thread.sleep(1);
+    }
+    release.countDown();
+
+    assertThat(firstResult.get().length, is(1));
+    assertThat(secondResult.get().length, is(1));
+    assertThat(secondResult.get(), not(sameInstance(firstResult.get())));
+    assertThat(secondResult.get()[0], sameInstance(firstResult.get()[0]));
+    verify(delegate, times(1)).getPriorities(anyString());
+  }
+
+  @Test
+  public void shouldNotShareReadsOfDifferentUsers() throws Exception {
+    release.countDown();
+    CoalescingTransport first = new CoalescingTransport(delegate, reads);
+    CoalescingTransport second = new CoalescingTransport(delegate, reads);
+    String token1 = first.login("foo", "bar");
+    String token3 = second.login("other", "bar");
+
+    Future<RemotePriority[]> firstResult = callers.submit(getPriorities(first, token1));
+    Future<RemotePriority[]> secondResult = callers.submit(getPriorities(second, token3));
+    firstResult.get();
+    secondResult.get();
+
+    assertThat(reads.getSharedCount(), is(0L));
+    verify(delegate, times(2)).getPriorities(anyString());
+  }
+
+  @Test
+  public void shouldAlwaysSendWrites() throws Exception {
+    CoalescingTransport transport = new CoalescingTransport(delegate, reads);
+    RemoteIssue issue = new RemoteIssue();
+
+    transport.createIssue("token", issue);
+    transport.createIssue("token", issue);
+
+    verify(delegate, times(2)).createIssue("token", issue);
+    assertThat(reads.getExecutedCount(), is(0L));
+  }
+
+  private static Callable<RemotePriority[]> getPriorities(final TrackerTransport transport, final String authToken) {
+    return new Callable<RemotePriority[]>() {
+      public RemotePriority[] call() throws Exception {
+        return transport.getPriorities(authToken);
+      }
+    };
+  }
+}
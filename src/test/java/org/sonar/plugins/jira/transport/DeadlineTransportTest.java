@@ -0,0 +1,118 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.plugins.testtrack.remote.Deadline;
+import org.sonar.plugins.testtrack.remote.DeadlineExceededException;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeadlineTransportTest {
+
+  private final RemoteCallExecutor executor = new RemoteCallExecutor(4);
+  private final TrackerTransport delegate = mock(TrackerTransport.class);
+
+  @Before
+  public void setUp() {
+    when(delegate.getEndpoint()).thenReturn("http://jira/rpc/soap/jirasoapservice-v2");
+  }
+
+  @After
+  public void tearDown() {
+    executor.stop();
+  }
+
+  @Test
+  public void shouldReturnResultBeforeDeadline() throws Exception {
+    RemotePriority[] priorities = new RemotePriority[] {new RemotePriority()};
+    when(delegate.getPriorities("token")).thenReturn(priorities);
+
+    DeadlineTransport transport = new DeadlineTransport(delegate, Deadline.after(10000), executor);
+
+    assertThat(transport.getPriorities("token"), is(priorities));
+  }
+
+  @Test
+  public void shouldCancelAndInterruptCallStillRunningAtDeadline() throws Exception {
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    when(delegate.getPriorities("token")).thenAnswer(new Answer<RemotePriority[]>() {
+      public RemotePriority[] answer(InvocationOnMock invocation) {
+        try {
+          Thread.sleep(60000);
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+        }
+        return null;
+      }
+    });
+    DeadlineTransport transport = new DeadlineTransport(delegate, Deadline.after(100), executor);
+
+    long start = System.currentTimeMillis();
+    try {
+      transport.getPriorities("token");
+      fail();
+    } catch (DeadlineExceededException e) {
+      assertThat(e.getMessage(), is("Time budget exhausted before the end of the JIRA call getPriorities"));
+    }
+    assertThat(System.currentTimeMillis() - start < 5000, is(true));
+    assertThat(interrupted.await(5, TimeUnit.SECONDS), is(true));
+  }
+
+  @Test
+  public void shouldNotCallServerOnceDeadlinePassed() throws Exception {
+    DeadlineTransport transport = new DeadlineTransport(delegate, Deadline.after(1), executor);
+    Thread.sleep(20);
+
+    try {
+      transport.getSavedFilters("token");
+      fail();
+    } catch (DeadlineExceededException e) {
+      // expected
+    }
+    verify(delegate, never()).getSavedFilters(anyString());
+  }
+
+  @Test
+  public void shouldLogOutOnceDeadlinePassed() throws Exception {
+    DeadlineTransport transport = new DeadlineTransport(delegate, Deadline.after(1), executor);
+    Thread.sleep(20);
+
+    transport.logout("token");
+
+    verify(delegate).logout("token");
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class JsonReaderTest {
+
+  @Test
+  public void shouldReadNestedDocument() throws Exception {
+    JsonReader reader = reader("{\"id\" : \"10\", \"total\":42, \"ok\":true, \"none\":null, \"list\":[1, \"two\"]}");
+
+    reader.beginObject();
+    assertThat(reader.nextName(), is("id"));
+    assertThat(reader.nextString(), is("10"));
+    assertThat(reader.nextName(), is("total"));
+    assertThat(reader.nextInt(), is(42));
+    assertThat(reader.nextName(), is("ok"));
+    assertThat(reader.nextString(), is("true"));
+    assertThat(reader.nextName(), is("none"));
+    assertThat(reader.peek(), is(JsonReader.Token.NULL));
+    assertThat(reader.nextString(), nullValue());
+    assertThat(reader.nextName(), is("list"));
+    reader.beginArray();
+    assertThat(reader.nextString(), is("1"));
+    assertThat(reader.nextString(), is("two"));
+    assertThat(reader.hasNext(), is(false));
+    reader.endArray();
+    assertThat(reader.hasNext(), is(false));
+    reader.endObject();
+    assertThat(reader.peek(), is(JsonReader.Token.END_DOCUMENT));
+  }
+
+  @Test
+  public void shouldUnescapeStrings() throws Exception {
+    JsonReader reader = reader("[\"a\\\"b\\\\c\\nd\\u00e9\\/\"]");
+
+    reader.beginArray();
+    assertThat(reader.nextString(), is("a\"b\\c\nd\u00e9/"));
+  }
+
+  @Test
+  public void shouldSkipNestedValues() throws Exception {
+    JsonReader reader = reader("{\"skipped\":{\"a\":[{\"b\":1},[]],\"c\":\"}\"},\"kept\":\"yes\"}");
+
+    reader.beginObject();
+    assertThat(reader.nextName(), is("skipped"));
+    reader.skipValue();
+    assertThat(reader.nextName(), is("kept"));
+    assertThat(reader.nextString(), is("yes"));
+    reader.endObject();
+  }
+
+  @Test
+  public void shouldReadEmptyContainers() throws Exception {
+    JsonReader reader = reader("[{},[]]");
+
+    reader.beginArray();
+    reader.beginObject();
+    assertThat(reader.hasNext(), is(false));
+    reader.endObject();
+    reader.beginArray();
+    reader.endArray();
+    reader.endArray();
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldFailOnTruncatedDocument() throws Exception {
+    JsonReader reader = reader("{\"id\":\"10");
+    reader.beginObject();
+    reader.nextName();
+    reader.nextString();
+  }
+
+  @Test
+  public void shouldWriteWhatIsRead() throws Exception {
+    StringWriter out = new StringWriter();
+    new JsonWriter(out).beginObject().reference("project", "key", "TEST").name("summary").value("a \"quoted\"\nline")
+        .name("assignee").value(null).endObject().flush();
+
+    assertThat(out.toString(), is("{\"project\":{\"key\":\"TEST\"},\"summary\":\"a \\\"quoted\\\"\\nline\",\"assignee\":null}"));
+
+    JsonReader reader = reader(out.toString());
+    reader.beginObject();
+    reader.nextName();
+    reader.skipValue();
+    reader.nextName();
+    assertThat(reader.nextString(), is("a \"quoted\"\nline"));
+  }
+
+  private static JsonReader reader(String json) {
+    return new JsonReader(new StringReader(json));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.RemoteFilter;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.rmi.RemoteException;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReplayTransportTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void shouldReplayWhatWasRecorded() throws Exception {
+    File file = new File(temp.getRoot(), "jira.rec");
+    TrackerTransport jira = mock(TrackerTransport.class);
+    when(jira.login("sonar", "secret")).thenReturn("token");
+    when(jira.getPriorities("token")).thenReturn(new RemotePriority[] {new RemotePriority()});
+    RemoteFilter filter = new RemoteFilter();
+    filter.setId("10010");
+    when(jira.getFavouriteFilters("token")).thenReturn(new RemoteFilter[] {filter});
+    when(jira.getIssuesFromFilterWithLimit("token", "10010", 0, 2)).thenReturn(issues("TEST-1", "TEST-2"));
+    when(jira.getIssuesFromFilterWithLimit("token", "10010", 2, 2)).thenReturn(issues("TEST-3"));
+    when(jira.getIssuesFromJqlSearch("token", "project = TEST", 100)).thenReturn(issues("TEST-4"));
+
+    RecordingTransport recording = new RecordingTransport(jira, file);
+    String token = recording.login("sonar", "secret");
+    recording.getPriorities(token);
+    recording.getFavouriteFilters(token);
+    recording.getIssuesFromFilterWithLimit(token, "10010", 0, 2);
+    recording.getIssuesFromFilterWithLimit(token, "10010", 2, 2);
+    recording.getIssuesFromJqlSearch(token, "project = TEST", 100);
+    recording.logout(token);
+
+    ReplayTransport replay = ReplayTransport.open(file);
+    String replayToken = replay.login(null, null);
+    assertThat(replay.getPriorities(replayToken).length, is(1));
+    assertThat(replay.getFavouriteFilters(replayToken)[0].getId(), is("10010"));
+    assertThat(replay.getIssuesFromFilter(replayToken, "10010").length, is(3));
+    assertThat(replay.getIssuesFromFilterWithLimit(replayToken, "10010", 0, 2).length, is(2));
+    assertThat(replay.getIssuesFromFilterWithLimit(replayToken, "10010", 2, 2)[0].getKey(), is("TEST-3"));
+    assertThat(replay.getIssuesFromFilterWithLimit(replayToken, "10010", 4, 2).length, is(0));
+    assertThat(replay.getIssuesFromJqlSearch(replayToken, "project = TEST", 100)[0].getKey(), is("TEST-4"));
+  }
+
+  @Test
+  public void shouldAddToTheExistingRecording() throws Exception {
+    File file = new File(temp.getRoot(), "jira.rec");
+    TrackerTransport jira = mock(TrackerTransport.class);
+    when(jira.getIssuesFromFilter("token", "1")).thenReturn(issues("TEST-1"));
+    when(jira.getIssuesFromFilter("token", "2")).thenReturn(issues("TEST-2"));
+
+    RecordingTransport first = new RecordingTransport(jira, file);
+    first.getIssuesFromFilter("token", "1");
+    first.logout("token");
+    RecordingTransport second = new RecordingTransport(jira, file);
+    second.getIssuesFromFilter("token", "2");
+    second.logout("token");
+
+    ReplayTransport replay = ReplayTransport.open(file);
+    assertThat(replay.getIssuesFromFilter("replay", "1")[0].getKey(), is("TEST-1"));
+    assertThat(replay.getIssuesFromFilter("replay", "2")[0].getKey(), is("TEST-2"));
+  }
+
+  @Test
+  public void shouldFailOnQueriesNotRecorded() throws Exception {
+    ReplayTransport replay = ReplayTransport.open(emptyRecording());
+
+    thrown.expect(RemoteException.class);
+    thrown.expectMessage("No issues of the filter 10010 in the JIRA recording");
+    replay.getIssuesFromFilter("replay", "10010");
+  }
+
+  @Test
+  public void shouldNotWrite() throws Exception {
+    ReplayTransport replay = ReplayTransport.open(emptyRecording());
+
+    thrown.expect(RemoteException.class);
+    thrown.expectMessage("is read-only");
+    replay.createIssue("replay", new RemoteIssue());
+  }
+
+  @Test
+  public void shouldFailOnMissingRecording() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Unable to read the JIRA recording");
+    ReplayTransport.open(new File(temp.getRoot(), "missing.rec"));
+  }
+
+  private File emptyRecording() throws Exception {
+    File file = new File(temp.getRoot(), "empty.rec");
+    new RecordingTransport(mock(TrackerTransport.class), file).logout("token");
+    return file;
+  }
+
+  private static RemoteIssue[] issues(String... keys) {
+    RemoteIssue[] issues = new RemoteIssue[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      issues[i] = new RemoteIssue();
+      issues[i].setKey(keys[i]);
+    }
+    return issues;
+  }
+}
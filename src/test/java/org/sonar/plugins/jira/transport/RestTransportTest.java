@@ -0,0 +1,230 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.RemoteAuthenticationException;
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.atlassian.jira.rpc.soap.client.RemoteFilter;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemoteIssueType;
+import com.atlassian.jira.rpc.soap.client.RemotePermissionException;
+import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.rmi.RemoteException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RestTransportTest {
+
+  private StandInJiraServer server;
+  private RestTransport transport;
+
+  @Before
+  public void init() throws Exception {
+    server = new StandInJiraServer();
+    transport = new RestTransport(server.getUrl() + "/");
+  }
+
+  @After
+  public void stop() {
+    server.stop();
+  }
+
+  @Test
+  public void shouldLoginWithBasicAuthentication() throws Exception {
+    server.stub("GET", "/rest/api/2/myself", "{\"name\":\"foo\"}");
+
+    String token = transport.login("foo", "bar");
+
+    assertThat(token, is("Basic Zm9vOmJhcg=="));
+    assertThat(server.getLastAuthorization(), is("Basic Zm9vOmJhcg=="));
+    assertThat(transport.getEndpoint(), is(server.getUrl() + "/rest/api/2"));
+  }
+
+  @Test
+  public void shouldMapHttpErrorsToRemoteExceptions() throws Exception {
+    server.stub("GET", "/rest/api/2/myself", "HTTP 401");
+    server.stub("GET", "/rest/api/2/priority", "HTTP 403");
+    server.stub("GET", "/rest/api/2/filter/favourite", "HTTP 500 {\"errorMessages\":[\"boom\"]}");
+
+    try {
+      transport.login("foo", "wrong");
+      fail();
+    } catch (RemoteAuthenticationException e) {
+      // expected
+    }
+    try {
+      transport.getPriorities("token");
+      fail();
+    } catch (RemotePermissionException e) {
+      // expected
+    }
+    try {
+      transport.getFavouriteFilters("token");
+      fail();
+    } catch (RemoteException e) {
+      assertThat(e.getMessage(), containsString("HTTP 500 on GET /filter/favourite: {\"errorMessages\":[\"boom\"]}"));
+    }
+  }
+
+  @Test
+  public void shouldReadPrioritiesAndFilters() throws Exception {
+    server.stub("GET", "/rest/api/2/priority", StandInJiraServer.restPriorities());
+    server.stub("GET", "/rest/api/2/filter/favourite",
+        "[{\"id\":\"10010\",\"name\":\"SONAR\",\"owner\":{\"name\":\"foo\",\"active\":true},\"jql\":\"project = SONAR\"}]");
+
+    RemotePriority[] priorities = transport.getPriorities("token");
+    RemoteFilter[] filters = transport.getSavedFilters("token");
+
+    assertThat(priorities.length, is(5));
+    assertThat(priorities[2].getId(), is("3"));
+    assertThat(priorities[2].getName(), is("P3"));
+    assertThat(filters.length, is(1));
+    assertThat(filters[0].getId(), is("10010"));
+    assertThat(filters[0].getName(), is("SONAR"));
+    assertThat(filters[0].getAuthor(), is("foo"));
+  }
+
+  @Test
+  public void shouldSearchPageByPage() throws Exception {
+    final int total = RestTransport.SEARCH_PAGE_SIZE + 20;
+    server.stub("GET", "/rest/api/2/search", new StandInJiraServer.Responder() {
+      public String respond(String query, String body) {
+        Matcher matcher = Pattern.compile("startAt=(\\d+)&maxResults=(\\d+)").matcher(query);
+        matcher.find();
+        int startAt = Integer.parseInt(matcher.group(1));
+        int count = Math.min(Integer.parseInt(matcher.group(2)), total - startAt);
+        return StandInJiraServer.restIssues(startAt, count, total);
+      }
+    });
+
+    RemoteIssue[] issues = transport.getIssuesFromFilter("token", "10010");
+
+    assertThat(issues.length, is(total));
+    assertThat(server.getRequests().size(), is(2));
+    RemoteIssue issue = issues[total - 1];
+    assertThat(issue.getKey(), is("TEST-" + (total - 1)));
+    assertThat(issue.getPriority(), is(String.valueOf(1 + (total - 1) % 5)));
+    assertThat(issue.getType(), is("3"));
+    assertThat(issue.getStatus(), is("1"));
+    assertThat(issue.getProject(), is("TEST"));
+    assertThat(issue.getAssignee(), nullValue());
+    assertThat(issue.getComponents()[0].getName(), is("core"));
+  }
+
+  @Test
+  public void shouldReadOnePageOfFilter() throws Exception {
+    server.stub("GET", "/rest/api/2/search", new StandInJiraServer.Responder() {
+      public String respond(String query, String body) {
+        Matcher matcher = Pattern.compile("startAt=(\\d+)&maxResults=(\\d+)").matcher(query);
+        matcher.find();
+        return StandInJiraServer.restIssues(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), 1000);
+      }
+    });
+
+    RemoteIssue[] issues = transport.getIssuesFromFilterWithLimit("token", "10010", 500, 20);
+
+    assertThat(issues.length, is(20));
+    assertThat(issues[0].getKey(), is("TEST-500"));
+    assertThat(server.getRequests().size(), is(1));
+  }
+
+  @Test
+  public void shouldUploadAttachmentsAsMultipartForm() throws Exception {
+    final StringBuilder received = new StringBuilder();
+    server.stub("POST", "/rest/api/2/issue/TEST-1/attachments", new StandInJiraServer.Responder() {
+      public String respond(String query, String body) {
+        received.append(body);
+        return "[]";
+      }
+    });
+
+    transport.addAttachmentsToIssue("token", "TEST-1", new String[] {"Foo.java-12.txt"}, new String[] {"aGVsbG8="});
+
+    assertThat(received.toString(), containsString("filename=\"Foo.java-12.txt\""));
+    assertThat(received.toString(), containsString("\r\n\r\nhello\r\n"));
+  }
+
+  @Test
+  public void shouldStopSearchAtMaxResults() throws Exception {
+    server.stub("GET", "/rest/api/2/search", StandInJiraServer.restIssues(0, 3, 100));
+
+    RemoteIssue[] issues = transport.getIssuesFromJqlSearch("token", "project = TEST", 3);
+
+    assertThat(issues.length, is(3));
+    assertThat(server.getRequests().size(), is(1));
+  }
+
+  @Test
+  public void shouldReadIssueTypesOfProject() throws Exception {
+    server.stub("GET", "/rest/api/2/project/TEST", "{\"id\":\"10000\",\"key\":\"TEST\",\"name\":\"Test\","
+      + "\"issueTypes\":[{\"id\":\"1\",\"name\":\"Bug\",\"subtask\":false},{\"id\":\"5\",\"name\":\"Sub-task\",\"subtask\":true}]}");
+
+    assertThat(transport.getProjectByKey("token", "TEST").getId(), is("10000"));
+    RemoteIssueType[] types = transport.getIssueTypesForProject("token", "TEST");
+
+    assertThat(types.length, is(2));
+    assertThat(types[0].getName(), is("Bug"));
+    assertThat(types[1].isSubTask(), is(true));
+  }
+
+  @Test
+  public void shouldCreateIssue() throws Exception {
+    server.stub("POST", "/rest/api/2/issue", "{\"id\":\"10001\",\"key\":\"TEST-1\",\"self\":\"http://jira/rest/api/2/issue/10001\"}");
+    RemoteIssue issue = new RemoteIssue();
+    issue.setProject("TEST");
+    issue.setType("3");
+    issue.setPriority("4");
+    issue.setSummary("Sonar Review #456");
+    issue.setDescription("Violation detail:\n{quote}\"x\"{quote}");
+
+    RemoteIssue created = transport.createIssue("token", issue);
+
+    assertThat(created.getKey(), is("TEST-1"));
+    assertThat(created.getId(), is("10001"));
+    assertThat(created.getSummary(), is("Sonar Review #456"));
+    assertThat(server.getLastBody(), is("{\"fields\":{\"project\":{\"key\":\"TEST\"},\"issuetype\":{\"id\":\"3\"},\"priority\":{\"id\":\"4\"},"
+      + "\"summary\":\"Sonar Review #456\",\"description\":\"Violation detail:\\n{quote}\\\"x\\\"{quote}\"}}"));
+  }
+
+  @Test
+  public void shouldUpdateAndCommentIssue() throws Exception {
+    server.stub("PUT", "/rest/api/2/issue/TEST-1", "");
+    server.stub("POST", "/rest/api/2/issue/TEST-1/comment", "{\"id\":\"1\"}");
+
+    transport.updateIssue("token", "TEST-1", new RemoteFieldValue[] {new RemoteFieldValue("summary", new String[] {"New"})});
+    assertThat(server.getLastBody(), is("{\"fields\":{\"summary\":\"New\"}}"));
+
+    RemoteComment comment = new RemoteComment();
+    comment.setBody("Closed in Sonar");
+    transport.addComment("token", "TEST-1", comment);
+    assertThat(server.getLastBody(), is("{\"body\":\"Closed in Sonar\"}"));
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import org.sonar.plugins.testtrack.soap.TestTrackSoapSession;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * Compares the heap allocated by the calling thread to create an issue and comment it through Axis and through
+ * {@link SoapEnvelopeEncoder}, against a {@link StandInJiraServer}, and for the encoding alone. Not a unit test, run it by hand:
+ * <pre>java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.sonar.plugins.testtrack.transport.SoapEncoderBenchmark [iterations]</pre>
+ */
+public final class SoapEncoderBenchmark {
+
+  private SoapEncoderBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+    // without it the JDK server waits on the delayed acknowledgements of the keep-alive connections, unlike a real JIRA
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    StandInJiraServer server = new StandInJiraServer();
+    try {
+      server.stubSoap("createIssue", StandInJiraServer.soapIssue("createIssue", "TEST-1"));
+      server.stubSoap("addComment", StandInJiraServer.soapEmpty("addComment"));
+      URL soapUrl = new URL(server.getUrl() + StandInJiraServer.SOAP_PATH);
+      SoapTransport axis = new SoapTransport(new TestTrackSoapSession(soapUrl).getJiraSoapService(), soapUrl.toExternalForm());
+      SoapTransport direct = SoapTransport.create(soapUrl);
+
+      System.out.println("createIssue + addComment, " + iterations + " iterations");
+      System.out.println(String.format("%-8s %14s %18s", "", "median (us)", "allocated (bytes)"));
+      print("Axis", axis, iterations);
+      print("Direct", direct, iterations);
+
+      // the encoding alone, without the HTTP client and the response parsing
+      encode(1000);
+      long before = allocatedBytes();
+      encode(iterations);
+      long allocated = allocatedBytes() - before;
+      System.out.println(String.format("%-8s %14s %18s", "Encoder", "", before < 0 ? "n/a" : String.valueOf(allocated / iterations)));
+    } finally {
+      server.stop();
+    }
+  }
+
+  private static void print(String name, SoapTransport transport, int iterations) throws Exception {
+    // warm up class loading and JIT
+    run(transport, 200);
+    long[] durations = new long[iterations];
+    long before = allocatedBytes();
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      run(transport, 1);
+      durations[i] = System.nanoTime() - start;
+    }
+    long allocated = allocatedBytes() - before;
+    Arrays.sort(durations);
+    System.out.println(String.format("%-8s %14.1f %18s", name, durations[iterations / 2] / 1000.0,
+        before < 0 ? "n/a" : String.valueOf(allocated / iterations)));
+  }
+
+  private static void run(SoapTransport transport, int iterations) throws Exception {
+    RemoteIssue issue = issue();
+    RemoteComment comment = comment();
+    for (int i = 0; i < iterations; i++) {
+      String key = transport.createIssue("token", issue).getKey();
+      transport.addComment("token", key, comment);
+    }
+  }
+
+  private static void encode(int iterations) throws Exception {
+    RemoteIssue issue = issue();
+    RemoteComment comment = comment();
+    for (int i = 0; i < iterations; i++) {
+      EnvelopeBuffer buffer = EnvelopeBuffer.acquire();
+      SoapEnvelopeEncoder.createIssue(buffer, "token", issue);
+      EnvelopeBuffer.release(buffer);
+      buffer = EnvelopeBuffer.acquire();
+      SoapEnvelopeEncoder.addComment(buffer, "token", "TEST-1", comment);
+      EnvelopeBuffer.release(buffer);
+    }
+  }
+
+  private static RemoteIssue issue() {
+    RemoteIssue issue = new RemoteIssue();
+    issue.setProject("TEST");
+    issue.setType("3");
+    issue.setPriority("3");
+    issue.setSummary("Sonar Review #1207 - Avoid too complex methods");
+    issue.setDescription("Violation detail:\n{quote}\nThe Cyclomatic Complexity of this method \"parse\" is 14 which is greater than 10 authorized.\n{quote}\n"
+      + "\nMessage from reviewer:\n{quote}\nPlease split <parse> & friends\n{quote}\n\n\nCheck it on Sonar: http://localhost:9000/project_reviews/view/1207");
+    issue.setAssignee("sonar");
+    return issue;
+  }
+
+  private static RemoteComment comment() {
+    RemoteComment comment = new RemoteComment();
+    comment.setBody("Comment from Sonar: the violation is still there.");
+    return comment;
+  }
+
+  /**
+   * Bytes allocated so far by the current thread, or -1 if the JVM does not tell.
+   */
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    try {
+      // through the public interface, the implementation class is not accessible on recent JVMs
+      Method method = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+      return (Long) method.invoke(threads, Thread.currentThread().getId());
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.atlassian.jira.rpc.soap.client.JiraSoapService;
+import com.atlassian.jira.rpc.soap.client.RemoteAuthenticationException;
+import com.atlassian.jira.rpc.soap.client.RemoteComment;
+import com.atlassian.jira.rpc.soap.client.RemoteFieldValue;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import com.atlassian.jira.rpc.soap.client.RemoteVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.rmi.RemoteException;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class SoapTransportTest {
+
+  private StandInJiraServer server;
+  private SoapTransport transport;
+
+  @Before
+  public void init() throws Exception {
+    server = new StandInJiraServer();
+    transport = SoapTransport.create(new URL(server.getUrl() + StandInJiraServer.SOAP_PATH));
+  }
+
+  @After
+  public void stop() {
+    server.stop();
+  }
+
+  @Test
+  public void shouldCreateIssueWithoutAxis() throws Exception {
+    server.stubSoap("createIssue", StandInJiraServer.soapIssue("createIssue", "TEST-7"));
+    RemoteIssue issue = new RemoteIssue();
+    issue.setProject("TEST");
+    issue.setType("3");
+    issue.setPriority("2");
+    issue.setSummary("Sonar Review #1 - <Avoid> & co");
+    issue.setDescription("line 1\r\nligne 2 \u00e9t\u00e9 \u2603 \ud83d\ude00");
+
+    RemoteIssue created = transport.createIssue("token", issue);
+
+    assertThat(created.getKey(), is("TEST-7"));
+    assertThat(created.getId(), is("10100"));
+    assertThat(created.getAssignee(), nullValue());
+    assertThat(created.getSummary(), is("Sonar Review #1 - <Avoid> & co"));
+    assertThat(server.getRequests().toString(), is("[SOAP createIssue]"));
+    Document request = parse(server.getLastBody());
+    assertThat(text(request, "in0"), is("token"));
+    assertThat(text(request, "summary"), is("Sonar Review #1 - <Avoid> & co"));
+    assertThat(text(request, "description"), is("line 1\r\nligne 2 \u00e9t\u00e9 \u2603 \ud83d\ude00"));
+    assertThat(request.getElementsByTagName("key").getLength(), is(0));
+  }
+
+  @Test
+  public void shouldMapFaults() throws Exception {
+    server.stubSoap("createIssue", StandInJiraServer.soapFault("com.atlassian.jira.rpc.exception.RemoteAuthenticationException",
+        "com.atlassian.jira.rpc.exception.RemoteAuthenticationException: Invalid token"));
+    server.stubSoap("addComment", StandInJiraServer.soapFault("ns1:fault", "java.lang.NullPointerException"));
+
+    try {
+      transport.createIssue("token", new RemoteIssue());
+      fail();
+    } catch (RemoteAuthenticationException e) {
+      assertThat(e.getFaultString(), containsString("Invalid token"));
+    }
+    try {
+      transport.addComment("token", "TEST-1", new RemoteComment());
+      fail();
+    } catch (RemoteException e) {
+      assertThat(e.getMessage(), is("java.lang.NullPointerException"));
+    }
+  }
+
+  @Test
+  public void shouldAddCommentAndUpdateIssue() throws Exception {
+    server.stubSoap("addComment", StandInJiraServer.soapEmpty("addComment"));
+    server.stubSoap("updateIssue", StandInJiraServer.soapIssue("updateIssue", "TEST-1"));
+    RemoteComment comment = new RemoteComment();
+    comment.setBody("Fixed in Sonar");
+
+    transport.addComment("token", "TEST-1", comment);
+    assertThat(text(parse(server.getLastBody()), "body"), is("Fixed in Sonar"));
+
+    RemoteIssue updated = transport.updateIssue("token", "TEST-1", new RemoteFieldValue[] {
+      new RemoteFieldValue("priority", new String[] {"1"}), new RemoteFieldValue("labels", new String[] {"a", "b"})});
+    assertThat(updated.getKey(), is("TEST-1"));
+    String body = server.getLastBody();
+    assertThat(body, containsString("soapenc:arrayType=\"ns2:RemoteFieldValue[2]\""));
+    assertThat(body, containsString("soapenc:arrayType=\"xsd:string[2]\""));
+    assertThat(parse(body).getElementsByTagName("item").getLength(), is(5));
+  }
+
+  @Test
+  public void shouldLeaveIssuesWithVersionsToAxis() throws Exception {
+    JiraSoapService service = mock(JiraSoapService.class);
+    RemoteIssue issue = new RemoteIssue();
+    issue.setFixVersions(new RemoteVersion[0]);
+
+    new SoapTransport(service, server.getUrl(), true).createIssue("token", issue);
+
+    verify(service).createIssue("token", issue);
+    assertThat(server.getRequests().isEmpty(), is(true));
+  }
+
+  @Test
+  public void shouldReuseEnvelopeBuffers() throws Exception {
+    EnvelopeBuffer buffer = EnvelopeBuffer.acquire();
+    buffer.writeText("x");
+    EnvelopeBuffer.release(buffer);
+
+    EnvelopeBuffer reused = EnvelopeBuffer.acquire();
+    assertThat(reused.size(), is(0));
+    reused.writeDecimal(1907);
+    assertThat(new String(reused.toByteArray(), "UTF-8"), is("1907"));
+    EnvelopeBuffer.release(reused);
+  }
+
+  private static Document parse(String xml) throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    return factory.newDocumentBuilder().parse(new InputSource(new ByteArrayInputStream(xml.getBytes("UTF-8"))));
+  }
+
+  private static String text(Document document, String element) {
+    return document.getElementsByTagName(element).item(0).getTextContent();
+  }
+}
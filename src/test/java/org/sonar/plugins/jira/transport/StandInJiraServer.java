@@ -0,0 +1,315 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local HTTP server answering like JIRA, for the transport tests and benchmarks. REST routes are matched on the
+ * method and path, SOAP calls on the name of the operation.
+ */
+class StandInJiraServer {
+
+  static final String SOAP_PATH = "/rpc/soap/jirasoapservice-v2";
+
+  private static final Pattern SOAP_OPERATION = Pattern.compile("<(?:\\w+:)?(\\w+) [^>]*soapenv:encodingStyle");
+
+  interface Responder {
+    String respond(String query, String body);
+  }
+
+  private final HttpServer server;
+  private final Map<String, Responder> routes = new ConcurrentHashMap<String, Responder>();
+  private final List<String> requests = new CopyOnWriteArrayList<String>();
+  private final AtomicLong bytesSent = new AtomicLong();
+  private final AtomicLong bytesReceived = new AtomicLong();
+  private volatile String lastBody;
+  private volatile String lastAuthorization;
+
+  StandInJiraServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        serve(exchange);
+      }
+    });
+    server.start();
+  }
+
+  String getUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  void stop() {
+    server.stop(0);
+  }
+
+  StandInJiraServer stub(String method, String path, final String body) {
+    return stub(method, path, new Responder() {
+      public String respond(String query, String requestBody) {
+        return body;
+      }
+    });
+  }
+
+  StandInJiraServer stub(String method, String path, Responder responder) {
+    routes.put(method + " " + path, responder);
+    return this;
+  }
+
+  StandInJiraServer stubSoap(String operation, String body) {
+    return stub("SOAP", operation, body);
+  }
+
+  List<String> getRequests() {
+    return requests;
+  }
+
+  String getLastBody() {
+    return lastBody;
+  }
+
+  String getLastAuthorization() {
+    return lastAuthorization;
+  }
+
+  long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  long getBytesReceived() {
+    return bytesReceived.get();
+  }
+
+  void resetCounters() {
+    bytesSent.set(0);
+    bytesReceived.set(0);
+    requests.clear();
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    String body = read(exchange.getRequestBody());
+    bytesReceived.addAndGet(body.length());
+    lastBody = body;
+    lastAuthorization = exchange.getRequestHeaders().getFirst("Authorization");
+
+    String path = exchange.getRequestURI().getPath();
+    String key = exchange.getRequestMethod() + " " + path;
+    if (SOAP_PATH.equals(path)) {
+      Matcher matcher = SOAP_OPERATION.matcher(body);
+      key = "SOAP " + (matcher.find() ? matcher.group(1) : "");
+    }
+    requests.add(key);
+
+    Responder responder = routes.get(key);
+    int status = 200;
+    String response;
+    if (responder == null) {
+      status = 404;
+      response = "{\"errorMessages\":[\"No route for " + key + "\"]}";
+    } else {
+      response = responder.respond(exchange.getRequestURI().getQuery(), body);
+      if (response.startsWith("HTTP ")) {
+        status = Integer.parseInt(response.substring(5, 8));
+        response = response.substring(8).trim();
+      }
+    }
+
+    byte[] bytes = response.getBytes("UTF-8");
+    exchange.getResponseHeaders().set("Content-Type", SOAP_PATH.equals(path) ? "text/xml; charset=utf-8" : "application/json;charset=UTF-8");
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(bytes);
+    out.close();
+    bytesSent.addAndGet(bytes.length);
+  }
+
+  private static String read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    in.close();
+    return out.toString("UTF-8");
+  }
+
+  // ===================== PAYLOADS =====================
+
+  static String restIssues(int startAt, int count, int total) {
+    StringBuilder json = new StringBuilder("{\"expand\":\"names,schema\",\"startAt\":").append(startAt)
+        .append(",\"maxResults\":").append(count).append(",\"total\":").append(total).append(",\"issues\":[");
+    for (int i = startAt; i < startAt + count; i++) {
+      if (i > startAt) {
+        json.append(',');
+      }
+      json.append("{\"expand\":\"editmeta,renderedFields,transitions,changelog,operations\",\"id\":\"").append(10000 + i)
+          .append("\",\"self\":\"http://jira/rest/api/2/issue/").append(10000 + i).append("\",\"key\":\"TEST-").append(i)
+          .append("\",\"fields\":{\"summary\":\"Sonar Review #").append(i).append(" - Avoid too complex methods\"")
+          .append(",\"priority\":{\"self\":\"http://jira/rest/api/2/priority/").append(priorityId(i))
+          .append("\",\"iconUrl\":\"http://jira/images/icons/priority.gif\",\"name\":\"P").append(priorityId(i))
+          .append("\",\"id\":\"").append(priorityId(i)).append("\"}")
+          .append(",\"status\":{\"self\":\"http://jira/rest/api/2/status/1\",\"name\":\"Open\",\"id\":\"1\"}")
+          .append(",\"issuetype\":{\"self\":\"http://jira/rest/api/2/issuetype/3\",\"name\":\"Task\",\"id\":\"3\",\"subtask\":false}")
+          .append(",\"assignee\":null")
+          .append(",\"project\":{\"self\":\"http://jira/rest/api/2/project/10000\",\"id\":\"10000\",\"key\":\"TEST\",\"name\":\"Test\"}")
+          .append(",\"description\":\"Violation detail:\\n{quote}\\nThe Cyclomatic Complexity of this method is 14\\n{quote}\"")
+          .append(",\"components\":[{\"self\":\"http://jira/rest/api/2/component/1\",\"id\":\"1\",\"name\":\"core\"}]}}");
+    }
+    return json.append("]}").toString();
+  }
+
+  static String restPriorities() {
+    StringBuilder json = new StringBuilder("[");
+    for (int i = 1; i <= 5; i++) {
+      if (i > 1) {
+        json.append(',');
+      }
+      json.append("{\"self\":\"http://jira/rest/api/2/priority/").append(i).append("\",\"statusColor\":\"#cc0000\",\"description\":\"Priority ")
+          .append(i).append("\",\"iconUrl\":\"http://jira/images/icons/priority.gif\",\"name\":\"P").append(i).append("\",\"id\":\"").append(i).append("\"}");
+    }
+    return json.append(']').toString();
+  }
+
+  static String soapIssues(String operation, int count) {
+    StringBuilder xml = soapEnvelopeStart(operation);
+    xml.append("<").append(operation).append("Return soapenc:arrayType=\"ns2:RemoteIssue[").append(count)
+        .append("]\" xsi:type=\"soapenc:Array\" xmlns:ns2=\"http://beans.soap.rpc.jira.atlassian.com\">");
+    for (int i = 0; i < count; i++) {
+      xml.append("<").append(operation).append("Return xsi:type=\"ns2:RemoteIssue\">")
+          .append("<id xsi:type=\"xsd:string\">").append(10000 + i).append("</id>")
+          .append("<affectsVersions soapenc:arrayType=\"ns2:RemoteVersion[0]\" xsi:type=\"soapenc:Array\"/>")
+          .append("<assignee xsi:type=\"xsd:string\" xsi:nil=\"true\"/>")
+          .append("<attachmentNames soapenc:arrayType=\"xsd:string[0]\" xsi:type=\"soapenc:Array\"/>")
+          .append("<components soapenc:arrayType=\"ns2:RemoteComponent[1]\" xsi:type=\"soapenc:Array\">")
+          .append("<components xsi:type=\"ns2:RemoteComponent\"><id xsi:type=\"xsd:string\">1</id><name xsi:type=\"xsd:string\">core</name></components>")
+          .append("</components>")
+          .append("<created xsi:type=\"xsd:dateTime\">2012-05-10T09:00:00.000Z</created>")
+          .append("<customFieldValues soapenc:arrayType=\"ns2:RemoteCustomFieldValue[0]\" xsi:type=\"soapenc:Array\"/>")
+          .append("<description xsi:type=\"xsd:string\">Violation detail:\n{quote}\nThe Cyclomatic Complexity of this method is 14\n{quote}</description>")
+          .append("<duedate xsi:type=\"xsd:dateTime\" xsi:nil=\"true\"/>")
+          .append("<environment xsi:type=\"xsd:string\" xsi:nil=\"true\"/>")
+          .append("<fixVersions soapenc:arrayType=\"ns2:RemoteVersion[0]\" xsi:type=\"soapenc:Array\"/>")
+          .append("<key xsi:type=\"xsd:string\">TEST-").append(i).append("</key>")
+          .append("<priority xsi:type=\"xsd:string\">").append(priorityId(i)).append("</priority>")
+          .append("<project xsi:type=\"xsd:string\">TEST</project>")
+          .append("<reporter xsi:type=\"xsd:string\">sonar</reporter>")
+          .append("<resolution xsi:type=\"xsd:string\" xsi:nil=\"true\"/>")
+          .append("<status xsi:type=\"xsd:string\">1</status>")
+          .append("<summary xsi:type=\"xsd:string\">Sonar Review #").append(i).append(" - Avoid too complex methods</summary>")
+          .append("<type xsi:type=\"xsd:string\">3</type>")
+          .append("<updated xsi:type=\"xsd:dateTime\">2012-05-10T09:00:00.000Z</updated>")
+          .append("<votes xsi:type=\"xsd:long\">0</votes>")
+          .append("</").append(operation).append("Return>");
+    }
+    xml.append("</").append(operation).append("Return>");
+    return soapEnvelopeEnd(xml, operation);
+  }
+
+  static String soapPriorities() {
+    StringBuilder xml = soapEnvelopeStart("getPriorities");
+    xml.append("<getPrioritiesReturn soapenc:arrayType=\"ns2:RemotePriority[5]\" xsi:type=\"soapenc:Array\" ")
+        .append("xmlns:ns2=\"http://beans.soap.rpc.jira.atlassian.com\">");
+    for (int i = 1; i <= 5; i++) {
+      xml.append("<getPrioritiesReturn xsi:type=\"ns2:RemotePriority\">")
+          .append("<id xsi:type=\"xsd:string\">").append(i).append("</id>")
+          .append("<name xsi:type=\"xsd:string\">P").append(i).append("</name>")
+          .append("<description xsi:type=\"xsd:string\">Priority ").append(i).append("</description>")
+          .append("<icon xsi:type=\"xsd:string\">http://jira/images/icons/priority.gif</icon>")
+          .append("<color xsi:type=\"xsd:string\">#cc0000</color>")
+          .append("</getPrioritiesReturn>");
+    }
+    xml.append("</getPrioritiesReturn>");
+    return soapEnvelopeEnd(xml, "getPriorities");
+  }
+
+  /**
+   * A single issue returned by reference, as Axis does for createIssue and updateIssue.
+   */
+  static String soapIssue(String operation, String key) {
+    StringBuilder xml = soapEnvelopeStart(operation);
+    xml.append("<").append(operation).append("Return href=\"#id0\"/>");
+    xml.append("</ns1:").append(operation).append("Response>")
+        .append("<multiRef id=\"id0\" soapenc:root=\"0\" soapenv:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\" ")
+        .append("xsi:type=\"ns2:RemoteIssue\" xmlns:ns2=\"http://beans.soap.rpc.jira.atlassian.com\">")
+        .append("<id xsi:type=\"xsd:string\">10100</id>")
+        .append("<assignee xsi:type=\"xsd:string\" xsi:nil=\"true\"/>")
+        .append("<components soapenc:arrayType=\"ns2:RemoteComponent[0]\" xsi:type=\"soapenc:Array\"/>")
+        .append("<key xsi:type=\"xsd:string\">").append(key).append("</key>")
+        .append("<priority xsi:type=\"xsd:string\">3</priority>")
+        .append("<status xsi:type=\"xsd:string\">1</status>")
+        .append("<summary xsi:type=\"xsd:string\">Sonar Review #1 - &lt;Avoid&gt; &amp; co</summary>")
+        .append("</multiRef>");
+    return xml.append("</soapenv:Body></soapenv:Envelope>").toString();
+  }
+
+  static String soapEmpty(String operation) {
+    return soapEnvelopeEnd(soapEnvelopeStart(operation), operation);
+  }
+
+  static String soapFault(String exception, String message) {
+    return "HTTP 500 <?xml version=\"1.0\" encoding=\"utf-8\"?>"
+      + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" "
+      + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"><soapenv:Body><soapenv:Fault>"
+      + "<faultcode>soapenv:Server.userException</faultcode><faultstring>" + message + "</faultstring>"
+      + "<detail><" + exception + " xsi:type=\"ns1:RemoteException\" xmlns:ns1=\"http://exception.rpc.jira.atlassian.com\"/>"
+      + "<ns2:hostname xmlns:ns2=\"http://xml.apache.org/axis/\">jira</ns2:hostname></detail>"
+      + "</soapenv:Fault></soapenv:Body></soapenv:Envelope>";
+  }
+
+  static String soapLogin() {
+    StringBuilder xml = soapEnvelopeStart("login");
+    xml.append("<loginReturn xsi:type=\"xsd:string\">token</loginReturn>");
+    return soapEnvelopeEnd(xml, "login");
+  }
+
+  private static StringBuilder soapEnvelopeStart(String operation) {
+    return new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>")
+        .append("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" ")
+        .append("xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" ")
+        .append("xmlns:soapenc=\"http://schemas.xmlsoap.org/soap/encoding/\"><soapenv:Body>")
+        .append("<ns1:").append(operation).append("Response soapenv:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\" ")
+        .append("xmlns:ns1=\"http://soap.rpc.jira.atlassian.com\">");
+  }
+
+  private static String soapEnvelopeEnd(StringBuilder xml, String operation) {
+    return xml.append("</ns1:").append(operation).append("Response></soapenv:Body></soapenv:Envelope>").toString();
+  }
+
+  private static int priorityId(int i) {
+    return 1 + i % 5;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.transport;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * Compares the SOAP and REST transports against a {@link StandInJiraServer}: bytes on the wire, latency and heap
+ * allocated by the calling thread for a login, the priorities and a search. Not a unit test, run it by hand:
+ * <pre>java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.sonar.plugins.testtrack.transport.TransportBenchmark [issues] [iterations]</pre>
+ */
+public final class TransportBenchmark {
+
+  private TransportBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int issues = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+    StandInJiraServer server = new StandInJiraServer();
+    try {
+      server.stubSoap("login", StandInJiraServer.soapLogin());
+      server.stubSoap("getPriorities", StandInJiraServer.soapPriorities());
+      server.stubSoap("getIssuesFromJqlSearch", StandInJiraServer.soapIssues("getIssuesFromJqlSearch", issues));
+      server.stub("GET", "/rest/api/2/myself", "{\"name\":\"sonar\"}");
+      server.stub("GET", "/rest/api/2/priority", StandInJiraServer.restPriorities());
+      server.stub("GET", "/rest/api/2/search", StandInJiraServer.restIssues(0, issues, issues));
+
+      TrackerTransport soap = SoapTransport.create(new URL(server.getUrl() + StandInJiraServer.SOAP_PATH));
+      TrackerTransport rest = new RestTransport(server.getUrl());
+
+      System.out.println("Searching " + issues + " issues, " + iterations + " iterations");
+      System.out.println(String.format("%-6s %14s %14s %14s %18s", "", "sent (bytes)", "received", "median (ms)", "allocated (bytes)"));
+      for (TrackerTransport transport : new TrackerTransport[] {soap, rest}) {
+        // warm up class loading and JIT
+        run(transport, issues, 5);
+        server.resetCounters();
+        Result result = run(transport, issues, iterations);
+        System.out.println(String.format("%-6s %14d %14d %14.2f %18s", transport instanceof SoapTransport ? "SOAP" : "REST",
+            server.getBytesSent() / iterations, server.getBytesReceived() / iterations, result.medianMillis,
+            result.allocatedBytes < 0 ? "n/a" : String.valueOf(result.allocatedBytes / iterations)));
+      }
+    } finally {
+      server.stop();
+    }
+  }
+
+  private static Result run(TrackerTransport transport, int issues, int iterations) throws Exception {
+    long[] durations = new long[iterations];
+    long allocatedBefore = allocatedBytes();
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      String token = transport.login("sonar", "secret");
+      transport.getPriorities(token);
+      int found = transport.getIssuesFromJqlSearch(token, "project = TEST", issues).length;
+      durations[i] = System.nanoTime() - start;
+      if (found != issues) {
+        throw new IllegalStateException(found + " issues read instead of " + issues);
+      }
+    }
+    long allocatedAfter = allocatedBytes();
+    Arrays.sort(durations);
+
+    Result result = new Result();
+    result.medianMillis = durations[iterations / 2] / 1000000.0;
+    result.allocatedBytes = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+    return result;
+  }
+
+  /**
+   * Bytes allocated so far by the current thread, or -1 if the JVM does not tell.
+   */
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    try {
+      Method method = threads.getClass().getMethod("getThreadAllocatedBytes", long.class);
+      method.setAccessible(true);
+      return (Long) method.invoke(threads, Thread.currentThread().getId());
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+  private static final class Result {
+    private double medianMillis;
+    private long allocatedBytes;
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.remote.Deadline;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class AnalysisStateTest {
+
+  @Test
+  public void shouldShareDeadlineBetweenModules() throws Exception {
+    AnalysisState state = new AnalysisState(new Settings());
+
+    Deadline first = state.deadline(60000);
+    Thread.sleep(5);
+
+    assertThat(state.deadline(60000), sameInstance(first));
+    assertThat(first.isBounded(), is(true));
+  }
+
+  @Test
+  public void shouldHaveNoDeadlineWithoutBudget() throws Exception {
+    assertThat(new AnalysisState(new Settings()).deadline(0), sameInstance(Deadline.NONE));
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import com.atlassian.jira.rpc.soap.client.RemoteComponent;
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class IssueAttributorTest {
+
+  private IssueAttributor<String> attributor;
+
+  @Before
+  public void setUp() {
+    PathIndex<String> index = new PathIndex<String>();
+    index.add("org/sonar/Foo.java", "Foo");
+    index.add("org/sonar/api/Bar.java", "api.Bar");
+    index.add("org/sonar/impl/Bar.java", "impl.Bar");
+    attributor = new IssueAttributor<String>(index, "Core Module", "org.sonar:core");
+  }
+
+  @Test
+  public void shouldAttributeMentionedFiles() {
+    IssueAttributor.Attribution<String> attribution = attributor.attribute(new RemoteIssue[] {
+      issue("NPE in Foo.java", "Thrown from org/sonar/api/Bar.java, see also Foo.java."),
+      issue("Slow startup", "Profiling shows impl/Bar.java:42"),
+      issue("Unrelated", "Nothing to see in Bar.java or readme.txt")});
+
+    assertThat(attribution.getIssuesByFile().get("Foo"), is(1));
+    assertThat(attribution.getIssuesByFile().get("api.Bar"), is(1));
+    assertThat(attribution.getIssuesByFile().get("impl.Bar"), is(1));
+    assertThat(attribution.getIssuesByFile().size(), is(3));
+    assertThat(attribution.getIssuesOnModule(), is(2));
+  }
+
+  @Test
+  public void shouldAttributeToModuleByComponent() {
+    RemoteIssue issue = issue("Crash", null);
+    RemoteComponent component = new RemoteComponent();
+    component.setName("core module");
+    issue.setComponents(new RemoteComponent[] {component});
+
+    IssueAttributor.Attribution<String> attribution = attributor.attribute(new RemoteIssue[] {issue, issue("Other", null)});
+
+    assertThat(attribution.getIssuesByFile().size(), is(0));
+    assertThat(attribution.getIssuesOnModule(), is(1));
+  }
+
+  @Test
+  public void shouldTrimSentencePunctuation() {
+    Set<String> found = new HashSet<String>();
+    attributor.collectFiles("(org/sonar/impl/Bar.java). And Foo.java/", found);
+    assertThat(found.size(), is(2));
+  }
+
+  private static RemoteIssue issue(String summary, String description) {
+    RemoteIssue issue = new RemoteIssue();
+    issue.setSummary(summary);
+    issue.setDescription(description);
+    return issue;
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.remote.RetryPolicy;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IssueCursorTest {
+
+  private final TrackerTransport transport = mock(TrackerTransport.class);
+  private final RemoteCallExecutor executor = new RemoteCallExecutor(1);
+
+  @Before
+  public void setUp() {
+    when(transport.getEndpoint()).thenReturn("http://my.jira.server");
+  }
+
+  @After
+  public void tearDown() {
+    executor.stop();
+  }
+
+  @Test
+  public void shouldFetchPagesWhenNeeded() throws Exception {
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 0, 2)).thenReturn(issues(0, 2));
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 2, 2)).thenReturn(issues(2, 1));
+
+    IssueCursor<String> cursor = new PagedIssueFetcher(new RetryPolicy(1, 0), 2)
+        .open(transport, "token", IssueQuery.filter("10010"), IssueProjections.KEY);
+    verify(transport, never()).getIssuesFromFilterWithLimit(anyString(), anyString(), anyInt(), anyInt());
+
+    assertThat(cursor.next(), is("TEST-0"));
+    assertThat(cursor.next(), is("TEST-1"));
+    verify(transport, never()).getIssuesFromFilterWithLimit("token", "10010", 2, 2);
+    assertThat(cursor.next(), is("TEST-2"));
+    assertThat(cursor.hasNext(), is(false));
+    verify(transport, never()).getIssuesFromFilterWithLimit("token", "10010", 3, 2);
+  }
+
+  @Test
+  public void shouldPrefetchNextPageWhileOneIsRead() throws Exception {
+    final CountDownLatch prefetched = new CountDownLatch(1);
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 0, 2)).thenReturn(issues(0, 2));
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 2, 2)).thenAnswer(new Answer<RemoteIssue[]>() {
+      public RemoteIssue[] answer(InvocationOnMock invocation) {
+        prefetched.countDown();
+        return issues(2, 2);
+      }
+    });
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 4, 2)).thenReturn(new RemoteIssue[0]);
+
+    IssueCursor<String> cursor = new PagedIssueFetcher(new RetryPolicy(1, 0), 2, executor)
+        .open(transport, "token", IssueQuery.filter("10010"), IssueProjections.KEY);
+
+    assertThat(cursor.next(), is("TEST-0"));
+    assertThat(prefetched.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(cursor.toList(), is(Arrays.asList("TEST-1", "TEST-2", "TEST-3")));
+    verify(transport, times(1)).getIssuesFromFilterWithLimit("token", "10010", 4, 2);
+  }
+
+  @Test
+  public void shouldPrefetchInSlotOfServer() throws Exception {
+    final CountDownLatch prefetching = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 0, 2)).thenReturn(issues(0, 2));
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 2, 2)).thenAnswer(new Answer<RemoteIssue[]>() {
+      public RemoteIssue[] answer(InvocationOnMock invocation) throws Throwable {
+        prefetching.countDown();
+        release.await(5, TimeUnit.SECONDS);
+        return new RemoteIssue[0];
+      }
+    });
+
+    IssueCursor<String> cursor = new PagedIssueFetcher(new RetryPolicy(1, 0), 2, executor)
+        .open(transport, "token", IssueQuery.filter("10010"), IssueProjections.KEY);
+    cursor.next();
+    assertThat(prefetching.await(5, TimeUnit.SECONDS), is(true));
+
+    assertThat(executor.getCallsInFlight("http://my.jira.server"), is(1));
+    release.countDown();
+    assertThat(cursor.toList(), is(Arrays.asList("TEST-1")));
+  }
+
+  @Test
+  public void shouldCancelPrefetchOnClose() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 0, 2)).thenReturn(issues(0, 2));
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 2, 2)).thenAnswer(new Answer<RemoteIssue[]>() {
+      public RemoteIssue[] answer(InvocationOnMock invocation) throws Throwable {
+        started.countDown();
+        try {
+          Thread.sleep(10000);
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+        }
+        return issues(2, 2);
+      }
+    });
+
+    IssueCursor<String> cursor = new PagedIssueFetcher(new RetryPolicy(1, 0), 2, executor)
+        .open(transport, "token", IssueQuery.filter("10010"), IssueProjections.KEY);
+    cursor.next();
+    assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+    cursor.close();
+
+    assertThat(interrupted.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(cursor.hasNext(), is(false));
+  }
+
+  @Test(expected = RemoteException.class)
+  public void shouldRethrowFailureOfPrefetchedPage() throws Exception {
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 0, 2)).thenReturn(issues(0, 2));
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 2, 2)).thenThrow(new RemoteException("down"));
+
+    new PagedIssueFetcher(new RetryPolicy(1, 0), 2, executor).open(transport, "token", IssueQuery.filter("10010"), IssueProjections.KEY)
+        .toList();
+  }
+
+  @Test
+  public void shouldReadJqlInOneCall() throws Exception {
+    when(transport.getIssuesFromJqlSearch("token", "project = TEST", 100)).thenReturn(issues(0, 2));
+
+    IssueCursor<RemoteIssue> cursor = new PagedIssueFetcher(new RetryPolicy(1, 0), 2)
+        .open(transport, "token", IssueQuery.jql("project = TEST", 100), IssueProjections.WHOLE);
+
+    assertThat(cursor.toList().size(), is(2));
+    verify(transport, times(1)).getIssuesFromJqlSearch(anyString(), anyString(), anyInt());
+  }
+
+  private static RemoteIssue[] issues(int start, int count) {
+    RemoteIssue[] issues = new RemoteIssue[count];
+    for (int i = 0; i < count; i++) {
+      issues[i] = new RemoteIssue();
+      issues[i].setKey("TEST-" + (start + i));
+    }
+    return issues;
+  }
+}
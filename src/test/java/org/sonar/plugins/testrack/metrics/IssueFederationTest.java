@@ -0,0 +1,194 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+import org.sonar.plugins.testtrack.remote.CallLane;
+import org.sonar.plugins.testtrack.remote.Deadline;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class IssueFederationTest {
+
+  @Test
+  public void shouldListDeclaredServers() throws Exception {
+    Settings settings = new Settings();
+    settings.setProperty(TestTrackConstants.FEDERATION_SERVERS_PROPERTY, "north, south,nofilter");
+    settings.setProperty("sonar.jira.federation.north.url", "http://north");
+    settings.setProperty("sonar.jira.federation.north.filter", "10010");
+    settings.setProperty("sonar.jira.federation.north.login.secured", "bob");
+    settings.setProperty("sonar.jira.federation.north.timeoutSeconds", "ten");
+    settings.setProperty("sonar.jira.federation.south.url", "http://south");
+    settings.setProperty("sonar.jira.federation.south.filter", "jql:project = S");
+    settings.setProperty("sonar.jira.federation.south.timeoutSeconds", "20");
+    settings.setProperty("sonar.jira.federation.nofilter.url", "http://nofilter");
+
+    List<FederatedServer> servers = FederatedServer.list(settings);
+
+    assertThat(servers.size(), is(2));
+    assertThat(servers.get(0).getId(), is("north"));
+    assertThat(servers.get(0).getUsername(), is("bob"));
+    assertThat(servers.get(0).getTimeoutSeconds(), is(0));
+    assertThat(servers.get(1).getUrl(), is("http://south"));
+    assertThat(servers.get(1).getTimeoutSeconds(), is(20));
+  }
+
+  @Test
+  public void shouldPointSettingsToServer() throws Exception {
+    Settings settings = new Settings();
+    settings.setProperty(TestTrackConstants.SERVER_URL_PROPERTY, "http://main");
+    settings.setProperty(TestTrackConstants.TRANSPORT_PROPERTY, "rest");
+
+    Settings serverSettings = new FederatedServer("north", "http://north", "bob", "pwd", "10010", 0).toSettings(settings);
+
+    assertThat(serverSettings.getString(TestTrackConstants.SERVER_URL_PROPERTY), is("http://north"));
+    assertThat(serverSettings.getString(TestTrackConstants.FILTER_PROPERTY), is("10010"));
+    assertThat(serverSettings.getString(TestTrackConstants.TRANSPORT_PROPERTY), is("rest"));
+    assertThat(settings.getString(TestTrackConstants.SERVER_URL_PROPERTY), is("http://main"));
+  }
+
+  @Test
+  public void shouldNotRecordServerInFileOfMainOne() throws Exception {
+    Settings settings = new Settings();
+    settings.setProperty(TestTrackConstants.RECORD_FILE_PROPERTY, "main.rec");
+    settings.setProperty(TestTrackConstants.REPLAY_FILE_PROPERTY, "main.rec");
+
+    Settings serverSettings = new FederatedServer("north", "http://north", "bob", "pwd", "10010", 0).toSettings(settings);
+
+    assertThat(serverSettings.hasKey(TestTrackConstants.RECORD_FILE_PROPERTY), is(false));
+    assertThat(serverSettings.hasKey(TestTrackConstants.REPLAY_FILE_PROPERTY), is(false));
+    assertThat(settings.getString(TestTrackConstants.RECORD_FILE_PROPERTY), is("main.rec"));
+  }
+
+  @Test
+  public void shouldMergeNormalizedPriorities() throws Exception {
+    Map<String, Integer> merged = new TreeMap<String, Integer>();
+    IssueFederation.merge(merged, ImmutableMap.of("Major", 2, "Blocker", 1));
+    IssueFederation.merge(merged, ImmutableMap.of("MAJOR ", 3, "minor", 4));
+
+    assertThat(merged.toString(), is("{Blocker=1, Major=5, Minor=4}"));
+  }
+
+  @Test
+  public void shouldLeaveOutFailingServers() throws Exception {
+    IssueFederation federation = new FakeFederation(ImmutableMap.of("Major", 2), null);
+
+    IssueFederation.Result result = federation.start(Arrays.asList(server("ok", 0), server("down", 0), server("broken", 0)), Deadline.NONE)
+        .await();
+
+    assertThat(result.getCountByPriority().toString(), is("{Major=2}"));
+    assertThat(result.getIssueCount(), is(2));
+    assertThat(result.getMissingServers(), is(Arrays.asList("down", "broken")));
+  }
+
+  @Test
+  public void shouldListServersWithTruncatedQuery() throws Exception {
+    IssueFederation federation = new FakeFederation(ImmutableMap.of("Major", 2), null);
+
+    IssueFederation.Result result = federation.start(Arrays.asList(server("ok", 0), server("capped", 0)), Deadline.NONE).await();
+
+    assertThat(result.getIssueCount(), is(4));
+    assertThat(result.getTruncatedServers(), is(Arrays.asList("capped")));
+    assertThat(result.getMissingServers().isEmpty(), is(true));
+  }
+
+  @Test
+  public void shouldReadEachServerThroughExecutor() throws Exception {
+    FakeFederation federation = new FakeFederation(ImmutableMap.of("Major", 2), null);
+
+    federation.start(Arrays.asList(server("ok", 0)), Deadline.NONE).await();
+
+    assertThat(federation.executor.getServers().contains("http://ok"), is(true));
+    assertThat(federation.executor.getQueueWait(CallLane.METRICS).getCount(), is(1L));
+  }
+
+  @Test
+  public void shouldNotWaitForSlowServerBeyondItsTimeout() throws Exception {
+    CountDownLatch never = new CountDownLatch(1);
+    IssueFederation federation = new FakeFederation(ImmutableMap.of("Critical", 3), never);
+
+    long start = System.currentTimeMillis();
+    IssueFederation.Result result = federation.start(Arrays.asList(server("ok", 0), server("slow", 1)), Deadline.after(30000)).await();
+
+    assertThat(System.currentTimeMillis() - start, lessThan(10000L));
+    assertThat(result.getCountByPriority().toString(), is("{Critical=3}"));
+    assertThat(result.getMissingServers(), is(Arrays.asList("slow")));
+  }
+
+  private static FederatedServer server(String id, int timeoutSeconds) {
+    return new FederatedServer(id, "http://" + id, "user", "pwd", "10010", timeoutSeconds);
+  }
+
+  /**
+   * Server "ok" answers the given counts, "capped" too but from a truncated query, "down" and "broken" fail and any other one waits on the latch.
+   */
+  private static class FakeFederation extends IssueFederation {
+    private final Map<String, Integer> counts;
+    private final CountDownLatch latch;
+    private final RemoteCallExecutor executor;
+
+    FakeFederation(Map<String, Integer> counts, CountDownLatch latch) {
+      this(counts, latch, new RemoteCallExecutor(2));
+    }
+
+    private FakeFederation(Map<String, Integer> counts, CountDownLatch latch, RemoteCallExecutor executor) {
+      super(new Settings(), new FilterResolver(), executor);
+      this.counts = counts;
+      this.latch = latch;
+      this.executor = executor;
+    }
+
+    @Override
+    protected ServerCount countByPriorityName(FederatedServer server, Deadline deadline) throws RemoteException {
+      if ("ok".equals(server.getId())) {
+        return new ServerCount(counts, false);
+      }
+      if ("capped".equals(server.getId())) {
+        return new ServerCount(counts, true);
+      }
+      if ("down".equals(server.getId())) {
+        throw new RemoteException("down");
+      }
+      if ("broken".equals(server.getId())) {
+        throw new IllegalArgumentException("broken");
+      }
+      try {
+        latch.await(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return new ServerCount(counts, false);
+    }
+  }
+}
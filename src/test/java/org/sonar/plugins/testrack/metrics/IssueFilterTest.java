@@ -0,0 +1,62 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.testtrack.metrics;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class IssueFilterTest {
+
+  @Test
+  public void shouldParseFilterName() throws Exception {
+    IssueFilter filter = IssueFilter.parse("SONAR-current-iteration");
+    assertThat(filter.isJql(), is(false));
+    assertThat(filter.hasId(), is(false));
+    assertThat(filter.getName(), is("SONAR-current-iteration"));
+  }
+
+  @Test
+  public void shouldParseFilterId() throws Exception {
+    IssueFilter filter = IssueFilter.parse(" id: 10010 ");
+    assertThat(filter.hasId(), is(true));
+    assertThat(filter.getId(), is("10010"));
+    assertThat(filter.getName(), nullValue());
+    assertThat(filter.toString(), is("id:10010"));
+  }
+
+  @Test
+  public void shouldParseNameMadeOfDigits() throws Exception {
+    IssueFilter filter = IssueFilter.parse("2024");
+    assertThat(filter.hasId(), is(false));
+    assertThat(filter.getName(), is("2024"));
+  }
+
+  @Test
+  public void shouldParseJql() throws Exception {
+    IssueFilter filter = IssueFilter.parse("jql: project = SONAR ");
+    assertThat(filter.isJql(), is(true));
+    assertThat(filter.getJql(), is("project = SONAR"));
+    assertThat(filter.toString(), is("jql:project = SONAR"));
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.batch.DecoratorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.resources.JavaFile;
+import org.sonar.api.resources.Project;
+import org.sonar.plugins.testtrack.TestTrackConstants;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IssueRollupDecoratorTest {
+
+  @Test
+  public void shouldExecuteOnlyWhenEnabled() throws Exception {
+    Settings settings = new Settings();
+    IssueRollupDecorator decorator = new IssueRollupDecorator(settings);
+    assertThat(decorator.shouldExecuteOnProject(new Project("foo")), is(false));
+
+    settings.setProperty(TestTrackConstants.ROLLUP_PROPERTY, "true");
+    assertThat(decorator.shouldExecuteOnProject(new Project("foo")), is(true));
+  }
+
+  @Test
+  public void shouldSumChildModules() throws Exception {
+    DecoratorContext context = mock(DecoratorContext.class);
+    when(context.getChildrenMeasures(TestTrackMetrics.ISSUES)).thenReturn(Arrays.asList(
+        issues(3.0, "Blocker=1;Major=2"),
+        issues(4.0, "Major=3;Minor=1"),
+        issues(0.0, null)));
+
+    new IssueRollupDecorator(new Settings()).decorate(new Project("parent"), context);
+
+    ArgumentCaptor<Measure> measure = ArgumentCaptor.forClass(Measure.class);
+    verify(context).saveMeasure(measure.capture());
+    assertThat(measure.getValue().getValue(), is(7.0));
+    assertThat(measure.getValue().getData(), is("Blocker=1;Major=5;Minor=1"));
+  }
+
+  @Test
+  public void shouldKeepIssuesReadOnModule() throws Exception {
+    DecoratorContext context = mock(DecoratorContext.class);
+    when(context.getMeasure(TestTrackMetrics.ISSUES)).thenReturn(issues(2.0, "Major=2"));
+
+    new IssueRollupDecorator(new Settings()).decorate(new Project("leaf"), context);
+
+    verify(context, never()).saveMeasure(any(Measure.class));
+  }
+
+  @Test
+  public void shouldIgnoreFiles() throws Exception {
+    DecoratorContext context = mock(DecoratorContext.class);
+
+    new IssueRollupDecorator(new Settings()).decorate(new JavaFile("org.Foo"), context);
+
+    verify(context, never()).getChildrenMeasures(TestTrackMetrics.ISSUES);
+    verify(context, never()).saveMeasure(any(Measure.class));
+  }
+
+  private static Measure issues(double value, String data) {
+    Measure measure = new Measure(TestTrackMetrics.ISSUES, value);
+    measure.setData(data);
+    return measure;
+  }
+}
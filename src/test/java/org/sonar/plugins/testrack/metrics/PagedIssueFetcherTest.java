@@ -0,0 +1,96 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import com.atlassian.jira.rpc.soap.client.RemoteIssue;
+import org.junit.Test;
+import org.sonar.plugins.testtrack.remote.RetryPolicy;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+
+import java.rmi.RemoteException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PagedIssueFetcherTest {
+
+  private final TrackerTransport transport = mock(TrackerTransport.class);
+
+  @Test
+  public void shouldReadAllPages() throws Exception {
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 0, 2)).thenReturn(issues(0, 2));
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 2, 2)).thenReturn(issues(2, 1));
+
+    RemoteIssue[] issues = new PagedIssueFetcher(new RetryPolicy(3, 0), 2).fetchFilter(transport, "token", "10010");
+
+    assertThat(issues.length, is(3));
+    assertThat(issues[2].getKey(), is("TEST-2"));
+  }
+
+  @Test
+  public void shouldResumeAtFailedPage() throws Exception {
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 0, 2)).thenReturn(issues(0, 2));
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 2, 2))
+        .thenThrow(new RemoteException("timeout"))
+        .thenReturn(issues(2, 2));
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 4, 2)).thenReturn(new RemoteIssue[0]);
+
+    RemoteIssue[] issues = new PagedIssueFetcher(new RetryPolicy(3, 0), 2).fetchFilter(transport, "token", "10010");
+
+    assertThat(issues.length, is(4));
+    verify(transport, times(1)).getIssuesFromFilterWithLimit("token", "10010", 0, 2);
+    verify(transport, times(2)).getIssuesFromFilterWithLimit("token", "10010", 2, 2);
+  }
+
+  @Test
+  public void shouldKeepOnlyHeaderOfIssues() throws Exception {
+    RemoteIssue[] page = issues(0, 1);
+    page[0].setPriority("2");
+    page[0].setSummary("Wrong result");
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 0, 2)).thenReturn(page);
+
+    RemoteIssue[] issues = new PagedIssueFetcher(new RetryPolicy(3, 0), 2).fetch(transport, "token", IssueQuery.filter("10010"),
+        IssueProjections.HEADER);
+
+    assertThat(issues[0].getKey(), is("TEST-0"));
+    assertThat(issues[0].getPriority(), is("2"));
+    assertThat(issues[0].getSummary() == null, is(true));
+  }
+
+  @Test(expected = RemoteException.class)
+  public void shouldFailWhenPageKeepsFailing() throws Exception {
+    when(transport.getIssuesFromFilterWithLimit("token", "10010", 0, 2)).thenThrow(new RemoteException("down"));
+
+    new PagedIssueFetcher(new RetryPolicy(2, 0), 2).fetchFilter(transport, "token", "10010");
+  }
+
+  private static RemoteIssue[] issues(int start, int count) {
+    RemoteIssue[] issues = new RemoteIssue[count];
+    for (int i = 0; i < count; i++) {
+      issues[i] = new RemoteIssue();
+      issues[i].setKey("TEST-" + (start + i));
+    }
+    return issues;
+  }
+}
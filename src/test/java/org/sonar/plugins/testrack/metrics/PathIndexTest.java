@@ -0,0 +1,79 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2009 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.testtrack.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class PathIndexTest {
+
+  private PathIndex<String> index;
+
+  @Before
+  public void setUp() {
+    index = new PathIndex<String>();
+    index.add("org/sonar/Foo.java", "Foo");
+    index.add("org/sonar/api/Bar.java", "api.Bar");
+    index.add("org/sonar/impl/Bar.java", "impl.Bar");
+  }
+
+  @Test
+  public void shouldFindUniqueFileName() {
+    assertThat(index.find("Foo.java"), is("Foo"));
+    assertThat(index.find("org/sonar/Foo.java"), is("Foo"));
+    assertThat(index.size(), is(3));
+  }
+
+  @Test
+  public void shouldNotFindAmbiguousFileName() {
+    assertThat(index.find("Bar.java"), nullValue());
+    assertThat(index.find("other/Bar.java"), nullValue());
+  }
+
+  @Test
+  public void shouldDisambiguateWithParentDirectories() {
+    assertThat(index.find("api/Bar.java"), is("api.Bar"));
+    assertThat(index.find("org/sonar/impl/Bar.java"), is("impl.Bar"));
+  }
+
+  @Test
+  public void shouldMatchLongerAndWindowsPaths() {
+    assertThat(index.find("/home/build/src/main/java/org/sonar/api/Bar.java"), is("api.Bar"));
+    assertThat(index.find("C:\\work\\src\\org\\sonar\\impl\\Bar.java"), is("impl.Bar"));
+  }
+
+  @Test
+  public void shouldNotFindUniqueFileNameInOtherDirectory() {
+    assertThat(index.find("com/other/Foo.java"), nullValue());
+    assertThat(index.find("/home/build/src/com/sonar/Foo.java"), nullValue());
+    assertThat(index.find("other/api/Bar.java"), nullValue());
+  }
+
+  @Test
+  public void shouldNotFindUnknownFile() {
+    assertThat(index.find("Baz.java"), nullValue());
+    assertThat(index.find(""), nullValue());
+    assertThat(index.find("/"), nullValue());
+  }
+}
@@ -32,7 +32,7 @@ public class TestTrackMetricsTest {
   @Test
   public void testGetMetrics() throws Exception {
     List<Metric> metrics = new TestTrackMetrics().getMetrics();
-    assertThat(metrics.size(), is(1));
+    assertThat(metrics.size(), is(2));
     for (Metric metric : metrics) {
       assertThat(metric.getDomain(), is(TestTrackMetrics.ISSUES_DOMAIN));
     }
@@ -20,27 +20,54 @@
 
 package org.sonar.plugins.testtrack.metrics;
 
-import com.atlassian.jira.rpc.soap.client.JiraSoapService;
 import com.atlassian.jira.rpc.soap.client.RemoteFilter;
 import com.atlassian.jira.rpc.soap.client.RemoteIssue;
 import com.atlassian.jira.rpc.soap.client.RemotePriority;
+import com.google.common.collect.Lists;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.config.Settings;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.platform.ComponentContainer;
+import org.sonar.api.resources.InputFileUtils;
 import org.sonar.api.resources.Project;
+import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.api.resources.Resource;
 import org.sonar.api.test.IsMeasure;
 import org.sonar.plugins.testtrack.TestTrackConstants;
-
+import org.sonar.plugins.testtrack.TestTrackPlugin;
+import org.sonar.plugins.testtrack.remote.Deadline;
+import org.sonar.plugins.testtrack.remote.DeadlineExceededException;
+import org.sonar.plugins.testtrack.remote.RemoteCallExecutor;
+import org.sonar.plugins.testtrack.snapshot.TrackerRecording;
+import org.sonar.plugins.testtrack.trace.Tracer;
+import org.sonar.plugins.testtrack.transport.TrackerTransport;
+
+import java.io.File;
 import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -50,17 +77,21 @@ public class TestTrackSensorTest {
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   private TestTrackSensor sensor;
   private Settings settings;
 
   @Before
-  public void setUp() {
+  public void setUp() throws Exception {
     settings = new Settings();
     settings.setProperty(TestTrackConstants.SERVER_URL_PROPERTY, "http://my.jira.server");
     settings.setProperty(TestTrackConstants.USERNAME_PROPERTY, "admin");
     settings.setProperty(TestTrackConstants.PASSWORD_PROPERTY, "adminPwd");
     settings.setProperty(TestTrackConstants.FILTER_PROPERTY, "myFilter");
-    sensor = new TestTrackSensor(settings);
+    settings.setProperty(TestTrackConstants.SNAPSHOT_DIR_PROPERTY, temp.newFolder("snapshots").getPath());
+    sensor = sensor(settings);
   }
 
   @Test
@@ -73,19 +104,19 @@ public class TestTrackSensorTest {
     assertThat(sensor.missingMandatoryParameters(), is(false));
 
     settings.removeProperty(TestTrackConstants.PASSWORD_PROPERTY);
-    sensor = new TestTrackSensor(settings);
+    sensor = sensor(settings);
     assertThat(sensor.missingMandatoryParameters(), is(true));
 
     settings.removeProperty(TestTrackConstants.USERNAME_PROPERTY);
-    sensor = new TestTrackSensor(settings);
+    sensor = sensor(settings);
     assertThat(sensor.missingMandatoryParameters(), is(true));
 
     settings.removeProperty(TestTrackConstants.FILTER_PROPERTY);
-    sensor = new TestTrackSensor(settings);
+    sensor = sensor(settings);
     assertThat(sensor.missingMandatoryParameters(), is(true));
 
     settings.removeProperty(TestTrackConstants.SERVER_URL_PROPERTY);
-    sensor = new TestTrackSensor(settings);
+    sensor = sensor(settings);
     assertThat(sensor.missingMandatoryParameters(), is(true));
   }
 
@@ -108,11 +139,176 @@ public class TestTrackSensorTest {
     when(project.isRoot()).thenReturn(true).thenReturn(false);
 
     settings.removeProperty(TestTrackConstants.SERVER_URL_PROPERTY);
-    sensor = new TestTrackSensor(settings);
+    sensor = sensor(settings);
 
     assertThat(sensor.shouldExecuteOnProject(project), is(false));
   }
 
+  @Test
+  public void shouldExecuteOnModulesWhenAttributingIssues() throws Exception {
+    settings.setProperty(TestTrackConstants.ATTRIBUTION_PROPERTY, "true");
+    sensor = sensor(settings);
+
+    assertThat(sensor.shouldExecuteOnProject(mock(Project.class)), is(true));
+  }
+
+  @Test
+  public void shouldExecuteOnLeafModulesOnlyWhenSummingUp() throws Exception {
+    settings.setProperty(TestTrackConstants.ROLLUP_PROPERTY, "true");
+    AnalysisState state = new AnalysisState(new Settings());
+    sensor = sensor(settings, new FetchedIssues(), state);
+    Project parent = mock(Project.class);
+    when(parent.isRoot()).thenReturn(true);
+    when(parent.getModules()).thenReturn(Arrays.asList(mock(Project.class)));
+
+    assertThat(sensor.shouldExecuteOnProject(mock(Project.class)), is(true));
+    state.leafIssueCountRead();
+    assertThat(sensor.shouldExecuteOnProject(parent), is(false));
+  }
+
+  @Test
+  public void shouldCountInheritedFilterOnRootOnlyWhenSummingUp() throws Exception {
+    settings.setProperty(TestTrackConstants.ROLLUP_PROPERTY, "true");
+    AnalysisState state = new AnalysisState(settings);
+    Project root = rootProject();
+    Project module = mock(Project.class);
+
+    assertThat(sensor(settings, new FetchedIssues(), state).shouldExecuteOnProject(module), is(false));
+    assertThat(sensor(settings, new FetchedIssues(), state).shouldExecuteOnProject(root), is(true));
+  }
+
+  @Test
+  public void shouldSumUpOwnFiltersOfModulesInsteadOfRootOne() throws Exception {
+    settings.setProperty(TestTrackConstants.ROLLUP_PROPERTY, "true");
+    settings.setProperty(TestTrackConstants.REPLAY_FILE_PROPERTY, new File(temp.getRoot(), "missing.rec").getPath());
+    Settings rootSettings = new Settings(settings);
+    rootSettings.setProperty(TestTrackConstants.FILTER_PROPERTY, "rootFilter");
+    AnalysisState state = new AnalysisState(rootSettings);
+    Project root = rootProject();
+    Project module = mock(Project.class);
+
+    TestTrackSensor moduleSensor = sensor(settings, new FetchedIssues(), state);
+    assertThat(moduleSensor.shouldExecuteOnProject(module), is(true));
+    moduleSensor.analyse(module, mock(SensorContext.class));
+
+    assertThat(state.hasLeafIssueCounts(), is(true));
+    assertThat(sensor(rootSettings, new FetchedIssues(), state).shouldExecuteOnProject(root), is(false));
+  }
+
+  @Test
+  public void shouldShareAnalysisStateBetweenModulesOfTheBatch() throws Exception {
+    settings.setProperty(TestTrackConstants.ROLLUP_PROPERTY, "true");
+    settings.setProperty(TestTrackConstants.TIME_BUDGET_SECONDS_PROPERTY, "60");
+    settings.setProperty(TestTrackConstants.REPLAY_FILE_PROPERTY, new File(temp.getRoot(), "missing.rec").getPath());
+    Settings rootSettings = new Settings(settings);
+    rootSettings.setProperty(TestTrackConstants.FILTER_PROPERTY, "rootFilter");
+    ComponentContainer batch = batchContainer(rootSettings);
+    Project root = rootProject();
+    Project module = mock(Project.class);
+
+    TestTrackSensor moduleSensor = moduleContainer(batch, settings).getComponentByType(TestTrackSensor.class);
+    assertThat(moduleSensor.shouldExecuteOnProject(module), is(true));
+    moduleSensor.analyse(module, mock(SensorContext.class));
+    batch.removeChild();
+    TestTrackSensor rootSensor = moduleContainer(batch, rootSettings).getComponentByType(TestTrackSensor.class);
+
+    assertThat(rootSensor.shouldExecuteOnProject(root), is(false));
+    assertThat(batch.getComponentByType(AnalysisState.class).deadline(0).isBounded(), is(true));
+  }
+
+  /**
+   * Registers the batch extensions of the plugin the way the batch does: once for all the modules if they are
+   * instantiated per batch, else in the container of each module.
+   */
+  private static ComponentContainer batchContainer(Settings rootSettings) {
+    ComponentContainer batch = new ComponentContainer();
+    batch.addSingleton(rootSettings);
+    for (Object extension : batchExtensions(true)) {
+      batch.addSingleton(extension);
+    }
+    return batch;
+  }
+
+  private static ComponentContainer moduleContainer(ComponentContainer batch, Settings moduleSettings) {
+    ComponentContainer module = batch.createChild();
+    module.addSingleton(moduleSettings);
+    for (Object extension : batchExtensions(false)) {
+      module.addSingleton(extension);
+    }
+    return module;
+  }
+
+  private static List<Object> batchExtensions(boolean perBatch) {
+    List<Object> extensions = Lists.newArrayList();
+    for (Object extension : new TestTrackPlugin().getExtensions()) {
+      Class<?> type = (Class<?>) extension;
+      InstantiationStrategy strategy = type.getAnnotation(InstantiationStrategy.class);
+      boolean extensionPerBatch = strategy != null && InstantiationStrategy.PER_BATCH.equals(strategy.value());
+      if (BatchExtension.class.isAssignableFrom(type) && extensionPerBatch == perBatch) {
+        extensions.add(extension);
+      }
+    }
+    return extensions;
+  }
+
+  @Test
+  public void shouldAttributeIssuesToModuleFiles() throws Exception {
+    settings.setProperty(TestTrackConstants.FILTER_PROPERTY, "id:10010");
+    settings.setProperty(TestTrackConstants.ATTRIBUTION_PROPERTY, "true");
+    FetchedIssues fetchedIssues = new FetchedIssues();
+    sensor = sensor(settings, fetchedIssues, new AnalysisState(settings));
+    TrackerTransport transport = mock(TrackerTransport.class);
+    RemoteIssue issue = new RemoteIssue();
+    issue.setSummary("Wrong result in pkg/util.py");
+    when(transport.getIssuesFromFilterWithLimit(eq("token"), eq("10010"), eq(0), anyInt())).thenReturn(new RemoteIssue[] {issue, new RemoteIssue()});
+    Project module = moduleWithFiles("pkg/util.py", "pkg/main.py");
+    SensorContext context = mock(SensorContext.class);
+
+    sensor.runAnalysis(module, context, transport, "token");
+    sensor(settings, fetchedIssues, new AnalysisState(settings)).runAnalysis(module, mock(SensorContext.class), transport, "token");
+
+    verify(context).saveMeasure(any(Resource.class), argThat(new IsMeasure(TestTrackMetrics.ATTRIBUTED_ISSUES, 1.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(TestTrackMetrics.ATTRIBUTED_ISSUES, 1.0)));
+    verify(context, never()).saveMeasure(argThat(new IsMeasure(TestTrackMetrics.ISSUES)));
+    verify(transport, times(1)).getIssuesFromFilterWithLimit(eq("token"), eq("10010"), eq(0), anyInt());
+    verify(transport, never()).getPriorities(anyString());
+  }
+
+  private static TestTrackSensor sensor(Settings settings) {
+    return sensor(settings, new FetchedIssues(), new AnalysisState(settings));
+  }
+
+  private static TestTrackSensor sensor(Settings settings, FetchedIssues fetchedIssues, AnalysisState state) {
+    RemoteCallExecutor executor = new RemoteCallExecutor(settings);
+    FilterResolver filterResolver = new FilterResolver();
+    return new TestTrackSensor(settings, filterResolver, fetchedIssues, executor, new Tracer(),
+        new IssueFederation(settings, filterResolver, executor), state);
+  }
+
+  private static Project rootProject() {
+    Project root = mock(Project.class);
+    when(root.isRoot()).thenReturn(true);
+    when(root.getModules()).thenReturn(Arrays.asList(mock(Project.class)));
+    return root;
+  }
+
+
+  private Project moduleWithFiles(String... paths) throws Exception {
+    File sourceDir = temp.newFolder("src");
+    ProjectFileSystem fileSystem = mock(ProjectFileSystem.class);
+    when(fileSystem.getSourceDirs()).thenReturn(Arrays.asList(sourceDir));
+    File[] files = new File[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      files[i] = new File(sourceDir, paths[i]);
+    }
+    when(fileSystem.mainFiles("py")).thenReturn(InputFileUtils.create(sourceDir, Arrays.asList(files)));
+    Project module = mock(Project.class);
+    when(module.getFileSystem()).thenReturn(fileSystem);
+    when(module.getLanguageKey()).thenReturn("py");
+    when(module.getName()).thenReturn("module");
+    return module;
+  }
+
   @Test
   public void testSaveMeasures() {
     SensorContext context = mock(SensorContext.class);
@@ -127,7 +323,7 @@ public class TestTrackSensorTest {
 
   @Test
   public void shouldCollectPriorities() throws Exception {
-    JiraSoapService jiraSoapService = mock(JiraSoapService.class);
+    TrackerTransport jiraSoapService = mock(TrackerTransport.class);
     RemotePriority priority1 = new RemotePriority();
     priority1.setId("1");
     priority1.setName("Minor");
@@ -142,7 +338,7 @@ public class TestTrackSensorTest {
   public void shouldCollectIssuesByPriority() throws Exception {
     RemoteFilter filter = new RemoteFilter();
     filter.setId("1");
-    JiraSoapService jiraSoapService = mock(JiraSoapService.class);
+    TrackerTransport jiraSoapService = mock(TrackerTransport.class);
     RemoteIssue issue1 = new RemoteIssue();
     issue1.setPriority("minor");
     RemoteIssue issue2 = new RemoteIssue();
@@ -159,7 +355,7 @@ public class TestTrackSensorTest {
 
   @Test
   public void shouldFindFilters() throws Exception {
-    JiraSoapService jiraSoapService = mock(JiraSoapService.class);
+    TrackerTransport jiraSoapService = mock(TrackerTransport.class);
     RemoteFilter filter1 = new RemoteFilter();
     filter1.setName("fooFilter");
     RemoteFilter myFilter = new RemoteFilter();
@@ -172,19 +368,232 @@ public class TestTrackSensorTest {
 
   @Test
   public void shouldFindFiltersWithPreviousJiraVersions() throws Exception {
-    JiraSoapService jiraSoapService = mock(JiraSoapService.class);
+    TrackerTransport jiraSoapService = mock(TrackerTransport.class);
     RemoteFilter myFilter = new RemoteFilter();
     myFilter.setName("myFilter");
     when(jiraSoapService.getSavedFilters("token")).thenReturn(new RemoteFilter[] {myFilter});
-    when(jiraSoapService.getFavouriteFilters("token")).thenThrow(RemoteException.class);
+    when(jiraSoapService.getFavouriteFilters("token")).thenThrow(new RemoteException());
 
     RemoteFilter foundFilter = sensor.findJiraFilter(jiraSoapService, "token");
     assertThat(foundFilter, is(myFilter));
   }
 
+  @Test
+  public void shouldListFiltersOnlyOnce() throws Exception {
+    TrackerTransport jiraSoapService = mock(TrackerTransport.class);
+    RemoteFilter myFilter = new RemoteFilter();
+    myFilter.setName("myFilter");
+    when(jiraSoapService.getSavedFilters("token")).thenReturn(new RemoteFilter[] {myFilter});
+    when(jiraSoapService.getFavouriteFilters("token")).thenThrow(new RemoteException());
+
+    sensor.findJiraFilter(jiraSoapService, "token");
+    RemoteFilter foundFilter = sensor.findJiraFilter(jiraSoapService, "token");
+
+    assertThat(foundFilter, is(myFilter));
+    verify(jiraSoapService, times(1)).getFavouriteFilters("token");
+    verify(jiraSoapService, times(1)).getSavedFilters("token");
+  }
+
+  @Test
+  public void shouldComputeMeasuresFromRecording() throws Exception {
+    TrackerRecording recording = new TrackerRecording();
+    RemotePriority priority = new RemotePriority();
+    priority.setId("1");
+    priority.setName("Blocker");
+    recording.setPriorities(new RemotePriority[] {priority});
+    RemoteIssue issue = new RemoteIssue();
+    issue.setPriority("1");
+    recording.setIssues(TrackerRecording.filterQuery("10010"), new RemoteIssue[] {issue});
+    File file = new File(temp.getRoot(), "jira.rec");
+    recording.write(file, 1234L);
+    settings.setProperty(TestTrackConstants.FILTER_PROPERTY, "id:10010");
+    settings.setProperty(TestTrackConstants.REPLAY_FILE_PROPERTY, file.getPath());
+    settings.removeProperty(TestTrackConstants.USERNAME_PROPERTY);
+    settings.removeProperty(TestTrackConstants.PASSWORD_PROPERTY);
+    sensor = sensor(settings);
+    Project project = mock(Project.class);
+    when(project.isRoot()).thenReturn(true);
+    SensorContext context = mock(SensorContext.class);
+
+    assertThat(sensor.shouldExecuteOnProject(project), is(true));
+    sensor.analyse(project, context);
+
+    verify(context).saveMeasure(argThat(new IsMeasure(TestTrackMetrics.ISSUES, 1.0, "Blocker=1")));
+  }
+
+  @Test
+  public void shouldUseFilterIdWithoutListingFilters() throws Exception {
+    settings.setProperty(TestTrackConstants.FILTER_PROPERTY, "id:10010");
+    sensor = sensor(settings);
+    TrackerTransport jiraSoapService = mock(TrackerTransport.class);
+    RemoteIssue issue = new RemoteIssue();
+    issue.setPriority("1");
+    RemotePriority priority = new RemotePriority();
+    priority.setId("1");
+    priority.setName("Blocker");
+    when(jiraSoapService.getPriorities("token")).thenReturn(new RemotePriority[] {priority});
+    when(jiraSoapService.getIssuesFromFilterWithLimit(eq("token"), eq("10010"), eq(0), anyInt())).thenReturn(new RemoteIssue[] {issue});
+    SensorContext context = mock(SensorContext.class);
+
+    sensor.runAnalysis(context, jiraSoapService, "token");
+
+    verify(jiraSoapService, never()).getFavouriteFilters("token");
+    verify(context).saveMeasure(argThat(new IsMeasure(TestTrackMetrics.ISSUES, 1.0, "Blocker=1")));
+  }
+
+  @Test
+  public void shouldNotKeepWholeIssuesWhenOnlyCounting() throws Exception {
+    settings.setProperty(TestTrackConstants.FILTER_PROPERTY, "id:10010");
+    FetchedIssues fetchedIssues = new FetchedIssues();
+    sensor = sensor(settings, fetchedIssues, new AnalysisState(settings));
+    TrackerTransport transport = mock(TrackerTransport.class);
+    RemoteIssue issue = new RemoteIssue();
+    issue.setPriority("1");
+    issue.setDescription("Wrong result in pkg/util.py");
+    when(transport.getPriorities("token")).thenReturn(new RemotePriority[0]);
+    when(transport.getIssuesFromFilterWithLimit(eq("token"), eq("10010"), eq(0), anyInt())).thenReturn(new RemoteIssue[] {issue});
+    SensorContext context = mock(SensorContext.class);
+
+    sensor.runAnalysis(context, transport, "token");
+
+    verify(context).saveMeasure(argThat(new IsMeasure(TestTrackMetrics.ISSUES, 1.0, "1=1")));
+    assertThat(fetchedIssues.get("filter:10010") == null, is(true));
+  }
+
+  @Test
+  public void shouldSaveLastIssuesAsStaleWhenJiraIsDown() throws Exception {
+    settings.setProperty(TestTrackConstants.FILTER_PROPERTY, "id:10010");
+    sensor = sensor(settings);
+    TrackerTransport transport = mock(TrackerTransport.class);
+    RemoteIssue issue = new RemoteIssue();
+    issue.setKey("TEST-1");
+    issue.setPriority("1");
+    RemotePriority priority = new RemotePriority();
+    priority.setId("1");
+    priority.setName("Blocker");
+    when(transport.getPriorities("token")).thenReturn(new RemotePriority[] {priority});
+    when(transport.getIssuesFromFilterWithLimit(eq("token"), eq("10010"), eq(0), anyInt())).thenReturn(new RemoteIssue[] {issue, issue});
+    sensor.runAnalysis(mock(SensorContext.class), transport, "token");
+
+    SensorContext context = mock(SensorContext.class);
+    sensor(settings).saveStaleMeasures(context);
+
+    ArgumentCaptor<Measure> measure = ArgumentCaptor.forClass(Measure.class);
+    verify(context).saveMeasure(measure.capture());
+    assertThat(measure.getValue().getValue(), is(2.0));
+    assertThat(measure.getValue().getData(), is("Blocker=2"));
+    assertThat(measure.getValue().getDescription(), startsWith("Stale"));
+  }
+
+  @Test
+  public void shouldAddFederatedIssuesToStaleOnesWhenMainServerIsDown() throws Exception {
+    settings.setProperty(TestTrackConstants.SERVER_URL_PROPERTY, "http://127.0.0.1:1");
+    settings.setProperty(TestTrackConstants.FILTER_PROPERTY, "id:10010");
+    settings.setProperty(TestTrackConstants.FEDERATION_SERVERS_PROPERTY, "north");
+    settings.setProperty("sonar.jira.federation.north.url", "http://north");
+    settings.setProperty("sonar.jira.federation.north.filter", "id:10020");
+    TrackerTransport transport = mock(TrackerTransport.class);
+    RemoteIssue issue = new RemoteIssue();
+    issue.setPriority("1");
+    RemotePriority priority = new RemotePriority();
+    priority.setId("1");
+    priority.setName("Blocker");
+    when(transport.getPriorities("token")).thenReturn(new RemotePriority[] {priority});
+    when(transport.getIssuesFromFilterWithLimit(eq("token"), eq("10010"), eq(0), anyInt())).thenReturn(new RemoteIssue[] {issue});
+    sensor(settings).runAnalysis(mock(SensorContext.class), transport, "token");
+    RemoteCallExecutor executor = new RemoteCallExecutor(settings);
+    FilterResolver filterResolver = new FilterResolver();
+    IssueFederation federation = new IssueFederation(settings, filterResolver, executor) {
+      @Override
+      protected ServerCount countByPriorityName(FederatedServer server, Deadline deadline) {
+        return new ServerCount(Collections.singletonMap("Blocker", 2), false);
+      }
+    };
+    Project root = mock(Project.class);
+    when(root.isRoot()).thenReturn(true);
+    SensorContext context = mock(SensorContext.class);
+
+    new TestTrackSensor(settings, filterResolver, new FetchedIssues(), executor, new Tracer(), federation, new AnalysisState(settings))
+        .analyse(root, context);
+
+    ArgumentCaptor<Measure> measure = ArgumentCaptor.forClass(Measure.class);
+    verify(context).saveMeasure(measure.capture());
+    assertThat(measure.getValue().getValue(), is(3.0));
+    assertThat(measure.getValue().getData(), is("Blocker=3"));
+    assertThat(measure.getValue().getDescription(), startsWith("Stale"));
+    executor.stop();
+  }
+
+  @Test
+  public void shouldSaveIssueCountWhenBudgetRunsOutOnPriorities() throws Exception {
+    settings.setProperty(TestTrackConstants.FILTER_PROPERTY, "id:10010");
+    sensor = sensor(settings);
+    TrackerTransport transport = mock(TrackerTransport.class);
+    RemoteIssue issue = new RemoteIssue();
+    issue.setPriority("1");
+    when(transport.getIssuesFromFilterWithLimit(eq("token"), eq("10010"), eq(0), anyInt())).thenReturn(new RemoteIssue[] {issue});
+    when(transport.getPriorities("token")).thenThrow(new DeadlineExceededException("getPriorities"));
+    SensorContext context = mock(SensorContext.class);
+
+    sensor.runAnalysis(context, transport, "token");
+
+    verify(context).saveMeasure(argThat(new IsMeasure(TestTrackMetrics.ISSUES, 1.0, "1=1")));
+  }
+
+  @Test
+  public void shouldNotSaveStaleIssuesWithoutPreviousAnalysis() {
+    SensorContext context = mock(SensorContext.class);
+
+    sensor.saveStaleMeasures(context);
+
+    verifyNoMoreInteractions(context);
+  }
+
+  @Test
+  public void shouldSearchWithJql() throws Exception {
+    settings.setProperty(TestTrackConstants.FILTER_PROPERTY, "jql: project = SONAR");
+    sensor = sensor(settings);
+    TrackerTransport jiraSoapService = mock(TrackerTransport.class);
+    RemoteIssue issue = new RemoteIssue();
+    issue.setPriority("1");
+    RemotePriority priority = new RemotePriority();
+    priority.setId("1");
+    priority.setName("Blocker");
+    when(jiraSoapService.getPriorities("token")).thenReturn(new RemotePriority[] {priority});
+    when(jiraSoapService.getIssuesFromJqlSearch(eq("token"), eq("project = SONAR"), anyInt())).thenReturn(new RemoteIssue[] {issue, issue});
+    SensorContext context = mock(SensorContext.class);
+
+    sensor.runAnalysis(context, jiraSoapService, "token");
+
+    verify(jiraSoapService, never()).getFavouriteFilters("token");
+    verify(context).saveMeasure(argThat(new IsMeasure(TestTrackMetrics.ISSUES, 2.0, "Blocker=2")));
+  }
+
+  @Test
+  public void shouldFlagCountCutByJqlCap() throws Exception {
+    settings.setProperty(TestTrackConstants.FILTER_PROPERTY, "jql: project = SONAR");
+    sensor = sensor(settings);
+    TrackerTransport jiraSoapService = mock(TrackerTransport.class);
+    RemoteIssue[] issues = new RemoteIssue[IssueQuery.MAX_JQL_RESULTS];
+    for (int i = 0; i < issues.length; i++) {
+      issues[i] = new RemoteIssue();
+      issues[i].setPriority("1");
+    }
+    when(jiraSoapService.getPriorities("token")).thenReturn(new RemotePriority[0]);
+    when(jiraSoapService.getIssuesFromJqlSearch("token", "project = SONAR", IssueQuery.MAX_JQL_RESULTS)).thenReturn(issues);
+    SensorContext context = mock(SensorContext.class);
+
+    sensor.runAnalysis(context, jiraSoapService, "token");
+
+    ArgumentCaptor<Measure> measure = ArgumentCaptor.forClass(Measure.class);
+    verify(context).saveMeasure(measure.capture());
+    assertThat(measure.getValue().getValue(), is((double) IssueQuery.MAX_JQL_RESULTS));
+    assertThat(measure.getValue().getDescription(), startsWith("Truncated"));
+  }
+
   @Test
   public void faillIfNoFilterFound() throws Exception {
-    JiraSoapService jiraSoapService = mock(JiraSoapService.class);
+    TrackerTransport jiraSoapService = mock(TrackerTransport.class);
     when(jiraSoapService.getFavouriteFilters("token")).thenReturn(new RemoteFilter[0]);
 
     thrown.expect(IllegalStateException.class);